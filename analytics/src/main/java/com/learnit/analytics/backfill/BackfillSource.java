@@ -0,0 +1,43 @@
+package com.learnit.analytics.backfill;
+
+import com.learnit.analytics.dto.EventEnvelope;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A bounded stream of historical events for a backfill, read by one thread in chunks. Events are
+ * handed out still encoded, so the backfill decodes them on its worker pool.
+ */
+public interface BackfillSource extends Closeable {
+
+    /**
+     * One encoded event; decode may throw for a malformed record
+     */
+    interface Encoded {
+        EventEnvelope decode() throws IOException;
+    }
+
+    String description();
+
+    /**
+     * Up to maxEvents events in source order; an empty list once the source is exhausted
+     */
+    List<Encoded> nextChunk(int maxEvents) throws IOException;
+
+    /**
+     * Fraction of the source read so far, or -1 when the size is unknown
+     */
+    double progress();
+
+    /**
+     * Events that reached the source after the point where nextChunk stopped, since the previous
+     * call. Called after the source is exhausted, the last time while no aggregate writes are in
+     * flight: a source that live events keep flowing into (the event log) returns them here so
+     * the swap misses none. Others have nothing to add.
+     */
+    default List<Encoded> catchUp() throws IOException {
+        return List.of();
+    }
+}
@@ -0,0 +1,73 @@
+package com.learnit.analytics.backfill;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnit.analytics.dto.BackfillRequest;
+import com.learnit.analytics.eventlog.EventLog;
+import com.learnit.analytics.kafka.EventDecoder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Opens the source a backfill request names. Throws IllegalArgumentException for an invalid
+ * request.
+ */
+@Component
+public class BackfillSources {
+
+    private final EventLog eventLog;
+    private final ObjectMapper objectMapper;
+    private final EventDecoder eventDecoder;
+    private final ObjectProvider<ConsumerFactory<String, byte[]>> consumerFactory;
+
+    // NDJSON dumps are only read from below this directory
+    @Value("${analytics.backfill.import-dir:data/backfill}")
+    private String importDir = "data/backfill";
+
+    @Value("${analytics.kafka.topic.discussion:discussion.events}")
+    private String defaultTopic = "discussion.events";
+
+    public BackfillSources(EventLog eventLog, ObjectMapper objectMapper, EventDecoder eventDecoder,
+                           ObjectProvider<ConsumerFactory<String, byte[]>> consumerFactory) {
+        this.eventLog = eventLog;
+        this.objectMapper = objectMapper;
+        this.eventDecoder = eventDecoder;
+        this.consumerFactory = consumerFactory;
+    }
+
+    public BackfillSource open(BackfillRequest request) throws IOException {
+        switch (request.getSource()) {
+            case "event-log":
+                return new EventLogSource(eventLog);
+            case "ndjson":
+                return new NdjsonSource(importPath(request.getPath()), objectMapper);
+            case "kafka": {
+                ConsumerFactory<String, byte[]> factory = consumerFactory.getIfAvailable();
+                if (factory == null) {
+                    throw new IllegalArgumentException("no Kafka consumer is configured");
+                }
+                String topic = request.getTopic() == null ? defaultTopic : request.getTopic();
+                return new KafkaSource(factory, eventDecoder, topic, request.getFromOffset());
+            }
+            default:
+                throw new IllegalArgumentException("source must be event-log, ndjson or kafka");
+        }
+    }
+
+    private Path importPath(String path) {
+        if (path == null || path.isBlank()) {
+            throw new IllegalArgumentException("path is required for an ndjson source");
+        }
+        Path base = Paths.get(importDir).toAbsolutePath().normalize();
+        Path resolved = base.resolve(path).normalize();
+        if (!resolved.startsWith(base)) {
+            throw new IllegalArgumentException("path must stay inside the import directory");
+        }
+        return resolved;
+    }
+}
@@ -0,0 +1,77 @@
+package com.learnit.analytics.backfill;
+
+import com.learnit.analytics.eventlog.EventLog;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The local EventLog from its first retained offset up to the offset that was next when the
+ * source was opened; what is appended later is returned by {@link #catchUp()}.
+ */
+public class EventLogSource implements BackfillSource {
+
+    private final EventLog.Reader reader;
+    private final long firstOffset;
+    private final long endOffset;
+    // read past endOffset before nextChunk noticed, kept for catchUp
+    private EventLog.Entry pending;
+    // progress is read from other threads than the reader's
+    private volatile long readOffset;
+
+    public EventLogSource(EventLog eventLog) {
+        if (!eventLog.isEnabled()) {
+            throw new IllegalArgumentException("the event log is disabled");
+        }
+        this.firstOffset = eventLog.firstOffset();
+        this.endOffset = eventLog.nextOffset();
+        this.reader = eventLog.reader(firstOffset);
+        this.readOffset = firstOffset;
+    }
+
+    @Override
+    public String description() {
+        return "event log offsets [" + firstOffset + ", " + endOffset + ")";
+    }
+
+    @Override
+    public List<Encoded> nextChunk(int maxEvents) {
+        List<Encoded> chunk = new ArrayList<>(Math.min(maxEvents, 4096));
+        while (pending == null && chunk.size() < maxEvents) {
+            EventLog.Entry entry = reader.next();
+            if (entry == null) break;
+            if (entry.offset() >= endOffset) {
+                pending = entry;
+                break;
+            }
+            chunk.add(entry::event);
+            readOffset = entry.offset() + 1;
+        }
+        return chunk;
+    }
+
+    @Override
+    public double progress() {
+        long total = endOffset - firstOffset;
+        return total <= 0 ? 1.0 : Math.min(1.0, (double) (readOffset - firstOffset) / total);
+    }
+
+    @Override
+    public List<Encoded> catchUp() {
+        List<Encoded> tail = new ArrayList<>();
+        if (pending != null) {
+            tail.add(pending::event);
+            pending = null;
+        }
+        EventLog.Entry entry;
+        while ((entry = reader.next()) != null) {
+            tail.add(entry::event);
+        }
+        return tail;
+    }
+
+    @Override
+    public void close() {
+        // the reader holds no resources of its own
+    }
+}
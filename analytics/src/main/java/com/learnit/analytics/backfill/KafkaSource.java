@@ -0,0 +1,142 @@
+package com.learnit.analytics.backfill;
+
+import com.learnit.analytics.kafka.EventDecoder;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.core.ConsumerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Every partition of a topic from fromOffset (or its earliest retained offset) up to its end
+ * offset when the source was opened. Partitions are assigned directly and no offsets are
+ * committed, so the live consumer group is not affected.
+ */
+public class KafkaSource implements BackfillSource {
+
+    private static final Duration POLL_TIMEOUT = Duration.ofSeconds(1);
+    private static final int MAX_IDLE_POLLS = 30;
+
+    private final Consumer<String, byte[]> consumer;
+    private final EventDecoder decoder;
+    private final String topic;
+    private final long fromOffset;
+    private final Map<TopicPartition, Long> endOffsets = new HashMap<>();
+    // partitions not read up to their end offset yet
+    private final Set<TopicPartition> active = new HashSet<>();
+    private final Deque<ConsumerRecord<String, byte[]>> buffered = new ArrayDeque<>();
+    private long total;
+    private volatile long consumed;
+
+    public KafkaSource(ConsumerFactory<String, byte[]> consumerFactory, EventDecoder decoder, String topic,
+                       long fromOffset) throws IOException {
+        this.decoder = decoder;
+        this.topic = topic;
+        this.fromOffset = fromOffset;
+        Properties overrides = new Properties();
+        overrides.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        overrides.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, "5000");
+        this.consumer = consumerFactory.createConsumer("analytics-backfill", null, null, overrides);
+        try {
+            assign();
+        } catch (KafkaException e) {
+            consumer.close();
+            throw new IOException("cannot read " + topic + ": " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            consumer.close();
+            throw e;
+        }
+    }
+
+    private void assign() {
+        List<PartitionInfo> infos = consumer.partitionsFor(topic, Duration.ofSeconds(30));
+        if (infos == null || infos.isEmpty()) {
+            throw new IllegalArgumentException("unknown topic: " + topic);
+        }
+        List<TopicPartition> partitions = infos.stream().map(i -> new TopicPartition(i.topic(), i.partition())).toList();
+        Map<TopicPartition, Long> begin = consumer.beginningOffsets(partitions);
+        Map<TopicPartition, Long> end = consumer.endOffsets(partitions);
+        Map<TopicPartition, Long> start = new HashMap<>();
+        for (TopicPartition tp : partitions) {
+            long first = Math.max(fromOffset, begin.get(tp));
+            if (first < end.get(tp)) {
+                start.put(tp, first);
+                endOffsets.put(tp, end.get(tp));
+                total += end.get(tp) - first;
+            }
+        }
+        active.addAll(start.keySet());
+        consumer.assign(start.keySet());
+        start.forEach(consumer::seek);
+    }
+
+    @Override
+    public String description() {
+        return "Kafka topic " + topic + " from offset " + fromOffset + " (" + total + " records)";
+    }
+
+    @Override
+    public List<Encoded> nextChunk(int maxEvents) throws IOException {
+        List<Encoded> chunk = new ArrayList<>(Math.min(maxEvents, 4096));
+        int idlePolls = 0;
+        while (chunk.size() < maxEvents && (!active.isEmpty() || !buffered.isEmpty())) {
+            if (buffered.isEmpty()) {
+                if (!chunk.isEmpty()) break;
+                int polled = 0;
+                for (ConsumerRecord<String, byte[]> record : consumer.poll(POLL_TIMEOUT)) {
+                    buffered.add(record);
+                    polled++;
+                }
+                if (finishPartitions() || polled > 0) {
+                    idlePolls = 0;
+                } else if (++idlePolls >= MAX_IDLE_POLLS) {
+                    throw new IOException("no records from " + topic + " for " + MAX_IDLE_POLLS + " polls, "
+                        + active.size() + " partitions not read to their end");
+                }
+                continue;
+            }
+            ConsumerRecord<String, byte[]> record = buffered.poll();
+            Long end = endOffsets.get(new TopicPartition(record.topic(), record.partition()));
+            if (end == null || record.offset() >= end) continue;
+            chunk.add(() -> decoder.decode(record));
+            consumed++;
+        }
+        return chunk;
+    }
+
+    // stop fetching partitions whose position reached the end offset; true if any did
+    private boolean finishPartitions() {
+        List<TopicPartition> finished = new ArrayList<>();
+        for (TopicPartition tp : active) {
+            if (consumer.position(tp) >= endOffsets.get(tp)) finished.add(tp);
+        }
+        if (finished.isEmpty()) return false;
+        active.removeAll(finished);
+        consumer.pause(finished);
+        return true;
+    }
+
+    @Override
+    public double progress() {
+        return total == 0 ? 1.0 : Math.min(1.0, (double) consumed / total);
+    }
+
+    @Override
+    public void close() {
+        consumer.close();
+    }
+}
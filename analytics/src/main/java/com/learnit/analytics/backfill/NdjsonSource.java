@@ -0,0 +1,95 @@
+package com.learnit.analytics.backfill;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.learnit.analytics.dto.EventEnvelope;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A dump with one JSON event envelope per line (the /ingest/batch element format); files ending
+ * in .gz are decompressed. Blank lines are skipped.
+ */
+public class NdjsonSource implements BackfillSource {
+
+    private final Path path;
+    private final long size;
+    private final CountingInputStream counted;
+    private final BufferedReader lines;
+    private final ObjectReader reader;
+
+    public NdjsonSource(Path path, ObjectMapper objectMapper) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            throw new IllegalArgumentException("no such file: " + path);
+        }
+        this.path = path;
+        this.size = Files.size(path);
+        this.counted = new CountingInputStream(Files.newInputStream(path));
+        InputStream in = path.getFileName().toString().endsWith(".gz")
+            ? new GZIPInputStream(counted, 1 << 16)
+            : counted;
+        this.lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+        this.reader = objectMapper.readerFor(EventEnvelope.class);
+    }
+
+    @Override
+    public String description() {
+        return "NDJSON file " + path;
+    }
+
+    @Override
+    public List<Encoded> nextChunk(int maxEvents) throws IOException {
+        List<Encoded> chunk = new ArrayList<>(Math.min(maxEvents, 4096));
+        String line;
+        while (chunk.size() < maxEvents && (line = lines.readLine()) != null) {
+            if (line.isBlank()) continue;
+            String json = line;
+            chunk.add(() -> reader.readValue(json));
+        }
+        return chunk;
+    }
+
+    @Override
+    public double progress() {
+        return size == 0 ? 1.0 : Math.min(1.0, (double) counted.count / size);
+    }
+
+    @Override
+    public void close() throws IOException {
+        lines.close();
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+
+        // compressed bytes read from the file
+        private volatile long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+}
@@ -1,10 +1,25 @@
 package com.learnit.analytics.controller;
 
+import com.learnit.analytics.dto.ActivityTimeseries;
+import com.learnit.analytics.dto.BackfillRequest;
 import com.learnit.analytics.dto.EventEnvelope;
+import com.learnit.analytics.dto.UniqueCounts;
+import com.learnit.analytics.eventlog.EventLog;
+import com.learnit.analytics.ingest.IngestQueue;
+import com.learnit.analytics.ingest.NdjsonStream;
+import com.learnit.analytics.service.ActivityRollups;
 import com.learnit.analytics.service.AnalyticsService;
+import com.learnit.analytics.service.BackfillEngine;
+import com.learnit.analytics.service.DeltaAccumulator;
+import com.learnit.analytics.service.EventDeduplicator;
+import com.learnit.analytics.service.UniqueCounters;
 import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -12,7 +27,15 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.server.ResponseStatusException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.List;
+import java.util.Map;
 import com.learnit.analytics.entity.ThreadAggregate;
 
 @RestController
@@ -20,23 +43,101 @@ import com.learnit.analytics.entity.ThreadAggregate;
 public class AnalyticsController {
 
     private final AnalyticsService analyticsService;
+    private final DeltaAccumulator deltaAccumulator;
+    private final EventDeduplicator deduplicator;
+    private final ActivityRollups rollups;
+    private final UniqueCounters uniques;
+    private final EventLog eventLog;
+    private final BackfillEngine backfillEngine;
+    private final IngestQueue ingestQueue;
+    private final NdjsonStream ndjsonStream;
 
-    public AnalyticsController(AnalyticsService analyticsService) {
+    // how long a stream waits for room in the queue before it is stopped with 429
+    @Value("${analytics.ingest.stream.wait-ms:2000}")
+    private long streamWaitMs = 2000;
+
+    public AnalyticsController(AnalyticsService analyticsService, DeltaAccumulator deltaAccumulator,
+                               EventDeduplicator deduplicator, ActivityRollups rollups, UniqueCounters uniques,
+                               EventLog eventLog, BackfillEngine backfillEngine, IngestQueue ingestQueue,
+                               NdjsonStream ndjsonStream) {
         this.analyticsService = analyticsService;
+        this.deltaAccumulator = deltaAccumulator;
+        this.deduplicator = deduplicator;
+        this.rollups = rollups;
+        this.uniques = uniques;
+        this.eventLog = eventLog;
+        this.backfillEngine = backfillEngine;
+        this.ingestQueue = ingestQueue;
+        this.ndjsonStream = ndjsonStream;
     }
 
     @PostMapping("/ingest")
-    public ResponseEntity<String> ingest(@Valid @RequestBody EventEnvelope envelope) {
-        analyticsService.processEvent(envelope);
-        return ResponseEntity.status(HttpStatus.ACCEPTED).body("accepted");
+    public ResponseEntity<String> ingest(@Valid @RequestBody EventEnvelope envelope) throws InterruptedException {
+        return accept(List.of(envelope));
     }
 
     @PostMapping("/ingest/batch")
-    public ResponseEntity<String> ingestBatch(@Valid @RequestBody java.util.List<EventEnvelope> envelopes) {
+    public ResponseEntity<String> ingestBatch(@Valid @RequestBody List<EventEnvelope> envelopes) throws InterruptedException {
+        return accept(envelopes);
+    }
+
+    // newline-delimited events, read and queued chunk by chunk; a full queue stops the stream with
+    // 429, and resumeAtLine in the body tells the client where to continue
+    @PostMapping(value = "/ingest/stream", consumes = {"application/x-ndjson", MediaType.TEXT_PLAIN_VALUE})
+    public ResponseEntity<Map<String, Object>> ingestStream(InputStream body) throws IOException, InterruptedException {
+        Map<String, Object> result = ndjsonStream.read(body, chunk -> accept(chunk, streamWaitMs).getStatusCode().is2xxSuccessful());
+        if (!result.containsKey("resumeAtLine")) {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(result);
+        }
+        return ResponseEntity.status(ingestQueue.isEnabled() ? HttpStatus.TOO_MANY_REQUESTS : HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(ingestQueue.retryAfterSeconds()))
+            .body(result);
+    }
+
+    private ResponseEntity<String> accept(List<EventEnvelope> envelopes) throws InterruptedException {
+        return accept(envelopes, 0);
+    }
+
+    // 202 once queued (IngestQueue) or, with the queue disabled, once applied
+    private ResponseEntity<String> accept(List<EventEnvelope> envelopes, long waitMs) throws InterruptedException {
+        if (ingestQueue.isEnabled()) {
+            try {
+                if (ingestQueue.offer(envelopes, waitMs)) {
+                    return ResponseEntity.status(HttpStatus.ACCEPTED).body("accepted");
+                }
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(ingestQueue.retryAfterSeconds()))
+                    .body("ingest queue full, retry");
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, e.getMessage());
+            } catch (UncheckedIOException e) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+            }
+        }
+        if (deltaAccumulator.isEnabled()) {
+            return aggregate(envelopes);
+        }
         analyticsService.processEvents(envelopes);
         return ResponseEntity.status(HttpStatus.ACCEPTED).body("accepted");
     }
 
+    // 202 only once the events are committed with their window; 503 tells the client to retry
+    private ResponseEntity<String> aggregate(List<EventEnvelope> envelopes) throws InterruptedException {
+        try {
+            if (deltaAccumulator.addAndWait(envelopes)) {
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body("accepted");
+            }
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("not yet durable, retry");
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        }
+    }
+
+    @GetMapping("/ingest/stats")
+    public ResponseEntity<Map<String, Object>> getIngestStats() {
+        return ResponseEntity.ok(ingestQueue.stats());
+    }
+
     @GetMapping("/threads/{threadId}")
     public ResponseEntity<ThreadAggregate> getThreadAggregate(@PathVariable Long threadId) {
         ThreadAggregate agg = analyticsService.getThreadAggregate(threadId);
@@ -44,6 +145,46 @@ public class AnalyticsController {
         return ResponseEntity.ok(agg);
     }
 
+    @GetMapping("/aggregation/stats")
+    public ResponseEntity<Map<String, Object>> getAggregationStats() {
+        return ResponseEntity.ok(deltaAccumulator.stats());
+    }
+
+    @GetMapping("/dedup/stats")
+    public ResponseEntity<Map<String, Object>> getDedupStats() {
+        return ResponseEntity.ok(deduplicator.stats());
+    }
+
+    @GetMapping("/event-log/stats")
+    public ResponseEntity<Map<String, Object>> getEventLogStats() {
+        return ResponseEntity.ok(eventLog.stats());
+    }
+
+    // rebuilds thread aggregates from history in the background; poll GET /backfill for progress
+    @PostMapping("/backfill")
+    public ResponseEntity<Map<String, Object>> startBackfill(@Valid @RequestBody BackfillRequest request) {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(backfillEngine.start(request));
+        } catch (IllegalArgumentException | IOException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+        }
+    }
+
+    @GetMapping("/backfill")
+    public ResponseEntity<Map<String, Object>> getBackfillStatus() {
+        return ResponseEntity.ok(backfillEngine.status());
+    }
+
+    @DeleteMapping("/backfill")
+    public ResponseEntity<Map<String, Object>> cancelBackfill() {
+        if (!backfillEngine.cancel()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "no backfill is running");
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(backfillEngine.status());
+    }
+
     @GetMapping("/courses/{courseId}/top")
     public ResponseEntity<List<ThreadAggregate>> getTopThreadsByCourse(
             @PathVariable Long courseId,
@@ -51,4 +192,78 @@ public class AnalyticsController {
         List<ThreadAggregate> list = analyticsService.getTopThreadsByCourse(courseId, limit);
         return ResponseEntity.ok(list);
     }
+
+    // activity per step from the rollup tables; to defaults to now, from to 24 steps before to
+    @GetMapping("/courses/{courseId}/timeseries")
+    public ResponseEntity<ActivityTimeseries> getCourseTimeseries(
+            @PathVariable Long courseId,
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to,
+            @RequestParam(defaultValue = "1h") String step) {
+        return timeseries(courseId, null, from, to, step);
+    }
+
+    @GetMapping("/threads/{threadId}/timeseries")
+    public ResponseEntity<ActivityTimeseries> getThreadTimeseries(
+            @PathVariable Long threadId,
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to,
+            @RequestParam(defaultValue = "1h") String step) {
+        return timeseries(null, threadId, from, to, step);
+    }
+
+    private ResponseEntity<ActivityTimeseries> timeseries(Long courseId, Long threadId, Instant from, Instant to, String step) {
+        try {
+            Duration stepDuration = parseStep(step);
+            Instant end = to != null ? to : Instant.now();
+            Instant start = from != null ? from : end.minus(stepDuration.multipliedBy(24));
+            return ResponseEntity.ok(rollups.timeseries(courseId, threadId, start, end, stepDuration));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    // distinct viewers and commenters over whole UTC days; to defaults to now, from to 30 days before to
+    @GetMapping("/courses/{courseId}/uniques")
+    public ResponseEntity<UniqueCounts> getCourseUniques(
+            @PathVariable Long courseId,
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to) {
+        return uniques(courseId, null, from, to);
+    }
+
+    @GetMapping("/threads/{threadId}/uniques")
+    public ResponseEntity<UniqueCounts> getThreadUniques(
+            @PathVariable Long threadId,
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to) {
+        return uniques(null, threadId, from, to);
+    }
+
+    private ResponseEntity<UniqueCounts> uniques(Long courseId, Long threadId, Instant from, Instant to) {
+        try {
+            Instant end = to != null ? to : Instant.now();
+            Instant start = from != null ? from : end.minus(Duration.ofDays(30));
+            return ResponseEntity.ok(uniques.counts(courseId, threadId, start, end));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    // ISO-8601 (PT15M, P1D) or a count with a unit: 15m, 1h, 1d
+    private static Duration parseStep(String step) {
+        if (step.startsWith("P") || step.startsWith("p")) {
+            return Duration.parse(step);
+        }
+        if (step.length() < 2) {
+            throw new IllegalArgumentException("step must look like 15m, 1h, 1d or PT15M");
+        }
+        long amount = Long.parseLong(step.substring(0, step.length() - 1));
+        switch (step.charAt(step.length() - 1)) {
+            case 'm': return Duration.ofMinutes(amount);
+            case 'h': return Duration.ofHours(amount);
+            case 'd': return Duration.ofDays(amount);
+            default: throw new IllegalArgumentException("step must look like 15m, 1h, 1d or PT15M");
+        }
+    }
 }
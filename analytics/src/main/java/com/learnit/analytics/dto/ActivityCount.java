@@ -0,0 +1,51 @@
+package com.learnit.analytics.dto;
+
+import java.time.Instant;
+
+/**
+ * Activity of one event type in one time bucket, for a thread (writes) or summed over a
+ * course or thread (timeseries reads, threadId null)
+ */
+public class ActivityCount {
+
+    private final Long threadId;
+    private Long courseId;
+    private final String eventType;
+    private final Instant bucketStart;
+    private long count;
+
+    public ActivityCount(Long threadId, Long courseId, String eventType, Instant bucketStart, long count) {
+        this.threadId = threadId;
+        this.courseId = courseId;
+        this.eventType = eventType;
+        this.bucketStart = bucketStart;
+        this.count = count;
+    }
+
+    public Long getThreadId() {
+        return threadId;
+    }
+
+    public Long getCourseId() {
+        return courseId;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public Instant getBucketStart() {
+        return bucketStart;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void add(long delta, Long courseId) {
+        this.count += delta;
+        if (courseId != null) {
+            this.courseId = courseId;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.learnit.analytics.dto;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Activity per time step for a course or a thread, one point per step (empty steps included)
+ */
+public class ActivityTimeseries {
+
+    private final Long courseId;
+    private final Long threadId;
+    private final Instant from;
+    private final Instant to;
+    private final String step;
+    private final String resolution;
+    private final List<Point> points;
+
+    public ActivityTimeseries(Long courseId, Long threadId, Instant from, Instant to, String step,
+                              String resolution, List<Point> points) {
+        this.courseId = courseId;
+        this.threadId = threadId;
+        this.from = from;
+        this.to = to;
+        this.step = step;
+        this.resolution = resolution;
+        this.points = points;
+    }
+
+    public Long getCourseId() {
+        return courseId;
+    }
+
+    public Long getThreadId() {
+        return threadId;
+    }
+
+    public Instant getFrom() {
+        return from;
+    }
+
+    public Instant getTo() {
+        return to;
+    }
+
+    public String getStep() {
+        return step;
+    }
+
+    /**
+     * Rollup table the points were summed from (minute, hour or day)
+     */
+    public String getResolution() {
+        return resolution;
+    }
+
+    public List<Point> getPoints() {
+        return points;
+    }
+
+    public static class Point {
+
+        private final Instant start;
+        private final Map<String, Long> counts;
+        private long total;
+
+        public Point(Instant start, Map<String, Long> counts) {
+            this.start = start;
+            this.counts = counts;
+        }
+
+        public Instant getStart() {
+            return start;
+        }
+
+        /**
+         * Per event type: events, or views for thread_viewed
+         */
+        public Map<String, Long> getCounts() {
+            return counts;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public void add(String eventType, long count) {
+            counts.merge(eventType, count, Long::sum);
+            total += count;
+        }
+    }
+}
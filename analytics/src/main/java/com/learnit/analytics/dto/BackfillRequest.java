@@ -0,0 +1,62 @@
+package com.learnit.analytics.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.NotBlank;
+
+/**
+ * Which history to rebuild thread aggregates from: source is "event-log", "ndjson" (path, relative
+ * to the import directory) or "kafka" (topic, default the discussion topic, from fromOffset in
+ * every partition, default the earliest). A dry run stops after filling the shadow table. With
+ * keepMissing (the default) threads the source does not mention keep their current aggregate.
+ */
+public class BackfillRequest {
+
+    @NotBlank(message = "source is required")
+    private final String source;
+
+    private final String path;
+    private final String topic;
+    private final long fromOffset;
+    private final boolean dryRun;
+    private final boolean keepMissing;
+
+    @JsonCreator
+    public BackfillRequest(@JsonProperty("source") String source,
+                           @JsonProperty("path") String path,
+                           @JsonProperty("topic") String topic,
+                           @JsonProperty("fromOffset") Long fromOffset,
+                           @JsonProperty("dryRun") Boolean dryRun,
+                           @JsonProperty("keepMissing") Boolean keepMissing) {
+        this.source = source;
+        this.path = path;
+        this.topic = topic;
+        this.fromOffset = fromOffset == null ? 0 : fromOffset;
+        this.dryRun = dryRun != null && dryRun;
+        this.keepMissing = keepMissing == null || keepMissing;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public long getFromOffset() {
+        return fromOffset;
+    }
+
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    public boolean isKeepMissing() {
+        return keepMissing;
+    }
+}
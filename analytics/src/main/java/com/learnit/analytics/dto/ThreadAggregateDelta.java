@@ -0,0 +1,69 @@
+package com.learnit.analytics.dto;
+
+/**
+ * Net change to one thread's aggregate, folded from a batch of events
+ */
+public class ThreadAggregateDelta {
+
+    private final Long threadId;
+    private Long courseId;
+    private int views;
+    private int comments;
+    private int upvotes;
+    private int downvotes;
+
+    public ThreadAggregateDelta(Long threadId) {
+        this.threadId = threadId;
+    }
+
+    public Long getThreadId() {
+        return threadId;
+    }
+
+    public Long getCourseId() {
+        return courseId;
+    }
+
+    public int getViews() {
+        return views;
+    }
+
+    public int getComments() {
+        return comments;
+    }
+
+    public int getUpvotes() {
+        return upvotes;
+    }
+
+    public int getDownvotes() {
+        return downvotes;
+    }
+
+    public void courseId(Long courseId) {
+        if (courseId != null) {
+            this.courseId = courseId;
+        }
+    }
+
+    public void addViews(int delta) {
+        this.views += delta;
+    }
+
+    public void addComments(int delta) {
+        this.comments += delta;
+    }
+
+    public void addVotes(int deltaUp, int deltaDown) {
+        this.upvotes += deltaUp;
+        this.downvotes += deltaDown;
+    }
+
+    public void add(ThreadAggregateDelta other) {
+        courseId(other.courseId);
+        this.views += other.views;
+        this.comments += other.comments;
+        this.upvotes += other.upvotes;
+        this.downvotes += other.downvotes;
+    }
+}
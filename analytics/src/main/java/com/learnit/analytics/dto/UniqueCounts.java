@@ -0,0 +1,58 @@
+package com.learnit.analytics.dto;
+
+import java.time.Instant;
+
+/**
+ * Estimated distinct viewers and commenters of a thread or course over [from, to), whole UTC
+ * days. Each estimate is within relativeStandardError of the true count for about 68% of
+ * ranges and within twice that for 95%.
+ */
+public class UniqueCounts {
+
+    private final Long courseId;
+    private final Long threadId;
+    private final Instant from;
+    private final Instant to;
+    private final long uniqueViewers;
+    private final long uniqueParticipants;
+    private final double relativeStandardError;
+
+    public UniqueCounts(Long courseId, Long threadId, Instant from, Instant to, long uniqueViewers,
+                        long uniqueParticipants, double relativeStandardError) {
+        this.courseId = courseId;
+        this.threadId = threadId;
+        this.from = from;
+        this.to = to;
+        this.uniqueViewers = uniqueViewers;
+        this.uniqueParticipants = uniqueParticipants;
+        this.relativeStandardError = relativeStandardError;
+    }
+
+    public Long getCourseId() {
+        return courseId;
+    }
+
+    public Long getThreadId() {
+        return threadId;
+    }
+
+    public Instant getFrom() {
+        return from;
+    }
+
+    public Instant getTo() {
+        return to;
+    }
+
+    public long getUniqueViewers() {
+        return uniqueViewers;
+    }
+
+    public long getUniqueParticipants() {
+        return uniqueParticipants;
+    }
+
+    public double getRelativeStandardError() {
+        return relativeStandardError;
+    }
+}
@@ -0,0 +1,53 @@
+package com.learnit.analytics.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Id;
+import jakarta.persistence.MappedSuperclass;
+import java.time.Instant;
+
+/**
+ * Activity of one thread and event type in one time bucket (minute, hour or day table).
+ * event_count is the number of events, except for thread_viewed where it is the views they carry.
+ * Rows are written with JDBC (ActivityRollupRepository); the entities only define the schema.
+ */
+@MappedSuperclass
+public abstract class ActivityRollup {
+
+    @Id
+    private Long threadId;
+
+    @Id
+    private String eventType;
+
+    @Id
+    private Instant bucketStart;
+
+    // from the event, or the thread's aggregate when the event does not carry it
+    @Column
+    private Long courseId;
+
+    @Column(nullable = false)
+    private long eventCount;
+
+    protected ActivityRollup() {}
+
+    public Long getThreadId() {
+        return threadId;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public Instant getBucketStart() {
+        return bucketStart;
+    }
+
+    public Long getCourseId() {
+        return courseId;
+    }
+
+    public long getEventCount() {
+        return eventCount;
+    }
+}
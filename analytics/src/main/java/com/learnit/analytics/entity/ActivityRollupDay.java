@@ -0,0 +1,18 @@
+package com.learnit.analytics.entity;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * Day buckets (UTC), compacted from the hour buckets
+ */
+@Entity
+@IdClass(ActivityRollupId.class)
+@Table(name = "activity_rollup_day", indexes = {
+    @Index(name = "idx_activity_rollup_day_course", columnList = "courseId,bucketStart"),
+    @Index(name = "idx_activity_rollup_day_bucket", columnList = "bucketStart")
+})
+public class ActivityRollupDay extends ActivityRollup {
+}
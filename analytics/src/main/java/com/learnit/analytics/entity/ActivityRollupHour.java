@@ -0,0 +1,18 @@
+package com.learnit.analytics.entity;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * Hour buckets, compacted from the minute buckets
+ */
+@Entity
+@IdClass(ActivityRollupId.class)
+@Table(name = "activity_rollup_hour", indexes = {
+    @Index(name = "idx_activity_rollup_hour_course", columnList = "courseId,bucketStart"),
+    @Index(name = "idx_activity_rollup_hour_bucket", columnList = "bucketStart")
+})
+public class ActivityRollupHour extends ActivityRollup {
+}
@@ -0,0 +1,36 @@
+package com.learnit.analytics.entity;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Primary key of the activity rollup tables
+ */
+public class ActivityRollupId implements Serializable {
+
+    private Long threadId;
+    private String eventType;
+    private Instant bucketStart;
+
+    public ActivityRollupId() {}
+
+    public ActivityRollupId(Long threadId, String eventType, Instant bucketStart) {
+        this.threadId = threadId;
+        this.eventType = eventType;
+        this.bucketStart = bucketStart;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ActivityRollupId other)) return false;
+        return Objects.equals(threadId, other.threadId) && Objects.equals(eventType, other.eventType)
+            && Objects.equals(bucketStart, other.bucketStart);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(threadId, eventType, bucketStart);
+    }
+}
@@ -0,0 +1,18 @@
+package com.learnit.analytics.entity;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * Minute buckets, written with every committed batch of events
+ */
+@Entity
+@IdClass(ActivityRollupId.class)
+@Table(name = "activity_rollup_minute", indexes = {
+    @Index(name = "idx_activity_rollup_minute_course", columnList = "courseId,bucketStart"),
+    @Index(name = "idx_activity_rollup_minute_bucket", columnList = "bucketStart")
+})
+public class ActivityRollupMinute extends ActivityRollup {
+}
@@ -0,0 +1,65 @@
+package com.learnit.analytics.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.time.Instant;
+
+/**
+ * Weights the stored engagement scores were computed with (single row, id 1)
+ */
+@Entity
+@Table(name = "scoring_weights")
+public class ScoringWeights {
+
+    public static final int SINGLETON_ID = 1;
+
+    @Id
+    private Integer id = SINGLETON_ID;
+
+    @Column(nullable = false)
+    private long viewsWeight;
+
+    @Column(nullable = false)
+    private long commentsWeight;
+
+    @Column(nullable = false)
+    private long voteWeight;
+
+    @Column
+    private Instant appliedAt;
+
+    public ScoringWeights() {}
+
+    public ScoringWeights(long viewsWeight, long commentsWeight, long voteWeight, Instant appliedAt) {
+        this.viewsWeight = viewsWeight;
+        this.commentsWeight = commentsWeight;
+        this.voteWeight = voteWeight;
+        this.appliedAt = appliedAt;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public long getViewsWeight() {
+        return viewsWeight;
+    }
+
+    public long getCommentsWeight() {
+        return commentsWeight;
+    }
+
+    public long getVoteWeight() {
+        return voteWeight;
+    }
+
+    public Instant getAppliedAt() {
+        return appliedAt;
+    }
+
+    public boolean matches(long views, long comments, long vote) {
+        return viewsWeight == views && commentsWeight == comments && voteWeight == vote;
+    }
+}
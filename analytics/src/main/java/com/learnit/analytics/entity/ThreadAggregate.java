@@ -1,13 +1,18 @@
 package com.learnit.analytics.entity;
 
+import com.learnit.analytics.dto.ThreadAggregateDelta;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
 import jakarta.persistence.Column;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
 import java.time.Instant;
 
 @Entity
-@Table(name = "thread_aggregate")
+@Table(name = "thread_aggregate", indexes = {
+    @Index(name = "idx_thread_aggregate_course_score", columnList = "courseId,engagementScore DESC,threadId")
+})
 public class ThreadAggregate {
     @Id
     private Long threadId;
@@ -27,9 +32,20 @@ public class ThreadAggregate {
     @Column
     private Integer downvotes = 0;
 
+    // maintained on every update with the configured weights (EngagementScorer)
+    @Column
+    private Long engagementScore = 0L;
+
     @Column
     private Instant lastUpdated;
 
+    // distinct user estimates from UniqueCounters, filled on reads
+    @Transient
+    private Long uniqueViewers;
+
+    @Transient
+    private Long uniqueParticipants;
+
     public ThreadAggregate() {}
 
     public ThreadAggregate(Long threadId, Long courseId) {
@@ -62,12 +78,37 @@ public class ThreadAggregate {
         return downvotes;
     }
 
+    public Long getEngagementScore() {
+        return engagementScore;
+    }
+
     public Instant getLastUpdated() {
         return lastUpdated;
     }
 
+    public Long getUniqueViewers() {
+        return uniqueViewers;
+    }
+
+    public Long getUniqueParticipants() {
+        return uniqueParticipants;
+    }
+
+    public void setUniques(long uniqueViewers, long uniqueParticipants) {
+        this.uniqueViewers = uniqueViewers;
+        this.uniqueParticipants = uniqueParticipants;
+    }
+
+    public void setEngagementScore(Long engagementScore) {
+        this.engagementScore = engagementScore;
+    }
+
     public void incrementViews() {
-        this.views = (this.views == null ? 1 : this.views + 1);
+        addViews(1);
+    }
+
+    public void addViews(int delta) {
+        this.views = (this.views == null ? delta : this.views + delta);
         this.lastUpdated = Instant.now();
     }
 
@@ -91,4 +132,22 @@ public class ThreadAggregate {
         this.downvotes = (this.downvotes == null ? deltaDown : this.downvotes + deltaDown);
         this.lastUpdated = Instant.now();
     }
+
+    /**
+     * Detached copy with a pending delta added (not persisted)
+     */
+    public ThreadAggregate withDelta(ThreadAggregateDelta delta) {
+        ThreadAggregate copy = new ThreadAggregate(threadId, courseId != null ? courseId : delta.getCourseId());
+        copy.views = (views == null ? 0 : views) + delta.getViews();
+        copy.comments = (comments == null ? 0 : comments) + delta.getComments();
+        copy.upvotes = (upvotes == null ? 0 : upvotes) + delta.getUpvotes();
+        copy.downvotes = (downvotes == null ? 0 : downvotes) + delta.getDownvotes();
+        copy.engagementScore = engagementScore;
+        copy.lastUpdated = lastUpdated;
+        return copy;
+    }
+
+    public static ThreadAggregate fromDelta(ThreadAggregateDelta delta) {
+        return new ThreadAggregate(delta.getThreadId(), null).withDelta(delta);
+    }
 }
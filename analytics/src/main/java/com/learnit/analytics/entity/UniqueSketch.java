@@ -0,0 +1,72 @@
+package com.learnit.analytics.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import java.time.Instant;
+
+/**
+ * One HyperLogLog fragment of the distinct users of a thread or course (scope) that viewed it or
+ * commented on it (kind) in one UTC day. Every committed batch inserts its own fragments and the
+ * compaction merges a day's fragments into one row, so the count is always over all of them.
+ * Rows are written with JDBC (UniqueSketchRepository); the entity only defines the schema.
+ */
+@Entity
+@Table(name = "unique_sketch", indexes = {
+    @Index(name = "idx_unique_sketch_key", columnList = "scope,scopeId,kind,bucketStart"),
+    @Index(name = "idx_unique_sketch_bucket", columnList = "bucketStart")
+})
+public class UniqueSketch {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // thread or course
+    @Column(nullable = false, length = 16)
+    private String scope;
+
+    @Column(nullable = false)
+    private Long scopeId;
+
+    // viewers or participants
+    @Column(nullable = false, length = 16)
+    private String kind;
+
+    @Column(nullable = false)
+    private Instant bucketStart;
+
+    // at most 3074 bytes (HyperLogLog, dense)
+    @Column(nullable = false, length = 4096)
+    private byte[] sketch;
+
+    protected UniqueSketch() {}
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getScope() {
+        return scope;
+    }
+
+    public Long getScopeId() {
+        return scopeId;
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public Instant getBucketStart() {
+        return bucketStart;
+    }
+
+    public byte[] getSketch() {
+        return sketch;
+    }
+}
@@ -0,0 +1,383 @@
+package com.learnit.analytics.eventlog;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.learnit.analytics.dto.EventEnvelope;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Append-only log of every accepted event on local disk, for replaying history into new or
+ * corrected aggregations without Kafka retention or a database scan.
+ *
+ * Events are appended (Smile-encoded, with a crc32c each) by the write paths inside the
+ * transaction that applies them, so every committed event is in the log; a batch that rolls back
+ * and is redelivered can appear twice, and consumers deduplicate by eventId. Each record gets a
+ * sequential offset. The log is split into memory-mapped segments (see LogSegment), rolled at
+ * segment-bytes or once the active segment is segment-ms old, and each segment keeps a sparse
+ * offset/time index, so a reader seeks by offset or by append time and then reads sequentially.
+ *
+ * Mapped pages are forced to disk every flush-interval-ms: a process crash loses nothing, a
+ * power loss at most that interval of the log (the aggregates are unaffected). On startup every
+ * segment is validated from its index and a torn tail is cut off; appends continue in a new
+ * segment. Segments older than retention-hours are deleted (0 keeps everything).
+ */
+@Component
+public class EventLog {
+
+    private static final Logger log = LoggerFactory.getLogger(EventLog.class);
+
+    private final ObjectWriter writer;
+    private final ObjectReader reader;
+    private final Clock clock;
+    private final ScheduledExecutorService maintenance;
+
+    @Value("${analytics.event-log.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${analytics.event-log.dir:data/event-log}")
+    private String dir = "data/event-log";
+
+    @Value("${analytics.event-log.segment-bytes:134217728}")
+    private int segmentBytes = 128 * 1024 * 1024;
+
+    @Value("${analytics.event-log.segment-ms:86400000}")
+    private long segmentMs = 86_400_000;
+
+    @Value("${analytics.event-log.index-interval-bytes:4096}")
+    private int indexIntervalBytes = 4096;
+
+    @Value("${analytics.event-log.flush-interval-ms:1000}")
+    private long flushIntervalMs = 1000;
+
+    @Value("${analytics.event-log.retention-hours:0}")
+    private long retentionHours = 0;
+
+    private Path directory;
+    private FileChannel lockChannel;
+    private final ConcurrentSkipListMap<Long, LogSegment> segments = new ConcurrentSkipListMap<>();
+    // guarded by this
+    private LogSegment active;
+    private long lastAppendedAt;
+
+    @Autowired
+    public EventLog(ObjectMapper objectMapper) {
+        this(objectMapper, Clock.systemUTC());
+    }
+
+    EventLog(ObjectMapper objectMapper, Clock clock) {
+        ObjectMapper smile = objectMapper.copyWith(new SmileFactory());
+        this.writer = smile.writerFor(EventEnvelope.class);
+        this.reader = smile.readerFor(EventEnvelope.class);
+        this.clock = clock;
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "event-log-maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PostConstruct
+    void open() throws IOException {
+        if (!enabled) return;
+        directory = Paths.get(dir).toAbsolutePath();
+        Files.createDirectories(directory);
+        lock();
+        List<Long> baseOffsets = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(p -> p.getFileName().toString())
+                .filter(name -> name.endsWith(".log"))
+                .forEach(name -> baseOffsets.add(Long.parseLong(name.substring(0, name.length() - 4))));
+        }
+        baseOffsets.sort(null);
+        long nextOffset = 0;
+        for (Long baseOffset : baseOffsets) {
+            LogSegment segment = LogSegment.open(directory, baseOffset, indexIntervalBytes);
+            if (segment.isEmpty()) {
+                segment.delete();
+                continue;
+            }
+            segments.put(baseOffset, segment);
+            nextOffset = segment.nextOffset();
+            lastAppendedAt = Math.max(lastAppendedAt, segment.lastAppendedAt());
+        }
+        synchronized (this) {
+            active = LogSegment.create(directory, nextOffset, segmentBytes, indexIntervalBytes);
+            segments.put(nextOffset, active);
+        }
+        log.info("Event log at {}: {} segments, next offset {}", directory, segments.size(), nextOffset);
+        maintenance.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        if (retentionHours > 0) {
+            maintenance.scheduleWithFixedDelay(this::expireQuietly, 1, 60, TimeUnit.MINUTES);
+        }
+    }
+
+    // one writer per directory: a second process would cut off the first one's active segment
+    private void lock() throws IOException {
+        lockChannel = FileChannel.open(directory.resolve(".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            throw new IllegalStateException("Event log directory " + directory + " is in use by another instance");
+        }
+    }
+
+    @PreDestroy
+    synchronized void close() throws IOException {
+        maintenance.shutdownNow();
+        for (LogSegment segment : segments.values()) {
+            segment.close();
+        }
+        if (lockChannel != null) {
+            lockChannel.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Append events in order; returns the offset of the last one (-1 when disabled or empty)
+     */
+    public synchronized long append(Collection<EventEnvelope> events) {
+        if (!enabled || events.isEmpty()) return -1;
+        try {
+            for (EventEnvelope event : events) {
+                byte[] payload = writer.writeValueAsBytes(event);
+                // appendedAt never goes back, so the time index stays sorted across clock steps
+                long now = Math.max(clock.millis(), lastAppendedAt);
+                if (!active.isEmpty() && now - active.firstAppendedAt() >= segmentMs) {
+                    roll();
+                }
+                long offset = active.nextOffset();
+                if (!active.append(offset, now, payload)) {
+                    if (!active.isEmpty()) roll();
+                    if (!active.append(offset, now, payload)) {
+                        throw new IllegalArgumentException("Event " + event.getEventId() + " (" + payload.length
+                            + " bytes) does not fit in a segment of " + segmentBytes + " bytes");
+                    }
+                }
+                lastAppendedAt = now;
+            }
+            return active.nextOffset() - 1;
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Event cannot be encoded: " + e.getOriginalMessage(), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Event log append failed", e);
+        }
+    }
+
+    private void roll() throws IOException {
+        active.seal();
+        long baseOffset = active.nextOffset();
+        active = LogSegment.create(directory, baseOffset, segmentBytes, indexIntervalBytes);
+        segments.put(baseOffset, active);
+        log.debug("Event log rolled to segment {}", baseOffset);
+    }
+
+    /**
+     * Offset the next appended event gets
+     */
+    public long nextOffset() {
+        Map.Entry<Long, LogSegment> last = segments.lastEntry();
+        return last == null ? 0 : last.getValue().nextOffset();
+    }
+
+    /**
+     * Oldest offset still retained
+     */
+    public long firstOffset() {
+        Map.Entry<Long, LogSegment> first = segments.firstEntry();
+        return first == null ? 0 : first.getKey();
+    }
+
+    /**
+     * Sequential reader from this offset (clamped to the retained range)
+     */
+    public Reader reader(long fromOffset) {
+        requireEnabled();
+        Map.Entry<Long, LogSegment> entry = segments.floorEntry(fromOffset);
+        if (entry == null) entry = segments.firstEntry();
+        LogSegment segment = entry.getValue();
+        return new Reader(segment, segment.positionOf(Math.max(fromOffset, segment.baseOffset)));
+    }
+
+    /**
+     * Sequential reader from the first event appended at or after this time
+     */
+    public Reader reader(Instant since) {
+        requireEnabled();
+        long millis = since.toEpochMilli();
+        for (LogSegment segment : segments.values()) {
+            if (!segment.isEmpty() && segment.lastAppendedAt() >= millis) {
+                return new Reader(segment, segment.positionAt(millis));
+            }
+        }
+        LogSegment last = segments.lastEntry().getValue();
+        return new Reader(last, last.size());
+    }
+
+    private void requireEnabled() {
+        if (!enabled || segments.isEmpty()) {
+            throw new IllegalStateException("Event log is disabled (analytics.event-log.enabled)");
+        }
+    }
+
+    synchronized void flush() throws IOException {
+        if (active != null) active.flush();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Event log flush failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Delete sealed segments whose newest event is older than the retention
+     */
+    void expire() throws IOException {
+        long cutoff = clock.instant().minus(Duration.ofHours(retentionHours)).toEpochMilli();
+        for (LogSegment segment : segments.values()) {
+            if (!segment.isSealed() || segment.lastAppendedAt() >= cutoff) break;
+            segments.remove(segment.baseOffset);
+            segment.delete();
+            log.info("Deleted event log segment {} (retention {} h)", segment.baseOffset, retentionHours);
+        }
+    }
+
+    private void expireQuietly() {
+        try {
+            expire();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Event log retention failed: {}", e.getMessage());
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        if (!enabled) return stats;
+        long bytes = 0;
+        for (LogSegment segment : segments.values()) {
+            bytes += segment.size();
+        }
+        LogSegment first = segments.isEmpty() ? null : segments.firstEntry().getValue();
+        stats.put("dir", String.valueOf(directory));
+        stats.put("segments", segments.size());
+        stats.put("firstOffset", firstOffset());
+        stats.put("nextOffset", nextOffset());
+        stats.put("bytes", bytes);
+        stats.put("oldestEvent", first == null || first.isEmpty() ? null : Instant.ofEpochMilli(first.firstAppendedAt()));
+        return stats;
+    }
+
+    /**
+     * Sequential reader over the log. next() returns null once it reaches the end of what has been
+     * appended; calling it again later continues with newer events (tailing). Not thread-safe.
+     */
+    public final class Reader {
+
+        private LogSegment segment;
+        private int position;
+
+        private Reader(LogSegment segment, int position) {
+            this.segment = segment;
+            this.position = position;
+        }
+
+        public Entry next() {
+            while (position >= segment.size()) {
+                Map.Entry<Long, LogSegment> following = segments.higherEntry(segment.baseOffset);
+                if (following == null) return null;
+                // a successor means this segment is sealed: re-read its final size before moving on
+                if (position < segment.size()) break;
+                segment = following.getValue();
+                position = 0;
+            }
+            int length = segment.checkedLength(position);
+            Entry entry = new Entry(segment.offsetAt(position), segment.appendedAtAt(position),
+                segment.payloadAt(position, length));
+            position += 8 + length;
+            return entry;
+        }
+
+        /**
+         * Offset the next call to next() returns
+         */
+        public long position() {
+            return position < segment.size() ? segment.offsetAt(position) : segment.nextOffset();
+        }
+    }
+
+    /**
+     * One logged event; the envelope is decoded on demand
+     */
+    public final class Entry {
+
+        private final long offset;
+        private final long appendedAt;
+        private final byte[] payload;
+
+        private Entry(long offset, long appendedAt, byte[] payload) {
+            this.offset = offset;
+            this.appendedAt = appendedAt;
+            this.payload = payload;
+        }
+
+        public long offset() {
+            return offset;
+        }
+
+        public Instant appendedAt() {
+            return Instant.ofEpochMilli(appendedAt);
+        }
+
+        public EventEnvelope event() {
+            try {
+                return reader.readValue(payload);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Undecodable event at offset " + offset, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package com.learnit.analytics.eventlog;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * One memory-mapped file of the event log, holding the records from baseOffset on.
+ *
+ * Record layout (big-endian): length (int, bytes after the crc field), crc32c (int, over those
+ * bytes), offset (long), appendedAt (long, epoch millis), payload. The active segment is mapped
+ * at its full capacity and written in place; a zero length marks the end of written data. A
+ * sparse index (offset, position, appendedAt every index-interval bytes) lives in memory and in
+ * a side file, so seeks scan at most one interval.
+ *
+ * Single writer; readers read up to {@link #size()}, which is published after the bytes.
+ */
+final class LogSegment {
+
+    private static final Logger log = LoggerFactory.getLogger(LogSegment.class);
+
+    static final int HEADER_BYTES = 24;
+    private static final int INDEX_ENTRY_BYTES = 20;
+
+    final long baseOffset;
+    private final Path logPath;
+    private final Path indexPath;
+    private final MappedByteBuffer buffer;
+    private final FileChannel channel;
+    private final FileChannel indexChannel;
+    private final int indexIntervalBytes;
+
+    // guarded by this
+    private final List<IndexEntry> index = new ArrayList<>();
+    private int bytesSinceIndex;
+
+    private volatile int size;
+    private volatile long nextOffset;
+    private volatile long firstAppendedAt;
+    private volatile long lastAppendedAt;
+    private volatile boolean sealed;
+
+    private LogSegment(Path dir, long baseOffset, FileChannel channel, MappedByteBuffer buffer,
+                       FileChannel indexChannel, int indexIntervalBytes) {
+        this.baseOffset = baseOffset;
+        this.logPath = dir.resolve(fileName(baseOffset, ".log"));
+        this.indexPath = dir.resolve(fileName(baseOffset, ".index"));
+        this.channel = channel;
+        this.buffer = buffer;
+        this.indexChannel = indexChannel;
+        this.indexIntervalBytes = indexIntervalBytes;
+        this.nextOffset = baseOffset;
+    }
+
+    static String fileName(long baseOffset, String suffix) {
+        return String.format("%020d%s", baseOffset, suffix);
+    }
+
+    /**
+     * New active segment of `capacity` bytes (mapped up front, sparse on disk)
+     */
+    static LogSegment create(Path dir, long baseOffset, int capacity, int indexIntervalBytes) throws IOException {
+        FileChannel channel = FileChannel.open(dir.resolve(fileName(baseOffset, ".log")),
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        FileChannel indexChannel = FileChannel.open(dir.resolve(fileName(baseOffset, ".index")),
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        return new LogSegment(dir, baseOffset, channel, buffer, indexChannel, indexIntervalBytes);
+    }
+
+    /**
+     * Existing segment, opened sealed (read-only). Records are validated from the last index entry
+     * that still points at a valid record; anything after the first invalid record (a write torn
+     * by a crash) is cut off.
+     */
+    static LogSegment open(Path dir, long baseOffset, int indexIntervalBytes) throws IOException {
+        FileChannel channel = FileChannel.open(dir.resolve(fileName(baseOffset, ".log")),
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long fileSize = channel.size();
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IOException("Segment " + baseOffset + " is larger than 2 GiB");
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        LogSegment segment = new LogSegment(dir, baseOffset, channel, buffer, null, indexIntervalBytes);
+        segment.sealed = true;
+        segment.recover(readIndex(dir.resolve(fileName(baseOffset, ".index"))));
+        return segment;
+    }
+
+    private static List<IndexEntry> readIndex(Path indexPath) throws IOException {
+        List<IndexEntry> entries = new ArrayList<>();
+        if (!Files.exists(indexPath)) return entries;
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(indexPath));
+        while (bytes.remaining() >= INDEX_ENTRY_BYTES) {
+            entries.add(new IndexEntry(bytes.getLong(), bytes.getInt(), bytes.getLong()));
+        }
+        return entries;
+    }
+
+    private void recover(List<IndexEntry> stored) throws IOException {
+        int keep = stored.size();
+        while (keep > 0) {
+            IndexEntry e = stored.get(keep - 1);
+            if (recordEnd(e.position, e.offset) > 0) break;
+            keep--;
+        }
+        index.addAll(stored.subList(0, keep));
+        int position = keep == 0 ? 0 : index.get(keep - 1).position;
+        long offset = keep == 0 ? baseOffset : index.get(keep - 1).offset;
+        if (keep > 0) lastAppendedAt = index.get(keep - 1).appendedAt;
+        boolean indexChanged = keep < stored.size();
+
+        // same indexing rule as append(); the record at the starting entry is indexed already
+        int end;
+        while ((end = recordEnd(position, offset)) > 0) {
+            long appendedAt = buffer.getLong(position + 16);
+            if (index.isEmpty() || bytesSinceIndex >= indexIntervalBytes) {
+                index.add(new IndexEntry(offset, position, appendedAt));
+                bytesSinceIndex = 0;
+                indexChanged = true;
+            }
+            bytesSinceIndex += end - position;
+            lastAppendedAt = appendedAt;
+            position = end;
+            offset++;
+        }
+        size = position;
+        nextOffset = offset;
+        if (!index.isEmpty()) firstAppendedAt = index.get(0).appendedAt;
+
+        if (position < channel.size()) {
+            if (position + 4 > buffer.limit() || buffer.getInt(position) != 0) {
+                log.warn("Event log segment {}: invalid record at position {}, truncating", baseOffset, position);
+            }
+            try {
+                channel.truncate(position);
+            } catch (IOException e) {
+                // a mapped file cannot be truncated on some platforms; reads stop at size() anyway
+                log.debug("Could not truncate {}: {}", logPath, e.getMessage());
+            }
+        }
+        if (indexChanged) {
+            writeIndex();
+        }
+    }
+
+    /**
+     * End position of a valid record with the expected offset at this position, or -1
+     */
+    private int recordEnd(int position, long expectedOffset) {
+        if (position < 0 || position + HEADER_BYTES > buffer.limit()) return -1;
+        int length = buffer.getInt(position);
+        if (length < HEADER_BYTES - 8 || (long) position + 8 + length > buffer.limit()) return -1;
+        if (buffer.getLong(position + 8) != expectedOffset) return -1;
+        if (crc(position, length) != buffer.getInt(position + 4)) return -1;
+        return position + 8 + length;
+    }
+
+    private int crc(int position, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(position + 8, length));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Append one record; false when it does not fit (roll to a new segment)
+     */
+    boolean append(long offset, long appendedAt, byte[] payload) throws IOException {
+        int position = size;
+        int length = 16 + payload.length;
+        if ((long) position + 8 + length > buffer.capacity()) return false;
+        buffer.putLong(position + 8, offset);
+        buffer.putLong(position + 16, appendedAt);
+        buffer.put(position + HEADER_BYTES, payload);
+        buffer.putInt(position + 4, crc(position, length));
+        buffer.putInt(position, length);
+        if (position == 0 || bytesSinceIndex >= indexIntervalBytes) {
+            addIndexEntry(new IndexEntry(offset, position, appendedAt));
+            bytesSinceIndex = 0;
+        }
+        bytesSinceIndex += 8 + length;
+        if (position == 0) firstAppendedAt = appendedAt;
+        lastAppendedAt = appendedAt;
+        nextOffset = offset + 1;
+        size = position + 8 + length;
+        return true;
+    }
+
+    private synchronized void addIndexEntry(IndexEntry entry) throws IOException {
+        index.add(entry);
+        ByteBuffer bytes = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+        bytes.putLong(entry.offset).putInt(entry.position).putLong(entry.appendedAt).flip();
+        while (bytes.hasRemaining()) {
+            indexChannel.write(bytes);
+        }
+    }
+
+    private synchronized void writeIndex() throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(index.size() * INDEX_ENTRY_BYTES);
+        for (IndexEntry e : index) {
+            bytes.putLong(e.offset).putInt(e.position).putLong(e.appendedAt);
+        }
+        bytes.flip();
+        try (FileChannel out = FileChannel.open(indexPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (bytes.hasRemaining()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Position of the record with this offset (or of the next one written), via the index
+     */
+    int positionOf(long offset) {
+        IndexEntry from;
+        synchronized (this) {
+            int lo = 0;
+            int hi = index.size() - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (index.get(mid).offset <= offset) lo = mid; else hi = mid - 1;
+            }
+            from = index.isEmpty() ? null : index.get(lo);
+        }
+        if (from == null || from.offset > offset) return 0;
+        int position = from.position;
+        int end = size;
+        for (long o = from.offset; o < offset && position < end; o++) {
+            position += 8 + buffer.getInt(position);
+        }
+        return position;
+    }
+
+    /**
+     * Position of the first record appended at or after this time (epoch millis)
+     */
+    int positionAt(long appendedAt) {
+        IndexEntry from;
+        synchronized (this) {
+            int lo = 0;
+            int hi = index.size() - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (index.get(mid).appendedAt < appendedAt) lo = mid; else hi = mid - 1;
+            }
+            from = index.isEmpty() ? null : index.get(lo);
+        }
+        int position = from == null ? 0 : from.position;
+        int end = size;
+        while (position < end && buffer.getLong(position + 16) < appendedAt) {
+            position += 8 + buffer.getInt(position);
+        }
+        return position;
+    }
+
+    /**
+     * Length field of the record at position, after checking its crc
+     */
+    int checkedLength(int position) {
+        int length = buffer.getInt(position);
+        if (length < HEADER_BYTES - 8 || crc(position, length) != buffer.getInt(position + 4)) {
+            throw new IllegalStateException("Corrupt event log record in segment " + baseOffset + " at position " + position);
+        }
+        return length;
+    }
+
+    long offsetAt(int position) {
+        return buffer.getLong(position + 8);
+    }
+
+    long appendedAtAt(int position) {
+        return buffer.getLong(position + 16);
+    }
+
+    byte[] payloadAt(int position, int length) {
+        byte[] payload = new byte[length - 16];
+        buffer.get(position + HEADER_BYTES, payload);
+        return payload;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long nextOffset() {
+        return nextOffset;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    long firstAppendedAt() {
+        return firstAppendedAt;
+    }
+
+    long lastAppendedAt() {
+        return lastAppendedAt;
+    }
+
+    boolean isSealed() {
+        return sealed;
+    }
+
+    /**
+     * Write mapped pages and index entries to disk
+     */
+    void flush() throws IOException {
+        if (sealed) return;
+        buffer.force();
+        indexChannel.force(false);
+    }
+
+    /**
+     * No more appends: flush and cut the preallocated tail. Readers keep reading up to size().
+     */
+    void seal() throws IOException {
+        if (sealed) return;
+        flush();
+        sealed = true;
+        indexChannel.close();
+        try {
+            channel.truncate(size);
+        } catch (IOException e) {
+            log.debug("Could not truncate {}: {}", logPath, e.getMessage());
+        }
+    }
+
+    void close() throws IOException {
+        seal();
+        channel.close();
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(logPath);
+        Files.deleteIfExists(indexPath);
+    }
+
+    private record IndexEntry(long offset, int position, long appendedAt) {}
+}
@@ -0,0 +1,299 @@
+package com.learnit.analytics.ingest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnit.analytics.dto.EventEnvelope;
+import com.learnit.analytics.service.AnalyticsService;
+import com.learnit.analytics.service.DeltaAccumulator;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Asynchronous HTTP ingest: validated events are put into a bounded ring buffer (IngestRing) and
+ * acknowledged right away, and a pool of workers drains it in batches of up to max-batch-events
+ * into the aggregation window (DeltaAccumulator) or, with aggregation disabled, one
+ * AnalyticsService.processBatch transaction per batch. Producers never wait on the database.
+ *
+ * Backpressure: a request whose events do not all fit is rejected whole (the controller answers
+ * 429 with Retry-After), so a slow database fills the queue instead of the request threads. While
+ * the database is unreachable, workers retry the same batch with backoff; a batch failing for any
+ * other reason is retried event by event and an event that still fails is dropped and counted.
+ *
+ * Durability: without a write-ahead directory (wal.dir), events still in the queue are lost if the
+ * process dies. With one, every event is appended (and with wal.fsync forced to disk) before it is
+ * acknowledged and replayed on the next start until its batch has committed (IngestWal).
+ *
+ * With analytics.ingest.async.enabled=false requests are applied before the response, as before.
+ */
+@Component
+public class IngestQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestQueue.class);
+
+    private static final long POLL_MS = 200;
+    private static final long MAX_BACKOFF_MS = 5000;
+
+    private final AnalyticsService analyticsService;
+    private final DeltaAccumulator deltaAccumulator;
+    private final ObjectMapper objectMapper;
+
+    @Value("${analytics.ingest.async.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${analytics.ingest.capacity:100000}")
+    private int capacity = 100_000;
+
+    @Value("${analytics.ingest.workers:2}")
+    private int workerCount = 2;
+
+    @Value("${analytics.ingest.max-batch-events:1000}")
+    private int maxBatchEvents = 1000;
+
+    @Value("${analytics.ingest.retry-after-seconds:1}")
+    private int retryAfterSeconds = 1;
+
+    @Value("${analytics.ingest.shutdown-timeout-ms:5000}")
+    private long shutdownTimeoutMs = 5000;
+
+    @Value("${analytics.ingest.wal.dir:}")
+    private String walDir = "";
+
+    @Value("${analytics.ingest.wal.segment-bytes:16777216}")
+    private int walSegmentBytes = 16 * 1024 * 1024;
+
+    @Value("${analytics.ingest.wal.fsync:true}")
+    private boolean walFsync = true;
+
+    private IngestRing<Queued> ring;
+    private IngestWal wal;
+    private ExecutorService workers;
+    private volatile boolean stopping;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder recovered = new LongAdder();
+    private final LongAdder committed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public IngestQueue(AnalyticsService analyticsService, DeltaAccumulator deltaAccumulator, ObjectMapper objectMapper) {
+        this.analyticsService = analyticsService;
+        this.deltaAccumulator = deltaAccumulator;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!enabled) return;
+        ring = new IngestRing<>(capacity);
+        List<IngestWal.Recovered> replay = List.of();
+        if (!walDir.isBlank()) {
+            wal = new IngestWal(Paths.get(walDir), walSegmentBytes, walFsync, objectMapper);
+            replay = wal.open();
+        }
+        AtomicInteger threads = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(Math.max(1, workerCount), r -> {
+            Thread t = new Thread(r, "ingest-worker-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 0; i < Math.max(1, workerCount); i++) {
+            workers.execute(this::drain);
+        }
+        if (!replay.isEmpty()) {
+            List<IngestWal.Recovered> events = replay;
+            Thread replayer = new Thread(() -> requeue(events), "ingest-wal-replay");
+            replayer.setDaemon(true);
+            replayer.start();
+        }
+    }
+
+    // recovered events can outnumber the queue: put them as the workers make room
+    private void requeue(List<IngestWal.Recovered> events) {
+        try {
+            for (IngestWal.Recovered r : events) {
+                ring.reserve(1, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                ring.putReserved(List.of(new Queued(r.event(), r.seq(), System.nanoTime())));
+                recovered.increment();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @PreDestroy
+    void stop() throws IOException {
+        if (!enabled) return;
+        stopping = true;
+        // workers finish what is queued, then stop once the queue stays empty
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(shutdownTimeoutMs, TimeUnit.MILLISECONDS)) {
+                workers.shutdownNow();
+                log.warn("Ingest queue stopped with {} events not applied{}", ring.size(),
+                    wal == null ? " (lost)" : " (replayed on the next start)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (wal != null) {
+            wal.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int retryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * Queue all of the events or none (only when enabled): false when they do not fit within
+     * waitMs (0 to not wait).
+     * Throws IllegalArgumentException for more events than the queue holds and UncheckedIOException
+     * when the write-ahead file cannot be written.
+     */
+    public boolean offer(List<EventEnvelope> events, long waitMs) throws InterruptedException {
+        if (events.isEmpty()) return true;
+        if (stopping || !ring.reserve(events.size(), waitMs, TimeUnit.MILLISECONDS)) {
+            rejected.add(events.size());
+            return false;
+        }
+        long seq = -1;
+        if (wal != null) {
+            try {
+                seq = wal.append(events);
+            } catch (IOException | RuntimeException e) {
+                ring.release(events.size());
+                throw e instanceof IOException io ? new UncheckedIOException("Ingest write-ahead append failed", io)
+                    : (RuntimeException) e;
+            }
+        }
+        long now = System.nanoTime();
+        List<Queued> queued = new ArrayList<>(events.size());
+        for (EventEnvelope event : events) {
+            queued.add(new Queued(event, seq < 0 ? -1 : seq++, now));
+        }
+        ring.putReserved(queued);
+        accepted.add(events.size());
+        return true;
+    }
+
+    private void drain() {
+        List<Queued> batch = new ArrayList<>(maxBatchEvents);
+        try {
+            while (true) {
+                batch.clear();
+                if (ring.drainTo(batch, maxBatchEvents, POLL_MS, TimeUnit.MILLISECONDS) == 0) {
+                    if (stopping) return;
+                    continue;
+                }
+                inFlight.addAndGet(batch.size());
+                deliver(new ArrayList<>(batch));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void deliver(List<Queued> batch) throws InterruptedException {
+        List<EventEnvelope> events = new ArrayList<>(batch.size());
+        for (Queued q : batch) events.add(q.event());
+        for (int attempt = 0; ; attempt++) {
+            try {
+                if (!deltaAccumulator.isEnabled()) {
+                    analyticsService.processBatch(events);
+                    committed(batch);
+                    return;
+                }
+                // committed on the flusher thread with the window holding it
+                while (true) {
+                    while (!deltaAccumulator.awaitCapacity(1000)) {
+                        log.debug("Aggregation backlog full, holding {} ingested events", batch.size());
+                    }
+                    try {
+                        deltaAccumulator.add(events, () -> committed(batch));
+                        return;
+                    } catch (IllegalStateException e) {
+                        // the backlog filled up between the check and the add
+                        retries.increment();
+                    }
+                }
+            } catch (RuntimeException e) {
+                if (DeltaAccumulator.isTransient(e)) {
+                    retries.increment();
+                    long backoff = Math.min(MAX_BACKOFF_MS, 100L << Math.min(attempt, 6));
+                    log.warn("Ingest batch of {} events failed, retrying in {} ms: {}", batch.size(), backoff, e.getMessage());
+                    Thread.sleep(backoff);
+                } else if (batch.size() > 1) {
+                    // find the events that cannot be applied
+                    for (Queued q : batch) deliver(List.of(q));
+                    return;
+                } else {
+                    Queued q = batch.get(0);
+                    log.error("Dropping ingested event {} ({}) that cannot be applied", q.event().getEventId(),
+                        q.event().getEventType(), e);
+                    failed.increment();
+                    finish(q);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void committed(List<Queued> batch) {
+        long now = System.nanoTime();
+        for (Queued q : batch) {
+            latency.record(now - q.enqueuedAt());
+            finish(q);
+        }
+        committed.add(batch.size());
+    }
+
+    private void finish(Queued q) {
+        inFlight.decrementAndGet();
+        if (wal != null && q.seq() >= 0) wal.complete(q.seq());
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        if (!enabled) return stats;
+        stats.put("capacity", ring.capacity());
+        stats.put("depth", ring.size());
+        // drained by a worker, not committed yet
+        stats.put("inFlight", inFlight.get());
+        stats.put("accepted", accepted.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("recovered", recovered.sum());
+        stats.put("committed", committed.sum());
+        stats.put("failed", failed.sum());
+        stats.put("retries", retries.sum());
+        // from acceptance to the commit of the batch holding the event
+        stats.put("latencyMs", latency.snapshot());
+        if (wal != null) stats.put("wal", wal.stats());
+        return stats;
+    }
+
+    private record Queued(EventEnvelope event, long seq, long enqueuedAt) {}
+}
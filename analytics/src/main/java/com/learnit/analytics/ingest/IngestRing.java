@@ -0,0 +1,118 @@
+package com.learnit.analytics.ingest;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded FIFO ring buffer between request threads and the ingest workers. Producers reserve
+ * room for a whole request before putting it, so a request is queued whole or rejected whole, and
+ * a producer that writes ahead (IngestWal) only does so once the events are sure to fit.
+ */
+final class IngestRing<T> {
+
+    private final Object[] slots;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    // guarded by lock
+    private int head;
+    private int size;
+    private int reserved;
+
+    IngestRing(int capacity) {
+        this.slots = new Object[Math.max(1, capacity)];
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reserve room for count items, waiting up to timeout for it; false if there is none by then.
+     * Throws IllegalArgumentException if count exceeds the capacity.
+     */
+    boolean reserve(int count, long timeout, TimeUnit unit) throws InterruptedException {
+        if (count > slots.length) {
+            throw new IllegalArgumentException(count + " events exceed the ingest queue capacity of " + slots.length);
+        }
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (slots.length - size - reserved < count) {
+                if (nanos <= 0) return false;
+                nanos = notFull.awaitNanos(nanos);
+            }
+            reserved += count;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Give back a reservation that will not be used
+     */
+    void release(int count) {
+        lock.lock();
+        try {
+            reserved -= count;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Append items into room reserved for them
+     */
+    void putReserved(List<? extends T> items) {
+        lock.lock();
+        try {
+            for (T item : items) {
+                slots[(head + size) % slots.length] = item;
+                size++;
+            }
+            reserved -= items.size();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Move up to max items into the list, waiting up to timeout for the first one; returns how many
+     */
+    @SuppressWarnings("unchecked")
+    int drainTo(List<? super T> into, int max, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                if (nanos <= 0) return 0;
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            int count = Math.min(max, size);
+            for (int i = 0; i < count; i++) {
+                into.add((T) slots[head]);
+                slots[head] = null;
+                head = (head + 1) % slots.length;
+            }
+            size -= count;
+            notFull.signalAll();
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.learnit.analytics.ingest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.learnit.analytics.dto.EventEnvelope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-ahead file of the events in the ingest queue, so that events acknowledged with 202 survive
+ * a crash before their batch commits. Every accepted event is appended (Smile-encoded, with a
+ * crc32c) and gets a sequence number; once its batch commits it is completed. Files roll at
+ * segment-bytes and a sealed file is deleted when all of its events are completed.
+ *
+ * On open, the events of the files left behind are returned for replay, oldest first, up to a torn
+ * tail. Some of them may have committed just before the crash; replaying them is harmless because
+ * every ingested event has an eventId and is deduplicated.
+ *
+ * Record layout (big-endian): length (int, of the payload), crc32c (int, of the payload), payload.
+ */
+final class IngestWal implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestWal.class);
+
+    private static final int HEADER_BYTES = 8;
+
+    /**
+     * An event read back from a previous run, with its sequence number
+     */
+    record Recovered(long seq, EventEnvelope event) {}
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final boolean fsync;
+    private final ObjectWriter writer;
+    private final ObjectReader reader;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final Object syncLock = new Object();
+    private FileChannel lockChannel;
+    // guarded by this
+    private Segment active;
+    private long nextSeq;
+    // guarded by syncLock: events up to this sequence number are on disk
+    private long syncedThrough = -1;
+
+    IngestWal(Path directory, int segmentBytes, boolean fsync, ObjectMapper objectMapper) {
+        this.directory = directory.toAbsolutePath();
+        this.segmentBytes = segmentBytes;
+        this.fsync = fsync;
+        ObjectMapper smile = objectMapper.copyWith(new SmileFactory());
+        this.writer = smile.writerFor(EventEnvelope.class);
+        this.reader = smile.readerFor(EventEnvelope.class);
+    }
+
+    /**
+     * Lock the directory and return the events of earlier runs; each must be completed once it is
+     * committed (or given up on) like any appended event
+     */
+    synchronized List<Recovered> open() throws IOException {
+        Files.createDirectories(directory);
+        lock();
+        List<Long> baseSeqs = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(p -> p.getFileName().toString())
+                .filter(name -> name.endsWith(".wal"))
+                .forEach(name -> baseSeqs.add(Long.parseLong(name.substring(0, name.length() - 4))));
+        }
+        baseSeqs.sort(null);
+        List<Recovered> recovered = new ArrayList<>();
+        for (Long baseSeq : baseSeqs) {
+            Segment segment = new Segment(baseSeq, directory.resolve(baseSeq + ".wal"));
+            int count = read(segment.path, baseSeq, recovered);
+            nextSeq = Math.max(nextSeq, baseSeq + count);
+            segment.pending = count;
+            segment.endSeq = baseSeq + count;
+            segment.bytes = Files.size(segment.path);
+            segment.sealed = true;
+            if (count == 0) {
+                Files.deleteIfExists(segment.path);
+            } else {
+                segments.put(baseSeq, segment);
+            }
+        }
+        active = create(nextSeq);
+        if (!recovered.isEmpty()) {
+            log.info("Ingest write-ahead files at {} hold {} uncommitted events, replaying", directory, recovered.size());
+        }
+        return recovered;
+    }
+
+    // one writer per directory: a second process would replay and delete the first one's files
+    private void lock() throws IOException {
+        lockChannel = FileChannel.open(directory.resolve(".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            throw new IllegalStateException("Ingest write-ahead directory " + directory + " is in use by another instance");
+        }
+    }
+
+    private int read(Path path, long baseSeq, List<Recovered> into) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        int count = 0;
+        while (buffer.remaining() >= HEADER_BYTES) {
+            int length = buffer.getInt();
+            int crc = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) break;
+            CRC32C checksum = new CRC32C();
+            checksum.update(buffer.array(), buffer.position(), length);
+            if ((int) checksum.getValue() != crc) break;
+            EventEnvelope event = reader.readValue(buffer.array(), buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            into.add(new Recovered(baseSeq + count, event));
+            count++;
+        }
+        if (buffer.hasRemaining()) {
+            log.warn("Ingest write-ahead file {} has a torn tail of {} bytes after {} events", path, buffer.remaining(), count);
+        }
+        return count;
+    }
+
+    private Segment create(long baseSeq) throws IOException {
+        Segment segment = new Segment(baseSeq, directory.resolve(baseSeq + ".wal"));
+        segment.endSeq = baseSeq;
+        segment.channel = FileChannel.open(segment.path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segments.put(baseSeq, segment);
+        return segment;
+    }
+
+    /**
+     * Append events and, with fsync, wait until they are on disk. Returns the sequence number of
+     * the first one; the others follow in order.
+     */
+    long append(List<EventEnvelope> events) throws IOException {
+        long first;
+        long last;
+        synchronized (this) {
+            if (active == null) throw new IOException("Ingest write-ahead file is closed");
+            List<ByteBuffer> records = new ArrayList<>(events.size());
+            int bytes = 0;
+            for (EventEnvelope event : events) {
+                byte[] payload = writer.writeValueAsBytes(event);
+                CRC32C checksum = new CRC32C();
+                checksum.update(payload);
+                ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+                record.putInt(payload.length).putInt((int) checksum.getValue()).put(payload).flip();
+                records.add(record);
+                bytes += record.remaining();
+            }
+            if (active.bytes > 0 && active.bytes + bytes > segmentBytes) {
+                roll();
+            }
+            try {
+                for (ByteBuffer record : records) {
+                    while (record.hasRemaining()) active.channel.write(record);
+                }
+            } catch (IOException e) {
+                // cut off the partial records, or replay would stop at them
+                active.channel.truncate(active.bytes);
+                throw e;
+            }
+            active.bytes += bytes;
+            active.pending += events.size();
+            first = nextSeq;
+            nextSeq += events.size();
+            active.endSeq = nextSeq;
+            last = nextSeq - 1;
+        }
+        if (fsync) sync(last);
+        return first;
+    }
+
+    // group commit: one force covers every append written before it
+    private void sync(long seq) throws IOException {
+        synchronized (syncLock) {
+            if (syncedThrough >= seq) return;
+            long written;
+            FileChannel channel;
+            synchronized (this) {
+                if (active == null) throw new IOException("Ingest write-ahead file is closed");
+                written = nextSeq - 1;
+                channel = active.channel;
+            }
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // rolled in the meantime, which forced the file first
+            }
+            syncedThrough = written;
+        }
+    }
+
+    // caller holds this
+    private void roll() throws IOException {
+        Segment sealed = active;
+        // appends of the sealed file may still be waiting for a sync: cover them here
+        sealed.channel.force(false);
+        sealed.channel.close();
+        sealed.channel = null;
+        sealed.sealed = true;
+        active = create(nextSeq);
+        if (sealed.pending == 0) delete(sealed);
+    }
+
+    /**
+     * The event with this sequence number is committed (or dropped) and need not be replayed
+     */
+    synchronized void complete(long seq) {
+        Map.Entry<Long, Segment> entry = segments.floorEntry(seq);
+        if (entry == null || seq >= entry.getValue().endSeq) return;
+        Segment segment = entry.getValue();
+        if (--segment.pending == 0 && segment.sealed) delete(segment);
+    }
+
+    private void delete(Segment segment) {
+        segments.remove(segment.baseSeq);
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            log.warn("Cannot delete ingest write-ahead file {}: {}", segment.path, e.getMessage());
+        }
+    }
+
+    synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long pending = 0;
+        long bytes = 0;
+        for (Segment segment : segments.values()) {
+            pending += segment.pending;
+            bytes += segment.bytes;
+        }
+        stats.put("dir", directory.toString());
+        stats.put("fsync", fsync);
+        stats.put("files", segments.size());
+        stats.put("bytes", bytes);
+        stats.put("uncommittedEvents", pending);
+        return stats;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (active != null && active.channel != null) {
+            active.channel.force(false);
+            active.channel.close();
+            if (active.pending == 0) delete(active);
+        }
+        active = null;
+        if (lockChannel != null) {
+            lockChannel.close();
+        }
+    }
+
+    private static final class Segment {
+
+        private final long baseSeq;
+        private final Path path;
+        private FileChannel channel;
+        private long endSeq;
+        private long bytes;
+        private int pending;
+        private boolean sealed;
+
+        private Segment(long baseSeq, Path path) {
+            this.baseSeq = baseSeq;
+            this.path = path;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.learnit.analytics.ingest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.learnit.analytics.dto.EventEnvelope;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads a request body of newline-delimited events line by line and hands them on in chunks of
+ * chunk-events, so the body is never held in memory whole. Lines that are not a valid event are
+ * skipped and reported; blank lines are ignored.
+ */
+@Component
+public class NdjsonStream {
+
+    private static final int MAX_REPORTED_ERRORS = 10;
+
+    /**
+     * Takes one chunk of events; false stops the stream (the chunk was not taken)
+     */
+    public interface ChunkSink {
+        boolean accept(List<EventEnvelope> events) throws InterruptedException;
+    }
+
+    private final ObjectReader reader;
+    private final Validator validator;
+
+    @Value("${analytics.ingest.stream.chunk-events:500}")
+    private int chunkEvents = 500;
+
+    public NdjsonStream(ObjectMapper objectMapper, Validator validator) {
+        this.reader = objectMapper.readerFor(EventEnvelope.class);
+        this.validator = validator;
+    }
+
+    /**
+     * Read the body until it ends or the sink refuses a chunk. The result counts the lines read,
+     * the events taken and the lines skipped; when the sink refused, resumeAtLine is the first line
+     * (1-based) that was not taken, so a client can send the rest again from there.
+     */
+    public Map<String, Object> read(InputStream body, ChunkSink sink) throws IOException, InterruptedException {
+        BufferedReader lines = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8), 1 << 16);
+        List<EventEnvelope> chunk = new ArrayList<>(chunkEvents);
+        List<String> errors = new ArrayList<>();
+        long lineNumber = 0;
+        long chunkStart = 1;
+        long accepted = 0;
+        long invalid = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) continue;
+            String error;
+            try {
+                EventEnvelope event = reader.readValue(line);
+                Set<ConstraintViolation<EventEnvelope>> violations = validator.validate(event);
+                error = violations.isEmpty() ? null : violations.iterator().next().getMessage();
+                if (error == null) chunk.add(event);
+            } catch (JsonProcessingException e) {
+                error = e.getOriginalMessage();
+            }
+            if (error != null) {
+                invalid++;
+                if (errors.size() < MAX_REPORTED_ERRORS) errors.add("line " + lineNumber + ": " + error);
+            }
+            if (chunk.size() >= chunkEvents) {
+                if (!sink.accept(chunk)) {
+                    return result(lineNumber, accepted, invalid, errors, chunkStart);
+                }
+                accepted += chunk.size();
+                chunk = new ArrayList<>(chunkEvents);
+                chunkStart = lineNumber + 1;
+            }
+        }
+        if (!chunk.isEmpty()) {
+            if (!sink.accept(chunk)) {
+                return result(lineNumber, accepted, invalid, errors, chunkStart);
+            }
+            accepted += chunk.size();
+        }
+        return result(lineNumber, accepted, invalid, errors, null);
+    }
+
+    private static Map<String, Object> result(long lines, long accepted, long invalid, List<String> errors, Long resumeAtLine) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("lines", lines);
+        result.put("accepted", accepted);
+        result.put("invalid", invalid);
+        result.put("errors", errors);
+        if (resumeAtLine != null) result.put("resumeAtLine", resumeAtLine);
+        return result;
+    }
+}
@@ -0,0 +1,82 @@
+package com.learnit.analytics.kafka;
+
+import com.learnit.analytics.dto.EventEnvelope;
+import com.learnit.analytics.service.AnalyticsService;
+import com.learnit.analytics.service.DeltaAccumulator;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Consumes a whole poll batch per call. By default the batch goes into the aggregation window
+ * (DeltaAccumulator) and its offsets are acknowledged once the window holding it has committed;
+ * with analytics.aggregation.enabled=false it is applied in one transaction
+ * (AnalyticsService.processBatch) and acknowledged on return. Either way a redelivered batch
+ * is harmless: already processed events are skipped by event id.
+ */
+@Component
+@ConditionalOnExpression("${analytics.kafka.enabled:false} and '${analytics.kafka.listener-mode:batch}' == 'batch'")
+public class AnalyticsBatchKafkaConsumer {
+
+    private static final Logger log = LoggerFactory.getLogger(AnalyticsBatchKafkaConsumer.class);
+
+    private final AnalyticsService analyticsService;
+    private final EventDecoder eventDecoder;
+    private final DeltaAccumulator deltaAccumulator;
+
+    public AnalyticsBatchKafkaConsumer(AnalyticsService analyticsService, EventDecoder eventDecoder,
+                                       DeltaAccumulator deltaAccumulator) {
+        this.analyticsService = analyticsService;
+        this.eventDecoder = eventDecoder;
+        this.deltaAccumulator = deltaAccumulator;
+    }
+
+    @KafkaListener(topics = {"${analytics.kafka.topic.discussion:discussion.events}"},
+                   groupId = "${analytics.kafka.group-id:analytics-service}",
+                   concurrency = "${analytics.kafka.concurrency:1}",
+                   batch = "true")
+    public void consumeBatch(List<ConsumerRecord<String, byte[]>> records, Acknowledgment ack) throws InterruptedException {
+        List<EventEnvelope> events = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, byte[]> record : records) {
+            EventEnvelope event;
+            try {
+                event = eventDecoder.decode(record);
+            } catch (Exception e) {
+                // An undecodable record can never succeed; skip it rather than block the partition
+                log.error("Skipping undecodable Kafka message at {}-{}@{} ({})", record.topic(),
+                    record.partition(), record.offset(), eventDecoder.contentType(record), e);
+                continue;
+            }
+            // likewise an event whose payload cannot be applied, instead of failing the whole poll
+            String invalid = event == null ? null : AnalyticsService.rejectReason(event);
+            if (invalid != null) {
+                log.error("Skipping Kafka message at {}-{}@{}: event {} ({}) {}", record.topic(), record.partition(),
+                    record.offset(), event.getEventId(), event.getEventType(), invalid);
+                continue;
+            }
+            events.add(event);
+        }
+
+        if (deltaAccumulator.isEnabled()) {
+            // backpressure: hold the consumer thread while flushes are failing
+            while (!deltaAccumulator.awaitCapacity(1000)) {
+                log.warn("Aggregation backlog full, pausing consumption");
+            }
+            // acknowledged from the flusher thread; the container commits it on its next poll
+            deltaAccumulator.add(events, ack::acknowledge);
+            log.debug("Queued batch of {} records for aggregation", records.size());
+            return;
+        }
+
+        int applied = analyticsService.processBatch(events);
+        ack.acknowledge();
+        log.debug("Processed batch of {} records ({} new events)", records.size(), applied);
+    }
+}
@@ -1,38 +1,44 @@
 package com.learnit.analytics.kafka;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.learnit.analytics.dto.EventEnvelope;
 import com.learnit.analytics.service.AnalyticsService;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Component;
 
+/**
+ * One record per call, one transaction per event.
+ * Used when analytics.kafka.listener-mode=record; the default is AnalyticsBatchKafkaConsumer.
+ */
 @Component
-@ConditionalOnProperty(name = "analytics.kafka.enabled", havingValue = "true")
+@ConditionalOnExpression("${analytics.kafka.enabled:false} and '${analytics.kafka.listener-mode:batch}' == 'record'")
 public class AnalyticsKafkaConsumer {
 
     private static final Logger log = LoggerFactory.getLogger(AnalyticsKafkaConsumer.class);
 
     private final AnalyticsService analyticsService;
-    private final ObjectMapper objectMapper;
+    private final EventDecoder eventDecoder;
 
-    public AnalyticsKafkaConsumer(AnalyticsService analyticsService, ObjectMapper objectMapper) {
+    public AnalyticsKafkaConsumer(AnalyticsService analyticsService, EventDecoder eventDecoder) {
         this.analyticsService = analyticsService;
-        this.objectMapper = objectMapper;
+        this.eventDecoder = eventDecoder;
     }
 
     @KafkaListener(topics = {"${analytics.kafka.topic.discussion:discussion.events}"}, groupId = "${analytics.kafka.group-id:analytics-service}")
-    public void consumeEvent(String message) {
+    public void consumeEvent(ConsumerRecord<String, byte[]> record, Acknowledgment ack) {
         try {
-            log.info("Received Kafka message: {}", message);
-            EventEnvelope envelope = objectMapper.readValue(message, EventEnvelope.class);
+            EventEnvelope envelope = eventDecoder.decode(record);
             analyticsService.processEvent(envelope);
-            log.info("Successfully processed event: {}", envelope.getEventId());
+            log.debug("Processed event {} at offset {}", envelope.getEventId(), record.offset());
         } catch (Exception e) {
-            log.error("Error processing Kafka message: {}", message, e);
+            log.error("Error processing Kafka message at offset {} ({})",
+                record.offset(), eventDecoder.contentType(record), e);
             // In production: send to dead-letter queue or retry topic
         }
+        ack.acknowledge();
     }
 }
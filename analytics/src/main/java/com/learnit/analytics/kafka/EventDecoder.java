@@ -0,0 +1,54 @@
+package com.learnit.analytics.kafka;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.learnit.analytics.dto.EventEnvelope;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes event records by their content-type header; records without one are JSON
+ */
+@Component
+public class EventDecoder {
+
+    static final String CONTENT_TYPE_HEADER = "content-type";
+    static final String JSON = "application/json";
+    static final String SMILE = "application/x-jackson-smile";
+    static final String CBOR = "application/cbor";
+
+    private final ObjectReader jsonReader;
+    private final ObjectReader smileReader;
+    private final ObjectReader cborReader;
+
+    public EventDecoder(ObjectMapper objectMapper) {
+        this.jsonReader = objectMapper.readerFor(EventEnvelope.class);
+        this.smileReader = objectMapper.copyWith(new SmileFactory()).readerFor(EventEnvelope.class);
+        this.cborReader = objectMapper.copyWith(new CBORFactory()).readerFor(EventEnvelope.class);
+    }
+
+    public EventEnvelope decode(ConsumerRecord<String, byte[]> record) throws IOException {
+        return decode(contentType(record), record.value());
+    }
+
+    EventEnvelope decode(String contentType, byte[] value) throws IOException {
+        if (SMILE.equals(contentType)) {
+            return smileReader.readValue(value);
+        }
+        if (CBOR.equals(contentType)) {
+            return cborReader.readValue(value);
+        }
+        return jsonReader.readValue(value);
+    }
+
+    public String contentType(ConsumerRecord<String, byte[]> record) {
+        Header header = record.headers().lastHeader(CONTENT_TYPE_HEADER);
+        return header != null ? new String(header.value(), StandardCharsets.UTF_8) : JSON;
+    }
+}
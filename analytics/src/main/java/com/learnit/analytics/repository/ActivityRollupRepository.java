@@ -0,0 +1,179 @@
+package com.learnit.analytics.repository;
+
+import com.learnit.analytics.dto.ActivityCount;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Set-based reads and writes of the activity rollup tables (minute, hour and day buckets of
+ * activity per thread and event type). Like AggregateBatchRepository, PostgreSQL gets
+ * INSERT ... ON CONFLICT, which stays atomic when two writers create the same new bucket at once
+ * (its MERGE raises a unique violation instead); other databases (H2 in tests) get a standard SQL
+ * MERGE.
+ */
+@Repository
+public class ActivityRollupRepository {
+
+    public enum Resolution {
+        MINUTE("activity_rollup_minute", Duration.ofMinutes(1)),
+        HOUR("activity_rollup_hour", Duration.ofHours(1)),
+        DAY("activity_rollup_day", Duration.ofDays(1));
+
+        private final String table;
+        private final Duration size;
+
+        Resolution(String table, Duration size) {
+            this.table = table;
+            this.size = size;
+        }
+
+        public Duration size() {
+            return size;
+        }
+
+        /**
+         * Start of the bucket holding this instant (UTC-aligned)
+         */
+        public Instant floor(Instant at) {
+            long seconds = size.getSeconds();
+            return Instant.ofEpochSecond(Math.floorDiv(at.getEpochSecond(), seconds) * seconds);
+        }
+    }
+
+    // 5 parameters per row keeps a chunk well under the JDBC parameter limit
+    static final int ROWS_PER_STATEMENT = 1000;
+
+    private static final String COUNT_ROW = "(CAST(? AS BIGINT), CAST(? AS VARCHAR(255)), " +
+        "CAST(? AS TIMESTAMP WITH TIME ZONE), CAST(? AS BIGINT), CAST(? AS BIGINT))";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AggregateBatchRepository aggregateBatchRepository;
+
+    public ActivityRollupRepository(JdbcTemplate jdbcTemplate, AggregateBatchRepository aggregateBatchRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.aggregateBatchRepository = aggregateBatchRepository;
+    }
+
+    /**
+     * Add counts to their minute buckets. A missing courseId is taken from the thread's aggregate,
+     * so call after the aggregates of the same events are written. Callers pass counts ordered by
+     * (threadId, eventType, bucketStart) so concurrent writers lock rows in the same order.
+     */
+    public int addMinuteCounts(List<ActivityCount> counts) {
+        boolean upsert = aggregateBatchRepository.isPostgres();
+        int applied = 0;
+        for (int from = 0; from < counts.size(); from += ROWS_PER_STATEMENT) {
+            List<ActivityCount> chunk = counts.subList(from, Math.min(from + ROWS_PER_STATEMENT, counts.size()));
+            List<Object> params = new ArrayList<>(chunk.size() * 5);
+            for (ActivityCount c : chunk) {
+                params.add(c.getThreadId());
+                params.add(c.getEventType());
+                params.add(Timestamp.from(c.getBucketStart()));
+                params.add(c.getCourseId());
+                params.add(c.getCount());
+            }
+            applied += jdbcTemplate.update(upsert ? addUpsertSql(chunk.size()) : addSql(chunk.size()), params.toArray());
+        }
+        return applied;
+    }
+
+    /**
+     * Recompute the target bucket starting at bucketStart from the source buckets inside it.
+     * Replacing rather than adding makes this idempotent, so a bucket can be compacted again
+     * whenever late events reach it; the source buckets must all still be retained.
+     */
+    public int compact(Resolution source, Resolution target, Instant bucketStart) {
+        Timestamp start = Timestamp.from(bucketStart);
+        Timestamp end = Timestamp.from(bucketStart.plus(target.size));
+        if (aggregateBatchRepository.isPostgres()) {
+            return jdbcTemplate.update("INSERT INTO " + target.table + " AS r " +
+                "(thread_id, event_type, bucket_start, course_id, event_count) " +
+                "SELECT s.thread_id, s.event_type, CAST(? AS TIMESTAMP WITH TIME ZONE), " +
+                "MAX(COALESCE(s.course_id, a.course_id)), SUM(s.event_count) FROM " + source.table + " s " +
+                "LEFT JOIN thread_aggregate a ON a.thread_id = s.thread_id " +
+                "WHERE s.bucket_start >= ? AND s.bucket_start < ? GROUP BY s.thread_id, s.event_type " +
+                "ON CONFLICT (thread_id, event_type, bucket_start) DO UPDATE SET " +
+                "course_id = COALESCE(EXCLUDED.course_id, r.course_id), event_count = EXCLUDED.event_count",
+                start, start, end);
+        }
+        return jdbcTemplate.update("MERGE INTO " + target.table + " r USING (" +
+            "SELECT s.thread_id, s.event_type, MAX(COALESCE(s.course_id, a.course_id)) AS course_id, " +
+            "SUM(s.event_count) AS event_count FROM " + source.table + " s " +
+            "LEFT JOIN thread_aggregate a ON a.thread_id = s.thread_id " +
+            "WHERE s.bucket_start >= ? AND s.bucket_start < ? GROUP BY s.thread_id, s.event_type) AS d " +
+            "ON r.thread_id = d.thread_id AND r.event_type = d.event_type " +
+            "AND r.bucket_start = CAST(? AS TIMESTAMP WITH TIME ZONE) " +
+            "WHEN MATCHED THEN UPDATE SET course_id = COALESCE(d.course_id, r.course_id), event_count = d.event_count " +
+            "WHEN NOT MATCHED THEN INSERT (thread_id, event_type, bucket_start, course_id, event_count) " +
+            "VALUES (d.thread_id, d.event_type, CAST(? AS TIMESTAMP WITH TIME ZONE), d.course_id, d.event_count)",
+            start, end, start, start);
+    }
+
+    /**
+     * Drop buckets starting before the given instant
+     */
+    public int deleteBefore(Resolution resolution, Instant before) {
+        return jdbcTemplate.update("DELETE FROM " + resolution.table + " WHERE bucket_start < ?",
+            Timestamp.from(before));
+    }
+
+    /**
+     * Counts per (bucket, event type) of a course in [from, to), summed over its threads
+     */
+    public List<ActivityCount> findCourseCounts(Resolution resolution, Long courseId, Instant from, Instant to) {
+        return findCounts(resolution, "course_id", courseId, from, to);
+    }
+
+    /**
+     * Counts per (bucket, event type) of one thread in [from, to)
+     */
+    public List<ActivityCount> findThreadCounts(Resolution resolution, Long threadId, Instant from, Instant to) {
+        return findCounts(resolution, "thread_id", threadId, from, to);
+    }
+
+    private List<ActivityCount> findCounts(Resolution resolution, String column, Long id, Instant from, Instant to) {
+        return jdbcTemplate.query("SELECT bucket_start, event_type, SUM(event_count) FROM " + resolution.table +
+                " WHERE " + column + " = ? AND bucket_start >= ? AND bucket_start < ? GROUP BY bucket_start, event_type",
+            (rs, i) -> new ActivityCount(null, null, rs.getString(2), rs.getTimestamp(1).toInstant(), rs.getLong(3)),
+            id, Timestamp.from(from), Timestamp.from(to));
+    }
+
+    static String addSql(int rowCount) {
+        StringBuilder sql = new StringBuilder("MERGE INTO activity_rollup_minute r USING (")
+            .append("SELECT v.thread_id, v.event_type, v.bucket_start, COALESCE(v.course_id, a.course_id) AS course_id, ")
+            .append("v.event_count FROM (VALUES ");
+        for (int i = 0; i < rowCount; i++) {
+            sql.append(i == 0 ? "" : ", ").append(COUNT_ROW);
+        }
+        sql.append(") AS v (thread_id, event_type, bucket_start, course_id, event_count) ")
+            .append("LEFT JOIN thread_aggregate a ON a.thread_id = v.thread_id) AS d ")
+            .append("ON r.thread_id = d.thread_id AND r.event_type = d.event_type AND r.bucket_start = d.bucket_start ")
+            .append("WHEN MATCHED THEN UPDATE SET course_id = COALESCE(r.course_id, d.course_id), ")
+            .append("event_count = r.event_count + d.event_count ")
+            .append("WHEN NOT MATCHED THEN INSERT (thread_id, event_type, bucket_start, course_id, event_count) ")
+            .append("VALUES (d.thread_id, d.event_type, d.bucket_start, d.course_id, d.event_count)");
+        return sql.toString();
+    }
+
+    static String addUpsertSql(int rowCount) {
+        StringBuilder sql = new StringBuilder("INSERT INTO activity_rollup_minute AS r ")
+            .append("(thread_id, event_type, bucket_start, course_id, event_count) ")
+            .append("SELECT v.thread_id, v.event_type, v.bucket_start, COALESCE(v.course_id, a.course_id), ")
+            .append("v.event_count FROM (VALUES ");
+        for (int i = 0; i < rowCount; i++) {
+            sql.append(i == 0 ? "" : ", ").append(COUNT_ROW);
+        }
+        sql.append(") AS v (thread_id, event_type, bucket_start, course_id, event_count) ")
+            .append("LEFT JOIN thread_aggregate a ON a.thread_id = v.thread_id WHERE true ")
+            .append("ON CONFLICT (thread_id, event_type, bucket_start) DO UPDATE SET ")
+            .append("course_id = COALESCE(r.course_id, EXCLUDED.course_id), ")
+            .append("event_count = r.event_count + EXCLUDED.event_count");
+        return sql.toString();
+    }
+}
@@ -0,0 +1,163 @@
+package com.learnit.analytics.repository;
+
+import com.learnit.analytics.dto.ThreadAggregateDelta;
+import com.learnit.analytics.service.EngagementScorer;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Set-based writes for batch event processing.
+ * A whole batch of threads is upserted in one statement per chunk instead of findById + save
+ * per event. PostgreSQL gets INSERT ... ON CONFLICT, which stays atomic when two batches create
+ * the same new aggregate at once (its MERGE raises a unique violation instead); other databases
+ * (H2 in tests) get a standard SQL MERGE.
+ */
+@Repository
+public class AggregateBatchRepository {
+
+    static final String TABLE = "thread_aggregate";
+
+    // 6 parameters per row keeps a chunk well under the JDBC parameter limit
+    static final int ROWS_PER_STATEMENT = 1000;
+
+    private static final String DELTA_ROW = "(CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS INTEGER), " +
+        "CAST(? AS INTEGER), CAST(? AS INTEGER), CAST(? AS INTEGER))";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EngagementScorer scorer;
+    private volatile Boolean postgres;
+
+    public AggregateBatchRepository(JdbcTemplate jdbcTemplate, EngagementScorer scorer) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.scorer = scorer;
+    }
+
+    /**
+     * Add each delta to its thread's aggregate, creating missing aggregates.
+     * Callers pass deltas ordered by threadId so concurrent batches lock rows in the same order.
+     */
+    public int applyDeltas(Collection<ThreadAggregateDelta> deltas, Instant now) {
+        return applyDeltas(TABLE, deltas, now);
+    }
+
+    /**
+     * Same, into another table with thread_aggregate's columns (a backfill's shadow table)
+     */
+    public int applyDeltas(String table, Collection<ThreadAggregateDelta> deltas, Instant now) {
+        List<ThreadAggregateDelta> rows = new ArrayList<>(deltas);
+        Timestamp updatedAt = Timestamp.from(now);
+        boolean upsert = isPostgres();
+        int applied = 0;
+        for (int from = 0; from < rows.size(); from += ROWS_PER_STATEMENT) {
+            List<ThreadAggregateDelta> chunk = rows.subList(from, Math.min(from + ROWS_PER_STATEMENT, rows.size()));
+            List<Object> params = new ArrayList<>(chunk.size() * 6 + 8);
+            for (ThreadAggregateDelta d : chunk) {
+                params.add(d.getThreadId());
+                params.add(d.getCourseId());
+                params.add(d.getViews());
+                params.add(d.getComments());
+                params.add(d.getUpvotes());
+                params.add(d.getDownvotes());
+            }
+            addWeights(params);
+            params.add(updatedAt);
+            addWeights(params);
+            if (upsert) {
+                applied += jdbcTemplate.update(upsertSql(table, chunk.size()), params.toArray());
+            } else {
+                params.add(updatedAt);
+                applied += jdbcTemplate.update(mergeSql(table, chunk.size()), params.toArray());
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Recompute engagement_score with the current weights for thread ids in (afterId, toId]
+     */
+    public int rescore(long afterId, long toId) {
+        List<Object> params = new ArrayList<>(5);
+        addWeights(params);
+        params.add(afterId);
+        params.add(toId);
+        return jdbcTemplate.update("UPDATE thread_aggregate SET engagement_score = " +
+            "COALESCE(views, 0) * ? + COALESCE(comments, 0) * ? + (COALESCE(upvotes, 0) - COALESCE(downvotes, 0)) * ? " +
+            "WHERE thread_id > ? AND thread_id <= ?", params.toArray());
+    }
+
+    /**
+     * Lowest and highest thread id, or null when there are no aggregates
+     */
+    public long[] threadIdRange() {
+        return jdbcTemplate.query("SELECT MIN(thread_id), MAX(thread_id) FROM thread_aggregate", rs -> {
+            rs.next();
+            long max = rs.getLong(2);
+            return rs.wasNull() ? null : new long[]{rs.getLong(1), max};
+        });
+    }
+
+    /**
+     * Whether upserts must use INSERT ... ON CONFLICT (also used by ActivityRollupRepository)
+     */
+    boolean isPostgres() {
+        if (postgres == null) {
+            postgres = "PostgreSQL".equals(jdbcTemplate.execute(
+                (ConnectionCallback<String>) c -> c.getMetaData().getDatabaseProductName()));
+        }
+        return postgres;
+    }
+
+    private void addWeights(List<Object> params) {
+        params.add(scorer.getViewsWeight());
+        params.add(scorer.getCommentsWeight());
+        params.add(scorer.getVoteWeight());
+    }
+
+    static String mergeSql(String table, int rowCount) {
+        StringBuilder sql = new StringBuilder("MERGE INTO ").append(table).append(" a USING (VALUES ");
+        for (int i = 0; i < rowCount; i++) {
+            sql.append(i == 0 ? "" : ", ").append(DELTA_ROW);
+        }
+        sql.append(") AS d (thread_id, course_id, views, comments, upvotes, downvotes) ON a.thread_id = d.thread_id ")
+            .append("WHEN MATCHED THEN UPDATE SET course_id = COALESCE(a.course_id, d.course_id), ")
+            .append("views = COALESCE(a.views, 0) + d.views, comments = COALESCE(a.comments, 0) + d.comments, ")
+            .append("upvotes = COALESCE(a.upvotes, 0) + d.upvotes, downvotes = COALESCE(a.downvotes, 0) + d.downvotes, ")
+            .append("engagement_score = (COALESCE(a.views, 0) + d.views) * CAST(? AS BIGINT) ")
+            .append("+ (COALESCE(a.comments, 0) + d.comments) * CAST(? AS BIGINT) ")
+            .append("+ ((COALESCE(a.upvotes, 0) + d.upvotes) - (COALESCE(a.downvotes, 0) + d.downvotes)) * CAST(? AS BIGINT), ")
+            .append("last_updated = ? ")
+            .append("WHEN NOT MATCHED THEN INSERT ")
+            .append("(thread_id, course_id, views, comments, upvotes, downvotes, engagement_score, last_updated) ")
+            .append("VALUES (d.thread_id, d.course_id, d.views, d.comments, d.upvotes, d.downvotes, ")
+            .append("d.views * CAST(? AS BIGINT) + d.comments * CAST(? AS BIGINT) + (d.upvotes - d.downvotes) * CAST(? AS BIGINT), ?)");
+        return sql.toString();
+    }
+
+    static String upsertSql(String table, int rowCount) {
+        // rows first, as in mergeSql, so both statements take their parameters in the same order
+        StringBuilder sql = new StringBuilder("WITH d (thread_id, course_id, views, comments, upvotes, downvotes) AS (VALUES ");
+        for (int i = 0; i < rowCount; i++) {
+            sql.append(i == 0 ? "" : ", ").append(DELTA_ROW);
+        }
+        sql.append(") INSERT INTO ").append(table).append(" AS a ")
+            .append("(thread_id, course_id, views, comments, upvotes, downvotes, engagement_score, last_updated) ")
+            .append("SELECT d.thread_id, d.course_id, d.views, d.comments, d.upvotes, d.downvotes, ")
+            .append("d.views * CAST(? AS BIGINT) + d.comments * CAST(? AS BIGINT) + (d.upvotes - d.downvotes) * CAST(? AS BIGINT), ? ")
+            .append("FROM d WHERE true ")
+            .append("ON CONFLICT (thread_id) DO UPDATE SET course_id = COALESCE(a.course_id, EXCLUDED.course_id), ")
+            .append("views = COALESCE(a.views, 0) + EXCLUDED.views, comments = COALESCE(a.comments, 0) + EXCLUDED.comments, ")
+            .append("upvotes = COALESCE(a.upvotes, 0) + EXCLUDED.upvotes, downvotes = COALESCE(a.downvotes, 0) + EXCLUDED.downvotes, ")
+            .append("engagement_score = (COALESCE(a.views, 0) + EXCLUDED.views) * CAST(? AS BIGINT) ")
+            .append("+ (COALESCE(a.comments, 0) + EXCLUDED.comments) * CAST(? AS BIGINT) ")
+            .append("+ ((COALESCE(a.upvotes, 0) + EXCLUDED.upvotes) - (COALESCE(a.downvotes, 0) + EXCLUDED.downvotes)) * CAST(? AS BIGINT), ")
+            .append("last_updated = EXCLUDED.last_updated");
+        return sql.toString();
+    }
+}
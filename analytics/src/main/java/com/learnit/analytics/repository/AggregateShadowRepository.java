@@ -0,0 +1,106 @@
+package com.learnit.analytics.repository;
+
+import com.learnit.analytics.dto.ThreadAggregateDelta;
+import com.learnit.analytics.service.EngagementScorer;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The shadow table a backfill builds its aggregates in, and the swap that replaces the contents
+ * of thread_aggregate with it. The shadow has thread_aggregate's columns but no secondary index,
+ * so filling it stays cheap; the swap is a DELETE and an INSERT ... SELECT in the caller's
+ * transaction, so readers see either the old or the new aggregates.
+ */
+@Repository
+public class AggregateShadowRepository {
+
+    public static final String SHADOW_TABLE = "thread_aggregate_backfill";
+
+    // 8 parameters per row
+    static final int ROWS_PER_STATEMENT = 1000;
+
+    private static final String COLUMNS =
+        "thread_id, course_id, views, comments, upvotes, downvotes, engagement_score, last_updated";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AggregateBatchRepository batchRepo;
+    private final EngagementScorer scorer;
+
+    public AggregateShadowRepository(JdbcTemplate jdbcTemplate, AggregateBatchRepository batchRepo,
+                                     EngagementScorer scorer) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchRepo = batchRepo;
+        this.scorer = scorer;
+    }
+
+    /**
+     * An empty shadow table, replacing one left by an earlier backfill
+     */
+    public void create() {
+        drop();
+        jdbcTemplate.execute("CREATE TABLE " + SHADOW_TABLE + " (thread_id BIGINT NOT NULL PRIMARY KEY, " +
+            "course_id BIGINT, views INTEGER, comments INTEGER, upvotes INTEGER, downvotes INTEGER, " +
+            "engagement_score BIGINT, last_updated TIMESTAMP(6) WITH TIME ZONE)");
+    }
+
+    public void drop() {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + SHADOW_TABLE);
+    }
+
+    /**
+     * Insert complete aggregates (each delta taken from zero), scored with the current weights
+     */
+    public int insert(List<ThreadAggregateDelta> aggregates, Instant now) {
+        Timestamp updatedAt = Timestamp.from(now);
+        int inserted = 0;
+        for (int from = 0; from < aggregates.size(); from += ROWS_PER_STATEMENT) {
+            List<ThreadAggregateDelta> chunk = aggregates.subList(from, Math.min(from + ROWS_PER_STATEMENT, aggregates.size()));
+            StringBuilder sql = new StringBuilder("INSERT INTO ").append(SHADOW_TABLE)
+                .append(" (").append(COLUMNS).append(") VALUES ");
+            List<Object> params = new ArrayList<>(chunk.size() * 8);
+            for (int i = 0; i < chunk.size(); i++) {
+                ThreadAggregateDelta a = chunk.get(i);
+                sql.append(i == 0 ? "" : ", ").append("(?, ?, ?, ?, ?, ?, ?, ?)");
+                params.add(a.getThreadId());
+                params.add(a.getCourseId());
+                params.add(a.getViews());
+                params.add(a.getComments());
+                params.add(a.getUpvotes());
+                params.add(a.getDownvotes());
+                params.add(scorer.score(a.getViews(), a.getComments(), a.getUpvotes(), a.getDownvotes()));
+                params.add(updatedAt);
+            }
+            inserted += jdbcTemplate.update(sql.toString(), params.toArray());
+        }
+        return inserted;
+    }
+
+    /**
+     * Add deltas to the shadow aggregates (events that arrived while it was being built)
+     */
+    public int applyDeltas(List<ThreadAggregateDelta> deltas, Instant now) {
+        return batchRepo.applyDeltas(SHADOW_TABLE, deltas, now);
+    }
+
+    /**
+     * Replace the contents of thread_aggregate with the shadow table; call in one transaction.
+     * Course ids the source never carried are kept from the current rows, and with keepMissing
+     * threads the source does not mention keep their current row. Returns the rows swapped in.
+     */
+    public int swap(boolean keepMissing) {
+        jdbcTemplate.update("UPDATE " + SHADOW_TABLE + " s SET course_id = " +
+            "(SELECT a.course_id FROM thread_aggregate a WHERE a.thread_id = s.thread_id) WHERE s.course_id IS NULL");
+        if (keepMissing) {
+            jdbcTemplate.update("INSERT INTO " + SHADOW_TABLE + " (" + COLUMNS + ") SELECT " + COLUMNS +
+                " FROM thread_aggregate a WHERE NOT EXISTS " +
+                "(SELECT 1 FROM " + SHADOW_TABLE + " s WHERE s.thread_id = a.thread_id)");
+        }
+        jdbcTemplate.update("DELETE FROM thread_aggregate");
+        return jdbcTemplate.update("INSERT INTO thread_aggregate (" + COLUMNS + ") SELECT " + COLUMNS + " FROM " + SHADOW_TABLE);
+    }
+}
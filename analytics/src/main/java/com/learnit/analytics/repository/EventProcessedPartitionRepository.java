@@ -0,0 +1,199 @@
+package com.learnit.analytics.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.learnit.analytics.entity.EventProcessed;
+
+import java.sql.Array;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Day partitions of event_processed.
+ * On PostgreSQL the table is range-partitioned by received_at (one partition per UTC day) and
+ * expiry drops whole partitions; a plain table left by an earlier schema is converted once,
+ * keeping the rows inside the dedup horizon. Other databases (H2 in tests) keep a plain table
+ * and expire rows with a DELETE.
+ *
+ * The partitioned key (event_id, received_at) does not make event_id unique on its own, so
+ * claimProcessed serializes writers of the same id with transaction-scoped advisory locks and
+ * inserts only ids that no partition holds yet.
+ */
+@Repository
+public class EventProcessedPartitionRepository {
+
+    private static final Logger log = LoggerFactory.getLogger(EventProcessedPartitionRepository.class);
+
+    private static final String PARTITION_PREFIX = "event_processed_p";
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private volatile Boolean postgres;
+
+    public EventProcessedPartitionRepository(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    public boolean isPartitioned() {
+        if (postgres == null) {
+            postgres = "PostgreSQL".equals(jdbcTemplate.execute(
+                (ConnectionCallback<String>) c -> c.getMetaData().getDatabaseProductName()));
+        }
+        return postgres;
+    }
+
+    /**
+     * Make event_processed a partitioned table with partitions for [firstDay, lastDay].
+     * Rows of a plain table older than firstDay are dropped with it.
+     */
+    public void ensurePartitioned(LocalDate firstDay, LocalDate lastDay) {
+        if (!isPartitioned()) return;
+        String kind = jdbcTemplate.query(
+            "SELECT c.relkind FROM pg_class c WHERE c.relname = 'event_processed' AND pg_table_is_visible(c.oid)",
+            rs -> rs.next() ? rs.getString(1) : null);
+        if ("p".equals(kind)) {
+            createPartitions(firstDay, lastDay);
+            return;
+        }
+
+        log.info("Converting event_processed to a table partitioned by day");
+        if (kind != null) {
+            jdbcTemplate.execute("ALTER TABLE event_processed RENAME TO event_processed_legacy");
+        }
+        jdbcTemplate.execute("CREATE TABLE event_processed (event_id VARCHAR(255) NOT NULL, event_type VARCHAR(255), " +
+            "received_at TIMESTAMP(6) WITH TIME ZONE NOT NULL, PRIMARY KEY (event_id, received_at)) " +
+            "PARTITION BY RANGE (received_at)");
+        createPartitions(firstDay, lastDay);
+        if (kind != null) {
+            int kept = jdbcTemplate.update("INSERT INTO event_processed (event_id, event_type, received_at) " +
+                "SELECT event_id, event_type, received_at FROM event_processed_legacy " +
+                "WHERE received_at >= ? AND received_at < ?",
+                Timestamp.from(startOf(firstDay)), Timestamp.from(startOf(lastDay.plusDays(1))));
+            jdbcTemplate.execute("DROP TABLE event_processed_legacy");
+            log.info("Kept {} processed event ids inside the dedup horizon", kept);
+        }
+    }
+
+    public void createPartitions(LocalDate firstDay, LocalDate lastDay) {
+        if (!isPartitioned()) return;
+        for (LocalDate day = firstDay; !day.isAfter(lastDay); day = day.plusDays(1)) {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + PARTITION_PREFIX + day.format(SUFFIX) +
+                " PARTITION OF event_processed FOR VALUES FROM ('" + startOf(day) + "') TO ('" +
+                startOf(day.plusDays(1)) + "')");
+        }
+    }
+
+    /**
+     * Drop every day before firstKeptDay: whole partitions, or a DELETE without partitioning.
+     * Returns the partitions (or rows) removed.
+     */
+    public int dropBefore(LocalDate firstKeptDay) {
+        if (!isPartitioned()) {
+            return jdbcTemplate.update("DELETE FROM event_processed WHERE received_at < ?",
+                Timestamp.from(startOf(firstKeptDay)));
+        }
+        List<String> partitions = jdbcTemplate.queryForList(
+            "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+            "JOIN pg_class p ON p.oid = i.inhparent WHERE p.relname = 'event_processed'", String.class);
+        int dropped = 0;
+        for (String partition : partitions) {
+            if (!partition.startsWith(PARTITION_PREFIX)) continue;
+            LocalDate day = LocalDate.parse(partition.substring(PARTITION_PREFIX.length()), SUFFIX);
+            if (day.isBefore(firstKeptDay)) {
+                jdbcTemplate.execute("DROP TABLE " + partition);
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * Record processed ids inside the caller's transaction and return the ones this call inserted.
+     * Ids already recorded, by an earlier transaction or by one committing concurrently (another
+     * worker or instance, on any day of the horizon), are left out: the caller must not apply them.
+     */
+    public Set<String> claimProcessed(List<EventProcessed> events) {
+        if (events.isEmpty()) {
+            return Set.of();
+        }
+        if (!isPartitioned()) {
+            // plain table: event_id is the primary key, so a concurrent insert fails instead
+            Set<String> recorded = new HashSet<>(jdbcTemplate.query(con -> {
+                var ps = con.prepareStatement("SELECT event_id FROM event_processed WHERE event_id = ANY (?)");
+                ps.setArray(1, con.createArrayOf("VARCHAR", ids(events)));
+                return ps;
+            }, (rs, i) -> rs.getString(1)));
+            List<EventProcessed> fresh = events.stream().filter(e -> !recorded.contains(e.getEventId())).toList();
+            jdbcTemplate.batchUpdate("INSERT INTO event_processed (event_id, event_type, received_at) VALUES (?, ?, ?)",
+                fresh.stream()
+                    .map(e -> new Object[]{e.getEventId(), e.getEventType(), Timestamp.from(e.getReceivedAt())})
+                    .toList());
+            Set<String> claimed = new HashSet<>();
+            fresh.forEach(e -> claimed.add(e.getEventId()));
+            return claimed;
+        }
+
+        // locks in hash order so two batches sharing ids cannot deadlock; held until commit
+        jdbcTemplate.query(con -> {
+            var ps = con.prepareStatement("SELECT pg_advisory_xact_lock(k) FROM (SELECT DISTINCT " +
+                "hashtextextended(id, 0) AS k FROM unnest(?) AS u(id) ORDER BY k) locks");
+            ps.setArray(1, con.createArrayOf("text", ids(events)));
+            return ps;
+        }, rs -> { });
+        return new HashSet<>(jdbcTemplate.query(con -> {
+            var ps = con.prepareStatement("INSERT INTO event_processed (event_id, event_type, received_at) " +
+                "SELECT u.id, u.type, u.at FROM unnest(?, ?, ?) AS u(id, type, at) " +
+                "WHERE NOT EXISTS (SELECT 1 FROM event_processed p WHERE p.event_id = u.id) " +
+                "ON CONFLICT DO NOTHING RETURNING event_id");
+            Array types = con.createArrayOf("text", events.stream().map(EventProcessed::getEventType).toArray());
+            Array times = con.createArrayOf("timestamptz",
+                events.stream().map(e -> Timestamp.from(e.getReceivedAt())).toArray());
+            ps.setArray(1, con.createArrayOf("text", ids(events)));
+            ps.setArray(2, types);
+            ps.setArray(3, times);
+            return ps;
+        }, (rs, i) -> rs.getString(1)));
+    }
+
+    /**
+     * Stream (eventId, receivedAt) of every id received since the given instant. Runs in a
+     * read-only transaction: PgJDBC only honours the fetch size with autocommit off, otherwise
+     * the whole horizon would be loaded into memory at once.
+     */
+    public void forEachSince(Instant since, BiConsumer<String, Instant> consumer) {
+        readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(con -> {
+            var ps = con.prepareStatement("SELECT event_id, received_at FROM event_processed WHERE received_at >= ?");
+            ps.setFetchSize(10_000);
+            ps.setTimestamp(1, Timestamp.from(since));
+            return ps;
+        }, rs -> {
+            consumer.accept(rs.getString(1), rs.getTimestamp(2).toInstant());
+        }));
+    }
+
+    private static Object[] ids(List<EventProcessed> events) {
+        List<String> ids = new ArrayList<>(events.size());
+        events.forEach(e -> ids.add(e.getEventId()));
+        return ids.toArray();
+    }
+
+    private static Instant startOf(LocalDate day) {
+        return day.atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+}
@@ -2,6 +2,15 @@ package com.learnit.analytics.repository;
 
 import com.learnit.analytics.entity.EventProcessed;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface EventProcessedRepository extends JpaRepository<EventProcessed, String> {
+
+    // Which of these events were already processed (one IN query per batch)
+    @Query("SELECT e.eventId FROM EventProcessed e WHERE e.eventId IN :eventIds")
+    List<String> findProcessedIds(@Param("eventIds") Collection<String> eventIds);
 }
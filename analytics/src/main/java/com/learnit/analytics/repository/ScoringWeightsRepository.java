@@ -0,0 +1,7 @@
+package com.learnit.analytics.repository;
+
+import com.learnit.analytics.entity.ScoringWeights;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface ScoringWeightsRepository extends JpaRepository<ScoringWeights, Integer> {
+}
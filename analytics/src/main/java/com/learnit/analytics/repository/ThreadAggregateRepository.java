@@ -1,9 +1,16 @@
 package com.learnit.analytics.repository;
 
 import com.learnit.analytics.entity.ThreadAggregate;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import java.util.List;
 
 public interface ThreadAggregateRepository extends JpaRepository<ThreadAggregate, Long> {
 	List<ThreadAggregate> findByCourseId(Long courseId);
+
+	// Served by idx_thread_aggregate_course_score: reads only the first page of the course
+	@Query("SELECT a FROM ThreadAggregate a WHERE a.courseId = :courseId ORDER BY a.engagementScore DESC, a.threadId")
+	List<ThreadAggregate> findTopByCourse(@Param("courseId") Long courseId, Pageable pageable);
 }
@@ -0,0 +1,107 @@
+package com.learnit.analytics.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads and writes of unique_sketch. Sketches cannot be merged in SQL, so writers only ever insert
+ * fragments (no row is updated, so concurrent batches never wait on each other) and the compaction
+ * replaces a key's fragments with their merge.
+ */
+@Repository
+public class UniqueSketchRepository {
+
+    // 5 parameters per row keeps a chunk well under the JDBC parameter limit
+    static final int ROWS_PER_STATEMENT = 1000;
+
+    /**
+     * A sketch of one (scope, scopeId, kind, day); id is null until it is stored
+     */
+    public record Fragment(Long id, String scope, long scopeId, String kind, Instant bucketStart, byte[] sketch) {
+
+        public Fragment(String scope, long scopeId, String kind, Instant bucketStart, byte[] sketch) {
+            this(null, scope, scopeId, kind, bucketStart, sketch);
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public UniqueSketchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public int insert(List<Fragment> fragments) {
+        int inserted = 0;
+        for (int from = 0; from < fragments.size(); from += ROWS_PER_STATEMENT) {
+            List<Fragment> chunk = fragments.subList(from, Math.min(from + ROWS_PER_STATEMENT, fragments.size()));
+            StringBuilder sql = new StringBuilder("INSERT INTO unique_sketch (scope, scope_id, kind, bucket_start, sketch) VALUES ");
+            List<Object> params = new ArrayList<>(chunk.size() * 5);
+            for (Fragment f : chunk) {
+                sql.append(params.isEmpty() ? "" : ", ").append("(?, ?, ?, ?, ?)");
+                params.add(f.scope());
+                params.add(f.scopeId());
+                params.add(f.kind());
+                params.add(Timestamp.from(f.bucketStart()));
+                params.add(f.sketch());
+            }
+            inserted += jdbcTemplate.update(sql.toString(), params.toArray());
+        }
+        return inserted;
+    }
+
+    /**
+     * Fragments of both kinds of one thread or course with buckets in [from, to)
+     */
+    public List<Fragment> find(String scope, long scopeId, Instant from, Instant to) {
+        return jdbcTemplate.query("SELECT id, scope, scope_id, kind, bucket_start, sketch FROM unique_sketch " +
+                "WHERE scope = ? AND scope_id = ? AND bucket_start >= ? AND bucket_start < ?",
+            (rs, i) -> new Fragment(rs.getLong(1), rs.getString(2), rs.getLong(3), rs.getString(4),
+                rs.getTimestamp(5).toInstant(), rs.getBytes(6)),
+            scope, scopeId, Timestamp.from(from), Timestamp.from(to));
+    }
+
+    /**
+     * Up to limit keys stored in more than one fragment, as fragments without id and sketch
+     */
+    public List<Fragment> findFragmentedKeys(int limit) {
+        return jdbcTemplate.query("SELECT scope, scope_id, kind, bucket_start FROM unique_sketch " +
+                "GROUP BY scope, scope_id, kind, bucket_start HAVING COUNT(*) > 1 " +
+                "ORDER BY bucket_start, scope, scope_id, kind LIMIT ?",
+            (rs, i) -> new Fragment(rs.getString(1), rs.getLong(2), rs.getString(3), rs.getTimestamp(4).toInstant(), null),
+            limit);
+    }
+
+    /**
+     * The fragments of one key
+     */
+    public List<Fragment> findFragments(Fragment key) {
+        return jdbcTemplate.query("SELECT id, sketch FROM unique_sketch " +
+                "WHERE scope = ? AND scope_id = ? AND kind = ? AND bucket_start = ?",
+            (rs, i) -> new Fragment(rs.getLong(1), key.scope(), key.scopeId(), key.kind(), key.bucketStart(), rs.getBytes(2)),
+            key.scope(), key.scopeId(), key.kind(), Timestamp.from(key.bucketStart()));
+    }
+
+    /**
+     * Replace fragments (by id) with their merge; call in one transaction
+     */
+    public void replace(List<Fragment> fragments, Fragment merged) {
+        List<Object> ids = new ArrayList<>(fragments.size());
+        for (Fragment f : fragments) ids.add(f.id());
+        jdbcTemplate.update("DELETE FROM unique_sketch WHERE id IN (" +
+            String.join(", ", Collections.nCopies(ids.size(), "?")) + ")", ids.toArray());
+        insert(List.of(merged));
+    }
+
+    /**
+     * Drop buckets starting before the given instant
+     */
+    public int deleteBefore(Instant before) {
+        return jdbcTemplate.update("DELETE FROM unique_sketch WHERE bucket_start < ?", Timestamp.from(before));
+    }
+}
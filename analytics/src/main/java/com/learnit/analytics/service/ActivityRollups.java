@@ -0,0 +1,304 @@
+package com.learnit.analytics.service;
+
+import com.learnit.analytics.dto.ActivityCount;
+import com.learnit.analytics.dto.ActivityTimeseries;
+import com.learnit.analytics.dto.EventEnvelope;
+import com.learnit.analytics.dto.ThreadAggregateDelta;
+import com.learnit.analytics.repository.ActivityRollupRepository;
+import com.learnit.analytics.repository.ActivityRollupRepository.Resolution;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Time-bucketed activity per (thread, event type), for charts over recent or long ranges.
+ *
+ * Every committed batch of events adds its counts to minute buckets, bucketed by occurredAt, in
+ * the same transaction as the aggregates. Every compact-interval-ms the hours (and then the UTC
+ * days) touched since the last run are recomputed from the finer table, including the current
+ * ones, so hour and day buckets trail the minute buckets by at most one interval. Each resolution
+ * is dropped after its retention. Events older than the minute retention are not rolled up: their
+ * hour could no longer be recomputed from complete minutes.
+ *
+ * Timeseries are summed from the coarsest table whose bucket divides the requested step, never
+ * from raw events.
+ */
+@Component
+public class ActivityRollups {
+
+    private static final Logger log = LoggerFactory.getLogger(ActivityRollups.class);
+
+    private static final Comparator<ActivityCount> LOCK_ORDER = Comparator
+        .comparing(ActivityCount::getThreadId)
+        .thenComparing(ActivityCount::getEventType)
+        .thenComparing(ActivityCount::getBucketStart);
+
+    private final ActivityRollupRepository repo;
+    private final ScheduledExecutorService compactor;
+    private final Clock clock;
+
+    @Value("${analytics.rollup.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${analytics.rollup.compact-interval-ms:60000}")
+    private long compactIntervalMs = 60000;
+
+    @Value("${analytics.rollup.minute-retention-hours:48}")
+    private long minuteRetentionHours = 48;
+
+    @Value("${analytics.rollup.hour-retention-days:90}")
+    private long hourRetentionDays = 90;
+
+    @Value("${analytics.rollup.day-retention-days:1825}")
+    private long dayRetentionDays = 1825;
+
+    @Value("${analytics.rollup.max-points:2000}")
+    private int maxPoints = 2000;
+
+    // oldest minute bucket committed since the last compaction; on startup everything retained
+    private final AtomicReference<Instant> dirtySince = new AtomicReference<>(Instant.EPOCH);
+    private final LongAdder late = new LongAdder();
+
+    @Autowired
+    public ActivityRollups(ActivityRollupRepository repo) {
+        this(repo, Clock.systemUTC());
+    }
+
+    ActivityRollups(ActivityRollupRepository repo, Clock clock) {
+        this.repo = repo;
+        this.clock = clock;
+        this.compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rollup-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PostConstruct
+    void start() {
+        if (enabled) {
+            compactor.scheduleWithFixedDelay(this::compactQuietly, compactIntervalMs, compactIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        compactor.shutdownNow();
+    }
+
+    /**
+     * Collects the minute counts of the events received at receivedAt (see {@link #record})
+     */
+    public Batch batch(Instant receivedAt) {
+        return new Batch(receivedAt, firstRolledUpMinute(receivedAt));
+    }
+
+    /**
+     * Add a batch to the minute buckets; call inside the transaction writing its aggregates
+     */
+    public void record(Batch batch) {
+        if (!enabled) return;
+        if (batch.late > 0) late.add(batch.late);
+        if (batch.counts.isEmpty()) return;
+        List<ActivityCount> rows = new ArrayList<>(batch.counts.values());
+        rows.sort(LOCK_ORDER);
+        repo.addMinuteCounts(rows);
+
+        Instant oldest = batch.oldest;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // marked after commit, so the compaction that picks it up sees the rows
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    markDirty(oldest);
+                }
+            });
+        } else {
+            markDirty(oldest);
+        }
+    }
+
+    /**
+     * Recompute the hours and days touched since the last run, then apply retention
+     */
+    synchronized void compact() {
+        Instant now = clock.instant();
+        Instant minuteHorizon = Resolution.HOUR.floor(now.minus(Duration.ofHours(minuteRetentionHours)));
+        Instant since = dirtySince.getAndSet(null);
+        if (since != null) {
+            Instant firstHour = Resolution.HOUR.floor(since.isBefore(minuteHorizon) ? minuteHorizon : since);
+            int hours = 0;
+            int days = 0;
+            try {
+                for (Instant h = firstHour; !h.isAfter(now); h = h.plus(Resolution.HOUR.size())) {
+                    repo.compact(Resolution.MINUTE, Resolution.HOUR, h);
+                    hours++;
+                }
+                for (Instant d = Resolution.DAY.floor(firstHour); !d.isAfter(now); d = d.plus(Resolution.DAY.size())) {
+                    repo.compact(Resolution.HOUR, Resolution.DAY, d);
+                    days++;
+                }
+            } catch (RuntimeException e) {
+                markDirty(since);
+                throw e;
+            }
+            log.debug("Compacted {} hour and {} day buckets from {}", hours, days, firstHour);
+        }
+
+        repo.deleteBefore(Resolution.MINUTE, minuteHorizon);
+        repo.deleteBefore(Resolution.HOUR, Resolution.DAY.floor(now.minus(Duration.ofDays(hourRetentionDays))));
+        repo.deleteBefore(Resolution.DAY, Resolution.DAY.floor(now.minus(Duration.ofDays(dayRetentionDays))));
+        long dropped = late.sumThenReset();
+        if (dropped > 0) {
+            log.info("{} events older than the {} h minute retention were not rolled up", dropped, minuteRetentionHours);
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            log.warn("Rollup compaction failed, retrying next run: {}", e.getMessage());
+        }
+    }
+
+    private void markDirty(Instant bucket) {
+        dirtySince.accumulateAndGet(bucket, (current, b) -> current == null || b.isBefore(current) ? b : current);
+    }
+
+    /**
+     * Activity of a course (courseId) or one thread (threadId) in [from, to) per step. Steps are
+     * whole minutes aligned to the epoch (UTC), so from is rounded down to a step boundary.
+     * Throws IllegalArgumentException for invalid ranges.
+     */
+    public ActivityTimeseries timeseries(Long courseId, Long threadId, Instant from, Instant to, Duration step) {
+        if (step.isNegative() || step.isZero() || step.getNano() != 0 || step.getSeconds() % 60 != 0) {
+            throw new IllegalArgumentException("step must be a whole number of minutes");
+        }
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+        long stepSeconds = step.getSeconds();
+        Instant start = Instant.ofEpochSecond(Math.floorDiv(from.getEpochSecond(), stepSeconds) * stepSeconds);
+        long pointCount = (Duration.between(start, to).getSeconds() + stepSeconds - 1) / stepSeconds;
+        if (pointCount > maxPoints) {
+            throw new IllegalArgumentException("range holds " + pointCount + " steps, at most " + maxPoints + " allowed");
+        }
+        Instant end = start.plusSeconds(pointCount * stepSeconds);
+        Resolution resolution = resolutionFor(stepSeconds, start);
+
+        List<ActivityTimeseries.Point> points = new ArrayList<>((int) pointCount);
+        for (int i = 0; i < pointCount; i++) {
+            points.add(new ActivityTimeseries.Point(start.plusSeconds(i * stepSeconds), new LinkedHashMap<>()));
+        }
+        List<ActivityCount> rows = courseId != null
+            ? repo.findCourseCounts(resolution, courseId, start, end)
+            : repo.findThreadCounts(resolution, threadId, start, end);
+        for (ActivityCount row : rows) {
+            int index = (int) (Duration.between(start, row.getBucketStart()).getSeconds() / stepSeconds);
+            points.get(index).add(row.getEventType(), row.getCount());
+        }
+        return new ActivityTimeseries(courseId, threadId, start, end, step.toString(),
+            resolution.name().toLowerCase(), points);
+    }
+
+    // the coarsest buckets that tile the step; finer ones only if they are still retained for the range
+    private Resolution resolutionFor(long stepSeconds, Instant start) {
+        Resolution[] coarsestFirst = {Resolution.DAY, Resolution.HOUR, Resolution.MINUTE};
+        for (Resolution r : coarsestFirst) {
+            if (stepSeconds % r.size().getSeconds() != 0) continue;
+            Instant retainedSince = retainedSince(r, clock.instant());
+            if (retainedSince != null && start.isBefore(retainedSince)) {
+                throw new IllegalArgumentException(r.name().toLowerCase() + " buckets are only kept since "
+                    + retainedSince + "; use a step of whole " + (r == Resolution.MINUTE ? "hours" : "days")
+                    + " for older ranges");
+            }
+            return r;
+        }
+        throw new IllegalStateException("minute buckets tile every whole-minute step");
+    }
+
+    private Instant retainedSince(Resolution resolution, Instant now) {
+        switch (resolution) {
+            case MINUTE:
+                return Resolution.HOUR.floor(now.minus(Duration.ofHours(minuteRetentionHours)));
+            case HOUR:
+                return Resolution.DAY.floor(now.minus(Duration.ofDays(hourRetentionDays)));
+            default:
+                // the oldest resolution: an older range simply starts with empty days
+                return null;
+        }
+    }
+
+    // one hour of margin, so the hour is still complete in minutes when compaction reaches it
+    private Instant firstRolledUpMinute(Instant now) {
+        return Resolution.HOUR.floor(now.minus(Duration.ofHours(minuteRetentionHours))).plus(Resolution.HOUR.size());
+    }
+
+    /**
+     * Minute counts of a set of events, keyed by (thread, event type, minute)
+     */
+    public static final class Batch {
+
+        private final Instant receivedAt;
+        private final Instant firstMinute;
+        private final Map<Key, ActivityCount> counts = new HashMap<>();
+        private Instant oldest;
+        private int late;
+
+        private Batch(Instant receivedAt, Instant firstMinute) {
+            this.receivedAt = receivedAt;
+            this.firstMinute = firstMinute;
+        }
+
+        public void add(EventEnvelope event) {
+            add(event.getEventType(), AnalyticsService.contribution(event), event.getOccurredAt());
+        }
+
+        /**
+         * One event with its aggregate contribution (events without one are not rolled up).
+         * Missing or future occurredAt counts at receivedAt.
+         */
+        public void add(String eventType, ThreadAggregateDelta delta, Instant occurredAt) {
+            if (delta == null) return;
+            long count = "thread_viewed".equals(eventType) ? delta.getViews() : 1;
+            if (count == 0) return;
+            Instant at = occurredAt == null || occurredAt.isAfter(receivedAt) ? receivedAt : occurredAt;
+            Instant minute = Resolution.MINUTE.floor(at);
+            if (minute.isBefore(firstMinute)) {
+                late++;
+                return;
+            }
+            counts.computeIfAbsent(new Key(delta.getThreadId(), eventType, minute),
+                k -> new ActivityCount(k.threadId(), null, eventType, minute, 0)).add(count, delta.getCourseId());
+            if (oldest == null || minute.isBefore(oldest)) oldest = minute;
+        }
+
+        public boolean isEmpty() {
+            return counts.isEmpty();
+        }
+
+        private record Key(Long threadId, String eventType, Instant minute) {}
+    }
+}
@@ -0,0 +1,51 @@
+package com.learnit.analytics.service;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Keeps the aggregate writers of this instance out of a backfill swap.
+ *
+ * Every transaction that writes thread_aggregate enters the gate shared, up to its completion;
+ * the swap runs exclusively, so it starts once the writes in flight have committed (or rolled
+ * back) and new writes wait until it has committed.
+ */
+@Component
+public class AggregateWriteGate {
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Hold the gate shared until the current transaction completes; a no-op outside a transaction.
+     * Call before the transaction's first write.
+     */
+    public void enter() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+        holdUntilCompletion(lock.readLock());
+    }
+
+    /**
+     * Hold the gate exclusively until the current transaction completes. Call at the start of the
+     * transaction, so its connection is taken before writers queue up behind the gate holding theirs.
+     */
+    public void enterExclusive() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("the exclusive gate is held by a transaction");
+        }
+        holdUntilCompletion(lock.writeLock());
+    }
+
+    private static void holdUntilCompletion(Lock held) {
+        held.lock();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                held.unlock();
+            }
+        });
+    }
+}
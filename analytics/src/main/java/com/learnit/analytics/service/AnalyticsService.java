@@ -1,33 +1,76 @@
 package com.learnit.analytics.service;
 
 import com.learnit.analytics.dto.EventEnvelope;
+import com.learnit.analytics.dto.ThreadAggregateDelta;
+import com.learnit.analytics.dto.UniqueCounts;
 import com.learnit.analytics.entity.EventProcessed;
 import com.learnit.analytics.entity.ThreadAggregate;
-import com.learnit.analytics.repository.EventProcessedRepository;
+import com.learnit.analytics.eventlog.EventLog;
+import com.learnit.analytics.repository.AggregateBatchRepository;
 import com.learnit.analytics.repository.ThreadAggregateRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 @Service
 public class AnalyticsService {
 
+    private static final Logger log = LoggerFactory.getLogger(AnalyticsService.class);
+
+    // event_processed.event_id is VARCHAR(255)
+    static final int MAX_EVENT_ID_LENGTH = 255;
+    // payload fields read as numbers by the handlers below
+    private static final List<String> NUMERIC_FIELDS = List.of("threadId", "courseId", "targetId", "viewCount");
+
     private final ThreadAggregateRepository repo;
-    private final EventProcessedRepository processedRepo;
+    private final AggregateBatchRepository batchRepo;
+    private final DeltaAccumulator deltaAccumulator;
+    private final EventDeduplicator deduplicator;
+    private final EngagementScorer scorer;
+    private final TopThreadsCache topThreads;
+    private final ActivityRollups rollups;
+    private final UniqueCounters uniques;
+    private final EventLog eventLog;
+    private final AggregateWriteGate writeGate;
 
-    public AnalyticsService(ThreadAggregateRepository repo, EventProcessedRepository processedRepo) {
+    public AnalyticsService(ThreadAggregateRepository repo, AggregateBatchRepository batchRepo,
+                            DeltaAccumulator deltaAccumulator, EventDeduplicator deduplicator,
+                            EngagementScorer scorer, TopThreadsCache topThreads, ActivityRollups rollups,
+                            UniqueCounters uniques, EventLog eventLog, AggregateWriteGate writeGate) {
         this.repo = repo;
-        this.processedRepo = processedRepo;
+        this.batchRepo = batchRepo;
+        this.deltaAccumulator = deltaAccumulator;
+        this.deduplicator = deduplicator;
+        this.scorer = scorer;
+        this.topThreads = topThreads;
+        this.rollups = rollups;
+        this.uniques = uniques;
+        this.eventLog = eventLog;
+        this.writeGate = writeGate;
     }
 
     @Transactional
     public void processEvent(EventEnvelope event) {
         if (event == null) return;
+        String invalid = rejectReason(event);
+        if (invalid != null) {
+            log.error("Skipping event {} ({}) that cannot be applied: {}", event.getEventId(), event.getEventType(), invalid);
+            return;
+        }
+        writeGate.enter();
         String eventId = event.getEventId();
-        if (eventId != null && processedRepo.existsById(eventId)) {
+        if (eventId != null && !deduplicator.isNew(eventId)) {
             // already processed
             return;
         }
@@ -37,6 +80,12 @@ public class AnalyticsService {
 
         if (type == null) return;
 
+        // record processed event for idempotency; a concurrent writer may have claimed it first
+        Instant now = Instant.now();
+        if (eventId != null && deduplicator.claim(List.of(new EventProcessed(eventId, type, now))).isEmpty()) {
+            return;
+        }
+
         switch (type) {
             case "thread_created":
                 handleThreadCreated(p);
@@ -54,21 +103,160 @@ public class AnalyticsService {
                 // ignore unknown for now
         }
 
-        // record processed event for idempotency
-        if (eventId != null) {
-            EventProcessed ep = new EventProcessed(eventId, type, Instant.now());
-            processedRepo.save(ep);
-        }
+        ActivityRollups.Batch activity = rollups.batch(now);
+        activity.add(event);
+        rollups.record(activity);
+        UniqueCounters.Batch users = uniques.batch(now);
+        users.add(event);
+        uniques.record(users);
+        eventLog.append(List.of(event));
     }
 
     @Transactional
     public void processEvents(List<EventEnvelope> events) {
-        if (events == null || events.isEmpty()) return;
+        processBatch(events);
+    }
+
+    /**
+     * Process a batch of events in one transaction: one IN query drops already processed
+     * events and the rest are claimed, so ids recorded concurrently by another writer are dropped
+     * too. The claimed events are folded into per-thread deltas and minute activity counts in
+     * memory, then the deltas and counts are written with one bulk statement each.
+     * Events that can never be applied (see {@link #rejectReason}) are skipped on their own
+     * rather than failing the batch. Returns the events applied.
+     */
+    @Transactional
+    public int processBatch(List<EventEnvelope> events) {
+        if (events == null || events.isEmpty()) return 0;
+        writeGate.enter();
+
+        // duplicates within the batch count once; events without an id cannot be deduplicated
+        Map<String, EventEnvelope> byId = new LinkedHashMap<>();
+        List<EventEnvelope> fresh = new ArrayList<>();
         for (EventEnvelope e : events) {
-            processEvent(e);
+            if (e == null || e.getEventType() == null) continue;
+            String invalid = rejectReason(e);
+            if (invalid != null) {
+                log.error("Skipping event {} ({}) that cannot be applied: {}", e.getEventId(), e.getEventType(), invalid);
+                continue;
+            }
+            if (e.getEventId() == null) {
+                fresh.add(e);
+            } else {
+                byId.putIfAbsent(e.getEventId(), e);
+            }
+        }
+        if (!byId.isEmpty()) {
+            deduplicator.findNew(byId.keySet()).forEach(id -> fresh.add(byId.get(id)));
+        }
+        if (fresh.isEmpty()) return 0;
+
+        // claim the ids before applying anything: ids a concurrent writer recorded first are dropped
+        Instant now = Instant.now();
+        List<EventProcessed> processedRows = new ArrayList<>();
+        for (EventEnvelope e : fresh) {
+            if (e.getEventId() != null) {
+                processedRows.add(new EventProcessed(e.getEventId(), e.getEventType(), now));
+            }
+        }
+        Set<String> claimed = deduplicator.claim(processedRows);
+        fresh.removeIf(e -> e.getEventId() != null && !claimed.contains(e.getEventId()));
+        if (fresh.isEmpty()) return 0;
+
+        // sorted by thread id so concurrent batches lock aggregate rows in the same order
+        Map<Long, ThreadAggregateDelta> deltas = new TreeMap<>();
+        ActivityRollups.Batch activity = rollups.batch(now);
+        UniqueCounters.Batch users = uniques.batch(now);
+        for (EventEnvelope e : fresh) {
+            fold(e, deltas);
+            activity.add(e);
+            users.add(e);
+        }
+
+        if (!deltas.isEmpty()) {
+            batchRepo.applyDeltas(deltas.values(), now);
+            topThreads.refreshAfterCommit(deltas.keySet());
+        }
+        rollups.record(activity);
+        uniques.record(users);
+        eventLog.append(fresh);
+        return fresh.size();
+    }
+
+    private void fold(EventEnvelope event, Map<Long, ThreadAggregateDelta> deltas) {
+        ThreadAggregateDelta d = contribution(event);
+        if (d != null) {
+            deltas.computeIfAbsent(d.getThreadId(), ThreadAggregateDelta::new).add(d);
+        }
+    }
+
+    /**
+     * Why an event can never be applied, or null when it can: a payload id or count that is not a
+     * number, or an event id too long to record. Retrying such an event fails the same way.
+     */
+    public static String rejectReason(EventEnvelope event) {
+        if (event.getEventId() != null && event.getEventId().length() > MAX_EVENT_ID_LENGTH) {
+            return "eventId longer than " + MAX_EVENT_ID_LENGTH + " characters";
+        }
+        Map<String, Object> p = event.getPayload();
+        if (p == null) return null;
+        for (String field : NUMERIC_FIELDS) {
+            Object value = p.get(field);
+            if (value != null && !(value instanceof Number)) {
+                return field + " is not a number";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * What one event adds to its thread's aggregate (same effect as the single-event handlers),
+     * or null when it does not touch an aggregate. Expects an event that passed {@link #rejectReason}.
+     */
+    static ThreadAggregateDelta contribution(EventEnvelope event) {
+        Map<String, Object> p = event.getPayload();
+        if (p == null || event.getEventType() == null) return null;
+        switch (event.getEventType()) {
+            case "thread_created": {
+                ThreadAggregateDelta d = delta(p, "threadId");
+                Number courseIdNum = (Number) p.get("courseId");
+                if (d != null && courseIdNum != null) d.courseId(courseIdNum.longValue());
+                return d;
+            }
+            case "comment_added": {
+                ThreadAggregateDelta d = delta(p, "threadId");
+                if (d != null) d.addComments(1);
+                return d;
+            }
+            case "vote_cast": {
+                if (!"THREAD".equals(String.valueOf(p.get("targetType")))) return null;
+                String voteType = p.get("voteType") == null ? null : String.valueOf(p.get("voteType"));
+                if (voteType == null) return null;
+                String previousVoteType = p.get("previousVoteType") == null ? null : String.valueOf(p.get("previousVoteType"));
+                ThreadAggregateDelta d = delta(p, "targetId");
+                if (d != null) {
+                    d.addVotes(voteDelta("UPVOTE", voteType, previousVoteType),
+                        voteDelta("DOWNVOTE", voteType, previousVoteType));
+                }
+                return d;
+            }
+            case "thread_viewed": {
+                ThreadAggregateDelta d = delta(p, "threadId");
+                Number viewCountNum = (Number) p.get("viewCount");
+                if (d != null) d.addViews(viewCountNum == null ? 1 : viewCountNum.intValue());
+                return d;
+            }
+            default:
+                // ignore unknown for now
+                return null;
         }
     }
 
+    private static ThreadAggregateDelta delta(Map<String, Object> p, String idField) {
+        Number threadIdNum = (Number) p.get(idField);
+        return threadIdNum == null ? null : new ThreadAggregateDelta(threadIdNum.longValue());
+    }
+
     private void handleThreadCreated(Map<String, Object> p) {
         Number threadIdNum = (Number) p.get("threadId");
         Number courseIdNum = (Number) p.get("courseId");
@@ -78,7 +266,7 @@ public class AnalyticsService {
 
         if (!repo.existsById(threadId)) {
             ThreadAggregate a = new ThreadAggregate(threadId, courseId);
-            repo.save(a);
+            save(a);
         }
     }
 
@@ -88,7 +276,7 @@ public class AnalyticsService {
         Long threadId = threadIdNum.longValue();
         ThreadAggregate a = repo.findById(threadId).orElseGet(() -> new ThreadAggregate(threadId, null));
         a.incrementComments();
-        repo.save(a);
+        save(a);
     }
 
     private void handleVoteCast(Map<String, Object> p) {
@@ -99,41 +287,77 @@ public class AnalyticsService {
             if (targetIdNum == null || voteType == null) return;
             Long threadId = targetIdNum.longValue();
             ThreadAggregate a = repo.findById(threadId).orElseGet(() -> new ThreadAggregate(threadId, null));
-            if ("UPVOTE".equalsIgnoreCase(voteType)) a.applyUpvote();
-            else if ("DOWNVOTE".equalsIgnoreCase(voteType)) a.applyDownvote();
-            repo.save(a);
+            // a switched vote moves the count from previousVoteType instead of adding a second vote
+            String previousVoteType = p.get("previousVoteType") == null ? null : String.valueOf(p.get("previousVoteType"));
+            int deltaUp = voteDelta("UPVOTE", voteType, previousVoteType);
+            int deltaDown = voteDelta("DOWNVOTE", voteType, previousVoteType);
+            a.applyVoteDelta(deltaUp, deltaDown);
+            save(a);
         }
     }
 
+    private void save(ThreadAggregate a) {
+        a.setEngagementScore(scorer.score(a));
+        repo.save(a);
+        topThreads.offerAfterCommit(List.of(a));
+    }
+
+    private static int voteDelta(String type, String voteType, String previousVoteType) {
+        int delta = 0;
+        if (type.equalsIgnoreCase(voteType)) delta++;
+        if (type.equalsIgnoreCase(previousVoteType)) delta--;
+        return delta;
+    }
+
     private void handleThreadViewed(Map<String, Object> p) {
         Number threadIdNum = (Number) p.get("threadId");
         if (threadIdNum == null) return;
         Long threadId = threadIdNum.longValue();
+        // discussion-service coalesces views per flush window; viewCount carries the delta
+        Number viewCountNum = (Number) p.get("viewCount");
         ThreadAggregate a = repo.findById(threadId).orElseGet(() -> new ThreadAggregate(threadId, null));
-        a.incrementViews();
-        repo.save(a);
+        a.addViews(viewCountNum == null ? 1 : viewCountNum.intValue());
+        save(a);
     }
 
-    // Query helpers
+    // Query helpers; both include events still pending in the aggregation window
+    // (unique viewers and participants only count committed events)
     @Transactional(readOnly = true)
     public ThreadAggregate getThreadAggregate(Long threadId) {
-        return repo.findById(threadId).orElse(null);
+        DeltaAccumulator.PendingView pending = deltaAccumulator.isEnabled() ? deltaAccumulator.pendingView() : null;
+        ThreadAggregate row = repo.findById(threadId).orElse(null);
+        ThreadAggregate merged = row;
+        if (pending != null) {
+            merged = pending.merge(threadId, row);
+            if (merged != row) merged.setEngagementScore(scorer.score(merged));
+        }
+        if (merged != null) {
+            UniqueCounts totals = uniques.threadTotals(threadId);
+            merged.setUniques(totals.getUniqueViewers(), totals.getUniqueParticipants());
+        }
+        return merged;
     }
 
+    /**
+     * Highest engagement scores first. Up to the cache capacity this is served from the
+     * in-memory per-course top list; larger limits read the score index.
+     */
     @Transactional(readOnly = true)
-    public java.util.List<ThreadAggregate> getTopThreadsByCourse(Long courseId, int limit) {
-        java.util.List<ThreadAggregate> list = repo.findByCourseId(courseId);
-        // compute simple engagement score and sort
-        list.sort((a, b) -> {
-            int scoreA = (a.getViews() == null ? 0 : a.getViews())
-                    + ((a.getComments() == null ? 0 : a.getComments()) * 2)
-                    + (((a.getUpvotes() == null ? 0 : a.getUpvotes()) - (a.getDownvotes() == null ? 0 : a.getDownvotes())) * 5);
-            int scoreB = (b.getViews() == null ? 0 : b.getViews())
-                    + ((b.getComments() == null ? 0 : b.getComments()) * 2)
-                    + (((b.getUpvotes() == null ? 0 : b.getUpvotes()) - (b.getDownvotes() == null ? 0 : b.getDownvotes())) * 5);
-            return Integer.compare(scoreB, scoreA);
-        });
-        if (list.size() > limit) return list.subList(0, limit);
-        return list;
+    public List<ThreadAggregate> getTopThreadsByCourse(Long courseId, int limit) {
+        if (limit <= 0) return List.of();
+        DeltaAccumulator.PendingView pending = deltaAccumulator.isEnabled() ? deltaAccumulator.pendingView() : null;
+        List<ThreadAggregate> list = limit <= topThreads.capacity()
+            ? topThreads.top(courseId, limit)
+            : repo.findTopByCourse(courseId, PageRequest.of(0, limit));
+        if (pending == null) return list;
+
+        // pending deltas of the listed threads (and of threads created in the window) can reorder them
+        List<ThreadAggregate> merged = pending.mergeCourse(courseId, list);
+        for (ThreadAggregate a : merged) {
+            if (!list.contains(a)) a.setEngagementScore(scorer.score(a));
+        }
+        merged.sort(Comparator.comparingLong((ThreadAggregate a) ->
+            a.getEngagementScore() == null ? 0 : a.getEngagementScore()).reversed());
+        return merged.size() > limit ? merged.subList(0, limit) : merged;
     }
 }
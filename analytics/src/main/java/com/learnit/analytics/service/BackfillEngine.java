@@ -0,0 +1,449 @@
+package com.learnit.analytics.service;
+
+import com.learnit.analytics.backfill.BackfillSource;
+import com.learnit.analytics.backfill.BackfillSources;
+import com.learnit.analytics.dto.BackfillRequest;
+import com.learnit.analytics.dto.EventEnvelope;
+import com.learnit.analytics.dto.ThreadAggregateDelta;
+import com.learnit.analytics.repository.AggregateShadowRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rebuilds thread_aggregate from a history of events, after a change to how events are folded.
+ *
+ * One thread reads encoded chunks from the BackfillSource and hands them to a ForkJoinPool; a
+ * worker decodes its chunk, computes each event's contribution (the same fold as the live path)
+ * and routes it by threadId to one of `partitions` partitions, each a map of per-thread totals
+ * with an EventIdWindow for deduplication, folded under the partition's own lock. Memory grows
+ * with the number of threads (about 150 bytes each) and the dedup window, not with the number of
+ * events; at most two chunks per worker are in flight, so a busy pool holds the reader back.
+ *
+ * The totals are written to a shadow table and swapped in (AggregateShadowRepository). Events the
+ * source received meanwhile (catch-up, event log only) are added to the shadow first, keeping
+ * only those whose transaction committed: their ids are in event_processed. The last catch-up
+ * and the swap run in one transaction holding the AggregateWriteGate exclusively, so writes of
+ * this instance wait for the swap instead of landing in the table it replaces. Activity rollups
+ * are not rebuilt.
+ *
+ * One backfill runs at a time, on its own thread; progress and throughput: {@link #status()}.
+ */
+@Component
+public class BackfillEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(BackfillEngine.class);
+
+    private static final int ROWS_PER_WRITE = 10_000;
+
+    private final BackfillSources sources;
+    private final AggregateShadowRepository shadowRepo;
+    private final EventDeduplicator deduplicator;
+    private final TopThreadsCache topThreads;
+    private final AggregateWriteGate writeGate;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService runner;
+    private final Clock clock;
+
+    // workers folding chunks; 0 means one per processor
+    @Value("${analytics.backfill.parallelism:0}")
+    private int parallelism = 0;
+
+    @Value("${analytics.backfill.partitions:64}")
+    private int partitions = 64;
+
+    @Value("${analytics.backfill.chunk-events:4096}")
+    private int chunkEvents = 4096;
+
+    // ids remembered for deduplication, over all partitions
+    @Value("${analytics.backfill.dedup-window-events:10000000}")
+    private int dedupWindowEvents = 10_000_000;
+
+    private volatile Job current;
+
+    @Autowired
+    public BackfillEngine(BackfillSources sources, AggregateShadowRepository shadowRepo, EventDeduplicator deduplicator,
+                          TopThreadsCache topThreads, AggregateWriteGate writeGate, TransactionTemplate transactionTemplate) {
+        this(sources, shadowRepo, deduplicator, topThreads, writeGate, transactionTemplate, Clock.systemUTC());
+    }
+
+    BackfillEngine(BackfillSources sources, AggregateShadowRepository shadowRepo, EventDeduplicator deduplicator,
+                   TopThreadsCache topThreads, AggregateWriteGate writeGate, TransactionTemplate transactionTemplate,
+                   Clock clock) {
+        this.sources = sources;
+        this.shadowRepo = shadowRepo;
+        this.deduplicator = deduplicator;
+        this.topThreads = topThreads;
+        this.writeGate = writeGate;
+        this.transactionTemplate = transactionTemplate;
+        this.clock = clock;
+        this.runner = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "backfill");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    void stop() {
+        Job job = current;
+        if (job != null) job.cancelled = true;
+        runner.shutdownNow();
+    }
+
+    /**
+     * Open the requested source and start rebuilding in the background. Throws
+     * IllegalArgumentException for an invalid request, IllegalStateException while another
+     * backfill runs.
+     */
+    public synchronized Map<String, Object> start(BackfillRequest request) throws IOException {
+        Job running = current;
+        if (running != null && !running.isFinished()) {
+            throw new IllegalStateException("a backfill is already running");
+        }
+        BackfillSource source = sources.open(request);
+        Job job = new Job(source, request.isDryRun(), request.isKeepMissing(), clock.instant());
+        current = job;
+        runner.execute(() -> run(job));
+        return job.status(clock);
+    }
+
+    /**
+     * Ask the running backfill to stop; false if none runs. A cancelled backfill leaves
+     * thread_aggregate unchanged.
+     */
+    public boolean cancel() {
+        Job job = current;
+        if (job == null || job.isFinished()) return false;
+        job.cancelled = true;
+        return true;
+    }
+
+    /**
+     * The running or last backfill
+     */
+    public Map<String, Object> status() {
+        Job job = current;
+        if (job == null) {
+            Map<String, Object> idle = new LinkedHashMap<>();
+            idle.put("state", "idle");
+            return idle;
+        }
+        return job.status(clock);
+    }
+
+    /**
+     * Rebuild from the source on the calling thread; returns the finished job's status
+     */
+    Map<String, Object> run(BackfillSource source, boolean dryRun, boolean keepMissing) {
+        Job job = new Job(source, dryRun, keepMissing, clock.instant());
+        current = job;
+        run(job);
+        return job.status(clock);
+    }
+
+    private void run(Job job) {
+        try (BackfillSource source = job.source) {
+            log.info("Backfill from {} started", source.description());
+            Partition[] parts = new Partition[Math.max(1, partitions)];
+            for (int i = 0; i < parts.length; i++) {
+                parts[i] = new Partition(Math.max(1, dedupWindowEvents / parts.length / 2));
+            }
+            read(source, parts, job);
+            if (job.cancelled) {
+                job.finish("cancelled", clock.instant());
+                return;
+            }
+            job.phase("writing", clock.instant());
+            write(parts, job);
+            if (job.cancelled) {
+                shadowRepo.drop();
+                job.finish("cancelled", clock.instant());
+                return;
+            }
+            if (job.dryRun) {
+                log.info("Backfill dry run finished: {} aggregates in {}", job.threads, AggregateShadowRepository.SHADOW_TABLE);
+                job.finish("done", clock.instant());
+                return;
+            }
+
+            job.phase("swapping", clock.instant());
+            // most of what arrived meanwhile is added before taking the gate, so writers wait briefly
+            List<Contribution> held = catchUp(source.catchUp(), List.of(), parts, job);
+            Integer swapped = transactionTemplate.execute(status -> {
+                writeGate.enterExclusive();
+                try {
+                    List<Contribution> uncommitted = catchUp(source.catchUp(), held, parts, job);
+                    job.dropped.add(uncommitted.size());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return shadowRepo.swap(job.keepMissing);
+            });
+            shadowRepo.drop();
+            topThreads.invalidateAll();
+            job.swapped = swapped == null ? 0 : swapped;
+            job.finish("done", clock.instant());
+            log.info("Backfill swapped in {} aggregates from {} events ({} duplicates, {} undecodable) in {} s",
+                job.swapped, job.applied.sum(), job.duplicates.sum(), job.undecodable.sum(),
+                Duration.between(job.startedAt, job.finishedAt).toSeconds());
+        } catch (Exception e) {
+            log.error("Backfill failed", e);
+            job.error = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+            job.finish("failed", clock.instant());
+        }
+    }
+
+    private void read(BackfillSource source, Partition[] parts, Job job) throws Exception {
+        int workers = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        Semaphore inFlight = new Semaphore(2 * workers);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        try {
+            while (!job.cancelled && failure.get() == null) {
+                List<BackfillSource.Encoded> chunk = source.nextChunk(chunkEvents);
+                if (chunk.isEmpty()) break;
+                job.read.add(chunk.size());
+                inFlight.acquire();
+                pool.execute(() -> {
+                    try {
+                        fold(chunk, parts, job);
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+            inFlight.acquire(2 * workers);
+        } finally {
+            pool.shutdownNow();
+        }
+        job.readNanos = System.nanoTime() - job.startNanos;
+        if (failure.get() != null) {
+            throw new IllegalStateException("Backfill worker failed: " + failure.get().getMessage(), failure.get());
+        }
+    }
+
+    // decode and route one chunk; each partition is locked once per chunk
+    private void fold(List<BackfillSource.Encoded> chunk, Partition[] parts, Job job) {
+        List<List<Contribution>> routed = new ArrayList<>(parts.length);
+        for (int i = 0; i < parts.length; i++) routed.add(null);
+        for (Contribution c : contributions(chunk, job)) {
+            int p = partitionOf(c.delta.getThreadId(), parts.length);
+            if (routed.get(p) == null) routed.set(p, new ArrayList<>());
+            routed.get(p).add(c);
+        }
+        for (int p = 0; p < parts.length; p++) {
+            List<Contribution> list = routed.get(p);
+            if (list != null) parts[p].fold(list, parts[p].totals, job);
+        }
+    }
+
+    private static List<Contribution> contributions(List<BackfillSource.Encoded> encoded, Job job) {
+        List<Contribution> contributions = new ArrayList<>(encoded.size());
+        for (BackfillSource.Encoded e : encoded) {
+            EventEnvelope event;
+            try {
+                event = e.decode();
+            } catch (IOException | RuntimeException ex) {
+                job.undecodable.increment();
+                continue;
+            }
+            if (event != null && AnalyticsService.rejectReason(event) != null) {
+                // decoded, but its payload cannot be applied either
+                job.undecodable.increment();
+                continue;
+            }
+            ThreadAggregateDelta delta = event == null ? null : AnalyticsService.contribution(event);
+            if (delta == null) {
+                job.ignored.increment();
+                continue;
+            }
+            contributions.add(new Contribution(event.getEventId(), delta));
+        }
+        return contributions;
+    }
+
+    private static int partitionOf(long threadId, int count) {
+        // spread sequential ids
+        return Math.floorMod(Long.hashCode(threadId * 0x9E3779B97F4A7C15L), count);
+    }
+
+    private void write(Partition[] parts, Job job) {
+        List<ThreadAggregateDelta> aggregates = new ArrayList<>();
+        for (Partition p : parts) {
+            aggregates.addAll(p.totals.values());
+        }
+        aggregates.sort(Comparator.comparing(ThreadAggregateDelta::getThreadId));
+        job.threads = aggregates.size();
+
+        shadowRepo.create();
+        Instant now = clock.instant().truncatedTo(ChronoUnit.MICROS);
+        for (int from = 0; from < aggregates.size() && !job.cancelled; from += ROWS_PER_WRITE) {
+            List<ThreadAggregateDelta> slice = aggregates.subList(from, Math.min(from + ROWS_PER_WRITE, aggregates.size()));
+            job.written += shadowRepo.insert(slice, now);
+        }
+    }
+
+    /**
+     * Add the caught-up events (and the ones held from the previous round) to the shadow table,
+     * those without an id or with a committed id; returns the rest, to be checked again
+     */
+    private List<Contribution> catchUp(List<BackfillSource.Encoded> encoded, List<Contribution> held,
+                                       Partition[] parts, Job job) {
+        List<Contribution> candidates = new ArrayList<>(held);
+        candidates.addAll(contributions(encoded, job));
+        if (candidates.isEmpty()) return List.of();
+
+        List<String> ids = candidates.stream().map(c -> c.eventId).filter(id -> id != null).distinct().toList();
+        Set<String> notCommitted = deduplicator.findNew(ids);
+        List<Contribution> committed = new ArrayList<>(candidates.size());
+        List<Contribution> rest = new ArrayList<>();
+        for (Contribution c : candidates) {
+            (c.eventId != null && notCommitted.contains(c.eventId) ? rest : committed).add(c);
+        }
+
+        Map<Long, ThreadAggregateDelta> deltas = new TreeMap<>();
+        Map<Integer, List<Contribution>> routed = new HashMap<>();
+        for (Contribution c : committed) {
+            routed.computeIfAbsent(partitionOf(c.delta.getThreadId(), parts.length), p -> new ArrayList<>()).add(c);
+        }
+        routed.forEach((p, list) -> parts[p].fold(list, deltas, job));
+        if (!deltas.isEmpty()) {
+            shadowRepo.applyDeltas(new ArrayList<>(deltas.values()), clock.instant().truncatedTo(ChronoUnit.MICROS));
+        }
+        job.caughtUp.add(committed.size());
+        return rest;
+    }
+
+    private record Contribution(String eventId, ThreadAggregateDelta delta) {}
+
+    /**
+     * Per-thread totals of the threads routed here, with the ids seen for them
+     */
+    private static final class Partition {
+
+        final Map<Long, ThreadAggregateDelta> totals = new HashMap<>();
+        private final EventIdWindow seen;
+
+        Partition(int dedupGeneration) {
+            this.seen = new EventIdWindow(dedupGeneration);
+        }
+
+        synchronized void fold(List<Contribution> contributions, Map<Long, ThreadAggregateDelta> into, Job job) {
+            int duplicates = 0;
+            for (Contribution c : contributions) {
+                if (c.eventId != null && !seen.add(c.eventId)) {
+                    duplicates++;
+                    continue;
+                }
+                into.computeIfAbsent(c.delta.getThreadId(), ThreadAggregateDelta::new).add(c.delta);
+            }
+            job.applied.add(contributions.size() - duplicates);
+            job.duplicates.add(duplicates);
+        }
+    }
+
+    /**
+     * One backfill's progress; counters are updated by the workers and read by status()
+     */
+    private static final class Job {
+
+        final BackfillSource source;
+        final boolean dryRun;
+        final boolean keepMissing;
+        final Instant startedAt;
+        final long startNanos = System.nanoTime();
+        final LongAdder read = new LongAdder();
+        final LongAdder applied = new LongAdder();
+        final LongAdder duplicates = new LongAdder();
+        final LongAdder undecodable = new LongAdder();
+        final LongAdder ignored = new LongAdder();
+        final LongAdder caughtUp = new LongAdder();
+        final LongAdder dropped = new LongAdder();
+        volatile String state = "reading";
+        volatile Instant phaseStartedAt;
+        volatile Instant finishedAt;
+        volatile boolean cancelled;
+        volatile long readNanos;
+        volatile long threads;
+        volatile long written;
+        volatile long swapped;
+        volatile String error;
+
+        Job(BackfillSource source, boolean dryRun, boolean keepMissing, Instant startedAt) {
+            this.source = source;
+            this.dryRun = dryRun;
+            this.keepMissing = keepMissing;
+            this.startedAt = startedAt;
+            this.phaseStartedAt = startedAt;
+        }
+
+        void phase(String state, Instant now) {
+            this.state = state;
+            this.phaseStartedAt = now;
+        }
+
+        void finish(String state, Instant now) {
+            this.finishedAt = now;
+            this.state = state;
+        }
+
+        boolean isFinished() {
+            return finishedAt != null;
+        }
+
+        Map<String, Object> status(Clock clock) {
+            Map<String, Object> status = new LinkedHashMap<>();
+            long readNs = readNanos > 0 ? readNanos : System.nanoTime() - startNanos;
+            long events = read.sum();
+            status.put("state", state);
+            status.put("source", source.description());
+            status.put("dryRun", dryRun);
+            status.put("startedAt", startedAt);
+            status.put("phaseStartedAt", phaseStartedAt);
+            status.put("finishedAt", finishedAt);
+            status.put("elapsedMs", Duration.between(startedAt, finishedAt != null ? finishedAt : clock.instant()).toMillis());
+            status.put("progress", readNanos > 0 ? 1.0 : source.progress());
+            status.put("eventsRead", events);
+            status.put("eventsPerSecond", readNs == 0 ? 0 : (long) (events * 1e9 / readNs));
+            status.put("eventsApplied", applied.sum());
+            status.put("duplicates", duplicates.sum());
+            status.put("undecodable", undecodable.sum());
+            status.put("ignored", ignored.sum());
+            status.put("threads", threads);
+            status.put("rowsWritten", written);
+            status.put("caughtUp", caughtUp.sum());
+            status.put("uncommittedDropped", dropped.sum());
+            status.put("rowsSwapped", swapped);
+            status.put("error", error);
+            return status;
+        }
+    }
+}
@@ -0,0 +1,537 @@
+package com.learnit.analytics.service;
+
+import com.learnit.analytics.dto.EventEnvelope;
+import com.learnit.analytics.dto.ThreadAggregateDelta;
+import com.learnit.analytics.entity.EventProcessed;
+import com.learnit.analytics.entity.ThreadAggregate;
+import com.learnit.analytics.eventlog.EventLog;
+import com.learnit.analytics.repository.AggregateBatchRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory aggregation window in front of thread_aggregate.
+ *
+ * Events are folded into per-thread LongAdder counters, so concurrent writers to a hot thread
+ * never contend on a database row. Every flush-interval-ms, or once flush-events events are
+ * pending, the window is swapped out and written in one transaction: one upsert adding the
+ * counters (views = views + ?), the window's minute activity counts (ActivityRollups), its
+ * unique-user sketches (UniqueCounters) and its event ids in event_processed; the events themselves are appended to the EventLog.
+ *
+ * Durability: an event is acknowledged (Kafka offset, HTTP response) only through the callback
+ * passed to {@link #add}, which runs after the window holding it committed. A crash before that
+ * loses nothing acknowledged and the event is redelivered; a redelivered event whose window did
+ * commit is dropped at the next flush by the EventDeduplicator check, inside the same transaction.
+ * A flush failing on a transient database error keeps its window and retries it before any newer
+ * window, so callbacks (and Kafka offset commits) happen in order. Any other failure is taken to be
+ * caused by some of its events: the window is written in halves, recursively, and an event that
+ * still fails on its own is dropped and counted, so one bad event cannot stall ingestion.
+ */
+@Component
+public class DeltaAccumulator {
+
+    private static final Logger log = LoggerFactory.getLogger(DeltaAccumulator.class);
+
+    private final AggregateBatchRepository batchRepo;
+    private final EventDeduplicator deduplicator;
+    private final TopThreadsCache topThreads;
+    private final ActivityRollups rollups;
+    private final UniqueCounters uniques;
+    private final EventLog eventLog;
+    private final AggregateWriteGate writeGate;
+    private final TransactionTemplate transactionTemplate;
+    private final ScheduledExecutorService flusher;
+
+    @Value("${analytics.aggregation.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${analytics.aggregation.flush-interval-ms:200}")
+    private long flushIntervalMs = 200;
+
+    @Value("${analytics.aggregation.flush-events:5000}")
+    private int flushEvents = 5000;
+
+    @Value("${analytics.aggregation.max-pending-events:200000}")
+    private int maxPendingEvents = 200000;
+
+    @Value("${analytics.aggregation.ack-timeout-ms:5000}")
+    private long ackTimeoutMs = 5000;
+
+    // writers share the read lock; swapping the current window takes the write lock
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private volatile Window current = new Window();
+    // swapped out and not yet committed (being flushed, or failed and waiting for a retry)
+    private volatile Window retained;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    // events that can never be applied: refused by add(), or failing a write on their own
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public DeltaAccumulator(AggregateBatchRepository batchRepo, EventDeduplicator deduplicator,
+                            TopThreadsCache topThreads, ActivityRollups rollups, UniqueCounters uniques,
+                            EventLog eventLog, AggregateWriteGate writeGate, TransactionTemplate transactionTemplate) {
+        this.batchRepo = batchRepo;
+        this.deduplicator = deduplicator;
+        this.topThreads = topThreads;
+        this.rollups = rollups;
+        this.uniques = uniques;
+        this.eventLog = eventLog;
+        this.writeGate = writeGate;
+        this.transactionTemplate = transactionTemplate;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "aggregate-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PostConstruct
+    void start() {
+        if (enabled) {
+            flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // listener containers are stopped by now; anything still pending is flushed or redelivered
+        flushQuietly();
+        flushQuietly();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Fold events into the current window. onDurable (may be null) runs on the flusher thread
+     * once they are committed. Events that can never be applied (AnalyticsService.rejectReason)
+     * are logged and left out. Throws IllegalStateException when the backlog is full (flushes keep
+     * failing), so callers back off instead of growing the heap; see {@link #awaitCapacity}.
+     */
+    public void add(List<EventEnvelope> events, Runnable onDurable) {
+        if (pendingEvents() >= maxPendingEvents) {
+            throw new IllegalStateException("Aggregation backlog full (" + maxPendingEvents + " events pending)");
+        }
+        // contributions first: an event that throws here leaves no trace in the window
+        List<Pending> folded = new ArrayList<>(events.size());
+        for (EventEnvelope e : events) {
+            if (e == null || e.getEventType() == null) continue;
+            String invalid = AnalyticsService.rejectReason(e);
+            if (invalid != null) {
+                rejected.increment();
+                log.error("Dropping event {} ({}) that cannot be applied: {}", e.getEventId(), e.getEventType(), invalid);
+                continue;
+            }
+            folded.add(new Pending(e, AnalyticsService.contribution(e)));
+        }
+        int size;
+        swapLock.readLock().lock();
+        try {
+            Window w = current;
+            Window r = retained;
+            for (Pending p : folded) {
+                if (p.eventId != null && ((r != null && r.eventIds.contains(p.eventId)) || !w.eventIds.add(p.eventId))) {
+                    continue;
+                }
+                w.fold(p);
+            }
+            if (onDurable != null) {
+                w.callbacks.add(onDurable);
+            }
+            size = w.size.get();
+        } finally {
+            swapLock.readLock().unlock();
+        }
+        if (size >= flushEvents && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * add() for callers that acknowledge synchronously (group commit): true once the events are
+     * committed, false if that takes longer than ack-timeout-ms. They stay pending either way,
+     * and a client retry is deduplicated by event id.
+     */
+    public boolean addAndWait(List<EventEnvelope> events) throws InterruptedException {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        add(events, () -> done.complete(null));
+        try {
+            done.get(ackTimeoutMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Block until the backlog is below max-pending-events; false on timeout
+     */
+    public boolean awaitCapacity(long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (pendingEvents() >= maxPendingEvents) {
+            if (System.nanoTime() >= deadline) return false;
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    public int pendingEvents() {
+        Window r = retained;
+        return current.size.get() + (r == null ? 0 : r.size.get());
+    }
+
+    /**
+     * Capture the unflushed windows; call before reading aggregate rows, then merge the rows
+     * through the view (read-your-writes for events not yet flushed).
+     */
+    public PendingView pendingView() {
+        swapLock.readLock().lock();
+        try {
+            List<Window> windows = new ArrayList<>(2);
+            if (retained != null) windows.add(retained);
+            windows.add(current);
+            return new PendingView(windows);
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("pendingEvents", pendingEvents());
+        Window r = retained;
+        // swapped out and waiting for a retry after a failed flush
+        stats.put("retainedEvents", r == null ? 0 : r.size.get());
+        stats.put("rejectedEvents", rejected.sum());
+        stats.put("droppedEvents", dropped.sum());
+        return stats;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Aggregate flush failed, window kept for retry ({} events pending): {}",
+                pendingEvents(), e.getMessage());
+        }
+    }
+
+    /**
+     * The database is unreachable or busy: the same write can succeed later
+     */
+    public static boolean isTransient(RuntimeException e) {
+        return e instanceof TransientDataAccessException || e instanceof RecoverableDataAccessException
+            || e instanceof DataAccessResourceFailureException || e instanceof CannotCreateTransactionException;
+    }
+
+    /**
+     * Write the retained window, or swap out and write the current one.
+     * Returns the number of events committed.
+     */
+    synchronized int flush() {
+        flushRequested.set(false);
+        if (retained == null) {
+            swapLock.writeLock().lock();
+            try {
+                if (current.size.get() == 0 && current.callbacks.isEmpty()) return 0;
+                retained = current;
+                current = new Window();
+            } finally {
+                swapLock.writeLock().unlock();
+            }
+        }
+        Window w = retained;
+        // micros: the stored last_updated must compare equal to it (see PendingView)
+        w.flushedAt = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        Integer written;
+        try {
+            written = transactionTemplate.execute(status -> write(w));
+        } catch (RuntimeException e) {
+            if (isTransient(e)) throw e;
+            log.warn("Aggregate flush of {} events failed, writing it in parts: {}", w.size.get(), e.getMessage());
+            written = writeInParts(w);
+        }
+
+        swapLock.writeLock().lock();
+        try {
+            retained = null;
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+        for (Runnable callback : w.callbacks) {
+            try {
+                callback.run();
+            } catch (RuntimeException e) {
+                log.warn("Flush callback failed: {}", e.getMessage());
+            }
+        }
+        return written == null ? 0 : written;
+    }
+
+    /**
+     * Write a window that failed for a reason other than the database being unavailable, halving
+     * the failing parts until the events that cannot be written are found and dropped. On a
+     * transient failure the part not yet written becomes the retained window.
+     */
+    private int writeInParts(Window w) {
+        List<Pending> events = new ArrayList<>(w.events);
+        Deque<List<Pending>> parts = new ArrayDeque<>();
+        parts.push(events);
+        int written = 0;
+        // parts are taken in order, so the events before this index are committed or dropped
+        int done = 0;
+        try {
+            while (!parts.isEmpty()) {
+                List<Pending> part = parts.pop();
+                Window pw = Window.of(part);
+                pw.flushedAt = Instant.now().truncatedTo(ChronoUnit.MICROS);
+                try {
+                    Integer n = transactionTemplate.execute(status -> write(pw));
+                    written += n == null ? 0 : n;
+                } catch (RuntimeException e) {
+                    if (isTransient(e)) throw e;
+                    if (part.size() > 1) {
+                        parts.push(part.subList(part.size() / 2, part.size()));
+                        parts.push(part.subList(0, part.size() / 2));
+                        continue;
+                    }
+                    Pending p = part.get(0);
+                    dropped.increment();
+                    log.error("Dropping aggregated event {} ({}) that cannot be written", p.eventId, p.eventType, e);
+                }
+                done += part.size();
+            }
+        } catch (RuntimeException e) {
+            Window rest = Window.of(events.subList(done, events.size()));
+            rest.callbacks.addAll(w.callbacks);
+            swapLock.writeLock().lock();
+            try {
+                retained = rest;
+            } finally {
+                swapLock.writeLock().unlock();
+            }
+            throw e;
+        }
+        return written;
+    }
+
+    private int write(Window w) {
+        writeGate.enter();
+        List<Pending> events = new ArrayList<>(w.events);
+        List<String> ids = events.stream().map(p -> p.eventId).filter(id -> id != null).toList();
+        Set<String> processed = new HashSet<>(ids);
+        processed.removeAll(deduplicator.findNew(ids));
+
+        // claim the rest before applying anything; ids a concurrent writer recorded first are dropped too
+        List<EventProcessed> rows = new ArrayList<>(ids.size());
+        for (Pending p : events) {
+            if (p.eventId != null && !processed.contains(p.eventId)) {
+                rows.add(new EventProcessed(p.eventId, p.eventType, w.flushedAt));
+            }
+        }
+        Set<String> claimed = deduplicator.claim(rows);
+        rows.forEach(r -> {
+            if (!claimed.contains(r.getEventId())) processed.add(r.getEventId());
+        });
+
+        // sorted by thread id so concurrent writers lock aggregate rows in the same order
+        Map<Long, ThreadAggregateDelta> deltas = new TreeMap<>();
+        if (processed.isEmpty()) {
+            w.threads.forEach((threadId, counters) -> deltas.put(threadId, counters.snapshot(threadId)));
+        } else {
+            // redelivered events that an earlier window already committed: rebuild without them
+            for (Pending p : events) {
+                if (p.delta != null && !processed.contains(p.eventId)) {
+                    deltas.computeIfAbsent(p.delta.getThreadId(), ThreadAggregateDelta::new).add(p.delta);
+                }
+            }
+        }
+
+        List<EventEnvelope> accepted = new ArrayList<>(events.size());
+        ActivityRollups.Batch activity = rollups.batch(w.flushedAt);
+        UniqueCounters.Batch users = uniques.batch(w.flushedAt);
+        for (Pending p : events) {
+            if (processed.contains(p.eventId)) continue;
+            accepted.add(p.event);
+            activity.add(p.eventType, p.delta, p.event.getOccurredAt());
+            users.add(p.event);
+        }
+        if (!deltas.isEmpty()) {
+            batchRepo.applyDeltas(deltas.values(), w.flushedAt);
+            topThreads.refreshAfterCommit(deltas.keySet());
+        }
+        rollups.record(activity);
+        uniques.record(users);
+        eventLog.append(accepted);
+        log.debug("Flushed {} events into {} aggregates ({} duplicates dropped)",
+            events.size() - processed.size(), deltas.size(), processed.size());
+        return events.size() - processed.size();
+    }
+
+    /**
+     * Unflushed windows captured at one point in time
+     */
+    public static final class PendingView {
+
+        private final List<Window> windows;
+
+        private PendingView(List<Window> windows) {
+            this.windows = windows;
+        }
+
+        /**
+         * The row plus pending deltas for its thread; row may be null. A window is skipped when
+         * the row already carries it: its flush stamped last_updated with the window's flushedAt.
+         */
+        public ThreadAggregate merge(Long threadId, ThreadAggregate row) {
+            ThreadAggregateDelta pending = new ThreadAggregateDelta(threadId);
+            boolean any = false;
+            for (Window w : windows) {
+                Counters c = w.threads.get(threadId);
+                if (c == null || appliedTo(w, row)) continue;
+                c.addTo(pending);
+                any = true;
+            }
+            if (!any) return row;
+            return row == null ? ThreadAggregate.fromDelta(pending) : row.withDelta(pending);
+        }
+
+        /**
+         * Rows of one course merged with pending deltas, plus threads created in a pending window
+         */
+        public List<ThreadAggregate> mergeCourse(Long courseId, List<ThreadAggregate> rows) {
+            List<ThreadAggregate> merged = new ArrayList<>(rows.size());
+            Set<Long> seen = new HashSet<>();
+            for (ThreadAggregate row : rows) {
+                merged.add(merge(row.getThreadId(), row));
+                seen.add(row.getThreadId());
+            }
+            for (Window w : windows) {
+                w.threads.forEach((threadId, c) -> {
+                    if (courseId.equals(c.courseId) && seen.add(threadId)) {
+                        merged.add(merge(threadId, null));
+                    }
+                });
+            }
+            return merged;
+        }
+
+        private static boolean appliedTo(Window w, ThreadAggregate row) {
+            Instant flushedAt = w.flushedAt;
+            return flushedAt != null && row != null && row.getLastUpdated() != null
+                && !row.getLastUpdated().isBefore(flushedAt);
+        }
+    }
+
+    private static final class Window {
+        final ConcurrentHashMap<Long, Counters> threads = new ConcurrentHashMap<>();
+        final ConcurrentLinkedQueue<Pending> events = new ConcurrentLinkedQueue<>();
+        final Set<String> eventIds = ConcurrentHashMap.newKeySet();
+        final ConcurrentLinkedQueue<Runnable> callbacks = new ConcurrentLinkedQueue<>();
+        final AtomicInteger size = new AtomicInteger();
+        volatile Instant flushedAt;
+
+        static Window of(List<Pending> events) {
+            Window w = new Window();
+            for (Pending p : events) {
+                if (p.eventId != null) w.eventIds.add(p.eventId);
+                w.fold(p);
+            }
+            return w;
+        }
+
+        void fold(Pending p) {
+            if (p.delta != null) {
+                threads.computeIfAbsent(p.delta.getThreadId(), id -> new Counters()).add(p.delta);
+            }
+            events.add(p);
+            size.incrementAndGet();
+        }
+    }
+
+    private static final class Counters {
+        final LongAdder views = new LongAdder();
+        final LongAdder comments = new LongAdder();
+        final LongAdder upvotes = new LongAdder();
+        final LongAdder downvotes = new LongAdder();
+        volatile Long courseId;
+
+        void add(ThreadAggregateDelta d) {
+            if (d.getCourseId() != null) courseId = d.getCourseId();
+            if (d.getViews() != 0) views.add(d.getViews());
+            if (d.getComments() != 0) comments.add(d.getComments());
+            if (d.getUpvotes() != 0) upvotes.add(d.getUpvotes());
+            if (d.getDownvotes() != 0) downvotes.add(d.getDownvotes());
+        }
+
+        void addTo(ThreadAggregateDelta d) {
+            d.courseId(courseId);
+            d.addViews(views.intValue());
+            d.addComments(comments.intValue());
+            d.addVotes(upvotes.intValue(), downvotes.intValue());
+        }
+
+        ThreadAggregateDelta snapshot(Long threadId) {
+            ThreadAggregateDelta d = new ThreadAggregateDelta(threadId);
+            addTo(d);
+            return d;
+        }
+    }
+
+    private static final class Pending {
+        final String eventId;
+        final String eventType;
+        final EventEnvelope event;
+        final ThreadAggregateDelta delta;
+
+        Pending(EventEnvelope event, ThreadAggregateDelta delta) {
+            this.eventId = event.getEventId();
+            this.eventType = event.getEventType();
+            this.event = event;
+            this.delta = delta;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.learnit.analytics.service;
+
+import com.learnit.analytics.entity.ThreadAggregate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Engagement score of a thread: views * views-weight + comments * comments-weight
+ * + (upvotes - downvotes) * vote-weight. Stored in thread_aggregate.engagement_score;
+ * when the weights change, ScoreRescoreJob recomputes the stored scores once.
+ */
+@Component
+public class EngagementScorer {
+
+    private final long viewsWeight;
+    private final long commentsWeight;
+    private final long voteWeight;
+
+    public EngagementScorer(@Value("${analytics.score.views-weight:1}") long viewsWeight,
+                            @Value("${analytics.score.comments-weight:2}") long commentsWeight,
+                            @Value("${analytics.score.vote-weight:5}") long voteWeight) {
+        this.viewsWeight = viewsWeight;
+        this.commentsWeight = commentsWeight;
+        this.voteWeight = voteWeight;
+    }
+
+    public long score(long views, long comments, long upvotes, long downvotes) {
+        return views * viewsWeight + comments * commentsWeight + (upvotes - downvotes) * voteWeight;
+    }
+
+    public long score(ThreadAggregate a) {
+        return score(orZero(a.getViews()), orZero(a.getComments()), orZero(a.getUpvotes()), orZero(a.getDownvotes()));
+    }
+
+    public long getViewsWeight() {
+        return viewsWeight;
+    }
+
+    public long getCommentsWeight() {
+        return commentsWeight;
+    }
+
+    public long getVoteWeight() {
+        return voteWeight;
+    }
+
+    private static long orZero(Integer value) {
+        return value == null ? 0 : value;
+    }
+}
@@ -0,0 +1,239 @@
+package com.learnit.analytics.service;
+
+import com.learnit.analytics.entity.EventProcessed;
+import com.learnit.analytics.repository.EventProcessedPartitionRepository;
+import com.learnit.analytics.repository.EventProcessedRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Idempotency check for incoming events.
+ *
+ * One Bloom filter per UTC day sits in front of event_processed (itself partitioned by day, see
+ * EventProcessedPartitionRepository). An id that no day's filter contains has certainly not been
+ * processed and needs no database probe; only filter hits are confirmed with one IN query per
+ * batch. Days older than the dedup horizon are dropped from both the filters and the table, so
+ * neither grows without bound: redeliveries older than horizon-days are no longer detected, so
+ * keep the Kafka retention below it.
+ *
+ * The filters are rebuilt from event_processed on startup; until then every id is checked in
+ * the database. Ids are added to a filter when written, before commit: a rolled-back id only
+ * costs one extra probe later.
+ *
+ * findNew is only a pre-check: the filters are per instance and a concurrent writer may not
+ * have committed yet. Writers claim ids (see EventProcessedPartitionRepository.claimProcessed)
+ * before applying anything and apply only the ids their claim returned.
+ */
+@Component
+public class EventDeduplicator {
+
+    private static final Logger log = LoggerFactory.getLogger(EventDeduplicator.class);
+
+    private static final int IDS_PER_QUERY = 1000;
+
+    private final EventProcessedRepository processedRepo;
+    private final EventProcessedPartitionRepository partitionRepo;
+    private final ScheduledExecutorService maintenance;
+    private final Clock clock;
+
+    @Value("${analytics.dedup.horizon-days:7}")
+    private int horizonDays = 7;
+
+    @Value("${analytics.dedup.expected-events-per-day:1000000}")
+    private long expectedEventsPerDay = 1_000_000;
+
+    @Value("${analytics.dedup.false-positive-rate:0.01}")
+    private double falsePositiveRate = 0.01;
+
+    private final ConcurrentSkipListMap<LocalDate, BloomFilter> filters = new ConcurrentSkipListMap<>();
+    private volatile boolean ready;
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder filterHits = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+
+    @Autowired
+    public EventDeduplicator(EventProcessedRepository processedRepo, EventProcessedPartitionRepository partitionRepo) {
+        this(processedRepo, partitionRepo, Clock.systemUTC());
+    }
+
+    EventDeduplicator(EventProcessedRepository processedRepo, EventProcessedPartitionRepository partitionRepo,
+                      Clock clock) {
+        this.processedRepo = processedRepo;
+        this.partitionRepo = partitionRepo;
+        this.clock = clock;
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "dedup-maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PostConstruct
+    void start() {
+        partitionRepo.ensurePartitioned(firstKeptDay(), today().plusDays(1));
+        maintenance.execute(this::rebuild);
+        maintenance.scheduleAtFixedRate(this::expireQuietly, 1, 1, TimeUnit.HOURS);
+    }
+
+    @PreDestroy
+    void stop() {
+        maintenance.shutdownNow();
+    }
+
+    /**
+     * Refill the filters from the ids still inside the horizon
+     */
+    void rebuild() {
+        long started = System.nanoTime();
+        long[] count = {0};
+        try {
+            partitionRepo.forEachSince(firstKeptDay().atStartOfDay(ZoneOffset.UTC).toInstant(), (id, at) -> {
+                filterFor(at).put(id);
+                count[0]++;
+            });
+            ready = true;
+            log.info("Dedup filters rebuilt from {} processed ids in {} ms", count[0],
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (RuntimeException e) {
+            // stay on database lookups; the next maintenance run tries again
+            log.warn("Dedup filter rebuild failed, checking every id in the database: {}", e.getMessage());
+        }
+    }
+
+    public boolean isNew(String eventId) {
+        return !findNew(List.of(eventId)).isEmpty();
+    }
+
+    /**
+     * Which of these ids have not been processed yet (within the dedup horizon).
+     * Order is preserved; duplicates within the argument count once.
+     */
+    public Set<String> findNew(Collection<String> eventIds) {
+        Set<String> fresh = new LinkedHashSet<>(eventIds);
+        boolean filtered = ready;
+        if (filtered) lookups.add(fresh.size());
+        List<String> candidates = new ArrayList<>();
+        for (String id : fresh) {
+            if (!filtered || mightContain(id)) candidates.add(id);
+        }
+        if (candidates.isEmpty()) return fresh;
+
+        Set<String> processed = new HashSet<>();
+        for (int from = 0; from < candidates.size(); from += IDS_PER_QUERY) {
+            processed.addAll(processedRepo.findProcessedIds(
+                candidates.subList(from, Math.min(from + IDS_PER_QUERY, candidates.size()))));
+        }
+        if (filtered) {
+            filterHits.add(candidates.size());
+            duplicates.add(processed.size());
+        }
+        fresh.removeAll(processed);
+        return fresh;
+    }
+
+    /**
+     * Record processed ids in the caller's transaction and add them to the filter of their day.
+     * Returns the ids this call recorded; the others were already recorded (possibly by a
+     * concurrent writer) and must not be applied again.
+     */
+    public Set<String> claim(List<EventProcessed> events) {
+        Set<String> claimed = partitionRepo.claimProcessed(events);
+        for (EventProcessed e : events) {
+            filterFor(e.getReceivedAt()).put(e.getEventId());
+        }
+        return claimed;
+    }
+
+    /**
+     * Drop filters and partitions older than the horizon and create tomorrow's partition
+     */
+    void expire() {
+        LocalDate firstKept = firstKeptDay();
+        filters.headMap(firstKept).clear();
+        partitionRepo.createPartitions(today(), today().plusDays(1));
+        int dropped = partitionRepo.dropBefore(firstKept);
+        if (dropped > 0) {
+            log.info("Expired event_processed before {} ({} dropped)", firstKept, dropped);
+        }
+        if (!ready) {
+            rebuild();
+        }
+        log.info("Dedup stats: {}", stats());
+    }
+
+    private void expireQuietly() {
+        try {
+            expire();
+        } catch (RuntimeException e) {
+            log.warn("Dedup maintenance failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Observed filter effectiveness: hits that turned out not to be processed are false positives
+     */
+    public Map<String, Object> stats() {
+        long hits = filterHits.sum();
+        long dup = duplicates.sum();
+        long negatives = lookups.sum() - hits;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ready", ready);
+        stats.put("horizonDays", horizonDays);
+        stats.put("lookups", lookups.sum());
+        stats.put("filterHits", hits);
+        stats.put("duplicates", dup);
+        stats.put("falsePositives", Math.max(0, hits - dup));
+        stats.put("observedFalsePositiveRate",
+            negatives + hits - dup <= 0 ? 0.0 : (double) Math.max(0, hits - dup) / (negatives + hits - dup));
+        Map<String, Object> days = new LinkedHashMap<>();
+        filters.forEach((day, f) -> days.put(day.toString(),
+            Map.of("ids", f.insertions(), "bytes", f.sizeInBytes())));
+        stats.put("filters", days);
+        return stats;
+    }
+
+    private boolean mightContain(String id) {
+        for (BloomFilter f : filters.values()) {
+            if (f.mightContain(id)) return true;
+        }
+        return false;
+    }
+
+    private BloomFilter filterFor(Instant at) {
+        // each day gets a share of the target rate: a lookup probes every day of the horizon
+        return filters.computeIfAbsent(LocalDate.ofInstant(at, ZoneOffset.UTC),
+            day -> new BloomFilter(expectedEventsPerDay, falsePositiveRate / (horizonDays + 1)));
+    }
+
+    private LocalDate today() {
+        return LocalDate.now(clock);
+    }
+
+    private LocalDate firstKeptDay() {
+        return today().minusDays(horizonDays);
+    }
+}
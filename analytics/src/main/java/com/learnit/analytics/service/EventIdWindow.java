@@ -0,0 +1,67 @@
+package com.learnit.analytics.service;
+
+/**
+ * The most recent event ids seen, as 64-bit hashes in two generations of open-addressing sets:
+ * once the current generation holds generationSize ids it becomes the previous one and the older
+ * generation is dropped. An id repeated within generationSize later ids is always caught; one
+ * repeated further apart may not be. Tables grow to keep the load factor under 0.5, so both
+ * generations together stay under 64 bytes per id of generationSize. Not thread-safe.
+ */
+final class EventIdWindow {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int generationSize;
+    private long[] current = new long[INITIAL_CAPACITY];
+    private long[] previous;
+    private int size;
+
+    EventIdWindow(int generationSize) {
+        this.generationSize = Math.max(1, generationSize);
+    }
+
+    /**
+     * Remember the id; false if it is already remembered
+     */
+    boolean add(String eventId) {
+        // 0 marks an empty slot
+        long hash = BloomFilter.hash64(eventId);
+        if (hash == 0) hash = 1;
+        if (previous != null && contains(previous, hash)) return false;
+        if (!insert(current, hash)) return false;
+        if (++size >= generationSize) {
+            previous = current;
+            current = new long[INITIAL_CAPACITY];
+            size = 0;
+        } else if (size * 2 > current.length) {
+            grow();
+        }
+        return true;
+    }
+
+    private static boolean contains(long[] table, long hash) {
+        int mask = table.length - 1;
+        for (int i = (int) hash & mask; table[i] != 0; i = (i + 1) & mask) {
+            if (table[i] == hash) return true;
+        }
+        return false;
+    }
+
+    private static boolean insert(long[] table, long hash) {
+        int mask = table.length - 1;
+        int i = (int) hash & mask;
+        for (; table[i] != 0; i = (i + 1) & mask) {
+            if (table[i] == hash) return false;
+        }
+        table[i] = hash;
+        return true;
+    }
+
+    private void grow() {
+        long[] larger = new long[current.length * 2];
+        for (long hash : current) {
+            if (hash != 0) insert(larger, hash);
+        }
+        current = larger;
+    }
+}
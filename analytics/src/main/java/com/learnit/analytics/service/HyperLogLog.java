@@ -0,0 +1,205 @@
+package com.learnit.analytics.service;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * HyperLogLog distinct counter over string ids with 2^12 registers: estimates have a relative
+ * standard error of 1.04 / sqrt(4096) = 1.6% (within 3.2% for 95% of sets), and small sets are
+ * counted almost exactly by linear counting. Sketches of the same precision merge losslessly
+ * (register-wise max), so per-day sketches add up to any range of days.
+ *
+ * Up to SPARSE_LIMIT touched registers are kept as sorted (index, rank) pairs and serialized as
+ * delta-encoded varints (2-3 bytes per register); beyond that the 4096 6-bit registers are
+ * packed into 3072 bytes. Not thread-safe.
+ */
+final class HyperLogLog {
+
+    static final int PRECISION = 12;
+    static final int REGISTERS = 1 << PRECISION;
+    static final double RELATIVE_STANDARD_ERROR = 1.04 / Math.sqrt(REGISTERS);
+
+    // about 2 bytes a register at this density, still under the packed 3072 bytes
+    static final int SPARSE_LIMIT = 1024;
+
+    private static final byte FORMAT_SPARSE = 1;
+    private static final byte FORMAT_DENSE = 2;
+    private static final int PACKED_BYTES = REGISTERS * 6 / 8;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    // sparse: sorted entries of index << 8 | rank; null once dense
+    private int[] sparse = new int[8];
+    private int sparseSize;
+    private byte[] registers;
+
+    void add(String id) {
+        long hash = BloomFilter.hash64(id);
+        int index = (int) (hash >>> (64 - PRECISION));
+        // the guard bit caps the rank at 64 - PRECISION + 1, which fits in 6 bits
+        int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+        offer(index, rank);
+    }
+
+    /**
+     * Fold another sketch into this one, as if its ids had been added here
+     */
+    void merge(HyperLogLog other) {
+        if (other.registers != null) {
+            for (int i = 0; i < REGISTERS; i++) {
+                if (other.registers[i] != 0) offer(i, other.registers[i]);
+            }
+        } else {
+            for (int i = 0; i < other.sparseSize; i++) {
+                offer(other.sparse[i] >>> 8, other.sparse[i] & 0xff);
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        if (registers == null) return sparseSize == 0;
+        for (byte r : registers) {
+            if (r != 0) return false;
+        }
+        return true;
+    }
+
+    long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        if (registers == null) {
+            zeros = REGISTERS - sparseSize;
+            sum = zeros;
+            for (int i = 0; i < sparseSize; i++) {
+                sum += Math.scalb(1.0, -(sparse[i] & 0xff));
+            }
+        } else {
+            for (byte r : registers) {
+                if (r == 0) zeros++;
+                sum += Math.scalb(1.0, -r);
+            }
+        }
+        double raw = ALPHA * REGISTERS * REGISTERS / sum;
+        // 64-bit hashes do not collide at these cardinalities, so only the small-range correction applies
+        if (raw <= 2.5 * REGISTERS && zeros > 0) {
+            return Math.round(REGISTERS * Math.log((double) REGISTERS / zeros));
+        }
+        return Math.round(raw);
+    }
+
+    byte[] toBytes() {
+        if (registers == null) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(4 + sparseSize * 3);
+            out.write(FORMAT_SPARSE);
+            out.write(PRECISION);
+            writeVarint(out, sparseSize);
+            int previous = 0;
+            for (int i = 0; i < sparseSize; i++) {
+                int index = sparse[i] >>> 8;
+                writeVarint(out, index - previous);
+                out.write(sparse[i] & 0xff);
+                previous = index;
+            }
+            return out.toByteArray();
+        }
+        byte[] bytes = new byte[2 + PACKED_BYTES];
+        bytes[0] = FORMAT_DENSE;
+        bytes[1] = PRECISION;
+        // four 6-bit registers per three bytes
+        for (int i = 0, b = 2; i < REGISTERS; i += 4, b += 3) {
+            int packed = registers[i] << 18 | registers[i + 1] << 12 | registers[i + 2] << 6 | registers[i + 3];
+            bytes[b] = (byte) (packed >>> 16);
+            bytes[b + 1] = (byte) (packed >>> 8);
+            bytes[b + 2] = (byte) packed;
+        }
+        return bytes;
+    }
+
+    /**
+     * Throws IllegalArgumentException for bytes not written by toBytes at this precision
+     */
+    static HyperLogLog fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length < 2 || bytes[1] != PRECISION) {
+            throw new IllegalArgumentException("not a HyperLogLog sketch of precision " + PRECISION);
+        }
+        HyperLogLog hll = new HyperLogLog();
+        if (bytes[0] == FORMAT_DENSE) {
+            if (bytes.length != 2 + PACKED_BYTES) {
+                throw new IllegalArgumentException("dense sketch of " + bytes.length + " bytes");
+            }
+            hll.registers = new byte[REGISTERS];
+            hll.sparse = null;
+            for (int i = 0, b = 2; i < REGISTERS; i += 4, b += 3) {
+                int packed = (bytes[b] & 0xff) << 16 | (bytes[b + 1] & 0xff) << 8 | (bytes[b + 2] & 0xff);
+                hll.registers[i] = (byte) (packed >>> 18);
+                hll.registers[i + 1] = (byte) (packed >>> 12 & 0x3f);
+                hll.registers[i + 2] = (byte) (packed >>> 6 & 0x3f);
+                hll.registers[i + 3] = (byte) (packed & 0x3f);
+            }
+            return hll;
+        }
+        if (bytes[0] != FORMAT_SPARSE) {
+            throw new IllegalArgumentException("unknown sketch format " + bytes[0]);
+        }
+        int[] position = {2};
+        int count = readVarint(bytes, position);
+        int index = 0;
+        for (int i = 0; i < count; i++) {
+            index += readVarint(bytes, position);
+            if (index >= REGISTERS || position[0] >= bytes.length) {
+                throw new IllegalArgumentException("truncated or corrupt sparse sketch");
+            }
+            hll.offer(index, bytes[position[0]++]);
+        }
+        return hll;
+    }
+
+    private void offer(int index, int rank) {
+        if (registers != null) {
+            if (rank > registers[index]) registers[index] = (byte) rank;
+            return;
+        }
+        int at = Arrays.binarySearch(sparse, 0, sparseSize, index << 8);
+        if (at < 0) at = -at - 1;
+        if (at < sparseSize && sparse[at] >>> 8 == index) {
+            if (rank > (sparse[at] & 0xff)) sparse[at] = index << 8 | rank;
+            return;
+        }
+        if (sparseSize == SPARSE_LIMIT) {
+            toDense();
+            offer(index, rank);
+            return;
+        }
+        if (sparseSize == sparse.length) sparse = Arrays.copyOf(sparse, sparseSize * 2);
+        System.arraycopy(sparse, at, sparse, at + 1, sparseSize - at);
+        sparse[at] = index << 8 | rank;
+        sparseSize++;
+    }
+
+    private void toDense() {
+        registers = new byte[REGISTERS];
+        for (int i = 0; i < sparseSize; i++) {
+            registers[sparse[i] >>> 8] = (byte) (sparse[i] & 0xff);
+        }
+        sparse = null;
+        sparseSize = 0;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] bytes, int[] position) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (position[0] >= bytes.length) break;
+            byte b = bytes[position[0]++];
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IllegalArgumentException("truncated or corrupt sparse sketch");
+    }
+}
@@ -0,0 +1,85 @@
+package com.learnit.analytics.service;
+
+import com.learnit.analytics.entity.ScoringWeights;
+import com.learnit.analytics.repository.AggregateBatchRepository;
+import com.learnit.analytics.repository.ScoringWeightsRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+
+/**
+ * One-shot rescore when the configured weights differ from the ones the stored scores were
+ * computed with (also on the first start after engagement_score was added). Runs in the
+ * background in id-range chunks, one short transaction each; aggregate updates meanwhile
+ * already score with the new weights, so the result is consistent when the job ends.
+ */
+@Component
+public class ScoreRescoreJob {
+
+    private static final Logger log = LoggerFactory.getLogger(ScoreRescoreJob.class);
+
+    private final ScoringWeightsRepository weightsRepo;
+    private final AggregateBatchRepository batchRepo;
+    private final EngagementScorer scorer;
+    private final TopThreadsCache topThreads;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${analytics.score.rescore-chunk-size:10000}")
+    private long chunkSize = 10000;
+
+    public ScoreRescoreJob(ScoringWeightsRepository weightsRepo, AggregateBatchRepository batchRepo,
+                           EngagementScorer scorer, TopThreadsCache topThreads,
+                           TransactionTemplate transactionTemplate) {
+        this.weightsRepo = weightsRepo;
+        this.batchRepo = batchRepo;
+        this.scorer = scorer;
+        this.topThreads = topThreads;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        Thread worker = new Thread(this::rescoreIfWeightsChanged, "score-rescore");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Returns the number of aggregates rescored (0 when the weights did not change)
+     */
+    int rescoreIfWeightsChanged() {
+        try {
+            ScoringWeights applied = weightsRepo.findById(ScoringWeights.SINGLETON_ID).orElse(null);
+            if (applied != null && applied.matches(scorer.getViewsWeight(), scorer.getCommentsWeight(), scorer.getVoteWeight())) {
+                return 0;
+            }
+            long started = System.nanoTime();
+            int rescored = 0;
+            long[] range = batchRepo.threadIdRange();
+            if (range != null) {
+                for (long after = range[0] - 1; after < range[1]; after += chunkSize) {
+                    long from = after;
+                    Integer updated = transactionTemplate.execute(status -> batchRepo.rescore(from, from + chunkSize));
+                    rescored += updated == null ? 0 : updated;
+                }
+            }
+            weightsRepo.save(new ScoringWeights(scorer.getViewsWeight(), scorer.getCommentsWeight(),
+                scorer.getVoteWeight(), Instant.now()));
+            topThreads.invalidateAll();
+            log.info("Rescored {} thread aggregates with weights views={} comments={} votes={} in {} ms", rescored,
+                scorer.getViewsWeight(), scorer.getCommentsWeight(), scorer.getVoteWeight(),
+                (System.nanoTime() - started) / 1_000_000);
+            return rescored;
+        } catch (RuntimeException e) {
+            // scores stay on the old weights until the next start
+            log.error("Engagement score rescore failed", e);
+            return 0;
+        }
+    }
+}
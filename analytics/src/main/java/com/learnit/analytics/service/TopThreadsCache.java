@@ -0,0 +1,154 @@
+package com.learnit.analytics.service;
+
+import com.learnit.analytics.entity.ThreadAggregate;
+import com.learnit.analytics.repository.ThreadAggregateRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-course top threads by engagement score, kept in memory and updated incrementally.
+ *
+ * Each course holds at most `capacity` threads, loaded on first read from the
+ * (course_id, engagement_score DESC) index and then updated from every committed aggregate
+ * change, so reads are O(K) without touching the database. A course is reloaded when the list
+ * can no longer be trusted: a member's score dropped while the list was full (a thread outside
+ * it may now rank higher), or the weights were rescored.
+ */
+@Component
+public class TopThreadsCache {
+
+    private static final int IDS_PER_QUERY = 1000;
+
+    private static final Comparator<ThreadAggregate> BY_SCORE = Comparator
+        .comparingLong((ThreadAggregate a) -> a.getEngagementScore() == null ? 0 : a.getEngagementScore()).reversed()
+        .thenComparing(ThreadAggregate::getThreadId);
+
+    private final ThreadAggregateRepository repo;
+    private final ConcurrentHashMap<Long, CourseTop> courses = new ConcurrentHashMap<>();
+
+    @Value("${analytics.top-threads.capacity:100}")
+    private int capacity = 100;
+
+    public TopThreadsCache(ThreadAggregateRepository repo) {
+        this.repo = repo;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Top `limit` threads of a course (limit <= capacity), highest score first
+     */
+    public List<ThreadAggregate> top(Long courseId, int limit) {
+        CourseTop top = courses.get(courseId);
+        if (top == null || top.stale) {
+            // loading inside compute orders it against offers for the same course
+            top = courses.compute(courseId, (id, current) ->
+                current != null && !current.stale ? current : load(id));
+        }
+        return top.first(limit);
+    }
+
+    /**
+     * Re-read these threads and offer them once the current transaction commits
+     * (immediately without one). Call after changing their aggregates.
+     */
+    public void refreshAfterCommit(Collection<Long> threadIds) {
+        if (courses.isEmpty() || threadIds.isEmpty()) return;
+        List<Long> ids = new ArrayList<>(threadIds);
+        List<ThreadAggregate> rows = new ArrayList<>(ids.size());
+        for (int from = 0; from < ids.size(); from += IDS_PER_QUERY) {
+            rows.addAll(repo.findAllById(ids.subList(from, Math.min(from + IDS_PER_QUERY, ids.size()))));
+        }
+        offerAfterCommit(rows);
+    }
+
+    public void offerAfterCommit(Collection<ThreadAggregate> rows) {
+        if (courses.isEmpty() || rows.isEmpty()) return;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            List<ThreadAggregate> committed = List.copyOf(rows);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    offer(committed);
+                }
+            });
+        } else {
+            offer(rows);
+        }
+    }
+
+    void offer(Collection<ThreadAggregate> rows) {
+        for (ThreadAggregate row : rows) {
+            if (row.getCourseId() == null) continue;
+            courses.computeIfPresent(row.getCourseId(), (id, top) -> {
+                top.offer(row);
+                return top;
+            });
+        }
+    }
+
+    /**
+     * Drop every course; they reload on their next read
+     */
+    public void invalidateAll() {
+        courses.clear();
+    }
+
+    private CourseTop load(Long courseId) {
+        CourseTop top = new CourseTop(capacity);
+        repo.findTopByCourse(courseId, PageRequest.of(0, capacity)).forEach(top::offer);
+        return top;
+    }
+
+    private static final class CourseTop {
+        private final int capacity;
+        private final TreeSet<ThreadAggregate> ordered = new TreeSet<>(BY_SCORE);
+        private final Map<Long, ThreadAggregate> byThread = new HashMap<>();
+        private volatile boolean stale;
+
+        CourseTop(int capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized void offer(ThreadAggregate row) {
+            ThreadAggregate previous = byThread.remove(row.getThreadId());
+            if (previous != null) {
+                ordered.remove(previous);
+                if (ordered.size() + 1 >= capacity && BY_SCORE.compare(row, previous) > 0) {
+                    // dropped while full: a thread outside the list may outrank it now
+                    stale = true;
+                }
+            }
+            if (ordered.size() < capacity || BY_SCORE.compare(row, ordered.last()) < 0) {
+                ordered.add(row);
+                byThread.put(row.getThreadId(), row);
+                if (ordered.size() > capacity) {
+                    byThread.remove(ordered.pollLast().getThreadId());
+                }
+            }
+        }
+
+        synchronized List<ThreadAggregate> first(int limit) {
+            List<ThreadAggregate> result = new ArrayList<>(Math.min(limit, ordered.size()));
+            for (ThreadAggregate a : ordered) {
+                if (result.size() >= limit) break;
+                result.add(a);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.learnit.analytics.service;
+
+import com.learnit.analytics.dto.EventEnvelope;
+import com.learnit.analytics.dto.UniqueCounts;
+import com.learnit.analytics.repository.ActivityRollupRepository.Resolution;
+import com.learnit.analytics.repository.UniqueSketchRepository;
+import com.learnit.analytics.repository.UniqueSketchRepository.Fragment;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Approximate distinct viewers and participants (commenters) per thread and per course, from
+ * HyperLogLog sketches of their user ids per UTC day (see {@link HyperLogLog} for the error bound).
+ *
+ * Every committed batch of events inserts one sketch fragment per (thread or course, kind, day) it
+ * touched, in the same transaction as the aggregates. Every compact-interval-ms the fragments of
+ * each day are merged into one row; merging is idempotent, so a day receiving late events is simply
+ * merged again. Counts over a range merge the day sketches inside it, so a user active on several
+ * days counts once. thread_viewed events carry their window's viewers as userIds (or one userId);
+ * comment_added carries the commenter as userId. Events without a courseId only count for their thread.
+ */
+@Component
+public class UniqueCounters {
+
+    private static final Logger log = LoggerFactory.getLogger(UniqueCounters.class);
+
+    static final String THREAD = "thread";
+    static final String COURSE = "course";
+    static final String VIEWERS = "viewers";
+    static final String PARTICIPANTS = "participants";
+
+    // keys merged per query of the compaction loop
+    private static final int COMPACT_KEYS = 500;
+
+    private final UniqueSketchRepository repo;
+    private final TransactionTemplate transactionTemplate;
+    private final ScheduledExecutorService compactor;
+    private final Clock clock;
+
+    @Value("${analytics.uniques.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${analytics.uniques.compact-interval-ms:60000}")
+    private long compactIntervalMs = 60000;
+
+    @Value("${analytics.uniques.retention-days:1825}")
+    private long retentionDays = 1825;
+
+    @Autowired
+    public UniqueCounters(UniqueSketchRepository repo, TransactionTemplate transactionTemplate) {
+        this(repo, transactionTemplate, Clock.systemUTC());
+    }
+
+    UniqueCounters(UniqueSketchRepository repo, TransactionTemplate transactionTemplate, Clock clock) {
+        this.repo = repo;
+        this.transactionTemplate = transactionTemplate;
+        this.clock = clock;
+        this.compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "unique-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PostConstruct
+    void start() {
+        if (enabled) {
+            compactor.scheduleWithFixedDelay(this::compactQuietly, compactIntervalMs, compactIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        compactor.shutdownNow();
+    }
+
+    /**
+     * Collects the user ids of the events received at receivedAt (see {@link #record})
+     */
+    public Batch batch(Instant receivedAt) {
+        return new Batch(receivedAt);
+    }
+
+    /**
+     * Insert a batch's sketches; call inside the transaction writing its aggregates
+     */
+    public void record(Batch batch) {
+        if (!enabled || batch.sketches.isEmpty()) return;
+        List<Fragment> fragments = new ArrayList<>(batch.sketches.size());
+        batch.sketches.forEach((k, hll) -> fragments.add(new Fragment(k.scope(), k.scopeId(), k.kind(), k.day(), hll.toBytes())));
+        repo.insert(fragments);
+    }
+
+    /**
+     * Merge every day stored in more than one fragment, then apply retention. Returns the days merged.
+     */
+    synchronized int compact() {
+        int merged = 0;
+        List<Fragment> keys;
+        do {
+            keys = repo.findFragmentedKeys(COMPACT_KEYS);
+            for (Fragment key : keys) {
+                transactionTemplate.executeWithoutResult(status -> {
+                    List<Fragment> fragments = repo.findFragments(key);
+                    if (fragments.size() < 2) return;
+                    HyperLogLog hll = new HyperLogLog();
+                    for (Fragment f : fragments) hll.merge(HyperLogLog.fromBytes(f.sketch()));
+                    repo.replace(fragments, new Fragment(key.scope(), key.scopeId(), key.kind(), key.bucketStart(), hll.toBytes()));
+                });
+                merged++;
+            }
+        } while (keys.size() == COMPACT_KEYS);
+        repo.deleteBefore(Resolution.DAY.floor(clock.instant().minus(Duration.ofDays(retentionDays))));
+        if (merged > 0) log.debug("Merged the sketch fragments of {} days", merged);
+        return merged;
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            log.warn("Unique sketch compaction failed, retrying next run: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Distinct viewers and participants of a course (courseId) or one thread (threadId) over the
+     * UTC days from the one holding from up to to. Throws IllegalArgumentException for invalid ranges.
+     */
+    public UniqueCounts counts(Long courseId, Long threadId, Instant from, Instant to) {
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+        Instant start = Resolution.DAY.floor(from);
+        HyperLogLog viewers = new HyperLogLog();
+        HyperLogLog participants = new HyperLogLog();
+        List<Fragment> fragments = courseId != null
+            ? repo.find(COURSE, courseId, start, to)
+            : repo.find(THREAD, threadId, start, to);
+        for (Fragment f : fragments) {
+            (VIEWERS.equals(f.kind()) ? viewers : participants).merge(HyperLogLog.fromBytes(f.sketch()));
+        }
+        return new UniqueCounts(courseId, threadId, start, to, viewers.estimate(), participants.estimate(),
+            HyperLogLog.RELATIVE_STANDARD_ERROR);
+    }
+
+    /**
+     * Counts of one thread over everything retained
+     */
+    public UniqueCounts threadTotals(Long threadId) {
+        return counts(null, threadId, Instant.EPOCH, clock.instant().plus(Resolution.DAY.size()));
+    }
+
+    /**
+     * Sketches of a set of events, keyed by (scope, id, kind, day)
+     */
+    public static final class Batch {
+
+        private final Instant receivedAt;
+        private final Map<Key, HyperLogLog> sketches = new HashMap<>();
+
+        private Batch(Instant receivedAt) {
+            this.receivedAt = receivedAt;
+        }
+
+        /**
+         * Missing or future occurredAt counts on the day of receivedAt
+         */
+        public void add(EventEnvelope event) {
+            Map<String, Object> p = event.getPayload();
+            if (p == null || !(p.get("threadId") instanceof Number threadId)) return;
+            String kind;
+            if ("thread_viewed".equals(event.getEventType())) {
+                kind = VIEWERS;
+            } else if ("comment_added".equals(event.getEventType())) {
+                kind = PARTICIPANTS;
+            } else {
+                return;
+            }
+            Instant at = event.getOccurredAt() == null || event.getOccurredAt().isAfter(receivedAt)
+                ? receivedAt : event.getOccurredAt();
+            Instant day = Resolution.DAY.floor(at);
+            Number courseId = p.get("courseId") instanceof Number n ? n : null;
+            for (String userId : userIds(p)) {
+                sketch(new Key(THREAD, threadId.longValue(), kind, day)).add(userId);
+                if (courseId != null) sketch(new Key(COURSE, courseId.longValue(), kind, day)).add(userId);
+            }
+        }
+
+        public boolean isEmpty() {
+            return sketches.isEmpty();
+        }
+
+        private HyperLogLog sketch(Key key) {
+            return sketches.computeIfAbsent(key, k -> new HyperLogLog());
+        }
+
+        // numeric and string ids of the same user hash alike
+        private static List<String> userIds(Map<String, Object> p) {
+            List<String> ids = new ArrayList<>();
+            if (p.get("userIds") instanceof Collection<?> userIds) {
+                for (Object id : userIds) {
+                    if (id != null) ids.add(String.valueOf(id));
+                }
+            }
+            if (p.get("userId") != null) ids.add(String.valueOf(p.get("userId")));
+            return ids;
+        }
+
+        private record Key(String scope, long scopeId, String kind, Instant day) {}
+    }
+}
@@ -0,0 +1,95 @@
+package com.learnit.analytics;
+
+import com.learnit.analytics.entity.ThreadAggregate;
+import com.learnit.analytics.ingest.IngestQueue;
+import com.learnit.analytics.service.AnalyticsService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doReturn;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {"analytics.security.api-key=test-key", "analytics.ingest.stream.chunk-events=2"})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class IngestStreamIntegrationTest {
+
+    private static final String API_KEY_HEADER = "X-API-Key";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private AnalyticsService analyticsService;
+
+    @SpyBean
+    private IngestQueue ingestQueue;
+
+    @Test
+    void streamedEventsAreQueuedAndInvalidLinesReported() throws Exception {
+        String body = view("stream-1") + "\n" + view("stream-2") + "\n\n"
+            + "{\"eventType\": \"thread_viewed\", \"eventId\": \"stream-3\"}\n"
+            + "{\"eventType\": \"thread_vie\n"
+            + view("stream-4") + "\n" + view("stream-5");
+
+        mockMvc.perform(post("/api/analytics/ingest/stream")
+                .header(API_KEY_HEADER, "test-key")
+                .contentType("application/x-ndjson")
+                .content(body))
+            .andExpect(status().isAccepted())
+            .andExpect(jsonPath("$.lines").value(7))
+            .andExpect(jsonPath("$.accepted").value(4))
+            .andExpect(jsonPath("$.invalid").value(2))
+            .andExpect(jsonPath("$.errors[0]").value("line 4: occurredAt is required"));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        ThreadAggregate aggregate;
+        while ((aggregate = analyticsService.getThreadAggregate(9501L)) == null || aggregate.getViews() < 4) {
+            assertTrue(System.nanoTime() < deadline, "streamed events were not applied");
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    void fullQueueAnswers429WithRetryAfter() throws Exception {
+        doReturn(false).when(ingestQueue).offer(anyList(), anyLong());
+        try {
+            mockMvc.perform(post("/api/analytics/ingest")
+                    .header(API_KEY_HEADER, "test-key")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(view("full-1")))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "1"));
+
+            mockMvc.perform(post("/api/analytics/ingest/stream")
+                    .header(API_KEY_HEADER, "test-key")
+                    .contentType("application/x-ndjson")
+                    .content(view("full-2") + "\n" + view("full-3") + "\n" + view("full-4")))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(jsonPath("$.accepted").value(0))
+                .andExpect(jsonPath("$.resumeAtLine").value(1));
+        } finally {
+            doCallRealMethod().when(ingestQueue).offer(anyList(), anyLong());
+        }
+    }
+
+    private static String view(String eventId) {
+        return "{\"eventType\": \"thread_viewed\", \"eventId\": \"" + eventId + "\", \"occurredAt\": \"2026-10-16T12:00:00Z\", "
+            + "\"payload\": {\"threadId\": 9501, \"viewCount\": 1}}";
+    }
+}
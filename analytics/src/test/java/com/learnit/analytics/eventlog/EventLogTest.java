@@ -0,0 +1,181 @@
+package com.learnit.analytics.eventlog;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.learnit.analytics.dto.EventEnvelope;
+
+class EventLogTest {
+
+    private static final Instant START = Instant.parse("2026-10-16T12:00:00Z");
+
+    @TempDir
+    Path dir;
+
+    private final MutableClock clock = new MutableClock();
+    private EventLog eventLog;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (eventLog != null) eventLog.close();
+    }
+
+    @Test
+    void appendedEventsAreReadBackInOrderAcrossSegments() throws IOException {
+        eventLog = open();
+        for (int batch = 0; batch < 20; batch++) {
+            List<EventEnvelope> events = new ArrayList<>();
+            for (int i = 0; i < 10; i++) events.add(event("e-" + (batch * 10 + i)));
+            assertEquals(batch * 10 + 9, eventLog.append(events));
+            clock.advance(1000);
+        }
+        assertTrue(segmentFiles() > 3);
+
+        EventLog.Reader reader = eventLog.reader(0);
+        for (int i = 0; i < 200; i++) {
+            EventLog.Entry entry = reader.next();
+            assertEquals(i, entry.offset());
+            assertEquals("e-" + i, entry.event().getEventId());
+            assertEquals(i, ((Number) entry.event().getPayload().get("threadId")).intValue());
+        }
+        assertNull(reader.next());
+
+        // tailing: the same reader continues with later appends
+        eventLog.append(List.of(event("e-200")));
+        assertEquals("e-200", reader.next().event().getEventId());
+
+        assertEquals(137, eventLog.reader(137).next().offset());
+        // batch 7 was appended 7 s after the start
+        assertEquals(70, eventLog.reader(START.plusSeconds(7)).next().offset());
+    }
+
+    @Test
+    void reopenCutsOffATornTailAndContinuesAfterTheLastValidRecord() throws IOException {
+        eventLog = open();
+        for (int i = 0; i < 5; i++) eventLog.append(List.of(event("e-" + i)));
+        eventLog.close();
+
+        // a crash in the middle of writing a sixth record
+        Path segment = dir.resolve(LogSegment.fileName(0, ".log"));
+        long validEnd = Files.size(segment);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(validEnd);
+            file.writeInt(64);
+            file.writeInt(12345);
+            file.writeLong(5);
+        }
+
+        eventLog = open();
+        assertEquals(validEnd, Files.size(segment));
+        assertEquals(5, eventLog.nextOffset());
+        assertEquals(5, eventLog.append(List.of(event("e-5"))));
+        EventLog.Reader reader = eventLog.reader(4);
+        assertEquals("e-4", reader.next().event().getEventId());
+        assertEquals("e-5", reader.next().event().getEventId());
+    }
+
+    @Test
+    void corruptRecordFailsItsCrcCheck() throws IOException {
+        eventLog = open();
+        for (int i = 0; i < 12; i++) eventLog.append(List.of(event("e-" + i)));
+        eventLog.close();
+
+        Path segment = dir.resolve(LogSegment.fileName(0, ".log"));
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            // first record's payload; recovery on open starts from the last index entry, after it
+            file.seek(LogSegment.HEADER_BYTES + 4);
+            file.writeByte(file.readByte() ^ 0x5a);
+        }
+
+        eventLog = open();
+        EventLog.Reader reader = eventLog.reader(0);
+        assertThrows(IllegalStateException.class, reader::next);
+    }
+
+    @Test
+    void retentionDeletesSealedSegmentsOlderThanTheCutoff() throws IOException {
+        eventLog = open();
+        ReflectionTestUtils.setField(eventLog, "retentionHours", 1L);
+        eventLog.append(List.of(event("old")));
+        clock.advance(2 * 3600 * 1000L);
+        // segment-ms has passed: rolls before appending
+        eventLog.append(List.of(event("new")));
+
+        eventLog.expire();
+
+        assertEquals(1, eventLog.firstOffset());
+        assertEquals("new", eventLog.reader(0).next().event().getEventId());
+    }
+
+    private EventLog open() throws IOException {
+        EventLog log = new EventLog(new ObjectMapper().registerModule(new JavaTimeModule()), clock);
+        ReflectionTestUtils.setField(log, "dir", dir.toString());
+        ReflectionTestUtils.setField(log, "segmentBytes", 2048);
+        ReflectionTestUtils.setField(log, "segmentMs", 3600 * 1000L);
+        ReflectionTestUtils.setField(log, "indexIntervalBytes", 256);
+        ReflectionTestUtils.setField(log, "flushIntervalMs", 60_000L);
+        log.open();
+        return log;
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.toString().endsWith(".log")).count();
+        }
+    }
+
+    private EventEnvelope event(String eventId) {
+        EventEnvelope envelope = new EventEnvelope("thread_viewed", eventId, START, 1, "test-service");
+        envelope.addPayload("threadId", Integer.parseInt(eventId.replaceAll("\\D", "0")) % 1000);
+        envelope.addPayload("viewCount", 1);
+        return envelope;
+    }
+
+    private static final class MutableClock extends Clock {
+        private long millis = START.toEpochMilli();
+
+        void advance(long delta) {
+            millis += delta;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+}
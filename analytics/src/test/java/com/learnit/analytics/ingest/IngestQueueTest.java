@@ -0,0 +1,174 @@
+package com.learnit.analytics.ingest;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import static org.mockito.ArgumentMatchers.anyList;
+import org.mockito.Mock;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.learnit.analytics.dto.EventEnvelope;
+import com.learnit.analytics.service.AnalyticsService;
+import com.learnit.analytics.service.DeltaAccumulator;
+
+@ExtendWith(MockitoExtension.class)
+class IngestQueueTest {
+
+    @Mock
+    private AnalyticsService analyticsService;
+
+    @Mock
+    private DeltaAccumulator deltaAccumulator;
+
+    @TempDir
+    Path dir;
+
+    // every event id the service committed, in order
+    private final List<String> applied = new ArrayList<>();
+    private final List<IngestQueue> queues = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (IngestQueue queue : queues) queue.stop();
+    }
+
+    @Test
+    void fullQueueRejectsWholeRequestsUntilWorkersMakeRoom() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        recordApplied(release);
+        IngestQueue queue = open(4, null);
+
+        // the worker takes the first request and blocks in the service; the next fills the queue
+        assertTrue(queue.offer(events("a", 1), 0));
+        awaitInFlight(queue, 1);
+        assertTrue(queue.offer(events("b", 3), 0));
+        assertFalse(queue.offer(events("c", 2), 0));
+        assertTrue(queue.offer(events("d", 1), 0));
+        assertThrows(IllegalArgumentException.class, () -> queue.offer(events("e", 5), 0));
+
+        release.countDown();
+        awaitCommitted(queue, 5);
+        assertEquals(List.of("a-0", "b-0", "b-1", "b-2", "d-0"), applied);
+        Map<String, Object> stats = queue.stats();
+        assertEquals(5L, stats.get("accepted"));
+        assertEquals(2L, stats.get("rejected"));
+        assertEquals(0, stats.get("depth"));
+        assertEquals(5L, ((Map<?, ?>) stats.get("latencyMs")).get("count"));
+    }
+
+    @Test
+    void transientFailuresAreRetriedAndEventsThatCannotBeAppliedAreDropped() throws Exception {
+        int[] calls = {0};
+        doAnswer(inv -> {
+            List<EventEnvelope> batch = inv.getArgument(0);
+            if (calls[0]++ == 0) throw new DataAccessResourceFailureException("connection refused");
+            if (batch.stream().anyMatch(e -> e.getEventId().equals("p-1"))) throw new ClassCastException("threadId");
+            batch.forEach(e -> applied.add(e.getEventId()));
+            return batch.size();
+        }).when(analyticsService).processBatch(anyList());
+        IngestQueue queue = open(100, null);
+
+        assertTrue(queue.offer(events("p", 3), 0));
+
+        awaitCommitted(queue, 2);
+        assertEquals(List.of("p-0", "p-2"), applied);
+        Map<String, Object> stats = queue.stats();
+        assertEquals(1L, stats.get("failed"));
+        assertEquals(1L, stats.get("retries"));
+        assertEquals(0, stats.get("inFlight"));
+    }
+
+    @Test
+    void acknowledgedEventsSurviveARestartThroughTheWriteAheadFile() throws Exception {
+        CountDownLatch never = new CountDownLatch(1);
+        recordApplied(never);
+        IngestQueue first = open(100, dir);
+        assertTrue(first.offer(events("w", 3), 0));
+        assertTrue(first.offer(events("x", 2), 0));
+        awaitInFlight(first, 3);
+        // a crash: nothing was committed
+        ReflectionTestUtils.setField(first, "shutdownTimeoutMs", 0L);
+        first.stop();
+        queues.remove(first);
+
+        applied.clear();
+        never.countDown();
+        IngestQueue second = open(2, dir);
+
+        awaitCommitted(second, 5);
+        assertEquals(List.of("w-0", "w-1", "w-2", "x-0", "x-1"), applied);
+        assertEquals(5L, second.stats().get("recovered"));
+        assertEquals(0L, ((Map<?, ?>) second.stats().get("wal")).get("uncommittedEvents"));
+    }
+
+    private void recordApplied(CountDownLatch release) {
+        lenient().doAnswer(inv -> {
+            release.await();
+            List<EventEnvelope> batch = inv.getArgument(0);
+            synchronized (applied) {
+                batch.forEach(e -> applied.add(e.getEventId()));
+            }
+            return batch.size();
+        }).when(analyticsService).processBatch(anyList());
+    }
+
+    private IngestQueue open(int capacity, Path walDir) throws IOException {
+        IngestQueue queue = new IngestQueue(analyticsService, deltaAccumulator, new ObjectMapper().registerModule(new JavaTimeModule()));
+        ReflectionTestUtils.setField(queue, "capacity", capacity);
+        ReflectionTestUtils.setField(queue, "workerCount", 1);
+        ReflectionTestUtils.setField(queue, "shutdownTimeoutMs", 1000L);
+        if (walDir != null) {
+            ReflectionTestUtils.setField(queue, "walDir", walDir.toString());
+            ReflectionTestUtils.setField(queue, "walSegmentBytes", 256);
+        }
+        queue.start();
+        queues.add(queue);
+        return queue;
+    }
+
+    private static void awaitInFlight(IngestQueue queue, int events) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((int) queue.stats().get("inFlight") < events) {
+            assertTrue(System.nanoTime() < deadline, "worker did not take the events");
+            Thread.sleep(5);
+        }
+    }
+
+    private static void awaitCommitted(IngestQueue queue, long events) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while ((long) queue.stats().get("committed") < events) {
+            assertTrue(System.nanoTime() < deadline, "events were not committed: " + queue.stats());
+            Thread.sleep(5);
+        }
+    }
+
+    private static List<EventEnvelope> events(String prefix, int count) {
+        List<EventEnvelope> events = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            EventEnvelope event = new EventEnvelope("thread_viewed", prefix + "-" + i, Instant.parse("2026-10-16T12:00:00Z"), 1, "test");
+            event.addPayload("threadId", 1);
+            events.add(event);
+        }
+        return events;
+    }
+}
@@ -0,0 +1,83 @@
+package com.learnit.analytics.ingest;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.learnit.analytics.dto.EventEnvelope;
+
+class IngestWalTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void completedFilesAreDeletedAndTheRestIsReplayedUpToATornTail() throws IOException {
+        List<Long> seqs = new ArrayList<>();
+        try (IngestWal wal = new IngestWal(dir, 512, true, MAPPER)) {
+            assertEquals(List.of(), wal.open());
+            for (int i = 0; i < 20; i++) {
+                seqs.add(wal.append(List.of(event("e-" + i))));
+            }
+            assertTrue(walFiles() > 3);
+            // the first ten commit, in any order
+            for (int i = 9; i >= 0; i--) wal.complete(seqs.get(i));
+            assertThrows(IllegalStateException.class, () -> new IngestWal(dir, 512, true, MAPPER).open());
+        }
+        // a crash in the middle of the last record
+        Path last;
+        try (Stream<Path> files = Files.list(dir)) {
+            last = files.filter(p -> p.toString().endsWith(".wal")).max((a, b) -> Long.compare(seq(a), seq(b))).orElseThrow();
+        }
+        try (RandomAccessFile file = new RandomAccessFile(last.toFile(), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        try (IngestWal wal = new IngestWal(dir, 512, true, MAPPER)) {
+            List<IngestWal.Recovered> recovered = wal.open();
+            // completed events sharing a file with uncommitted ones are replayed too (and deduplicated)
+            List<String> ids = recovered.stream().map(r -> r.event().getEventId()).toList();
+            assertTrue(recovered.size() < 19, "fully completed files are gone: " + ids);
+            assertEquals("e-18", ids.get(ids.size() - 1));
+            int first = ids.indexOf("e-10");
+            assertEquals(seqs.get(10), recovered.get(first).seq());
+            assertEquals(9, ids.size() - first);
+            // new appends continue after the recovered sequence numbers
+            assertEquals(seqs.get(19), wal.append(List.of(event("e-19"))));
+            for (IngestWal.Recovered r : recovered) wal.complete(r.seq());
+            assertEquals(1L, wal.stats().get("uncommittedEvents"));
+        }
+    }
+
+    private long walFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.toString().endsWith(".wal")).count();
+        }
+    }
+
+    private static long seq(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - 4));
+    }
+
+    private static EventEnvelope event(String eventId) {
+        EventEnvelope event = new EventEnvelope("comment_added", eventId, Instant.parse("2026-10-16T12:00:00Z"), 1, "test");
+        event.addPayload("threadId", 7);
+        return event;
+    }
+}
@@ -0,0 +1,195 @@
+package com.learnit.analytics.kafka;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnit.analytics.eventlog.EventLog;
+import com.learnit.analytics.service.AnalyticsService;
+import com.learnit.analytics.service.DeltaAccumulator;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Throughput of the record listener vs the batch listener (with and without the aggregation
+ * window), end to end from an embedded broker into the (H2) database, then of replaying the
+ * event log they all appended to. Opt-in:
+ * mvn test -Dtest=KafkaConsumerBenchmarkTest -Danalytics.benchmark=true [-Danalytics.benchmark.events=20000]
+ * [-Danalytics.benchmark.poll-records=500]
+ */
+@SpringBootTest(properties = "analytics.kafka.enabled=false")
+@ActiveProfiles("test")
+@EmbeddedKafka(partitions = 1, topics = KafkaConsumerBenchmarkTest.TOPIC)
+@EnabledIfSystemProperty(named = "analytics.benchmark", matches = "true")
+class KafkaConsumerBenchmarkTest {
+
+    static final String TOPIC = "benchmark.events";
+    private static final int THREADS = 200;
+
+    @Autowired
+    private EmbeddedKafkaBroker broker;
+
+    @Autowired
+    private AnalyticsService analyticsService;
+
+    @Autowired
+    private EventDecoder eventDecoder;
+
+    @Autowired
+    private DeltaAccumulator deltaAccumulator;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EventLog eventLog;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void compareRecordAndBatchListeners() throws Exception {
+        int events = Integer.getInteger("analytics.benchmark.events", 20000);
+        produce(events);
+
+        AnalyticsKafkaConsumer recordConsumer = new AnalyticsKafkaConsumer(analyticsService, eventDecoder);
+        double recordRate = consume("benchmark-record", events,
+            batch -> batch.forEach(r -> recordConsumer.consumeEvent(r, () -> { })));
+        List<Map<String, Object>> recordResult = aggregates();
+
+        AnalyticsBatchKafkaConsumer batchConsumer =
+            new AnalyticsBatchKafkaConsumer(analyticsService, eventDecoder, deltaAccumulator);
+        clearTables();
+        ReflectionTestUtils.setField(deltaAccumulator, "enabled", false);
+        double batchRate;
+        try {
+            batchRate = consume("benchmark-batch", events, batch -> consumeBatch(batchConsumer, batch));
+        } finally {
+            ReflectionTestUtils.setField(deltaAccumulator, "enabled", true);
+        }
+        assertEquals(recordResult, aggregates(), "both listeners must produce the same aggregates");
+
+        // includes draining the window, so the rate counts committed events only
+        clearTables();
+        double windowRate = consume("benchmark-window", events, batch -> consumeBatch(batchConsumer, batch));
+
+        System.out.printf("record listener: %,.0f events/s%nbatch listener:  %,.0f events/s (%.1fx)%n" +
+                "batch + window:  %,.0f events/s (%.1fx)%n",
+            recordRate, batchRate, batchRate / recordRate, windowRate, windowRate / recordRate);
+        assertEquals(recordResult, aggregates(), "the aggregation window must produce the same aggregates");
+
+        // each run appended every event to the event log; replay them all, decoding each envelope
+        EventLog.Reader reader = eventLog.reader(eventLog.firstOffset());
+        long start = System.nanoTime();
+        int replayed = 0;
+        for (EventLog.Entry entry = reader.next(); entry != null; entry = reader.next()) {
+            if (entry.event().getEventId() != null) replayed++;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("event log replay: %,.0f events/s (%,d events, %.1f MiB)%n",
+            replayed / seconds, replayed, ((Number) eventLog.stats().get("bytes")).longValue() / 1048576.0);
+        assertEquals(3L * events, replayed);
+    }
+
+    private static void consumeBatch(AnalyticsBatchKafkaConsumer consumer, List<ConsumerRecord<String, byte[]>> batch) {
+        try {
+            consumer.consumeBatch(batch, () -> { });
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void produce(int events) throws Exception {
+        Map<String, Object> props = Map.of(
+            ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString(),
+            ProducerConfig.LINGER_MS_CONFIG, 5,
+            ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class,
+            ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        try (KafkaProducer<String, byte[]> producer = new KafkaProducer<>(props)) {
+            for (int i = 0; i < events; i++) {
+                long threadId = i % THREADS;
+                Map<String, Object> payload = switch (i % 3) {
+                    case 0 -> Map.of("threadId", threadId, "courseId", 1, "viewCount", 2);
+                    case 1 -> Map.of("threadId", threadId, "courseId", 1, "commentId", i);
+                    default -> Map.of("targetType", "THREAD", "targetId", threadId, "voteType", "UPVOTE");
+                };
+                String type = switch (i % 3) {
+                    case 0 -> "thread_viewed";
+                    case 1 -> "comment_added";
+                    default -> "vote_cast";
+                };
+                Map<String, Object> envelope = Map.of("eventType", type, "eventId", "bench-" + i,
+                    "occurredAt", Instant.now().toString(), "schemaVersion", 1, "payload", payload);
+                producer.send(new ProducerRecord<>(TOPIC, String.valueOf(threadId), objectMapper.writeValueAsBytes(envelope)));
+            }
+            producer.flush();
+        }
+    }
+
+    /**
+     * Poll like the listener container does and commit after each batch; returns events per second
+     */
+    private double consume(String groupId, int events, Consumer<List<ConsumerRecord<String, byte[]>>> listener) {
+        Map<String, Object> props = Map.of(
+            ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString(),
+            ConsumerConfig.GROUP_ID_CONFIG, groupId,
+            ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest",
+            ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false,
+            ConsumerConfig.MAX_POLL_RECORDS_CONFIG, Integer.getInteger("analytics.benchmark.poll-records", 500),
+            ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class,
+            ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        try (KafkaConsumer<String, byte[]> consumer = new KafkaConsumer<>(props)) {
+            consumer.subscribe(List.of(TOPIC));
+            int consumed = 0;
+            long start = 0;
+            while (consumed < events) {
+                ConsumerRecords<String, byte[]> records = consumer.poll(Duration.ofMillis(500));
+                if (records.isEmpty()) continue;
+                if (start == 0) start = System.nanoTime(); // exclude group join time
+                List<ConsumerRecord<String, byte[]>> batch = new ArrayList<>(records.count());
+                records.forEach(batch::add);
+                listener.accept(batch);
+                consumer.commitSync();
+                consumed += batch.size();
+            }
+            while (deltaAccumulator.pendingEvents() > 0) {
+                Thread.onSpinWait();
+            }
+            return events / ((System.nanoTime() - start) / 1e9);
+        }
+    }
+
+    private List<Map<String, Object>> aggregates() {
+        return jdbcTemplate.queryForList(
+            "SELECT thread_id, course_id, views, comments, upvotes, downvotes, engagement_score FROM thread_aggregate ORDER BY thread_id");
+    }
+
+    private void clearTables() {
+        jdbcTemplate.update("DELETE FROM thread_aggregate");
+        jdbcTemplate.update("DELETE FROM event_processed");
+    }
+}
@@ -0,0 +1,86 @@
+package com.learnit.analytics.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.learnit.analytics.dto.ActivityTimeseries;
+import com.learnit.analytics.dto.EventEnvelope;
+
+@SpringBootTest(properties = "analytics.rollup.compact-interval-ms=3600000")
+@ActiveProfiles("test")
+class ActivityRollupsTest {
+
+    private static final long COURSE = 9100;
+    private static final long THREAD = 9101;
+
+    @Autowired
+    private AnalyticsService analyticsService;
+
+    @Autowired
+    private ActivityRollups rollups;
+
+    @Test
+    void minuteBucketsCompactIntoHoursAndDays() {
+        Instant hour = Instant.now().truncatedTo(ChronoUnit.HOURS).minus(2, ChronoUnit.HOURS);
+        analyticsService.processBatch(List.of(
+            event("rollup-1", "thread_created", hour, Map.of("threadId", THREAD, "courseId", COURSE)),
+            event("rollup-2", "comment_added", hour.plusSeconds(30), Map.of("threadId", THREAD)),
+            event("rollup-3", "comment_added", hour.plusSeconds(90), Map.of("threadId", THREAD)),
+            event("rollup-4", "thread_viewed", hour.plus(61, ChronoUnit.MINUTES), Map.of("threadId", THREAD, "viewCount", 5)),
+            // outside the minute retention: not rolled up
+            event("rollup-5", "comment_added", hour.minus(3, ChronoUnit.DAYS), Map.of("threadId", THREAD))));
+
+        rollups.compact();
+
+        ActivityTimeseries minutes = rollups.timeseries(COURSE, null, hour, hour.plus(2, ChronoUnit.HOURS), Duration.ofMinutes(1));
+        assertEquals("minute", minutes.getResolution());
+        assertEquals(120, minutes.getPoints().size());
+        assertEquals(Map.of("thread_created", 1L, "comment_added", 1L), minutes.getPoints().get(0).getCounts());
+        assertEquals(Map.of("comment_added", 1L), minutes.getPoints().get(1).getCounts());
+        assertEquals(5L, minutes.getPoints().get(61).getTotal());
+
+        ActivityTimeseries hours = rollups.timeseries(null, THREAD, hour, hour.plus(2, ChronoUnit.HOURS), Duration.ofHours(1));
+        assertEquals("hour", hours.getResolution());
+        assertEquals(Map.of("thread_created", 1L, "comment_added", 2L), hours.getPoints().get(0).getCounts());
+        assertEquals(Map.of("thread_viewed", 5L), hours.getPoints().get(1).getCounts());
+
+        ActivityTimeseries days = rollups.timeseries(COURSE, null, hour.minus(1, ChronoUnit.DAYS), Instant.now(), Duration.ofDays(1));
+        assertEquals("day", days.getResolution());
+        assertEquals(8L, days.getPoints().stream().mapToLong(ActivityTimeseries.Point::getTotal).sum());
+
+        // compacting again recomputes instead of adding
+        analyticsService.processBatch(List.of(
+            event("rollup-6", "comment_added", hour.plusSeconds(100), Map.of("threadId", THREAD))));
+        rollups.compact();
+        rollups.compact();
+        hours = rollups.timeseries(COURSE, null, hour, hour.plus(1, ChronoUnit.HOURS), Duration.ofHours(1));
+        assertEquals(Map.of("thread_created", 1L, "comment_added", 3L), hours.getPoints().get(0).getCounts());
+    }
+
+    @Test
+    void rejectsStepsAndRangesTheRollupsCannotServe() {
+        Instant now = Instant.now();
+        assertThrows(IllegalArgumentException.class,
+            () -> rollups.timeseries(COURSE, null, now.minus(1, ChronoUnit.HOURS), now, Duration.ofSeconds(30)));
+        assertThrows(IllegalArgumentException.class,
+            () -> rollups.timeseries(COURSE, null, now.minus(7, ChronoUnit.DAYS), now, Duration.ofMinutes(15)));
+        assertThrows(IllegalArgumentException.class,
+            () -> rollups.timeseries(COURSE, null, now.minus(30, ChronoUnit.DAYS), now, Duration.ofMinutes(1)));
+    }
+
+    private EventEnvelope event(String eventId, String eventType, Instant occurredAt, Map<String, Object> payload) {
+        EventEnvelope envelope = new EventEnvelope(eventType, eventId, occurredAt, 1, "test-service");
+        payload.forEach(envelope::addPayload);
+        return envelope;
+    }
+}
@@ -1,11 +1,16 @@
 package com.learnit.analytics.service;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -13,15 +18,20 @@ import org.mockito.ArgumentCaptor;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import org.mockito.Mock;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import com.learnit.analytics.dto.EventEnvelope;
+import com.learnit.analytics.dto.ThreadAggregateDelta;
 import com.learnit.analytics.entity.EventProcessed;
 import com.learnit.analytics.entity.ThreadAggregate;
-import com.learnit.analytics.repository.EventProcessedRepository;
+import com.learnit.analytics.eventlog.EventLog;
+import com.learnit.analytics.repository.ActivityRollupRepository;
+import com.learnit.analytics.repository.UniqueSketchRepository;
+import com.learnit.analytics.repository.AggregateBatchRepository;
 import com.learnit.analytics.repository.ThreadAggregateRepository;
 
 @ExtendWith(MockitoExtension.class)
@@ -31,20 +41,45 @@ class AnalyticsServiceTest {
     private ThreadAggregateRepository threadRepo;
 
     @Mock
-    private EventProcessedRepository processedRepo;
+    private EventDeduplicator deduplicator;
+
+    @Mock
+    private TopThreadsCache topThreads;
+
+    @Mock
+    private ActivityRollupRepository rollupRepo;
+
+    @Mock
+    private UniqueSketchRepository sketchRepo;
+
+    @Mock
+    private EventLog eventLog;
+
+    @Mock
+    private AggregateBatchRepository batchRepo;
+
+    @Mock
+    private DeltaAccumulator deltaAccumulator;
 
     private AnalyticsService service;
 
     @BeforeEach
     void setUp() {
-        service = new AnalyticsService(threadRepo, processedRepo);
+        service = new AnalyticsService(threadRepo, batchRepo, deltaAccumulator, deduplicator,
+                new EngagementScorer(1, 2, 5), topThreads, new ActivityRollups(rollupRepo),
+                new UniqueCounters(sketchRepo, null), eventLog, new AggregateWriteGate());
+        lenient().when(deduplicator.claim(any())).thenAnswer(inv -> {
+            Set<String> ids = new LinkedHashSet<>();
+            inv.<List<EventProcessed>>getArgument(0).forEach(e -> ids.add(e.getEventId()));
+            return ids;
+        });
     }
 
     @Test
     void testIdempotency_duplicateEventIsIgnored() {
         // Given: an event that was already processed
         String eventId = "test-event-123";
-        when(processedRepo.existsById(eventId)).thenReturn(true);
+        when(deduplicator.isNew(eventId)).thenReturn(false);
 
         EventEnvelope event = createEvent(eventId, "thread_created", Map.of("threadId", 123, "courseId", 42));
 
@@ -53,14 +88,14 @@ class AnalyticsServiceTest {
 
         // Then: no aggregate operations should happen
         verify(threadRepo, never()).save(any());
-        verify(processedRepo, never()).save(any());
+        verify(deduplicator, never()).claim(any());
     }
 
     @Test
     void testIdempotency_newEventIsProcessedAndRecorded() {
         // Given: a new event
         String eventId = "new-event-456";
-        when(processedRepo.existsById(eventId)).thenReturn(false);
+        when(deduplicator.isNew(eventId)).thenReturn(true);
         when(threadRepo.existsById(123L)).thenReturn(false);
 
         EventEnvelope event = createEvent(eventId, "thread_created", Map.of("threadId", 123, "courseId", 42));
@@ -73,16 +108,17 @@ class AnalyticsServiceTest {
         verify(threadRepo).save(aggCaptor.capture());
         assertEquals(123L, aggCaptor.getValue().getThreadId());
 
-        ArgumentCaptor<EventProcessed> processedCaptor = ArgumentCaptor.forClass(EventProcessed.class);
-        verify(processedRepo).save(processedCaptor.capture());
-        assertEquals(eventId, processedCaptor.getValue().getEventId());
-        assertEquals("thread_created", processedCaptor.getValue().getEventType());
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<EventProcessed>> processedCaptor = ArgumentCaptor.forClass(List.class);
+        verify(deduplicator).claim(processedCaptor.capture());
+        assertEquals(eventId, processedCaptor.getValue().get(0).getEventId());
+        assertEquals("thread_created", processedCaptor.getValue().get(0).getEventType());
     }
 
     @Test
     void testHandleThreadCreated_createsNewAggregate() {
         // Given
-        when(processedRepo.existsById(anyString())).thenReturn(false);
+        when(deduplicator.isNew(anyString())).thenReturn(true);
         when(threadRepo.existsById(123L)).thenReturn(false);
 
         EventEnvelope event = createEvent("evt-1", "thread_created", Map.of("threadId", 123, "courseId", 42));
@@ -100,7 +136,7 @@ class AnalyticsServiceTest {
     @Test
     void testHandleCommentAdded_incrementsCommentCount() {
         // Given
-        when(processedRepo.existsById(anyString())).thenReturn(false);
+        when(deduplicator.isNew(anyString())).thenReturn(true);
         ThreadAggregate existing = new ThreadAggregate(123L, 42L);
         when(threadRepo.findById(123L)).thenReturn(Optional.of(existing));
 
@@ -118,7 +154,7 @@ class AnalyticsServiceTest {
     @Test
     void testHandleVoteCast_upvoteIncrementsUpvotes() {
         // Given
-        when(processedRepo.existsById(anyString())).thenReturn(false);
+        when(deduplicator.isNew(anyString())).thenReturn(true);
         ThreadAggregate existing = new ThreadAggregate(123L, 42L);
         when(threadRepo.findById(123L)).thenReturn(Optional.of(existing));
 
@@ -138,12 +174,14 @@ class AnalyticsServiceTest {
         verify(threadRepo).save(captor.capture());
         assertEquals(1, captor.getValue().getUpvotes());
         assertEquals(0, captor.getValue().getDownvotes());
+        assertEquals(5L, captor.getValue().getEngagementScore());
+        verify(topThreads).offerAfterCommit(List.of(captor.getValue()));
     }
 
     @Test
     void testHandleVoteCast_downvoteIncrementsDownvotes() {
         // Given
-        when(processedRepo.existsById(anyString())).thenReturn(false);
+        when(deduplicator.isNew(anyString())).thenReturn(true);
         ThreadAggregate existing = new ThreadAggregate(123L, 42L);
         when(threadRepo.findById(123L)).thenReturn(Optional.of(existing));
 
@@ -165,10 +203,37 @@ class AnalyticsServiceTest {
         assertEquals(1, captor.getValue().getDownvotes());
     }
 
+    @Test
+    void testHandleVoteCast_switchedVoteMovesCount() {
+        // Given: a thread that already counted the user's upvote
+        when(deduplicator.isNew(anyString())).thenReturn(true);
+        ThreadAggregate existing = new ThreadAggregate(123L, 42L);
+        existing.applyUpvote();
+        when(threadRepo.findById(123L)).thenReturn(Optional.of(existing));
+
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("targetType", "THREAD");
+        payload.put("targetId", 123);
+        payload.put("voteType", "DOWNVOTE");
+        payload.put("previousVoteType", "UPVOTE");
+        payload.put("userId", 777);
+
+        EventEnvelope event = createEvent("evt-8", "vote_cast", payload);
+
+        // When
+        service.processEvent(event);
+
+        // Then
+        ArgumentCaptor<ThreadAggregate> captor = ArgumentCaptor.forClass(ThreadAggregate.class);
+        verify(threadRepo).save(captor.capture());
+        assertEquals(0, captor.getValue().getUpvotes());
+        assertEquals(1, captor.getValue().getDownvotes());
+    }
+
     @Test
     void testHandleThreadViewed_incrementsViewCount() {
         // Given
-        when(processedRepo.existsById(anyString())).thenReturn(false);
+        when(deduplicator.isNew(anyString())).thenReturn(true);
         ThreadAggregate existing = new ThreadAggregate(123L, 42L);
         when(threadRepo.findById(123L)).thenReturn(Optional.of(existing));
 
@@ -183,10 +248,28 @@ class AnalyticsServiceTest {
         assertEquals(1, captor.getValue().getViews());
     }
 
+    @Test
+    void testHandleThreadViewed_appliesCoalescedViewCount() {
+        // Given
+        when(deduplicator.isNew(anyString())).thenReturn(true);
+        ThreadAggregate existing = new ThreadAggregate(123L, 42L);
+        when(threadRepo.findById(123L)).thenReturn(Optional.of(existing));
+
+        EventEnvelope event = createEvent("evt-7", "thread_viewed", Map.of("threadId", 123, "viewCount", 17));
+
+        // When
+        service.processEvent(event);
+
+        // Then
+        ArgumentCaptor<ThreadAggregate> captor = ArgumentCaptor.forClass(ThreadAggregate.class);
+        verify(threadRepo).save(captor.capture());
+        assertEquals(17, captor.getValue().getViews());
+    }
+
     @Test
     void testProcessEvent_unknownEventTypeIsIgnored() {
         // Given
-        when(processedRepo.existsById(anyString())).thenReturn(false);
+        when(deduplicator.isNew(anyString())).thenReturn(true);
         EventEnvelope event = createEvent("evt-6", "unknown_event", Map.of());
 
         // When
@@ -194,7 +277,122 @@ class AnalyticsServiceTest {
 
         // Then: event recorded but no aggregate operation
         verify(threadRepo, never()).save(any());
-        verify(processedRepo).save(any(EventProcessed.class));
+        verify(deduplicator).claim(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testProcessBatch_dedupsAndFoldsIntoPerThreadDeltas() {
+        // Given: evt-a already processed, evt-b sent twice, two threads touched
+        when(deduplicator.findNew(any())).thenReturn(new LinkedHashSet<>(List.of("evt-b", "evt-c", "evt-d", "evt-e")));
+        Map<String, Object> vote = new HashMap<>();
+        vote.put("targetType", "THREAD");
+        vote.put("targetId", 123);
+        vote.put("voteType", "UPVOTE");
+        List<EventEnvelope> batch = List.of(
+                createEvent("evt-a", "comment_added", Map.of("threadId", 123)),
+                createEvent("evt-b", "comment_added", Map.of("threadId", 123)),
+                createEvent("evt-b", "comment_added", Map.of("threadId", 123)),
+                createEvent("evt-c", "thread_viewed", Map.of("threadId", 123, "viewCount", 4)),
+                createEvent("evt-d", "vote_cast", vote),
+                createEvent("evt-e", "thread_created", Map.of("threadId", 7, "courseId", 42)));
+
+        // When
+        int applied = service.processBatch(batch);
+
+        // Then: one bulk upsert with one delta per thread, ordered by thread id
+        assertEquals(4, applied);
+        ArgumentCaptor<Collection<ThreadAggregateDelta>> deltas = ArgumentCaptor.forClass(Collection.class);
+        verify(batchRepo).applyDeltas(deltas.capture(), any(Instant.class));
+        List<ThreadAggregateDelta> rows = List.copyOf(deltas.getValue());
+        assertEquals(2, rows.size());
+        assertEquals(7L, rows.get(0).getThreadId());
+        assertEquals(42L, rows.get(0).getCourseId());
+        assertEquals(1, rows.get(1).getComments());
+        assertEquals(4, rows.get(1).getViews());
+        assertEquals(1, rows.get(1).getUpvotes());
+
+        ArgumentCaptor<List<EventProcessed>> processed = ArgumentCaptor.forClass(List.class);
+        verify(deduplicator).claim(processed.capture());
+        assertEquals(List.of("evt-b", "evt-c", "evt-d", "evt-e"),
+                processed.getValue().stream().map(EventProcessed::getEventId).toList());
+        verify(threadRepo, never()).save(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testProcessBatch_dropsEventsClaimedByAConcurrentWriter() {
+        // Given: both ids pass the pre-check, but another writer records evt-x first
+        when(deduplicator.findNew(any())).thenReturn(new LinkedHashSet<>(List.of("evt-x", "evt-y")));
+        when(deduplicator.claim(any())).thenReturn(Set.of("evt-y"));
+        List<EventEnvelope> batch = List.of(
+                createEvent("evt-x", "comment_added", Map.of("threadId", 123)),
+                createEvent("evt-y", "comment_added", Map.of("threadId", 123)));
+
+        // When
+        int applied = service.processBatch(batch);
+
+        // Then: only the claimed event is applied
+        assertEquals(1, applied);
+        ArgumentCaptor<Collection<ThreadAggregateDelta>> deltas = ArgumentCaptor.forClass(Collection.class);
+        verify(batchRepo).applyDeltas(deltas.capture(), any(Instant.class));
+        assertEquals(1, deltas.getValue().iterator().next().getComments());
+    }
+
+    @Test
+    void testProcessEvent_eventClaimedByAConcurrentWriterIsIgnored() {
+        // Given: the pre-check passes, but another writer records the id first
+        when(deduplicator.isNew("evt-race")).thenReturn(true);
+        when(deduplicator.claim(any())).thenReturn(Set.of());
+
+        // When
+        service.processEvent(createEvent("evt-race", "thread_created", Map.of("threadId", 123, "courseId", 42)));
+
+        // Then
+        verify(threadRepo, never()).save(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testProcessBatch_skipsEventWithNonNumericIdsInsteadOfFailingBatch() {
+        // Given: one event whose threadId is a string and one whose id cannot be recorded
+        when(deduplicator.findNew(any())).thenReturn(new LinkedHashSet<>(List.of("evt-ok")));
+        List<EventEnvelope> batch = List.of(
+                createEvent("evt-bad", "comment_added", Map.of("threadId", "abc")),
+                createEvent("x".repeat(300), "comment_added", Map.of("threadId", 123)),
+                createEvent("evt-ok", "comment_added", Map.of("threadId", 123)));
+
+        // When
+        int applied = service.processBatch(batch);
+
+        // Then: the valid event is applied, the others never reach the dedup check
+        assertEquals(1, applied);
+        ArgumentCaptor<Collection<String>> ids = ArgumentCaptor.forClass(Collection.class);
+        verify(deduplicator).findNew(ids.capture());
+        assertEquals(List.of("evt-ok"), List.copyOf(ids.getValue()));
+        ArgumentCaptor<Collection<ThreadAggregateDelta>> deltas = ArgumentCaptor.forClass(Collection.class);
+        verify(batchRepo).applyDeltas(deltas.capture(), any(Instant.class));
+        assertEquals(1, deltas.getValue().iterator().next().getComments());
+    }
+
+    @Test
+    void testRejectReason_acceptsNumericPayloadFields() {
+        assertNull(AnalyticsService.rejectReason(createEvent("evt-9", "thread_viewed", Map.of("threadId", 1L, "viewCount", 3))));
+        assertEquals("viewCount is not a number",
+                AnalyticsService.rejectReason(createEvent("evt-9", "thread_viewed", Map.of("threadId", 1, "viewCount", "3"))));
+    }
+
+    @Test
+    void testGetTopThreadsByCourse_servedFromTopListWithinCapacity() {
+        // Given
+        List<ThreadAggregate> top = List.of(new ThreadAggregate(1L, 42L), new ThreadAggregate(2L, 42L));
+        when(topThreads.capacity()).thenReturn(100);
+        when(topThreads.top(42L, 2)).thenReturn(top);
+
+        // When / Then: no course scan
+        assertEquals(top, service.getTopThreadsByCourse(42L, 2));
+        verify(threadRepo, never()).findByCourseId(any());
+        verify(threadRepo, never()).findTopByCourse(any(), any());
     }
 
     private EventEnvelope createEvent(String eventId, String eventType, Map<String, Object> payload) {
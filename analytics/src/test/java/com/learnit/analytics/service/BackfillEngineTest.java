@@ -0,0 +1,179 @@
+package com.learnit.analytics.service;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnit.analytics.backfill.BackfillSource;
+import com.learnit.analytics.backfill.EventLogSource;
+import com.learnit.analytics.backfill.NdjsonSource;
+import com.learnit.analytics.dto.EventEnvelope;
+import com.learnit.analytics.entity.ThreadAggregate;
+import com.learnit.analytics.eventlog.EventLog;
+import com.learnit.analytics.repository.AggregateShadowRepository;
+
+@SpringBootTest(properties = {"analytics.aggregation.enabled=false", "analytics.backfill.partitions=8"})
+@ActiveProfiles("test")
+class BackfillEngineTest {
+
+    private static final long COURSE = 9200;
+
+    @Autowired
+    private BackfillEngine engine;
+
+    @Autowired
+    private AnalyticsService analyticsService;
+
+    @Autowired
+    private EventLog eventLog;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void eventLogBackfillRebuildsAggregatesAndCatchesUpWithLiveEvents() throws IOException {
+        analyticsService.processBatch(List.of(
+            event("backfill-1", "thread_created", Map.of("threadId", 9201, "courseId", COURSE)),
+            event("backfill-2", "comment_added", Map.of("threadId", 9201)),
+            event("backfill-3", "thread_viewed", Map.of("threadId", 9201, "viewCount", 4)),
+            event("backfill-4", "vote_cast", Map.of("targetType", "THREAD", "targetId", 9202, "voteType", "UPVOTE"))));
+        // the stored aggregates drifted from the history (as after a change to the fold)
+        jdbcTemplate.update("UPDATE thread_aggregate SET views = 0, comments = 7 WHERE thread_id = 9201");
+
+        // an event committed while the backfill reads the log reaches the swap through catch-up
+        BackfillSource source = new LiveEventsSource(new EventLogSource(eventLog), () -> analyticsService.processBatch(List.of(
+            event("backfill-5", "comment_added", Map.of("threadId", 9201)))));
+        Map<String, Object> status = engine.run(source, false, true);
+
+        assertEquals("done", status.get("state"));
+        assertEquals(1L, status.get("caughtUp"));
+        ThreadAggregate rebuilt = analyticsService.getThreadAggregate(9201L);
+        assertEquals(COURSE, rebuilt.getCourseId());
+        assertEquals(4, rebuilt.getViews());
+        assertEquals(2, rebuilt.getComments());
+        assertEquals(1, analyticsService.getThreadAggregate(9202L).getUpvotes());
+    }
+
+    @Test
+    void dryRunFillsOnlyTheShadowTableAndSkipsDuplicatesAndBadLines() throws IOException {
+        Path dump = dir.resolve("events.ndjson");
+        try (Writer out = Files.newBufferedWriter(dump, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < 1000; i++) {
+                out.write(objectMapper.writeValueAsString(
+                    event("dump-" + i, "thread_viewed", Map.of("threadId", 9300 + i % 10, "viewCount", 1))) + "\n");
+            }
+            // a redelivered event and a truncated line
+            out.write(objectMapper.writeValueAsString(
+                event("dump-0", "thread_viewed", Map.of("threadId", 9300, "viewCount", 1))) + "\n");
+            out.write("{\"eventType\": \"thread_vie\n");
+        }
+
+        Map<String, Object> status = engine.run(new NdjsonSource(dump, objectMapper), true, true);
+
+        assertEquals("done", status.get("state"));
+        assertEquals(1002L, status.get("eventsRead"));
+        assertEquals(1000L, status.get("eventsApplied"));
+        assertEquals(1L, status.get("duplicates"));
+        assertEquals(1L, status.get("undecodable"));
+        assertEquals(10L, status.get("threads"));
+        assertEquals(100, jdbcTemplate.queryForObject("SELECT views FROM " + AggregateShadowRepository.SHADOW_TABLE
+            + " WHERE thread_id = 9300", Integer.class));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM thread_aggregate WHERE thread_id = 9300", Integer.class));
+    }
+
+    /**
+     * Opt-in: mvn test -Dtest=BackfillEngineTest -Danalytics.benchmark=true [-Danalytics.benchmark.events=2000000]
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "analytics.benchmark", matches = "true")
+    void dryRunThroughput() throws IOException {
+        int events = Integer.getInteger("analytics.benchmark.events", 2_000_000);
+        Path dump = dir.resolve("benchmark.ndjson");
+        try (Writer out = Files.newBufferedWriter(dump, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < events; i++) {
+                out.write(objectMapper.writeValueAsString(
+                    event("bench-" + i, i % 4 == 0 ? "comment_added" : "thread_viewed", Map.of("threadId", 100_000 + i % 50_000))) + "\n");
+            }
+        }
+
+        Map<String, Object> status = engine.run(new NdjsonSource(dump, objectMapper), true, true);
+
+        assertEquals("done", status.get("state"));
+        assertEquals((long) events, status.get("eventsRead"));
+        assertEquals((long) events, status.get("eventsApplied"));
+        assertEquals((long) Math.min(events, 50_000), status.get("threads"));
+        assertTrue((Long) status.get("eventsPerSecond") > 0, "throughput " + status.get("eventsPerSecond"));
+    }
+
+    private EventEnvelope event(String eventId, String eventType, Map<String, Object> payload) {
+        EventEnvelope envelope = new EventEnvelope(eventType, eventId, Instant.now(), 1, "test-service");
+        payload.forEach(envelope::addPayload);
+        return envelope;
+    }
+
+    /**
+     * Runs an action once the wrapped source is exhausted, before the backfill catches up
+     */
+    private static final class LiveEventsSource implements BackfillSource {
+
+        private final BackfillSource source;
+        private Runnable whenExhausted;
+
+        LiveEventsSource(BackfillSource source, Runnable whenExhausted) {
+            this.source = source;
+            this.whenExhausted = whenExhausted;
+        }
+
+        @Override
+        public String description() {
+            return source.description();
+        }
+
+        @Override
+        public List<Encoded> nextChunk(int maxEvents) throws IOException {
+            List<Encoded> chunk = source.nextChunk(maxEvents);
+            if (chunk.isEmpty() && whenExhausted != null) {
+                whenExhausted.run();
+                whenExhausted = null;
+            }
+            return chunk;
+        }
+
+        @Override
+        public double progress() {
+            return source.progress();
+        }
+
+        @Override
+        public List<Encoded> catchUp() throws IOException {
+            return source.catchUp();
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+    }
+}
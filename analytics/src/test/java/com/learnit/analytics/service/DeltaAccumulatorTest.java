@@ -0,0 +1,252 @@
+package com.learnit.analytics.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import org.mockito.Mock;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.learnit.analytics.dto.ActivityCount;
+import com.learnit.analytics.dto.EventEnvelope;
+import com.learnit.analytics.dto.ThreadAggregateDelta;
+import com.learnit.analytics.entity.EventProcessed;
+import com.learnit.analytics.entity.ThreadAggregate;
+import com.learnit.analytics.eventlog.EventLog;
+import com.learnit.analytics.repository.ActivityRollupRepository;
+import com.learnit.analytics.repository.UniqueSketchRepository;
+import com.learnit.analytics.repository.AggregateBatchRepository;
+
+@ExtendWith(MockitoExtension.class)
+class DeltaAccumulatorTest {
+
+    @Mock
+    private AggregateBatchRepository batchRepo;
+
+    @Mock
+    private EventDeduplicator deduplicator;
+
+    @Mock
+    private TopThreadsCache topThreads;
+
+    @Mock
+    private ActivityRollupRepository rollupRepo;
+
+    @Mock
+    private UniqueSketchRepository sketchRepo;
+
+    @Mock
+    private EventLog eventLog;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private DeltaAccumulator accumulator;
+
+    @BeforeEach
+    void setUp() {
+        // flushes are triggered by the tests, not by the schedule or the event threshold
+        accumulator = new DeltaAccumulator(batchRepo, deduplicator, topThreads,
+            new ActivityRollups(rollupRepo), new UniqueCounters(sketchRepo, transactionTemplate), eventLog,
+            new AggregateWriteGate(), transactionTemplate);
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(inv ->
+            inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        lenient().when(deduplicator.findNew(anyCollection())).thenAnswer(inv -> new LinkedHashSet<>(inv.<Collection<String>>getArgument(0)));
+        lenient().when(deduplicator.claim(any())).thenAnswer(inv -> {
+            Set<String> ids = new LinkedHashSet<>();
+            inv.<List<EventProcessed>>getArgument(0).forEach(e -> ids.add(e.getEventId()));
+            return ids;
+        });
+    }
+
+    @Test
+    void flushWritesSummedDeltasAndEventIdsThenAcknowledges() {
+        AtomicInteger acks = new AtomicInteger();
+        accumulator.add(List.of(
+            event("e1", "thread_viewed", Map.of("threadId", 7, "viewCount", 3)),
+            event("e2", "comment_added", Map.of("threadId", 7)),
+            event("e1", "thread_viewed", Map.of("threadId", 7, "viewCount", 3))), acks::incrementAndGet);
+        accumulator.add(List.of(
+            event("e3", "vote_cast", Map.of("targetType", "THREAD", "targetId", 7, "voteType", "UPVOTE"))),
+            acks::incrementAndGet);
+        assertEquals(0, acks.get());
+
+        assertEquals(3, accumulator.flush());
+
+        ThreadAggregateDelta d = onlyDelta();
+        assertEquals(3, d.getViews());
+        assertEquals(1, d.getComments());
+        assertEquals(1, d.getUpvotes());
+        assertEquals(List.of("e1", "e2", "e3"), processedIds());
+        assertEquals(2, acks.get());
+        assertEquals(0, accumulator.pendingEvents());
+    }
+
+    @Test
+    void failedFlushKeepsWindowAndAcknowledgesOnlyAfterRetryCommits() {
+        AtomicInteger acks = new AtomicInteger();
+        accumulator.add(List.of(event("e1", "comment_added", Map.of("threadId", 7))), acks::incrementAndGet);
+        doThrow(new DataAccessResourceFailureException("db down")).doReturn(1)
+            .when(batchRepo).applyDeltas(anyCollection(), any(Instant.class));
+
+        assertThrows(RuntimeException.class, () -> accumulator.flush());
+        accumulator.add(List.of(event("e2", "comment_added", Map.of("threadId", 7))), acks::incrementAndGet);
+        assertEquals(0, acks.get());
+        assertEquals(2, accumulator.pendingEvents());
+
+        // the retained window goes first, on its own
+        assertEquals(1, accumulator.flush());
+        assertEquals(1, acks.get());
+        assertEquals(1, accumulator.flush());
+        assertEquals(2, acks.get());
+        verify(batchRepo, times(3)).applyDeltas(anyCollection(), any(Instant.class));
+    }
+
+    @Test
+    void windowFailingPermanentlyIsWrittenInPartsAndDropsTheFailingEvent() {
+        AtomicInteger acks = new AtomicInteger();
+        accumulator.add(List.of(
+            event("e1", "comment_added", Map.of("threadId", 7)),
+            event("e2", "comment_added", Map.of("threadId", 8)),
+            event("e3", "comment_added", Map.of("threadId", 9))), acks::incrementAndGet);
+        // any write including thread 8 fails for good
+        doAnswer(inv -> {
+            for (ThreadAggregateDelta d : inv.<Collection<ThreadAggregateDelta>>getArgument(0)) {
+                if (d.getThreadId() == 8L) throw new DataIntegrityViolationException("value too long");
+            }
+            return 1;
+        }).when(batchRepo).applyDeltas(anyCollection(), any(Instant.class));
+
+        assertEquals(2, accumulator.flush());
+
+        assertEquals(1, acks.get());
+        assertEquals(0, accumulator.pendingEvents());
+        assertEquals(1L, accumulator.stats().get("droppedEvents"));
+    }
+
+    @Test
+    void eventsThatCannotBeAppliedLeaveNoTraceInTheWindow() {
+        accumulator.add(List.of(
+            event("e1", "comment_added", Map.of("threadId", "seven")),
+            event("x".repeat(256), "comment_added", Map.of("threadId", 7))), null);
+        assertEquals(0, accumulator.pendingEvents());
+        assertEquals(2L, accumulator.stats().get("rejectedEvents"));
+
+        // the same id with a valid payload is not mistaken for a duplicate
+        accumulator.add(List.of(event("e1", "comment_added", Map.of("threadId", 7))), null);
+        assertEquals(1, accumulator.flush());
+    }
+
+    @Test
+    void redeliveredEventsAlreadyCommittedAreDroppedAtFlush() {
+        when(deduplicator.findNew(anyCollection())).thenReturn(new LinkedHashSet<>(List.of("e2")));
+        accumulator.add(List.of(
+            event("e1", "comment_added", Map.of("threadId", 7)),
+            event("e2", "comment_added", Map.of("threadId", 7))), null);
+
+        assertEquals(1, accumulator.flush());
+
+        assertEquals(1, onlyDelta().getComments());
+        assertEquals(List.of("e2"), processedIds());
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<ActivityCount>> activity = ArgumentCaptor.forClass(List.class);
+        verify(rollupRepo).addMinuteCounts(activity.capture());
+        assertEquals(1, activity.getValue().size());
+        assertEquals(1, activity.getValue().get(0).getCount());
+    }
+
+    @Test
+    void eventsClaimedByAConcurrentWriterAreDroppedAtFlush() {
+        // e1 passed the pre-check, but another writer recorded it before this flush claimed it
+        when(deduplicator.claim(any())).thenReturn(Set.of("e2"));
+        accumulator.add(List.of(
+            event("e1", "comment_added", Map.of("threadId", 7)),
+            event("e2", "comment_added", Map.of("threadId", 7))), null);
+
+        assertEquals(1, accumulator.flush());
+
+        assertEquals(1, onlyDelta().getComments());
+        assertEquals(List.of("e1", "e2"), processedIds());
+    }
+
+    @Test
+    void pendingViewMergesUnflushedDeltasIntoRows() {
+        ThreadAggregate row = new ThreadAggregate(7L, 42L);
+        row.addViews(10);
+        accumulator.add(List.of(
+            event("e1", "thread_viewed", Map.of("threadId", 7, "viewCount", 5)),
+            event("e2", "thread_created", Map.of("threadId", 8, "courseId", 42)),
+            event("e3", "comment_added", Map.of("threadId", 8))), null);
+
+        DeltaAccumulator.PendingView view = accumulator.pendingView();
+        assertEquals(15, view.merge(7L, row).getViews());
+        assertEquals(10, row.getViews());
+        assertNull(view.merge(9L, null));
+
+        List<ThreadAggregate> course = view.mergeCourse(42L, List.of(row));
+        assertEquals(2, course.size());
+        assertEquals(8L, course.get(1).getThreadId());
+        assertEquals(1, course.get(1).getComments());
+
+        accumulator.flush();
+        // a row read after the flush carries its last_updated stamp, so the window is not added twice
+        ThreadAggregate flushed = new ThreadAggregate(7L, 42L);
+        flushed.addViews(15);
+        assertEquals(15, view.merge(7L, flushed).getViews());
+    }
+
+    @Test
+    void emptyFlushWritesNothing() {
+        assertEquals(0, accumulator.flush());
+        verify(deduplicator, never()).claim(any());
+    }
+
+    private ThreadAggregateDelta onlyDelta() {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<ThreadAggregateDelta>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(batchRepo).applyDeltas(captor.capture(), any(Instant.class));
+        assertEquals(1, captor.getValue().size());
+        return captor.getValue().iterator().next();
+    }
+
+    private List<String> processedIds() {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<EventProcessed>> captor = ArgumentCaptor.forClass(List.class);
+        verify(deduplicator).claim(captor.capture());
+        List<String> ids = new ArrayList<>();
+        captor.getValue().forEach(e -> ids.add(e.getEventId()));
+        return ids;
+    }
+
+    private EventEnvelope event(String eventId, String eventType, Map<String, Object> payload) {
+        EventEnvelope envelope = new EventEnvelope(eventType, eventId, Instant.now(), 1, "test-service");
+        payload.forEach(envelope::addPayload);
+        return envelope;
+    }
+}
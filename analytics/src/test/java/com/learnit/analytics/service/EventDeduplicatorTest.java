@@ -0,0 +1,119 @@
+package com.learnit.analytics.service;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import org.mockito.Mock;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.learnit.analytics.entity.EventProcessed;
+import com.learnit.analytics.repository.EventProcessedPartitionRepository;
+import com.learnit.analytics.repository.EventProcessedRepository;
+
+@ExtendWith(MockitoExtension.class)
+class EventDeduplicatorTest {
+
+    private static final Instant NOW = Instant.parse("2026-10-16T12:00:00Z");
+
+    @Mock
+    private EventProcessedRepository processedRepo;
+
+    @Mock
+    private EventProcessedPartitionRepository partitionRepo;
+
+    private EventDeduplicator deduplicator;
+
+    @BeforeEach
+    void setUp() {
+        deduplicator = new EventDeduplicator(processedRepo, partitionRepo, Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    @Test
+    void beforeRebuildEveryIdIsCheckedInTheDatabase() {
+        when(processedRepo.findProcessedIds(anyCollection())).thenReturn(List.of("a"));
+
+        assertEquals(Set.of("b"), deduplicator.findNew(List.of("a", "b", "b")));
+        verify(processedRepo).findProcessedIds(List.of("a", "b"));
+    }
+
+    @Test
+    void afterRebuildOnlyFilterHitsAreConfirmedInTheDatabase() {
+        rebuildWith("seen-1", NOW.minus(2, ChronoUnit.DAYS));
+        when(processedRepo.findProcessedIds(anyCollection())).thenReturn(List.of("seen-1"), List.of("new-1"));
+
+        assertEquals(Set.of("new-1"), deduplicator.findNew(List.of("seen-1", "new-1")));
+        verify(processedRepo).findProcessedIds(List.of("seen-1"));
+
+        // once recorded, the id hits the filter and is confirmed as a duplicate
+        when(partitionRepo.claimProcessed(any())).thenReturn(Set.of("new-1"));
+        assertEquals(Set.of("new-1"), deduplicator.claim(List.of(new EventProcessed("new-1", "comment_added", NOW))));
+        assertEquals(Set.of(), deduplicator.findNew(List.of("new-1")));
+        verify(processedRepo).findProcessedIds(List.of("new-1"));
+        assertEquals(0L, deduplicator.stats().get("falsePositives"));
+    }
+
+    @Test
+    void unseenIdsNeedNoDatabaseProbe() {
+        rebuildWith("seen-1", NOW);
+
+        assertEquals(Set.of("new-1", "new-2"), deduplicator.findNew(List.of("new-1", "new-2")));
+        verify(processedRepo, never()).findProcessedIds(anyCollection());
+        assertEquals(0L, deduplicator.stats().get("filterHits"));
+    }
+
+    @Test
+    void expireDropsDaysOutsideTheHorizon() {
+        rebuildWith("old-1", NOW.minus(8, ChronoUnit.DAYS));
+
+        deduplicator.expire();
+
+        LocalDate firstKept = LocalDate.of(2026, 10, 9);
+        verify(partitionRepo).dropBefore(firstKept);
+        verify(partitionRepo).createPartitions(LocalDate.of(2026, 10, 16), LocalDate.of(2026, 10, 17));
+        assertEquals(Set.of("old-1"), deduplicator.findNew(List.of("old-1")));
+        verify(processedRepo, never()).findProcessedIds(anyCollection());
+    }
+
+    @Test
+    void bloomFilterFalsePositiveRateMatchesItsSizing() {
+        int n = 100_000;
+        for (double target : new double[]{0.01, 0.001}) {
+            BloomFilter filter = new BloomFilter(n, target);
+            for (int i = 0; i < n; i++) {
+                filter.put("comment_added-" + i + "-a1b2c3d4");
+            }
+            int falsePositives = 0;
+            for (int i = 0; i < n; i++) {
+                if (filter.mightContain("vote_cast-" + i + "-e5f6a7b8")) falsePositives++;
+            }
+            double measured = (double) falsePositives / n;
+            assertTrue(measured <= target * 1.5, "measured " + measured + " for target " + target);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void rebuildWith(String eventId, Instant receivedAt) {
+        doAnswer(inv -> {
+            inv.<BiConsumer<String, Instant>>getArgument(1).accept(eventId, receivedAt);
+            return null;
+        }).when(partitionRepo).forEachSince(any(), any());
+        deduplicator.rebuild();
+    }
+}
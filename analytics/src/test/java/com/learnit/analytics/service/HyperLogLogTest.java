@@ -0,0 +1,81 @@
+package com.learnit.analytics.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+class HyperLogLogTest {
+
+    @Test
+    void smallSetsAreCountedAlmostExactlyInTheSparseEncoding() {
+        HyperLogLog hll = new HyperLogLog();
+        for (int i = 0; i < 200; i++) {
+            hll.add("user-" + i);
+            hll.add("user-" + i);
+        }
+
+        assertTrue(Math.abs(hll.estimate() - 200) <= 4, "estimated " + hll.estimate());
+        byte[] bytes = hll.toBytes();
+        assertTrue(bytes.length < 600, "sparse sketch of " + bytes.length + " bytes");
+        assertEquals(hll.estimate(), HyperLogLog.fromBytes(bytes).estimate());
+    }
+
+    @Test
+    void largeSetsStayWithinThreeStandardErrors() {
+        for (int n : new int[] {5_000, 100_000, 1_000_000}) {
+            HyperLogLog hll = new HyperLogLog();
+            for (int i = 0; i < n; i++) {
+                hll.add("user-" + i);
+            }
+            double error = Math.abs(hll.estimate() - n) / (double) n;
+            assertTrue(error < 3 * HyperLogLog.RELATIVE_STANDARD_ERROR, n + " ids estimated " + hll.estimate());
+            assertEquals(3074, hll.toBytes().length);
+        }
+    }
+
+    @Test
+    void mergedSketchesCountTheUnion() {
+        HyperLogLog monday = new HyperLogLog();
+        HyperLogLog tuesday = new HyperLogLog();
+        HyperLogLog both = new HyperLogLog();
+        for (int i = 0; i < 30_000; i++) {
+            monday.add("user-" + i);
+            both.add("user-" + i);
+        }
+        // half of Tuesday's users were already there on Monday
+        for (int i = 15_000; i < 45_000; i++) {
+            tuesday.add("user-" + i);
+            both.add("user-" + i);
+        }
+
+        HyperLogLog merged = HyperLogLog.fromBytes(monday.toBytes());
+        merged.merge(HyperLogLog.fromBytes(tuesday.toBytes()));
+
+        assertArrayEquals(both.toBytes(), merged.toBytes());
+        assertTrue(Math.abs(merged.estimate() - 45_000) < 3 * HyperLogLog.RELATIVE_STANDARD_ERROR * 45_000);
+    }
+
+    @Test
+    void sparseSketchesTurnDenseWhenMergedPastTheLimit() {
+        HyperLogLog a = new HyperLogLog();
+        HyperLogLog b = new HyperLogLog();
+        for (int i = 0; i < 700; i++) {
+            a.add("a-" + i);
+            b.add("b-" + i);
+        }
+
+        a.merge(b);
+
+        assertEquals(3074, a.toBytes().length);
+        assertTrue(Math.abs(a.estimate() - 1400) < 50, "estimated " + a.estimate());
+    }
+
+    @Test
+    void rejectsForeignBytes() {
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(new byte[] {1}));
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(new byte[] {2, 12, 0}));
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(new byte[] {1, 12, 5, 3}));
+    }
+}
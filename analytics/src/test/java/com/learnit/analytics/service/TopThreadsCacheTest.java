@@ -0,0 +1,78 @@
+package com.learnit.analytics.service;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.Mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.learnit.analytics.entity.ThreadAggregate;
+import com.learnit.analytics.repository.ThreadAggregateRepository;
+
+@ExtendWith(MockitoExtension.class)
+class TopThreadsCacheTest {
+
+    @Mock
+    private ThreadAggregateRepository repo;
+
+    private TopThreadsCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new TopThreadsCache(repo);
+        ReflectionTestUtils.setField(cache, "capacity", 3);
+    }
+
+    @Test
+    void loadsOnceThenAppliesUpdatesInMemory() {
+        when(repo.findTopByCourse(eq(42L), any())).thenReturn(List.of(agg(1, 30), agg(2, 20), agg(3, 10)));
+        assertEquals(List.of(1L, 2L), ids(cache.top(42L, 2)));
+
+        // a new thread enters, the lowest drops out; an existing one moves up
+        cache.offer(List.of(agg(4, 25), agg(3, 40)));
+
+        assertEquals(List.of(3L, 1L, 4L), ids(cache.top(42L, 3)));
+        verify(repo, times(1)).findTopByCourse(eq(42L), any());
+    }
+
+    @Test
+    void scoreDropWhileFullReloadsTheCourse() {
+        when(repo.findTopByCourse(eq(42L), any()))
+            .thenReturn(List.of(agg(1, 30), agg(2, 20), agg(3, 10)))
+            .thenReturn(List.of(agg(2, 20), agg(5, 15), agg(3, 10)));
+        cache.top(42L, 3);
+
+        // thread 1 falls below a thread the list never saw
+        cache.offer(List.of(agg(1, 5)));
+
+        assertEquals(List.of(2L, 5L, 3L), ids(cache.top(42L, 3)));
+        verify(repo, times(2)).findTopByCourse(eq(42L), any());
+    }
+
+    @Test
+    void updatesForCoursesNotLoadedAreIgnored() {
+        cache.offerAfterCommit(List.of(agg(1, 30)));
+        cache.refreshAfterCommit(List.of(1L));
+
+        verify(repo, times(0)).findAllById(any());
+    }
+
+    private static ThreadAggregate agg(long threadId, long score) {
+        ThreadAggregate a = new ThreadAggregate(threadId, 42L);
+        a.setEngagementScore(score);
+        return a;
+    }
+
+    private static List<Long> ids(List<ThreadAggregate> list) {
+        return list.stream().map(ThreadAggregate::getThreadId).toList();
+    }
+}
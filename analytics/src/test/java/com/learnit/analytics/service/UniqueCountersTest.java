@@ -0,0 +1,87 @@
+package com.learnit.analytics.service;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.learnit.analytics.dto.EventEnvelope;
+import com.learnit.analytics.dto.UniqueCounts;
+
+@SpringBootTest(properties = {"analytics.aggregation.enabled=false", "analytics.uniques.compact-interval-ms=3600000"})
+@ActiveProfiles("test")
+class UniqueCountersTest {
+
+    private static final long COURSE = 9400;
+    private static final long THREAD = 9401;
+
+    @Autowired
+    private AnalyticsService analyticsService;
+
+    @Autowired
+    private UniqueCounters uniques;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void repeatedViewsAndCommentsCountEachUserOnceAcrossDaysAndCompactions() {
+        Instant today = Instant.now().truncatedTo(ChronoUnit.DAYS);
+        Instant yesterday = today.minus(1, ChronoUnit.DAYS);
+        List<EventEnvelope> events = new ArrayList<>();
+        events.add(event("uniques-0", "thread_created", yesterday, Map.of("threadId", THREAD, "courseId", COURSE)));
+        // 50 users refreshing 4 times a day on two days, in coalesced and single-viewer events
+        for (int i = 0; i < 4; i++) {
+            events.add(event("uniques-y" + i, "thread_viewed", yesterday.plusSeconds(i),
+                Map.of("threadId", THREAD, "courseId", COURSE, "viewCount", 50, "userIds", userIds(0, 50))));
+        }
+        for (int i = 0; i < 50; i++) {
+            events.add(event("uniques-t" + i, "thread_viewed", today,
+                Map.of("threadId", THREAD, "courseId", COURSE, "viewCount", 4, "userId", "user-" + i)));
+        }
+        // 3 commenters, one of them twice, and one on another thread of the course
+        events.add(event("uniques-c1", "comment_added", today, Map.of("threadId", THREAD, "courseId", COURSE, "userId", 7)));
+        events.add(event("uniques-c2", "comment_added", today, Map.of("threadId", THREAD, "courseId", COURSE, "userId", 8)));
+        events.add(event("uniques-c3", "comment_added", today, Map.of("threadId", THREAD, "courseId", COURSE, "userId", 7)));
+        events.add(event("uniques-c4", "comment_added", today, Map.of("threadId", THREAD + 1, "courseId", COURSE, "userId", 9)));
+        analyticsService.processBatch(events.subList(0, 30));
+        analyticsService.processBatch(events.subList(30, events.size()));
+
+        assertEquals(50L, analyticsService.getThreadAggregate(THREAD).getUniqueViewers());
+        assertEquals(2L, analyticsService.getThreadAggregate(THREAD).getUniqueParticipants());
+        assertEquals(400, analyticsService.getThreadAggregate(THREAD).getViews());
+
+        uniques.compact();
+
+        // viewers on both days and today's participants
+        assertEquals(3, jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM unique_sketch WHERE scope = 'thread' AND scope_id = ?", Integer.class, THREAD));
+        UniqueCounts course = uniques.counts(COURSE, null, yesterday, Instant.now());
+        assertEquals(yesterday, course.getFrom());
+        assertEquals(50, course.getUniqueViewers());
+        assertEquals(3, course.getUniqueParticipants());
+        UniqueCounts todayOnly = uniques.counts(null, THREAD, today.plusSeconds(60), Instant.now());
+        assertEquals(50, todayOnly.getUniqueViewers());
+        assertEquals(0, uniques.counts(null, THREAD, yesterday, today).getUniqueParticipants());
+    }
+
+    private static List<String> userIds(int from, int to) {
+        List<String> ids = new ArrayList<>();
+        for (int i = from; i < to; i++) ids.add("user-" + i);
+        return ids;
+    }
+
+    private EventEnvelope event(String eventId, String eventType, Instant occurredAt, Map<String, Object> payload) {
+        EventEnvelope envelope = new EventEnvelope(eventType, eventId, occurredAt, 1, "test-service");
+        payload.forEach(envelope::addPayload);
+        return envelope;
+    }
+}
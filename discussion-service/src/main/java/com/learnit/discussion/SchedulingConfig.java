@@ -0,0 +1,32 @@
+package com.learnit.discussion;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.task.ThreadPoolTaskSchedulerBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Two schedulers: the default one (spring.task.scheduling.*) for short periodic jobs, and a
+ * maintenance one for the long nightly runs (archival, outbox retention), so a run moving
+ * thousands of rows never holds up view flushes or hot re-decay.
+ */
+@Configuration
+public class SchedulingConfig {
+
+    public static final String MAINTENANCE_SCHEDULER = "maintenanceScheduler";
+
+    @Bean
+    @Primary
+    public ThreadPoolTaskScheduler taskScheduler(ThreadPoolTaskSchedulerBuilder builder) {
+        return builder.build();
+    }
+
+    @Bean(MAINTENANCE_SCHEDULER)
+    public ThreadPoolTaskScheduler maintenanceScheduler(
+            ThreadPoolTaskSchedulerBuilder builder,
+            @Value("${discussion.maintenance.pool-size:1}") int poolSize) {
+        return builder.poolSize(poolSize).threadNamePrefix("maintenance-").build();
+    }
+}
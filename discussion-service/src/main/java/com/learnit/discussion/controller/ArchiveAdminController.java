@@ -0,0 +1,32 @@
+package com.learnit.discussion.controller;
+
+import com.learnit.discussion.dto.ThreadResponse;
+import com.learnit.discussion.service.ThreadArchiveService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * Operator endpoints for the cold-thread archive.
+ * Requires the admin API key (X-API-Key).
+ */
+@RestController
+@RequestMapping("/api/discussions/admin/archive")
+@RequiredArgsConstructor
+public class ArchiveAdminController {
+
+    private final ThreadArchiveService threadArchiveService;
+
+    @PostMapping("/run")
+    public ResponseEntity<Map<String, Integer>> runArchival() {
+        int archived = threadArchiveService.archiveInactiveThreads();
+        return ResponseEntity.ok(Map.of("archived", archived));
+    }
+
+    @PostMapping("/threads/{id}/restore")
+    public ResponseEntity<ThreadResponse> restoreThread(@PathVariable Long id) {
+        return ResponseEntity.ok(new ThreadResponse(threadArchiveService.restore(id)));
+    }
+}
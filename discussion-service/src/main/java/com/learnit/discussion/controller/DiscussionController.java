@@ -3,13 +3,17 @@ package com.learnit.discussion.controller;
 import com.learnit.discussion.dto.*;
 import com.learnit.discussion.entity.TargetType;
 import com.learnit.discussion.entity.ThreadCategory;
+import com.learnit.discussion.service.DiscussionSearchService;
 import com.learnit.discussion.service.DiscussionService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.security.Principal;
 import java.util.List;
 
 @RestController
@@ -18,6 +22,7 @@ import java.util.List;
 public class DiscussionController {
 
     private final DiscussionService discussionService;
+    private final DiscussionSearchService discussionSearchService;
 
     // ==================== Thread Management ====================
 
@@ -28,28 +33,37 @@ public class DiscussionController {
     }
 
     @GetMapping("/threads/{id}")
-    public ResponseEntity<ThreadResponse> getThread(@PathVariable Long id) {
-        ThreadResponse response = discussionService.getThread(id);
+    public ResponseEntity<ThreadResponse> getThread(@PathVariable Long id, Principal principal) {
+        // principal is the JWT user id; null for anonymous readers
+        ThreadResponse response = discussionService.getThread(id, principal == null ? null : principal.getName());
         return ResponseEntity.ok(response);
     }
 
     @GetMapping("/threads/course/{courseId}")
-    public ResponseEntity<List<ThreadResponse>> getThreadsByCourse(@PathVariable Long courseId) {
-        List<ThreadResponse> response = discussionService.getThreadsByCourse(courseId);
+    public ResponseEntity<CursorPage<ThreadResponse>> getThreadsByCourse(
+            @PathVariable Long courseId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        CursorPage<ThreadResponse> response = discussionService.getThreadsByCourse(courseId, cursor, size);
         return ResponseEntity.ok(response);
     }
 
     @GetMapping("/threads/course/{courseId}/category/{category}")
-    public ResponseEntity<List<ThreadResponse>> getThreadsByCategory(
+    public ResponseEntity<CursorPage<ThreadResponse>> getThreadsByCategory(
             @PathVariable Long courseId,
-            @PathVariable ThreadCategory category) {
-        List<ThreadResponse> response = discussionService.getThreadsByCategory(courseId, category);
+            @PathVariable ThreadCategory category,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        CursorPage<ThreadResponse> response = discussionService.getThreadsByCategory(courseId, category, cursor, size);
         return ResponseEntity.ok(response);
     }
 
     @GetMapping("/threads/user/{userId}")
-    public ResponseEntity<List<ThreadResponse>> getThreadsByAuthor(@PathVariable Long userId) {
-        List<ThreadResponse> response = discussionService.getThreadsByAuthor(userId);
+    public ResponseEntity<CursorPage<ThreadResponse>> getThreadsByAuthor(
+            @PathVariable Long userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        CursorPage<ThreadResponse> response = discussionService.getThreadsByAuthor(userId, cursor, size);
         return ResponseEntity.ok(response);
     }
 
@@ -61,11 +75,23 @@ public class DiscussionController {
         return ResponseEntity.ok(response);
     }
 
+    @GetMapping("/courses/{courseId}/search")
+    public ResponseEntity<SearchResultPage> searchDiscussions(
+            @PathVariable Long courseId,
+            @RequestParam String q,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        SearchResultPage response = discussionSearchService.search(courseId, q, page, size);
+        return ResponseEntity.ok(response);
+    }
+
     @GetMapping("/threads/course/{courseId}/tag/{tag}")
-    public ResponseEntity<List<ThreadResponse>> getThreadsByTag(
+    public ResponseEntity<CursorPage<ThreadResponse>> getThreadsByTag(
             @PathVariable Long courseId,
-            @PathVariable String tag) {
-        List<ThreadResponse> response = discussionService.getThreadsByTag(courseId, tag);
+            @PathVariable String tag,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        CursorPage<ThreadResponse> response = discussionService.getThreadsByTag(courseId, tag, cursor, size);
         return ResponseEntity.ok(response);
     }
 
@@ -75,9 +101,37 @@ public class DiscussionController {
         return ResponseEntity.ok(response);
     }
 
+    @GetMapping("/threads/course/{courseId}/hot")
+    public ResponseEntity<List<HotThread>> getHotThreads(
+            @PathVariable Long courseId,
+            @RequestParam(defaultValue = "10") int limit) {
+        List<HotThread> response = discussionService.getHotThreads(courseId, limit);
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/courses/{courseId}/tags")
+    public ResponseEntity<List<TagCount>> getCourseTags(
+            @PathVariable Long courseId,
+            @RequestParam(defaultValue = "50") int limit) {
+        List<TagCount> response = discussionService.getCourseTags(courseId, limit);
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/courses/{courseId}/tags/suggest")
+    public ResponseEntity<List<TagCount>> suggestTags(
+            @PathVariable Long courseId,
+            @RequestParam(defaultValue = "") String prefix,
+            @RequestParam(defaultValue = "10") int limit) {
+        List<TagCount> response = discussionService.suggestTags(courseId, prefix, limit);
+        return ResponseEntity.ok(response);
+    }
+
     @GetMapping("/threads/course/{courseId}/unanswered")
-    public ResponseEntity<List<ThreadResponse>> getUnansweredQuestions(@PathVariable Long courseId) {
-        List<ThreadResponse> response = discussionService.getUnansweredQuestions(courseId);
+    public ResponseEntity<CursorPage<ThreadResponse>> getUnansweredQuestions(
+            @PathVariable Long courseId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        CursorPage<ThreadResponse> response = discussionService.getUnansweredQuestions(courseId, cursor, size);
         return ResponseEntity.ok(response);
     }
 
@@ -122,8 +176,19 @@ public class DiscussionController {
     }
 
     @GetMapping("/comments/thread/{threadId}")
-    public ResponseEntity<List<CommentResponse>> getThreadComments(@PathVariable Long threadId) {
-        List<CommentResponse> response = discussionService.getThreadComments(threadId);
+    public ResponseEntity<CursorPage<CommentResponse>> getThreadComments(
+            @PathVariable Long threadId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        CursorPage<CommentResponse> response = discussionService.getThreadComments(threadId, cursor, size);
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/threads/{id}/comment-tree")
+    public ResponseEntity<List<CommentTreeNode>> getCommentTree(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "TIME") CommentSort sort) {
+        List<CommentTreeNode> response = discussionService.getCommentTree(id, sort);
         return ResponseEntity.ok(response);
     }
 
@@ -186,10 +251,29 @@ public class DiscussionController {
             @RequestParam Long userId,
             @RequestParam TargetType targetType,
             @RequestParam Long targetId) {
-        VoteResponse response = discussionService.getUserVote(userId, targetType, targetId);
+        return discussionService.getUserVote(userId, targetType, targetId)
+            .map(ResponseEntity::ok)
+            .orElseGet(() -> ResponseEntity.noContent().build());
+    }
+
+    @PostMapping("/votes/lookup")
+    public ResponseEntity<VoteLookupResponse> lookupVotes(@Valid @RequestBody VoteLookupRequest request) {
+        VoteLookupResponse response = discussionService.lookupVotes(request);
         return ResponseEntity.ok(response);
     }
 
+    // ==================== Live Feed ====================
+
+    @GetMapping(value = "/threads/{id}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamThread(@PathVariable Long id) {
+        return discussionService.streamThread(id);
+    }
+
+    @GetMapping(value = "/courses/{courseId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamCourse(@PathVariable Long courseId) {
+        return discussionService.streamCourse(courseId);
+    }
+
     // ==================== Statistics ====================
 
     @GetMapping("/threads/{id}/stats")
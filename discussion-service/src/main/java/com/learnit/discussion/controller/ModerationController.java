@@ -0,0 +1,37 @@
+package com.learnit.discussion.controller;
+
+import com.learnit.discussion.dto.ModerationJobResponse;
+import com.learnit.discussion.dto.ModerationRequest;
+import com.learnit.discussion.service.ModerationService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.net.URI;
+
+/**
+ * Bulk moderation jobs. A job runs in the background; poll its resource for progress.
+ * Requires the admin API key (X-API-Key).
+ */
+@RestController
+@RequestMapping("/api/discussions/admin/moderation")
+@RequiredArgsConstructor
+public class ModerationController {
+
+    private final ModerationService moderationService;
+
+    @PostMapping("/jobs")
+    public ResponseEntity<ModerationJobResponse> submit(@Valid @RequestBody ModerationRequest request) {
+        ModerationJobResponse job = moderationService.submit(request);
+        URI location = ServletUriComponentsBuilder.fromCurrentRequest()
+            .path("/{id}").buildAndExpand(job.getId()).toUri();
+        return ResponseEntity.accepted().location(location).body(job);
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<ModerationJobResponse> getJob(@PathVariable Long id) {
+        return ResponseEntity.ok(moderationService.getJob(id));
+    }
+}
@@ -0,0 +1,48 @@
+package com.learnit.discussion.controller;
+
+import com.learnit.discussion.dto.DeadLetterResponse;
+import com.learnit.discussion.service.OutboxRetentionService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Operator endpoints for outbox events that exhausted their publish attempts.
+ * Requires the admin API key (X-API-Key).
+ */
+@RestController
+@RequestMapping("/api/discussions/admin/outbox")
+@RequiredArgsConstructor
+public class OutboxAdminController {
+
+    private static final int MAX_LIMIT = 1000;
+
+    private final OutboxRetentionService outboxRetentionService;
+
+    @GetMapping("/dead-letters")
+    public ResponseEntity<List<DeadLetterResponse>> getDeadLetters(
+            @RequestParam(required = false) String eventType,
+            @RequestParam(defaultValue = "50") int limit) {
+        List<DeadLetterResponse> response = outboxRetentionService.getDeadLetters(eventType, clamp(limit));
+        return ResponseEntity.ok(response);
+    }
+
+    @PostMapping("/dead-letters/{id}/replay")
+    public ResponseEntity<Void> replayDeadLetter(@PathVariable Long id) {
+        outboxRetentionService.replayDeadLetter(id);
+        return ResponseEntity.accepted().build();
+    }
+
+    @PostMapping("/dead-letters/replay")
+    public ResponseEntity<Map<String, Integer>> replayDeadLetters(@RequestParam(defaultValue = "100") int limit) {
+        int replayed = outboxRetentionService.replayDeadLetters(clamp(limit));
+        return ResponseEntity.accepted().body(Map.of("replayed", replayed));
+    }
+
+    private int clamp(int limit) {
+        return Math.max(1, Math.min(limit, MAX_LIMIT));
+    }
+}
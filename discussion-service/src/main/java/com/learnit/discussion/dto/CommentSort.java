@@ -0,0 +1,6 @@
+package com.learnit.discussion.dto;
+
+public enum CommentSort {
+    TIME,   // Oldest first at every level
+    VOTES   // Highest net votes first, ties oldest first
+}
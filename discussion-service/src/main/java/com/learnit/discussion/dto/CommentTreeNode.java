@@ -0,0 +1,21 @@
+package com.learnit.discussion.dto;
+
+import com.learnit.discussion.entity.Comment;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@EqualsAndHashCode(callSuper = true)
+@NoArgsConstructor
+public class CommentTreeNode extends CommentResponse {
+
+    private List<CommentTreeNode> replies = new ArrayList<>();
+
+    public CommentTreeNode(Comment comment) {
+        super(comment);
+    }
+}
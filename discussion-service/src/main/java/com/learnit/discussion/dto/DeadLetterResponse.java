@@ -0,0 +1,34 @@
+package com.learnit.discussion.dto;
+
+import com.learnit.discussion.entity.OutboxDeadLetter;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+public class DeadLetterResponse {
+
+    private Long id;
+    private Long originalEventId;
+    private String aggregateType;
+    private String aggregateId;
+    private String eventType;
+    private Integer attemptCount;
+    private String lastError;
+    private LocalDateTime createdAt;
+    private LocalDateTime deadLetteredAt;
+
+    public DeadLetterResponse(OutboxDeadLetter deadLetter) {
+        this.id = deadLetter.getId();
+        this.originalEventId = deadLetter.getOriginalEventId();
+        this.aggregateType = deadLetter.getAggregateType();
+        this.aggregateId = deadLetter.getAggregateId();
+        this.eventType = deadLetter.getEventType();
+        this.attemptCount = deadLetter.getAttemptCount();
+        this.lastError = deadLetter.getLastError();
+        this.createdAt = deadLetter.getCreatedAt();
+        this.deadLetteredAt = deadLetter.getDeadLetteredAt();
+    }
+}
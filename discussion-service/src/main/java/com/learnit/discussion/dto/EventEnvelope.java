@@ -5,7 +5,7 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
-import java.time.LocalDateTime;
+import java.time.Instant;
 import java.util.Map;
 
 /**
@@ -29,9 +29,9 @@ public class EventEnvelope {
     private String eventId;
 
     /**
-     * When the event occurred (ISO-8601 format)
+     * When the event occurred (ISO-8601 UTC)
      */
-    private LocalDateTime occurredAt;
+    private Instant occurredAt;
 
     /**
      * Schema version for backward compatibility
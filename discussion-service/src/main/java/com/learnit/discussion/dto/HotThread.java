@@ -0,0 +1,26 @@
+package com.learnit.discussion.dto;
+
+import com.learnit.discussion.entity.ThreadCategory;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HotThread {
+
+    private Long threadId;
+    private Long courseId;
+    private Long authorId;
+    private String title;
+    private ThreadCategory category;
+    private Integer upvotes;
+    private Integer downvotes;
+    private Integer replyCount;
+    private Long viewCount;
+    private LocalDateTime createdAt;
+    private Double hotScore; // Decayed score at the last ranking pass
+}
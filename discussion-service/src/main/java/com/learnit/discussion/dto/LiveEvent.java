@@ -0,0 +1,35 @@
+package com.learnit.discussion.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Activity pushed to live feed subscribers (SSE data of one event).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LiveEvent {
+
+    /**
+     * comment_added, vote_changed, answer_marked, thread_locked (also the SSE event name)
+     */
+    private String type;
+
+    private Long threadId;
+
+    private Long courseId;
+
+    private Instant occurredAt;
+
+    /**
+     * Event-specific data (varies by type)
+     */
+    private Map<String, Object> data;
+}
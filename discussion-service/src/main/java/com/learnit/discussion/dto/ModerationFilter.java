@@ -0,0 +1,22 @@
+package com.learnit.discussion.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Selects moderation targets by author, course and/or creation time (createdTo is exclusive).
+ * At least a course or an author is required so a filter never sweeps the whole forum.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ModerationFilter {
+
+    private Long courseId;
+    private Long authorId;
+    private LocalDateTime createdFrom;
+    private LocalDateTime createdTo;
+}
@@ -0,0 +1,38 @@
+package com.learnit.discussion.dto;
+
+import com.learnit.discussion.entity.ModerationAction;
+import com.learnit.discussion.entity.ModerationJob;
+import com.learnit.discussion.entity.ModerationJobStatus;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+public class ModerationJobResponse {
+
+    private Long id;
+    private ModerationAction action;
+    private ModerationJobStatus status;
+    private Integer total;
+    private Integer processed;
+    private Integer affected;
+    private String error;
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+
+    public ModerationJobResponse(ModerationJob job) {
+        this.id = job.getId();
+        this.action = job.getAction();
+        this.status = job.getStatus();
+        this.total = job.getTotal();
+        this.processed = job.getProcessed();
+        this.affected = job.getAffected();
+        this.error = job.getError();
+        this.createdAt = job.getCreatedAt();
+        this.startedAt = job.getStartedAt();
+        this.finishedAt = job.getFinishedAt();
+    }
+}
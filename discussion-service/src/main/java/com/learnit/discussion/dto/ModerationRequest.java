@@ -0,0 +1,27 @@
+package com.learnit.discussion.dto;
+
+import com.learnit.discussion.entity.ModerationAction;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Bulk moderation: either explicit ids (threads, or comments for DELETE_COMMENTS) or a filter
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ModerationRequest {
+
+    @NotNull(message = "Action is required")
+    private ModerationAction action;
+
+    @Size(max = 10000, message = "At most 10000 ids per job")
+    private List<Long> ids;
+
+    private ModerationFilter filter;
+}
@@ -0,0 +1,18 @@
+package com.learnit.discussion.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchHit {
+
+    private String hitType; // THREAD or COMMENT
+    private Long threadId;
+    private Long commentId; // Only set for COMMENT hits
+    private String title; // HTML-escaped title of the thread the hit belongs to
+    private String snippet; // HTML-escaped excerpt with matches wrapped in <mark>
+    private Double rank;
+}
@@ -0,0 +1,19 @@
+package com.learnit.discussion.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchResultPage {
+
+    private String query;
+    private Integer page;
+    private Integer size;
+    private Boolean hasMore;
+    private List<SearchHit> hits;
+}
@@ -0,0 +1,14 @@
+package com.learnit.discussion.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TagCount {
+
+    private String tag;
+    private Integer threadCount; // Active threads carrying the tag
+}
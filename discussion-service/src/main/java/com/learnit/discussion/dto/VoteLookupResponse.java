@@ -0,0 +1,16 @@
+package com.learnit.discussion.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VoteLookupResponse {
+
+    private Long userId;
+    private List<VoteTarget> votes; // Same order as requested, voteType null when not voted
+}
@@ -0,0 +1,25 @@
+package com.learnit.discussion.dto;
+
+import com.learnit.discussion.entity.TargetType;
+import com.learnit.discussion.entity.VoteType;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One thread or comment in a vote lookup; voteType is the user's vote, null when not voted
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VoteTarget {
+
+    @NotNull(message = "Target type is required")
+    private TargetType targetType;
+
+    @NotNull(message = "Target ID is required")
+    private Long targetId;
+
+    private VoteType voteType;
+}
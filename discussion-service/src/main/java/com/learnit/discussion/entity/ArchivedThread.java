@@ -0,0 +1,63 @@
+package com.learnit.discussion.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+
+import java.time.LocalDateTime;
+
+/**
+ * A thread moved out of the live tables, together with its tags, comments and votes,
+ * as one gzip-compressed JSON snapshot. Keeps the original thread id.
+ */
+@Entity
+@Table(name = "archived_threads", indexes = {
+    @Index(name = "idx_archived_threads_course", columnList = "courseId,lastActivityAt,id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchivedThread implements Persistable<Long> {
+
+    @Id
+    private Long id; // Original thread id
+
+    @Column(nullable = false)
+    private Long courseId;
+
+    @Column(nullable = false)
+    private Long authorId;
+
+    @Column(nullable = false, length = 500)
+    private String title;
+
+    private LocalDateTime lastActivityAt;
+
+    @Column(nullable = false)
+    private Integer commentCount = 0;
+
+    @Column(nullable = false)
+    private Integer voteCount = 0;
+
+    @Column(nullable = false)
+    private byte[] snapshot;
+
+    @Column(nullable = false)
+    private LocalDateTime archivedAt;
+
+    @Transient
+    private boolean isNew = true; // Assigned id: insert without a merge lookup
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        isNew = false;
+    }
+}
@@ -7,18 +7,24 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.PrePersist;
 import jakarta.persistence.PreUpdate;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.DynamicUpdate;
 
 @Entity
-@Table(name = "comments")
+@Table(name = "comments", indexes = {
+    @Index(name = "idx_comments_thread_created", columnList = "threadId,createdAt,id"),
+    @Index(name = "idx_comments_author_created", columnList = "authorId,createdAt,id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
+@DynamicUpdate // Saves write only changed columns; vote counters are changed by CommentRepository.applyVoteDelta
 public class Comment {
 
     @Id
@@ -69,26 +75,6 @@ public class Comment {
         isEdited = true;
     }
 
-    public void addUpvote() {
-        this.upvotes++;
-    }
-
-    public void removeUpvote() {
-        if (this.upvotes > 0) {
-            this.upvotes--;
-        }
-    }
-
-    public void addDownvote() {
-        this.downvotes++;
-    }
-
-    public void removeDownvote() {
-        if (this.downvotes > 0) {
-            this.downvotes--;
-        }
-    }
-
     public void markAsAnswer() {
         this.isAnswer = true;
     }
@@ -4,16 +4,25 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "threads")
+@Table(name = "threads", indexes = {
+    // Keyset listings: equality columns first, then the full sort key
+    @Index(name = "idx_threads_course_listing", columnList = "courseId,status,isPinned,lastActivityAt,id"),
+    @Index(name = "idx_threads_category_listing", columnList = "courseId,category,status,lastActivityAt,id"),
+    @Index(name = "idx_threads_category_created", columnList = "courseId,category,status,createdAt,id"),
+    @Index(name = "idx_threads_author_created", columnList = "authorId,createdAt,id"),
+    @Index(name = "idx_threads_last_activity", columnList = "lastActivityAt,id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
+@DynamicUpdate // Saves write only changed columns; counters are changed by targeted UPDATEs in ThreadRepository
 public class DiscussionThread {
 
     @Id
@@ -41,7 +50,8 @@ public class DiscussionThread {
     private ThreadStatus status = ThreadStatus.ACTIVE;
 
     @ElementCollection
-    @CollectionTable(name = "thread_tags", joinColumns = @JoinColumn(name = "thread_id"))
+    @CollectionTable(name = "thread_tags", joinColumns = @JoinColumn(name = "thread_id"),
+        indexes = @Index(name = "idx_thread_tags_tag", columnList = "tag,thread_id"))
     @Column(name = "tag")
     private Set<String> tags = new HashSet<>();
 
@@ -51,7 +61,7 @@ public class DiscussionThread {
     @Column(nullable = false)
     private Boolean isLocked = false;
 
-    @Column(nullable = false)
+    @Column(nullable = false, updatable = false) // Only ViewCountBuffer writes it, with view_count = view_count + ?
     private Integer viewCount = 0;
 
     @Column(nullable = false)
@@ -84,42 +94,4 @@ public class DiscussionThread {
     protected void onUpdate() {
         updatedAt = LocalDateTime.now();
     }
-
-    public void incrementViewCount() {
-        this.viewCount++;
-    }
-
-    public void incrementReplyCount() {
-        this.replyCount++;
-    }
-
-    public void decrementReplyCount() {
-        if (this.replyCount > 0) {
-            this.replyCount--;
-        }
-    }
-
-    public void addUpvote() {
-        this.upvotes++;
-    }
-
-    public void removeUpvote() {
-        if (this.upvotes > 0) {
-            this.upvotes--;
-        }
-    }
-
-    public void addDownvote() {
-        this.downvotes++;
-    }
-
-    public void removeDownvote() {
-        if (this.downvotes > 0) {
-            this.downvotes--;
-        }
-    }
-
-    public void updateLastActivity() {
-        this.lastActivityAt = LocalDateTime.now();
-    }
 }
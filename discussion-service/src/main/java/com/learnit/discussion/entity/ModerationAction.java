@@ -0,0 +1,14 @@
+package com.learnit.discussion.entity;
+
+public enum ModerationAction {
+    DELETE_THREADS,   // Soft delete (status DELETED)
+    LOCK_THREADS,
+    UNLOCK_THREADS,
+    PIN_THREADS,
+    UNPIN_THREADS,
+    DELETE_COMMENTS;  // Hard delete, reply counts recomputed
+
+    public boolean targetsComments() {
+        return this == DELETE_COMMENTS;
+    }
+}
@@ -0,0 +1,62 @@
+package com.learnit.discussion.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Progress of one bulk moderation request. Updated in the same transaction
+ * as each applied chunk, so processed/affected always match committed work.
+ */
+@Entity
+@Table(name = "moderation_jobs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ModerationJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 30)
+    private ModerationAction action;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private ModerationJobStatus status = ModerationJobStatus.QUEUED;
+
+    /**
+     * What was selected: explicit ids or the filter, for auditing
+     */
+    @Column(columnDefinition = "TEXT")
+    private String criteria;
+
+    @Column(nullable = false)
+    private Integer total = 0; // Targets selected
+
+    @Column(nullable = false)
+    private Integer processed = 0; // Targets handled so far
+
+    @Column(nullable = false)
+    private Integer affected = 0; // Rows actually changed (already-moderated targets are skipped)
+
+    @Column(columnDefinition = "TEXT")
+    private String error;
+
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    private LocalDateTime startedAt;
+
+    private LocalDateTime finishedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,8 @@
+package com.learnit.discussion.entity;
+
+public enum ModerationJobStatus {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
@@ -0,0 +1,60 @@
+package com.learnit.discussion.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Outbox event that exhausted its publish attempts.
+ * Moved out of outbox_events so it no longer blocks its aggregate or retention,
+ * and kept here until an operator replays it.
+ */
+@Entity
+@Table(name = "outbox_dead_letters", indexes = {
+    @Index(name = "idx_outbox_dead_letters_type", columnList = "eventType,id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxDeadLetter {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * Id the event had in outbox_events
+     */
+    @Column(nullable = false)
+    private Long originalEventId;
+
+    @Column(nullable = false, length = 50)
+    private String aggregateType;
+
+    @Column(nullable = false)
+    private String aggregateId;
+
+    @Column(nullable = false, length = 100)
+    private String eventType;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    @Column(nullable = false)
+    private Integer attemptCount;
+
+    @Column(columnDefinition = "TEXT")
+    private String lastError;
+
+    /**
+     * When the original event was created
+     */
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(nullable = false)
+    private LocalDateTime deadLetteredAt;
+}
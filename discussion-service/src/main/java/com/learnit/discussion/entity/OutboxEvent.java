@@ -14,7 +14,7 @@ import java.time.LocalDateTime;
  */
 @Entity
 @Table(name = "outbox_events", indexes = {
-    @Index(name = "idx_outbox_processed", columnList = "processed,createdAt"),
+    @Index(name = "idx_outbox_pending", columnList = "processed,id"),
     @Index(name = "idx_outbox_created", columnList = "createdAt")
 })
 @Data
@@ -80,6 +80,17 @@ public class OutboxEvent {
     @Column(columnDefinition = "TEXT")
     private String lastError;
 
+    /**
+     * Publisher instance holding the event while it is being sent
+     */
+    @Column(length = 100)
+    private String claimedBy;
+
+    /**
+     * End of that publisher's lease; other instances may claim the event after it
+     */
+    private LocalDateTime claimedUntil;
+
     @PrePersist
     protected void onCreate() {
         if (createdAt == null) {
@@ -0,0 +1,34 @@
+package com.learnit.discussion.kafka;
+
+import com.learnit.discussion.dto.EventEnvelope;
+
+/**
+ * Wire encoding of event envelopes on a Kafka topic.
+ *
+ * Outbox rows always hold the envelope as JSON text; the publisher re-encodes
+ * it with the codec configured for the topic and tags each record with a
+ * content-type header so consumers can decode any of them.
+ */
+public interface EventCodec {
+
+    String CONTENT_TYPE_HEADER = "content-type";
+
+    /**
+     * Short name used in configuration: json, smile or cbor
+     */
+    String name();
+
+    /**
+     * MIME type sent in the content-type header
+     */
+    String contentType();
+
+    byte[] encode(EventEnvelope envelope);
+
+    EventEnvelope decode(byte[] data);
+
+    /**
+     * Re-encode an envelope stored as JSON text in the outbox, without binding it to objects
+     */
+    byte[] fromJson(String json);
+}
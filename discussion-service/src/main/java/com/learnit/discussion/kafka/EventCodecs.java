@@ -0,0 +1,68 @@
+package com.learnit.discussion.kafka;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Available event codecs and the codec used per topic.
+ *
+ * All codecs share the application ObjectMapper configuration (Java time
+ * support, ISO-8601 dates). Topics use discussion.kafka.codec unless listed
+ * in discussion.kafka.topic-codecs as topic=codec pairs.
+ */
+@Component
+public class EventCodecs {
+
+    public static final String JSON = "json";
+    public static final String SMILE = "smile";
+    public static final String CBOR = "cbor";
+
+    private final Map<String, EventCodec> byName = new LinkedHashMap<>();
+    private final Map<String, EventCodec> byTopic = new HashMap<>();
+    private final EventCodec defaultCodec;
+
+    public EventCodecs(ObjectMapper objectMapper,
+                       @Value("${discussion.kafka.codec:json}") String defaultCodec,
+                       @Value("${discussion.kafka.topic-codecs:}") String topicCodecs) {
+        register(new JacksonEventCodec(JSON, "application/json", objectMapper, objectMapper));
+        register(new JacksonEventCodec(SMILE, "application/x-jackson-smile",
+            objectMapper.copyWith(new SmileFactory()), objectMapper));
+        register(new JacksonEventCodec(CBOR, "application/cbor",
+            objectMapper.copyWith(new CBORFactory()), objectMapper));
+
+        this.defaultCodec = byName(defaultCodec);
+        for (String entry : topicCodecs.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] parts = entry.split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid discussion.kafka.topic-codecs entry: " + entry);
+            }
+            byTopic.put(parts[0].trim(), byName(parts[1].trim()));
+        }
+    }
+
+    public EventCodec forTopic(String topic) {
+        return byTopic.getOrDefault(topic, defaultCodec);
+    }
+
+    public EventCodec byName(String name) {
+        EventCodec codec = byName.get(name);
+        if (codec == null) {
+            throw new IllegalArgumentException("Unknown event codec: " + name + " (expected one of " + byName.keySet() + ")");
+        }
+        return codec;
+    }
+
+    private void register(EventCodec codec) {
+        byName.put(codec.name(), codec);
+    }
+}
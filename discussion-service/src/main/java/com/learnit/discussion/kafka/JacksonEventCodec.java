@@ -0,0 +1,88 @@
+package com.learnit.discussion.kafka;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.learnit.discussion.dto.EventEnvelope;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Event codec backed by a Jackson data format (JSON, Smile, CBOR).
+ * Readers and writers are built once and shared; they are thread-safe.
+ */
+public class JacksonEventCodec implements EventCodec {
+
+    private final String name;
+    private final String contentType;
+    private final boolean json;
+    private final JsonFactory jsonFactory;
+    private final JsonFactory targetFactory;
+    private final ObjectWriter writer;
+    private final ObjectReader reader;
+
+    /**
+     * @param mapper     mapper for the target format
+     * @param jsonMapper mapper used for the JSON text kept in the outbox
+     */
+    public JacksonEventCodec(String name, String contentType, ObjectMapper mapper, ObjectMapper jsonMapper) {
+        this.name = name;
+        this.contentType = contentType;
+        this.json = mapper == jsonMapper;
+        this.jsonFactory = jsonMapper.getFactory();
+        this.targetFactory = mapper.getFactory();
+        this.writer = mapper.writerFor(EventEnvelope.class);
+        this.reader = mapper.readerFor(EventEnvelope.class);
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public String contentType() {
+        return contentType;
+    }
+
+    @Override
+    public byte[] encode(EventEnvelope envelope) {
+        try {
+            return writer.writeValueAsBytes(envelope);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to encode event " + envelope.getEventId() + " as " + name, e);
+        }
+    }
+
+    @Override
+    public EventEnvelope decode(byte[] data) {
+        try {
+            return reader.readValue(data);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to decode " + name + " event", e);
+        }
+    }
+
+    @Override
+    public byte[] fromJson(String jsonText) {
+        if (json) {
+            return jsonText.getBytes(StandardCharsets.UTF_8);
+        }
+        // Stream tokens straight from the JSON parser into the target generator
+        try (ByteArrayBuilder out = new ByteArrayBuilder(jsonText.length());
+             JsonParser parser = jsonFactory.createParser(jsonText)) {
+            try (JsonGenerator generator = targetFactory.createGenerator(out)) {
+                parser.nextToken();
+                generator.copyCurrentStructure(parser);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to re-encode outbox event as " + name, e);
+        }
+    }
+}
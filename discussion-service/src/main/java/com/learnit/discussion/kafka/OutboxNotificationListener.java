@@ -0,0 +1,106 @@
+package com.learnit.discussion.kafka;
+
+import com.learnit.discussion.service.OutboxWakeup;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Listens on the PostgreSQL outbox_events channel and wakes the local
+ * publisher when any instance commits outbox events, so publishing is not
+ * limited to the instance that wrote them and idle instances need not poll.
+ *
+ * Holds one connection from the pool for the lifetime of the service and
+ * reconnects after failures. Enabled with discussion.outbox.notify.enabled.
+ */
+@Component
+@ConditionalOnExpression("${discussion.kafka.enabled:false} and ${discussion.outbox.notify.enabled:false}")
+@Slf4j
+public class OutboxNotificationListener {
+
+    private static final int RECEIVE_TIMEOUT_MS = 1000;
+
+    private final DataSource dataSource;
+    private final OutboxWakeup outboxWakeup;
+
+    @Value("${discussion.outbox.notify.reconnect-delay-ms:5000}")
+    private Long reconnectDelayMs;
+
+    private volatile boolean running;
+    private Thread listener;
+
+    public OutboxNotificationListener(DataSource dataSource, OutboxWakeup outboxWakeup) {
+        this.dataSource = dataSource;
+        this.outboxWakeup = outboxWakeup;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        listener = new Thread(this::listen, "outbox-notify-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        listener.join(RECEIVE_TIMEOUT_MS * 2L);
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                try {
+                    connection.setAutoCommit(true);
+                    try (Statement statement = connection.createStatement()) {
+                        statement.execute("LISTEN " + OutboxWakeup.CHANNEL);
+                    }
+                    PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                    log.info("Listening for outbox notifications on channel {}", OutboxWakeup.CHANNEL);
+                    outboxWakeup.setListening(true);
+
+                    // Events may have been committed while we were not listening
+                    outboxWakeup.signal();
+
+                    while (running) {
+                        PGNotification[] notifications = pgConnection.getNotifications(RECEIVE_TIMEOUT_MS);
+                        if (notifications != null && notifications.length > 0) {
+                            outboxWakeup.signal();
+                        }
+                    }
+                } finally {
+                    outboxWakeup.setListening(false);
+                    // Pooled connection goes back to the pool: stop receiving on it
+                    try (Statement statement = connection.createStatement()) {
+                        statement.execute("UNLISTEN *");
+                    } catch (SQLException e) {
+                        log.debug("UNLISTEN failed on connection close", e);
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    break;
+                }
+                log.warn("Outbox notification listener failed, reconnecting in {} ms: {}",
+                         reconnectDelayMs, e.getMessage());
+                try {
+                    Thread.sleep(reconnectDelayMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
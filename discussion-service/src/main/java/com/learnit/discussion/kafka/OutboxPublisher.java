@@ -2,151 +2,470 @@ package com.learnit.discussion.kafka;
 
 import com.learnit.discussion.entity.OutboxEvent;
 import com.learnit.discussion.repository.OutboxEventRepository;
-import lombok.RequiredArgsConstructor;
+import com.learnit.discussion.service.OutboxWakeup;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.kafka.core.KafkaTemplate;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 /**
- * Background publisher that polls outbox_events table and publishes to Kafka.
- * Runs every 5 seconds to ensure events are published with minimal delay.
+ * Background publisher that drains the outbox_events table to Kafka.
+ *
+ * Each batch is claimed in a short transaction that locks pending rows with
+ * FOR UPDATE SKIP LOCKED and leases them to this instance (claimed_by,
+ * claimed_until), so any number of service instances can publish concurrently
+ * without sending an event twice. Sends run outside any transaction, so a slow
+ * broker holds neither row locks nor a pooled connection. They are pipelined:
+ * events of different aggregates are in flight at the same time, while events
+ * of the same aggregate are chained so each one is only sent after the
+ * previous one was acknowledged. Once every send has completed a second short
+ * transaction marks the published rows with a single bulk UPDATE and frees the
+ * leases of the rest. The lease outlives the send timeout; it only expires on
+ * its own if the instance dies mid-batch.
+ *
+ * Publishing runs on a dedicated worker thread that is woken by
+ * {@link OutboxWakeup} right after a transaction writing outbox events commits
+ * (and, with LISTEN/NOTIFY enabled, when another instance commits). While the
+ * LISTEN connection is healthy an idle publisher does not poll at all; it only
+ * keeps a timed retry while events it saw are still pending (failed sends,
+ * aggregates deferred behind another instance). Without a healthy listener
+ * polling is the fallback: while idle the poll interval doubles from the
+ * minimum up to the maximum, and any signal or found work resets it.
  * Only activates when Kafka is enabled.
  */
 @Component
 @ConditionalOnProperty(name = "discussion.kafka.enabled", havingValue = "true")
-@RequiredArgsConstructor
 @Slf4j
 public class OutboxPublisher {
 
+    private static final String TOPIC = "discussion.events";
+
     private final OutboxEventRepository outboxRepository;
-    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final OutboxWakeup outboxWakeup;
+    private final EventCodec codec;
+    private final byte[] contentTypeHeader;
+    private final String instanceId =
+        ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8);
 
-    private static final String TOPIC = "discussion.events";
-    private static final int BATCH_SIZE = 100;
-    private static final int MAX_RETRY_ATTEMPTS = 5;
+    private final Counter publishedCounter;
+    private final Counter failedCounter;
+    private final Timer batchTimer;
+    private final Timer publishLagTimer;
+    private final AtomicLong oldestPendingAgeMs = new AtomicLong();
+
+    @Value("${discussion.outbox.batch-size:100}")
+    private Integer batchSize;
+
+    @Value("${discussion.outbox.max-batches-per-poll:50}")
+    private Integer maxBatchesPerPoll;
+
+    @Value("${discussion.outbox.max-attempts:5}")
+    private Integer maxAttempts;
+
+    @Value("${discussion.outbox.send-timeout-ms:30000}")
+    private Long sendTimeoutMs;
+
+    @Value("${discussion.outbox.claim-timeout-ms:60000}")
+    private Long claimTimeoutMs;
+
+    @Value("${discussion.outbox.initial-delay-ms:10000}")
+    private Long initialDelayMs;
+
+    @Value("${discussion.outbox.min-poll-interval-ms:200}")
+    private Long minPollIntervalMs;
+
+    @Value("${discussion.outbox.max-poll-interval-ms:30000}")
+    private Long maxPollIntervalMs;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    public OutboxPublisher(OutboxEventRepository outboxRepository,
+                           KafkaTemplate<String, byte[]> kafkaTemplate,
+                           TransactionTemplate transactionTemplate,
+                           OutboxWakeup outboxWakeup,
+                           EventCodecs eventCodecs,
+                           MeterRegistry meterRegistry) {
+        this.outboxRepository = outboxRepository;
+        this.kafkaTemplate = kafkaTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.outboxWakeup = outboxWakeup;
+        this.codec = eventCodecs.forTopic(TOPIC);
+        this.contentTypeHeader = codec.contentType().getBytes(StandardCharsets.UTF_8);
+        this.publishedCounter = Counter.builder("outbox.events.published")
+            .description("Outbox events published to Kafka")
+            .register(meterRegistry);
+        this.failedCounter = Counter.builder("outbox.events.failed")
+            .description("Outbox event publish attempts that failed")
+            .register(meterRegistry);
+        this.batchTimer = Timer.builder("outbox.batch.duration")
+            .description("Claim, send and mark time of one outbox batch")
+            .register(meterRegistry);
+        this.publishLagTimer = Timer.builder("outbox.publish.lag")
+            .description("Time from event creation to Kafka acknowledgement")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+        Gauge.builder("outbox.pending.oldest.age", oldestPendingAgeMs, AtomicLong::get)
+            .description("Age in milliseconds of the oldest unpublished event")
+            .baseUnit("milliseconds")
+            .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        worker = new Thread(this::runWorker, "outbox-publisher");
+        worker.setDaemon(true);
+        worker.start();
+    }
 
     /**
-     * Poll and publish pending events every 5 seconds
-     * Fixed delay ensures we wait 5s after previous execution completes
+     * Let the worker finish its current batch, then stop it
      */
-    @Scheduled(fixedDelay = 5000, initialDelay = 10000)
-    public void publishPendingEvents() {
-        try {
-            List<OutboxEvent> pendingEvents = outboxRepository
-                .findByProcessedFalseOrderByCreatedAtAsc();
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        outboxWakeup.signal();
+        worker.join(sendTimeoutMs + 1000);
+    }
 
-            if (pendingEvents.isEmpty()) {
-                log.trace("No pending outbox events to publish");
-                return;
+    private void runWorker() {
+        try {
+            long startAt = System.currentTimeMillis() + initialDelayMs;
+            while (running && System.currentTimeMillis() < startAt) {
+                outboxWakeup.await(startAt - System.currentTimeMillis());
             }
 
-            log.info("Found {} pending outbox events, publishing to Kafka...", pendingEvents.size());
+            long idleWait = minPollIntervalMs;
+            while (running) {
+                PollResult result = publishPendingEvents();
+                if (result.backlog) {
+                    continue;
+                }
+                if (result.published > 0) {
+                    idleWait = minPollIntervalMs;
+                }
 
+                // Every commit arrives as a signal while LISTEN is up: no need to poll an idle outbox
+                boolean idle = outboxWakeup.isListening() && !result.retry;
+                boolean woken = outboxWakeup.await(idle ? Long.MAX_VALUE : idleWait);
+                idleWait = woken ? minPollIntervalMs : Math.min(idleWait * 2, maxPollIntervalMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Outbox publisher stopped");
+    }
+
+    /**
+     * Publish pending events batch by batch until the outbox is drained
+     * or the per-poll batch cap is reached. A full batch that published
+     * nothing (every event deferred behind another instance's lease) ends the
+     * poll: claiming it again would only spin until that lease is gone.
+     */
+    public PollResult publishPendingEvents() {
+        try {
+            long start = System.nanoTime();
+            int claimed = 0;
             int published = 0;
             int failed = 0;
+            int batches = 0;
+            BatchResult result;
 
-            for (OutboxEvent event : pendingEvents) {
-                try {
-                    publishEvent(event);
-                    published++;
-                } catch (Exception e) {
-                    failed++;
-                    log.warn("Failed to publish event {} (attempt {}): {}", 
-                            event.getId(), event.getAttemptCount(), e.getMessage());
-                    
-                    // Don't let one failure stop the batch
-                    handlePublishFailure(event, e);
-                }
-            }
+            do {
+                result = publishBatch();
+                claimed += result.claimed;
+                published += result.published;
+                failed += result.failed;
+                batches++;
+            } while (result.published > 0 && result.claimed == batchSize && batches < maxBatchesPerPoll);
 
-            log.info("Published {} events, {} failed", published, failed);
+            if (published > 0 || failed > 0) {
+                updateOldestPendingAge();
+                double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+                log.info("Published {} events in {} batches, {} failed ({} events/s)",
+                         published, batches, failed, Math.round(published / seconds));
+            } else {
+                // Nothing claimable: no extra query while idle
+                oldestPendingAgeMs.set(0);
+                log.trace("No pending outbox events to publish");
+            }
 
             // Alert if too many failures
             if (failed > 0) {
                 checkForPersistentFailures();
             }
 
+            boolean backlog = result.published > 0 && result.claimed == batchSize && failed == 0;
+            return new PollResult(published, failed, backlog, claimed > published);
+
         } catch (Exception e) {
             log.error("Error in outbox publisher loop", e);
+            return new PollResult(0, 0, false, true);
         }
     }
 
     /**
-     * Publish single event to Kafka and mark as processed
+     * Claim one batch, send it and record the outcome. Claiming and marking are
+     * two short transactions; nothing is held open while waiting for acks.
      */
-    @Transactional
-    protected void publishEvent(OutboxEvent event) {
-        // Send to Kafka (synchronous for simplicity, can be async in production)
-        kafkaTemplate.send(TOPIC, event.getAggregateId(), event.getPayload())
-            .whenComplete((result, ex) -> {
-                if (ex != null) {
-                    throw new RuntimeException("Kafka send failed", ex);
-                }
-            });
+    BatchResult publishBatch() {
+        long start = System.nanoTime();
+        Claim claim = transactionTemplate.execute(status -> claim());
+        if (claim == null) {
+            return BatchResult.EMPTY;
+        }
+
+        List<OutboxEvent> ready = claim.ready;
+        Set<Long> published = ConcurrentHashMap.newKeySet();
+        Map<Long, Throwable> failures = new ConcurrentHashMap<>();
+
+        // One chain per aggregate: different aggregates are sent concurrently,
+        // the same aggregate strictly in id order and only after the previous ack
+        Map<String, CompletableFuture<Void>> chains = new LinkedHashMap<>();
+        for (OutboxEvent event : ready) {
+            String aggregate = aggregateKey(event.getAggregateType(), event.getAggregateId());
+            CompletableFuture<Void> previous = chains.getOrDefault(aggregate, CompletableFuture.completedFuture(null));
+            chains.put(aggregate, previous.thenCompose(ignored -> send(event, published, failures)));
+        }
 
-        // Mark as processed in database
-        event.markAsProcessed();
-        event.incrementAttempt();
-        outboxRepository.save(event);
+        awaitAll(chains.values(), ready, published, failures);
 
-        log.debug("Published event {} to Kafka: {}", event.getId(), event.getEventType());
+        LocalDateTime now = LocalDateTime.now();
+        // An acknowledgement arriving after the timeout does not undo the recorded failure
+        Set<Long> publishedIds = published.stream()
+            .filter(id -> !failures.containsKey(id))
+            .collect(Collectors.toSet());
+        // Deferred events and those held back by an earlier failure of their aggregate
+        Set<Long> unsent = claim.events.stream()
+            .map(OutboxEvent::getId)
+            .filter(id -> !publishedIds.contains(id) && !failures.containsKey(id))
+            .collect(Collectors.toSet());
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!publishedIds.isEmpty()) {
+                outboxRepository.markPublished(publishedIds, now);
+            }
+            failures.forEach((id, error) -> outboxRepository.recordFailure(id, describe(error)));
+            if (!unsent.isEmpty()) {
+                outboxRepository.releaseClaims(unsent, instanceId);
+            }
+        });
+
+        publishedCounter.increment(publishedIds.size());
+        failedCounter.increment(failures.size());
+        for (OutboxEvent event : ready) {
+            if (publishedIds.contains(event.getId())) {
+                publishLagTimer.record(Duration.between(event.getCreatedAt(), now));
+            } else if (failures.containsKey(event.getId())
+                       && event.getAttemptCount() + 1 >= maxAttempts) {
+                log.error("Event {} has failed {} times, requires manual intervention: {}",
+                          event.getId(), event.getAttemptCount() + 1, event.getEventType());
+            }
+        }
+        batchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        log.debug("Outbox batch: claimed={}, published={}, failed={}, deferred={}",
+                  claim.events.size(), publishedIds.size(), failures.size(), claim.events.size() - ready.size());
+        return new BatchResult(claim.events.size(), publishedIds.size(), failures.size());
     }
 
     /**
-     * Handle publish failure - increment attempt count and record error
+     * Lock and lease the next batch; null when nothing is claimable
      */
-    @Transactional
-    protected void handlePublishFailure(OutboxEvent event, Exception error) {
-        event.incrementAttempt();
-        event.recordError(error.getMessage());
-        outboxRepository.save(event);
+    private Claim claim() {
+        LocalDateTime now = LocalDateTime.now();
+        List<OutboxEvent> claimed = outboxRepository.claimBatch(maxAttempts, now, batchSize);
+        if (claimed.isEmpty()) {
+            return null;
+        }
+        outboxRepository.lease(claimed.stream().map(OutboxEvent::getId).collect(Collectors.toList()),
+                               instanceId, now.plus(Duration.ofMillis(claimTimeoutMs)));
+        return new Claim(claimed, withoutBlockedAggregates(claimed));
+    }
+
+    /**
+     * Drop events whose aggregate still has an earlier pending event claimed by
+     * another instance; their lease is released after the batch and a later
+     * poll picks them up.
+     */
+    private List<OutboxEvent> withoutBlockedAggregates(List<OutboxEvent> claimed) {
+        Set<Long> claimedIds = claimed.stream().map(OutboxEvent::getId).collect(Collectors.toSet());
+        Set<String> aggregateIds = claimed.stream().map(OutboxEvent::getAggregateId).collect(Collectors.toSet());
+        Long maxId = claimed.get(claimed.size() - 1).getId();
+
+        Map<String, Long> firstPending = new HashMap<>();
+        outboxRepository.findEarlierPendingAggregates(maxAttempts, maxId, claimedIds, aggregateIds)
+            .forEach(row -> firstPending.put(
+                aggregateKey(row.getAggregateType(), row.getAggregateId()), row.getFirstPendingId()));
+        if (firstPending.isEmpty()) {
+            return claimed;
+        }
 
-        // After max attempts, consider moving to dead-letter table or alerting
-        if (event.getAttemptCount() >= MAX_RETRY_ATTEMPTS) {
-            log.error("Event {} has failed {} times, requires manual intervention: {}", 
-                     event.getId(), event.getAttemptCount(), event.getEventType());
+        return claimed.stream()
+            .filter(event -> {
+                Long blocker = firstPending.get(aggregateKey(event.getAggregateType(), event.getAggregateId()));
+                return blocker == null || blocker > event.getId();
+            })
+            .collect(Collectors.toList());
+    }
+
+    private CompletableFuture<Void> send(OutboxEvent event, Set<Long> published, Map<Long, Throwable> failures) {
+        CompletableFuture<?> sent;
+        try {
+            ProducerRecord<String, byte[]> record =
+                new ProducerRecord<>(TOPIC, event.getAggregateId(), codec.fromJson(event.getPayload()));
+            record.headers().add(EventCodec.CONTENT_TYPE_HEADER, contentTypeHeader);
+            sent = kafkaTemplate.send(record);
+        } catch (Exception e) {
+            sent = CompletableFuture.failedFuture(e);
         }
+
+        return sent.handle((result, ex) -> {
+            if (ex != null) {
+                failures.put(event.getId(), ex);
+                // Fail the chain so later events of this aggregate are not sent
+                throw new IllegalStateException("Send failed for outbox event " + event.getId(), ex);
+            }
+            published.add(event.getId());
+            return null;
+        });
+    }
+
+    /**
+     * Wait for every chain; sends still in flight at the timeout count as failed
+     * (they may still arrive, consumers deduplicate by eventId)
+     */
+    private void awaitAll(Iterable<CompletableFuture<Void>> chains, List<OutboxEvent> ready,
+                          Set<Long> published, Map<Long, Throwable> failures) {
+        List<CompletableFuture<Void>> all = new ArrayList<>();
+        chains.forEach(all::add);
+        try {
+            CompletableFuture.allOf(all.toArray(new CompletableFuture[0])).get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            // Individual failures are already recorded per event
+        } catch (TimeoutException e) {
+            TimeoutException timeout = new TimeoutException("Kafka send timed out after " + sendTimeoutMs + " ms");
+            for (OutboxEvent event : ready) {
+                if (!published.contains(event.getId())) {
+                    failures.putIfAbsent(event.getId(), timeout);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while publishing outbox batch", e);
+        }
+    }
+
+    private void updateOldestPendingAge() {
+        long age = outboxRepository.findFirstByProcessedFalseAndAttemptCountLessThanOrderByIdAsc(maxAttempts)
+            .map(event -> Duration.between(event.getCreatedAt(), LocalDateTime.now()).toMillis())
+            .orElse(0L);
+        oldestPendingAgeMs.set(Math.max(0, age));
+    }
+
+    private static String aggregateKey(String aggregateType, String aggregateId) {
+        return aggregateType + ":" + aggregateId;
+    }
+
+    private static String describe(Throwable error) {
+        Throwable cause = error.getCause() != null ? error.getCause() : error;
+        return cause.getClass().getSimpleName() + ": " + cause.getMessage();
     }
 
     /**
      * Check for events that have failed multiple times (monitoring)
      */
     private void checkForPersistentFailures() {
-        List<OutboxEvent> failedEvents = outboxRepository.findFailedEvents(MAX_RETRY_ATTEMPTS);
-        
+        List<OutboxEvent> failedEvents = outboxRepository.findFailedEvents(maxAttempts);
+
         if (!failedEvents.isEmpty()) {
-            log.warn("Found {} events with {} or more failed attempts", 
-                    failedEvents.size(), MAX_RETRY_ATTEMPTS);
-            
-            // In production: send alert to monitoring system (Prometheus, Grafana)
-            // For now: log details
+            log.warn("Found {} events with {} or more failed attempts",
+                    failedEvents.size(), maxAttempts);
+
             failedEvents.forEach(event -> {
-                log.warn("Persistently failing event: id={}, type={}, attempts={}, error={}", 
+                log.warn("Persistently failing event: id={}, type={}, attempts={}, error={}",
                         event.getId(), event.getEventType(), event.getAttemptCount(), event.getLastError());
             });
         }
     }
 
-    /**
-     * Cleanup old processed events (run daily)
-     * Keeps last 7 days of processed events for debugging
-     */
-    @Scheduled(cron = "0 0 2 * * *") // 2 AM daily
-    @Transactional
-    public void cleanupOldProcessedEvents() {
-        LocalDateTime cutoffDate = LocalDateTime.now().minusDays(7);
-        List<OutboxEvent> oldEvents = outboxRepository
-            .findByProcessedTrueAndProcessedAtBefore(cutoffDate);
-
-        if (!oldEvents.isEmpty()) {
-            outboxRepository.deleteAll(oldEvents);
-            log.info("Cleaned up {} old processed outbox events", oldEvents.size());
+    public static final class PollResult {
+        private final int published;
+        private final int failed;
+        private final boolean backlog; // Stopped at the batch cap with more events waiting
+        private final boolean retry; // Claimed events left pending (failed, deferred) or the poll itself failed
+
+        PollResult(int published, int failed, boolean backlog, boolean retry) {
+            this.published = published;
+            this.failed = failed;
+            this.backlog = backlog;
+            this.retry = retry;
+        }
+
+        public int getPublished() {
+            return published;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public boolean isBacklog() {
+            return backlog;
+        }
+    }
+
+    private static final class Claim {
+        final List<OutboxEvent> events;
+        final List<OutboxEvent> ready;
+
+        Claim(List<OutboxEvent> events, List<OutboxEvent> ready) {
+            this.events = events;
+            this.ready = ready;
+        }
+    }
+
+    static final class BatchResult {
+        static final BatchResult EMPTY = new BatchResult(0, 0, 0);
+
+        final int claimed;
+        final int published;
+        final int failed;
+
+        BatchResult(int claimed, int published, int failed) {
+            this.claimed = claimed;
+            this.published = published;
+            this.failed = failed;
         }
     }
 }
@@ -0,0 +1,9 @@
+package com.learnit.discussion.repository;
+
+import com.learnit.discussion.entity.ArchivedThread;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ArchivedThreadRepository extends JpaRepository<ArchivedThread, Long> {
+}
@@ -1,11 +1,15 @@
 package com.learnit.discussion.repository;
 
 import com.learnit.discussion.entity.Comment;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,6 +19,19 @@ public interface CommentRepository extends JpaRepository<Comment, Long> {
     // Find all comments for a thread (ordered by votes)
     List<Comment> findByThreadIdOrderByCreatedAtAsc(Long threadId);
 
+    // Keyset page of a thread's comments, oldest first
+    @Query("SELECT c FROM Comment c WHERE c.threadId = :threadId ORDER BY c.createdAt ASC, c.id ASC")
+    List<Comment> findThreadPage(@Param("threadId") Long threadId, Pageable pageable);
+
+    @Query("SELECT c FROM Comment c WHERE c.threadId = :threadId " +
+           "AND (c.createdAt > :createdAt OR (c.createdAt = :createdAt AND c.id > :id)) " +
+           "ORDER BY c.createdAt ASC, c.id ASC")
+    List<Comment> findThreadPageAfter(
+        @Param("threadId") Long threadId,
+        @Param("createdAt") LocalDateTime createdAt,
+        @Param("id") Long id,
+        Pageable pageable);
+
     // Find top-level comments (no parent)
     List<Comment> findByThreadIdAndParentCommentIdIsNullOrderByCreatedAtAsc(Long threadId);
 
@@ -41,4 +58,53 @@ public interface CommentRepository extends JpaRepository<Comment, Long> {
     // Check if comment exists with depth limit
     @Query("SELECT COUNT(c) > 0 FROM Comment c WHERE c.id = :commentId AND c.depth < :maxDepth")
     boolean canAddReply(@Param("commentId") Long commentId, @Param("maxDepth") Integer maxDepth);
+
+    // Thread of a comment without loading the entity
+    @Query("SELECT c.threadId FROM Comment c WHERE c.id = :commentId")
+    Optional<Long> findThreadIdById(@Param("commentId") Long commentId);
+
+    // Atomically apply vote deltas in a single statement (bypasses @PreUpdate, so isEdited is untouched)
+    @Modifying
+    @Query("UPDATE Comment c SET c.upvotes = c.upvotes + :upDelta, " +
+           "c.downvotes = c.downvotes + :downDelta WHERE c.id = :commentId")
+    int applyVoteDelta(
+        @Param("commentId") Long commentId,
+        @Param("upDelta") int upDelta,
+        @Param("downDelta") int downDelta);
+
+    // ==================== Bulk moderation ====================
+
+    // Comments matching a moderation filter; null criteria are ignored
+    @Query("SELECT c.id FROM Comment c WHERE (:authorId IS NULL OR c.authorId = :authorId) AND " +
+           "(:courseId IS NULL OR c.threadId IN (SELECT t.id FROM DiscussionThread t WHERE t.courseId = :courseId)) AND " +
+           "(CAST(:createdFrom AS LocalDateTime) IS NULL OR c.createdAt >= :createdFrom) AND " +
+           "(CAST(:createdTo AS LocalDateTime) IS NULL OR c.createdAt < :createdTo) ORDER BY c.id")
+    List<Long> findIdsForModeration(
+        @Param("courseId") Long courseId,
+        @Param("authorId") Long authorId,
+        @Param("createdFrom") LocalDateTime createdFrom,
+        @Param("createdTo") LocalDateTime createdTo,
+        Pageable pageable);
+
+    // How many of the given comments each thread holds
+    @Query("SELECT c.threadId AS threadId, COUNT(c) AS comments FROM Comment c " +
+           "WHERE c.id IN :commentIds GROUP BY c.threadId")
+    List<ThreadCommentCountView> countByThreadForIds(@Param("commentIds") Collection<Long> commentIds);
+
+    @Modifying
+    @Query("DELETE FROM Comment c WHERE c.id IN :commentIds")
+    int deleteByIds(@Param("commentIds") Collection<Long> commentIds);
+
+    // ==================== Archival ====================
+
+    List<Comment> findByThreadIdIn(Collection<Long> threadIds);
+
+    @Modifying
+    @Query("DELETE FROM Comment c WHERE c.threadId IN :threadIds")
+    int deleteByThreadIds(@Param("threadIds") Collection<Long> threadIds);
+
+    interface ThreadCommentCountView {
+        Long getThreadId();
+        Long getComments();
+    }
 }
@@ -0,0 +1,40 @@
+package com.learnit.discussion.repository;
+
+import com.learnit.discussion.entity.ModerationJob;
+import com.learnit.discussion.entity.ModerationJobStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+@Repository
+public interface ModerationJobRepository extends JpaRepository<ModerationJob, Long> {
+
+    @Modifying
+    @Query("UPDATE ModerationJob j SET j.status = :status, j.total = :total, j.startedAt = :startedAt WHERE j.id = :id")
+    int markStarted(@Param("id") Long id, @Param("status") ModerationJobStatus status,
+                    @Param("total") int total, @Param("startedAt") LocalDateTime startedAt);
+
+    @Modifying
+    @Query("UPDATE ModerationJob j SET j.processed = j.processed + :processed, " +
+           "j.affected = j.affected + :affected WHERE j.id = :id")
+    int recordProgress(@Param("id") Long id, @Param("processed") int processed, @Param("affected") int affected);
+
+    @Modifying
+    @Query("UPDATE ModerationJob j SET j.status = :status, j.error = :error, j.finishedAt = :finishedAt WHERE j.id = :id")
+    int markFinished(@Param("id") Long id, @Param("status") ModerationJobStatus status,
+                     @Param("error") String error, @Param("finishedAt") LocalDateTime finishedAt);
+
+    /**
+     * Jobs left unfinished by an instance that stopped while running them
+     */
+    @Modifying
+    @Query("UPDATE ModerationJob j SET j.status = com.learnit.discussion.entity.ModerationJobStatus.FAILED, " +
+           "j.error = :error, j.finishedAt = :finishedAt WHERE j.status IN :statuses")
+    int failUnfinished(@Param("statuses") Collection<ModerationJobStatus> statuses,
+                       @Param("error") String error, @Param("finishedAt") LocalDateTime finishedAt);
+}
@@ -0,0 +1,48 @@
+package com.learnit.discussion.repository;
+
+import com.learnit.discussion.entity.OutboxDeadLetter;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface OutboxDeadLetterRepository extends JpaRepository<OutboxDeadLetter, Long> {
+
+    @Query("SELECT d FROM OutboxDeadLetter d ORDER BY d.id")
+    List<OutboxDeadLetter> findOldest(Pageable pageable);
+
+    @Query("SELECT d FROM OutboxDeadLetter d WHERE d.eventType = :eventType ORDER BY d.id")
+    List<OutboxDeadLetter> findOldestByEventType(@Param("eventType") String eventType, Pageable pageable);
+
+    /**
+     * Move one dead letter back into the outbox as a fresh pending event (same payload and eventId).
+     * Returns the number of events requeued (0 when the id does not exist).
+     */
+    @Modifying
+    @Query(value = "WITH replayed AS (DELETE FROM outbox_dead_letters WHERE id = :id " +
+                   "RETURNING aggregate_type, aggregate_id, event_type, payload) " +
+                   "INSERT INTO outbox_events (aggregate_type, aggregate_id, event_type, payload, " +
+                   "processed, created_at, attempt_count) " +
+                   "SELECT aggregate_type, aggregate_id, event_type, payload, false, LOCALTIMESTAMP, 0 FROM replayed",
+           nativeQuery = true)
+    int replay(@Param("id") Long id);
+
+    /**
+     * Move the oldest dead letters back into the outbox in one statement
+     */
+    @Modifying
+    @Query(value = "WITH replayed AS (DELETE FROM outbox_dead_letters WHERE id IN " +
+                   "(SELECT id FROM outbox_dead_letters ORDER BY id LIMIT :limit) " +
+                   "RETURNING id, aggregate_type, aggregate_id, event_type, payload) " +
+                   "INSERT INTO outbox_events (aggregate_type, aggregate_id, event_type, payload, " +
+                   "processed, created_at, attempt_count) " +
+                   "SELECT aggregate_type, aggregate_id, event_type, payload, false, LOCALTIMESTAMP, 0 " +
+                   "FROM replayed ORDER BY id",
+           nativeQuery = true)
+    int replayOldest(@Param("limit") int limit);
+}
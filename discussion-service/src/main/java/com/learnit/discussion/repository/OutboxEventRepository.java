@@ -2,20 +2,98 @@ package com.learnit.discussion.repository;
 
 import com.learnit.discussion.entity.OutboxEvent;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
 
     /**
-     * Find unprocessed events ordered by creation time (FIFO)
-     * Used by OutboxPublisher to batch publish events
+     * Lock the oldest pending events whose lease is free or expired.
+     * Rows already locked by another instance's claim are skipped instead of
+     * waited on; the caller leases them with {@link #lease} in the same short
+     * transaction, so the locks are held only until it commits.
      */
-    List<OutboxEvent> findByProcessedFalseOrderByCreatedAtAsc();
+    @Query(value = "SELECT * FROM outbox_events WHERE processed = false AND attempt_count < :maxAttempts " +
+                   "AND (claimed_until IS NULL OR claimed_until < :now) " +
+                   "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED",
+           nativeQuery = true)
+    List<OutboxEvent> claimBatch(@Param("maxAttempts") int maxAttempts,
+                                 @Param("now") LocalDateTime now,
+                                 @Param("limit") int limit);
+
+    /**
+     * Lease claimed events to one publisher until the given time; other instances
+     * skip them until then, or for good once they are marked
+     */
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.claimedBy = :owner, e.claimedUntil = :until WHERE e.id IN :ids")
+    int lease(@Param("ids") Collection<Long> ids, @Param("owner") String owner, @Param("until") LocalDateTime until);
+
+    /**
+     * Give up the lease of events left pending (deferred or not sent), unless
+     * another instance took them over after the lease expired
+     */
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.claimedUntil = null WHERE e.id IN :ids AND e.claimedBy = :owner")
+    int releaseClaims(@Param("ids") Collection<Long> ids, @Param("owner") String owner);
+
+    /**
+     * Earliest pending event per aggregate that is older than a claimed batch but
+     * not part of it (claimed by another instance). Later events of those
+     * aggregates must wait so each aggregate is published in order.
+     */
+    @Query(value = "SELECT aggregate_type AS aggregateType, aggregate_id AS aggregateId, MIN(id) AS firstPendingId " +
+                   "FROM outbox_events WHERE processed = false AND attempt_count < :maxAttempts " +
+                   "AND id < :maxId AND id NOT IN (:claimedIds) AND aggregate_id IN (:aggregateIds) " +
+                   "GROUP BY aggregate_type, aggregate_id",
+           nativeQuery = true)
+    List<PendingAggregateView> findEarlierPendingAggregates(
+        @Param("maxAttempts") int maxAttempts,
+        @Param("maxId") Long maxId,
+        @Param("claimedIds") Collection<Long> claimedIds,
+        @Param("aggregateIds") Collection<String> aggregateIds);
+
+    /**
+     * Mark a whole published batch in one statement
+     */
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.processed = true, e.processedAt = :processedAt, " +
+           "e.attemptCount = e.attemptCount + 1, e.lastError = null WHERE e.id IN :ids")
+    int markPublished(@Param("ids") Collection<Long> ids, @Param("processedAt") LocalDateTime processedAt);
+
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.attemptCount = e.attemptCount + 1, e.lastError = :error, " +
+           "e.claimedUntil = null WHERE e.id = :id")
+    int recordFailure(@Param("id") Long id, @Param("error") String error);
+
+    /**
+     * Move a chunk of events that exhausted their attempts to outbox_dead_letters
+     * in one statement. Returns the number of events moved.
+     */
+    @Modifying
+    @Query(value = "WITH moved AS (DELETE FROM outbox_events WHERE id IN " +
+                   "(SELECT id FROM outbox_events WHERE processed = false AND attempt_count >= :maxAttempts " +
+                   "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED) " +
+                   "RETURNING id, aggregate_type, aggregate_id, event_type, payload, attempt_count, last_error, created_at) " +
+                   "INSERT INTO outbox_dead_letters (original_event_id, aggregate_type, aggregate_id, event_type, " +
+                   "payload, attempt_count, last_error, created_at, dead_lettered_at) " +
+                   "SELECT id, aggregate_type, aggregate_id, event_type, payload, attempt_count, last_error, " +
+                   "created_at, LOCALTIMESTAMP FROM moved",
+           nativeQuery = true)
+    int moveExhaustedToDeadLetters(@Param("maxAttempts") int maxAttempts, @Param("limit") int limit);
+
+    /**
+     * Oldest event still waiting to be published (for lag monitoring)
+     */
+    Optional<OutboxEvent> findFirstByProcessedFalseAndAttemptCountLessThanOrderByIdAsc(int maxAttempts);
 
     /**
      * Find events that failed multiple times (for monitoring/alerting)
@@ -28,8 +106,9 @@ public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long>
      */
     long countByProcessedFalse();
 
-    /**
-     * Find old processed events for cleanup
-     */
-    List<OutboxEvent> findByProcessedTrueAndProcessedAtBefore(LocalDateTime cutoffDate);
+    interface PendingAggregateView {
+        String getAggregateType();
+        String getAggregateId();
+        Long getFirstPendingId();
+    }
 }
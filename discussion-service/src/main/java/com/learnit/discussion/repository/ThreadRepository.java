@@ -3,59 +3,304 @@ package com.learnit.discussion.repository;
 import com.learnit.discussion.entity.DiscussionThread;
 import com.learnit.discussion.entity.ThreadCategory;
 import com.learnit.discussion.entity.ThreadStatus;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface ThreadRepository extends JpaRepository<DiscussionThread, Long> {
 
-    // Find threads by course
-    List<DiscussionThread> findByCourseIdAndStatusOrderByIsPinnedDescLastActivityAtDesc(
-        Long courseId, ThreadStatus status);
+    // Keyset pages below use Pageable only as a LIMIT; the "After" variants continue
+    // strictly after the cursor row, so concurrent inserts never shift later pages.
+
+    // Find threads by course (pinned first, then most recently active)
+    @Query("SELECT t FROM DiscussionThread t WHERE t.courseId = :courseId AND t.status = :status " +
+           "ORDER BY t.isPinned DESC, t.lastActivityAt DESC, t.id DESC")
+    List<DiscussionThread> findCoursePage(
+        @Param("courseId") Long courseId,
+        @Param("status") ThreadStatus status,
+        Pageable pageable);
+
+    @Query("SELECT t FROM DiscussionThread t WHERE t.courseId = :courseId AND t.status = :status " +
+           "AND ((:pinned = true AND t.isPinned = false) " +
+           "OR (t.isPinned = :pinned AND t.lastActivityAt < :lastActivityAt) " +
+           "OR (t.isPinned = :pinned AND t.lastActivityAt = :lastActivityAt AND t.id < :id)) " +
+           "ORDER BY t.isPinned DESC, t.lastActivityAt DESC, t.id DESC")
+    List<DiscussionThread> findCoursePageAfter(
+        @Param("courseId") Long courseId,
+        @Param("status") ThreadStatus status,
+        @Param("pinned") Boolean pinned,
+        @Param("lastActivityAt") LocalDateTime lastActivityAt,
+        @Param("id") Long id,
+        Pageable pageable);
 
     // Find threads by category
-    List<DiscussionThread> findByCourseIdAndCategoryAndStatusOrderByLastActivityAtDesc(
-        Long courseId, ThreadCategory category, ThreadStatus status);
+    @Query("SELECT t FROM DiscussionThread t WHERE t.courseId = :courseId AND t.category = :category " +
+           "AND t.status = :status ORDER BY t.lastActivityAt DESC, t.id DESC")
+    List<DiscussionThread> findCategoryPage(
+        @Param("courseId") Long courseId,
+        @Param("category") ThreadCategory category,
+        @Param("status") ThreadStatus status,
+        Pageable pageable);
+
+    @Query("SELECT t FROM DiscussionThread t WHERE t.courseId = :courseId AND t.category = :category " +
+           "AND t.status = :status " +
+           "AND (t.lastActivityAt < :lastActivityAt OR (t.lastActivityAt = :lastActivityAt AND t.id < :id)) " +
+           "ORDER BY t.lastActivityAt DESC, t.id DESC")
+    List<DiscussionThread> findCategoryPageAfter(
+        @Param("courseId") Long courseId,
+        @Param("category") ThreadCategory category,
+        @Param("status") ThreadStatus status,
+        @Param("lastActivityAt") LocalDateTime lastActivityAt,
+        @Param("id") Long id,
+        Pageable pageable);
 
     // Find threads by author
-    List<DiscussionThread> findByAuthorIdOrderByCreatedAtDesc(Long authorId);
+    @Query("SELECT t FROM DiscussionThread t WHERE t.authorId = :authorId " +
+           "ORDER BY t.createdAt DESC, t.id DESC")
+    List<DiscussionThread> findAuthorPage(@Param("authorId") Long authorId, Pageable pageable);
 
-    // Search threads by title or content
-    @Query("SELECT t FROM DiscussionThread t WHERE t.courseId = :courseId " +
-           "AND t.status = :status " +
-           "AND (LOWER(t.title) LIKE LOWER(CONCAT('%', :keyword, '%')) " +
-           "OR LOWER(t.content) LIKE LOWER(CONCAT('%', :keyword, '%')))")
+    @Query("SELECT t FROM DiscussionThread t WHERE t.authorId = :authorId " +
+           "AND (t.createdAt < :createdAt OR (t.createdAt = :createdAt AND t.id < :id)) " +
+           "ORDER BY t.createdAt DESC, t.id DESC")
+    List<DiscussionThread> findAuthorPageAfter(
+        @Param("authorId") Long authorId,
+        @Param("createdAt") LocalDateTime createdAt,
+        @Param("id") Long id,
+        Pageable pageable);
+
+    // Search threads by title or content using the full-text index (see db/search-index.sql)
+    @Query(value = "SELECT t.* FROM threads t " +
+                   "WHERE t.course_id = :courseId AND t.status = :status " +
+                   "AND t.search_vector @@ websearch_to_tsquery('english', :keyword) " +
+                   "ORDER BY ts_rank_cd(t.search_vector, websearch_to_tsquery('english', :keyword)) DESC, t.id DESC",
+           nativeQuery = true)
     List<DiscussionThread> searchThreads(
         @Param("courseId") Long courseId,
         @Param("keyword") String keyword,
-        @Param("status") ThreadStatus status);
+        @Param("status") String status);
+
+    /**
+     * Ranked search over threads and comments of a course.
+     * Paging happens before ts_headline so snippets are built only for the returned page.
+     * Titles and content are HTML-escaped (content before highlighting), so both are safe to render.
+     */
+    @Query(value = "WITH q AS (SELECT websearch_to_tsquery('english', :query) AS query), " +
+                   "hits AS (" +
+                   "  SELECT * FROM (" +
+                   "    SELECT 'THREAD' AS hit_type, t.id AS thread_id, CAST(NULL AS BIGINT) AS comment_id, " +
+                   "           ts_rank_cd(t.search_vector, q.query) AS rank " +
+                   "    FROM threads t, q " +
+                   "    WHERE t.course_id = :courseId AND t.status = :status AND t.search_vector @@ q.query " +
+                   "    UNION ALL " +
+                   "    SELECT 'COMMENT', c.thread_id, c.id, ts_rank_cd(c.search_vector, q.query) " +
+                   "    FROM comments c JOIN threads t ON t.id = c.thread_id, q " +
+                   "    WHERE t.course_id = :courseId AND t.status = :status AND c.search_vector @@ q.query" +
+                   "  ) matched " +
+                   "  ORDER BY rank DESC, thread_id DESC, comment_id NULLS FIRST " +
+                   "  LIMIT :limit OFFSET :offset" +
+                   ") " +
+                   "SELECT h.hit_type AS hitType, h.thread_id AS threadId, h.comment_id AS commentId, " +
+                   "       replace(replace(replace(t.title, '&', '&amp;'), '<', '&lt;'), '>', '&gt;') AS title, h.rank AS rank, " +
+                   "       ts_headline('english', " +
+                   "           replace(replace(replace(COALESCE(c.content, t.content), '&', '&amp;'), '<', '&lt;'), '>', '&gt;'), " +
+                   "           q.query, 'StartSel=<mark>, StopSel=</mark>, MaxFragments=2, MaxWords=30, MinWords=10') AS snippet " +
+                   "FROM hits h CROSS JOIN q " +
+                   "JOIN threads t ON t.id = h.thread_id " +
+                   "LEFT JOIN comments c ON c.id = h.comment_id " +
+                   "ORDER BY h.rank DESC, h.thread_id DESC, h.comment_id NULLS FIRST",
+           nativeQuery = true)
+    List<SearchHitView> searchDiscussions(
+        @Param("courseId") Long courseId,
+        @Param("query") String query,
+        @Param("status") String status,
+        @Param("limit") int limit,
+        @Param("offset") int offset);
 
     // Find threads by tag
     @Query("SELECT t FROM DiscussionThread t JOIN t.tags tag WHERE t.courseId = :courseId " +
-           "AND tag = :tag AND t.status = :status ORDER BY t.lastActivityAt DESC")
-    List<DiscussionThread> findByTag(
+           "AND tag = :tag AND t.status = :status ORDER BY t.lastActivityAt DESC, t.id DESC")
+    List<DiscussionThread> findTagPage(
+        @Param("courseId") Long courseId,
+        @Param("tag") String tag,
+        @Param("status") ThreadStatus status,
+        Pageable pageable);
+
+    @Query("SELECT t FROM DiscussionThread t JOIN t.tags tag WHERE t.courseId = :courseId " +
+           "AND tag = :tag AND t.status = :status " +
+           "AND (t.lastActivityAt < :lastActivityAt OR (t.lastActivityAt = :lastActivityAt AND t.id < :id)) " +
+           "ORDER BY t.lastActivityAt DESC, t.id DESC")
+    List<DiscussionThread> findTagPageAfter(
         @Param("courseId") Long courseId,
         @Param("tag") String tag,
-        @Param("status") ThreadStatus status);
+        @Param("status") ThreadStatus status,
+        @Param("lastActivityAt") LocalDateTime lastActivityAt,
+        @Param("id") Long id,
+        Pageable pageable);
 
     // Get popular threads (most upvotes)
     @Query("SELECT t FROM DiscussionThread t WHERE t.courseId = :courseId AND t.status = :status " +
            "ORDER BY (t.upvotes - t.downvotes) DESC, t.viewCount DESC")
     List<DiscussionThread> findPopularThreads(@Param("courseId") Long courseId, @Param("status") ThreadStatus status);
 
+    // Recently active threads of a course (candidates for the hot ranking)
+    List<DiscussionThread> findByCourseIdAndStatusAndLastActivityAtAfterOrderByLastActivityAtDesc(
+        Long courseId, ThreadStatus status, LocalDateTime since, Pageable pageable);
+
     // Get unanswered questions
     @Query("SELECT t FROM DiscussionThread t WHERE t.courseId = :courseId " +
            "AND t.category = 'QUESTION' AND t.status = :status " +
-           "AND t.acceptedAnswerId IS NULL ORDER BY t.createdAt DESC")
-    List<DiscussionThread> findUnansweredQuestions(@Param("courseId") Long courseId, @Param("status") ThreadStatus status);
+           "AND t.acceptedAnswerId IS NULL ORDER BY t.createdAt DESC, t.id DESC")
+    List<DiscussionThread> findUnansweredPage(
+        @Param("courseId") Long courseId,
+        @Param("status") ThreadStatus status,
+        Pageable pageable);
+
+    @Query("SELECT t FROM DiscussionThread t WHERE t.courseId = :courseId " +
+           "AND t.category = 'QUESTION' AND t.status = :status AND t.acceptedAnswerId IS NULL " +
+           "AND (t.createdAt < :createdAt OR (t.createdAt = :createdAt AND t.id < :id)) " +
+           "ORDER BY t.createdAt DESC, t.id DESC")
+    List<DiscussionThread> findUnansweredPageAfter(
+        @Param("courseId") Long courseId,
+        @Param("status") ThreadStatus status,
+        @Param("createdAt") LocalDateTime createdAt,
+        @Param("id") Long id,
+        Pageable pageable);
 
     // Count threads by course
     Long countByCourseIdAndStatus(Long courseId, ThreadStatus status);
 
     // Count threads by author
     Long countByAuthorId(Long authorId);
+
+    // Course of a thread without loading the entity
+    @Query("SELECT t.courseId FROM DiscussionThread t WHERE t.id = :threadId")
+    Optional<Long> findCourseIdById(@Param("threadId") Long threadId);
+
+    // Atomically apply vote deltas in a single statement
+    @Modifying
+    @Query("UPDATE DiscussionThread t SET t.upvotes = t.upvotes + :upDelta, " +
+           "t.downvotes = t.downvotes + :downDelta WHERE t.id = :threadId")
+    int applyVoteDelta(
+        @Param("threadId") Long threadId,
+        @Param("upDelta") int upDelta,
+        @Param("downDelta") int downDelta);
+
+    // Count a new reply without writing back the rest of the row
+    @Modifying
+    @Query("UPDATE DiscussionThread t SET t.replyCount = t.replyCount + 1, t.lastActivityAt = :now " +
+           "WHERE t.id = :threadId")
+    int recordReply(@Param("threadId") Long threadId, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE DiscussionThread t SET t.replyCount = t.replyCount - 1 " +
+           "WHERE t.id = :threadId AND t.replyCount > 0")
+    int removeReply(@Param("threadId") Long threadId);
+
+    // Tags of a page of threads in one query instead of one thread_tags query per thread
+    @Query("SELECT t.id AS threadId, tg AS tag FROM DiscussionThread t JOIN t.tags tg " +
+           "WHERE t.id IN :threadIds")
+    List<ThreadTagView> findTagsByThreadIds(@Param("threadIds") Collection<Long> threadIds);
+
+    // Every (thread, tag) pair of a course, used to build the in-memory tag index
+    @Query("SELECT t.id AS threadId, tg AS tag FROM DiscussionThread t JOIN t.tags tg " +
+           "WHERE t.courseId = :courseId AND t.status = :status")
+    List<ThreadTagView> findTagsByCourse(@Param("courseId") Long courseId, @Param("status") ThreadStatus status);
+
+    // ==================== Bulk moderation ====================
+
+    // Threads matching a moderation filter; null criteria are ignored
+    @Query("SELECT t.id FROM DiscussionThread t WHERE " +
+           "(:courseId IS NULL OR t.courseId = :courseId) AND (:authorId IS NULL OR t.authorId = :authorId) AND " +
+           "(CAST(:createdFrom AS LocalDateTime) IS NULL OR t.createdAt >= :createdFrom) AND " +
+           "(CAST(:createdTo AS LocalDateTime) IS NULL OR t.createdAt < :createdTo) ORDER BY t.id")
+    List<Long> findIdsForModeration(
+        @Param("courseId") Long courseId,
+        @Param("authorId") Long authorId,
+        @Param("createdFrom") LocalDateTime createdFrom,
+        @Param("createdTo") LocalDateTime createdTo,
+        Pageable pageable);
+
+    @Query("SELECT t.id AS threadId, t.courseId AS courseId FROM DiscussionThread t WHERE t.id IN :threadIds")
+    List<ThreadCourseView> findCourseIdsByIds(@Param("threadIds") Collection<Long> threadIds);
+
+    @Modifying
+    @Query("UPDATE DiscussionThread t SET t.status = :status, t.updatedAt = :now " +
+           "WHERE t.id IN :threadIds AND t.status <> :status")
+    int bulkSetStatus(@Param("threadIds") Collection<Long> threadIds, @Param("status") ThreadStatus status,
+                      @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE DiscussionThread t SET t.isLocked = :locked, t.updatedAt = :now " +
+           "WHERE t.id IN :threadIds AND t.isLocked <> :locked")
+    int bulkSetLocked(@Param("threadIds") Collection<Long> threadIds, @Param("locked") boolean locked,
+                      @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE DiscussionThread t SET t.isPinned = :pinned, t.updatedAt = :now " +
+           "WHERE t.id IN :threadIds AND t.isPinned <> :pinned")
+    int bulkSetPinned(@Param("threadIds") Collection<Long> threadIds, @Param("pinned") boolean pinned,
+                      @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE DiscussionThread t SET t.acceptedAnswerId = NULL WHERE t.acceptedAnswerId IN :commentIds")
+    int clearAcceptedAnswers(@Param("commentIds") Collection<Long> commentIds);
+
+    /**
+     * Recompute reply counts of many threads from their comments in one aggregate pass
+     */
+    @Modifying
+    @Query(value = "UPDATE threads t SET reply_count = agg.replies FROM (" +
+                   "SELECT t2.id, COUNT(c.id) AS replies FROM threads t2 " +
+                   "LEFT JOIN comments c ON c.thread_id = t2.id WHERE t2.id IN (:threadIds) GROUP BY t2.id) agg " +
+                   "WHERE t.id = agg.id AND t.reply_count <> agg.replies",
+           nativeQuery = true)
+    int recomputeReplyCounts(@Param("threadIds") Collection<Long> threadIds);
+
+    // ==================== Archival ====================
+
+    // Oldest inactive threads; rows locked by another migrator are skipped
+    @Query(value = "SELECT id FROM threads WHERE last_activity_at < :cutoff AND is_pinned = false " +
+                   "ORDER BY last_activity_at, id LIMIT :limit FOR UPDATE SKIP LOCKED",
+           nativeQuery = true)
+    List<Long> lockArchivableIds(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+
+    @Query("SELECT DISTINCT t FROM DiscussionThread t LEFT JOIN FETCH t.tags WHERE t.id IN :threadIds")
+    List<DiscussionThread> findWithTagsByIdIn(@Param("threadIds") Collection<Long> threadIds);
+
+    @Modifying
+    @Query(value = "DELETE FROM thread_tags WHERE thread_id IN (:threadIds)", nativeQuery = true)
+    int deleteTagsByThreadIds(@Param("threadIds") Collection<Long> threadIds);
+
+    // Tags must be deleted first (deleteTagsByThreadIds); bulk deletes skip element collections
+    @Modifying
+    @Query("DELETE FROM DiscussionThread t WHERE t.id IN :threadIds")
+    int deleteByIds(@Param("threadIds") Collection<Long> threadIds);
+
+    interface ThreadTagView {
+        Long getThreadId();
+        String getTag();
+    }
+
+    interface ThreadCourseView {
+        Long getThreadId();
+        Long getCourseId();
+    }
+
+    interface SearchHitView {
+        String getHitType();
+        Long getThreadId();
+        Long getCommentId();
+        String getTitle();
+        Double getRank();
+        String getSnippet();
+    }
 }
@@ -4,10 +4,13 @@ import com.learnit.discussion.entity.TargetType;
 import com.learnit.discussion.entity.Vote;
 import com.learnit.discussion.entity.VoteType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -41,4 +44,74 @@ public interface VoteRepository extends JpaRepository<Vote, Long> {
     // Check if user has voted
     boolean existsByUserIdAndTargetTypeAndTargetId(
         Long userId, TargetType targetType, Long targetId);
+
+    /**
+     * A user's votes on a set of threads and comments, in one query
+     * (served by the user_id, target_type, target_id unique index)
+     */
+    @Query("SELECT v.targetType AS targetType, v.targetId AS targetId, v.voteType AS voteType FROM Vote v " +
+           "WHERE v.userId = :userId AND (" +
+           "(v.targetType = com.learnit.discussion.entity.TargetType.THREAD AND v.targetId IN :threadIds) OR " +
+           "(v.targetType = com.learnit.discussion.entity.TargetType.COMMENT AND v.targetId IN :commentIds))")
+    List<UserVoteView> findUserVotes(
+        @Param("userId") Long userId,
+        @Param("threadIds") Collection<Long> threadIds,
+        @Param("commentIds") Collection<Long> commentIds);
+
+    /**
+     * Insert or switch a vote in a single statement.
+     * Returns nothing when the user already holds the same vote on the target.
+     * inserted is true for a new vote and false when an opposite vote was switched
+     * (xmax = 0 only for rows inserted by this statement).
+     */
+    @Query(value = "INSERT INTO votes (user_id, target_type, target_id, vote_type, created_at) " +
+                   "VALUES (:userId, :targetType, :targetId, :voteType, LOCALTIMESTAMP) " +
+                   "ON CONFLICT (user_id, target_type, target_id) " +
+                   "DO UPDATE SET vote_type = EXCLUDED.vote_type " +
+                   "WHERE votes.vote_type <> EXCLUDED.vote_type " +
+                   "RETURNING id, created_at AS createdAt, (xmax = 0) AS inserted",
+           nativeQuery = true)
+    Optional<VoteUpsertResult> upsertVote(
+        @Param("userId") Long userId,
+        @Param("targetType") String targetType,
+        @Param("targetId") Long targetId,
+        @Param("voteType") String voteType);
+
+    /**
+     * Delete a vote and return the type that was removed, in a single statement
+     */
+    @Query(value = "DELETE FROM votes WHERE user_id = :userId " +
+                   "AND target_type = :targetType AND target_id = :targetId " +
+                   "RETURNING vote_type",
+           nativeQuery = true)
+    Optional<String> deleteVoteReturningType(
+        @Param("userId") Long userId,
+        @Param("targetType") String targetType,
+        @Param("targetId") Long targetId);
+
+    // Votes on the given threads and comments (archival moves them with their thread)
+    @Query("SELECT v FROM Vote v WHERE " +
+           "(v.targetType = com.learnit.discussion.entity.TargetType.THREAD AND v.targetId IN :threadIds) OR " +
+           "(v.targetType = com.learnit.discussion.entity.TargetType.COMMENT AND v.targetId IN :commentIds)")
+    List<Vote> findByTargets(@Param("threadIds") Collection<Long> threadIds,
+                             @Param("commentIds") Collection<Long> commentIds);
+
+    @Modifying
+    @Query("DELETE FROM Vote v WHERE " +
+           "(v.targetType = com.learnit.discussion.entity.TargetType.THREAD AND v.targetId IN :threadIds) OR " +
+           "(v.targetType = com.learnit.discussion.entity.TargetType.COMMENT AND v.targetId IN :commentIds)")
+    int deleteByTargets(@Param("threadIds") Collection<Long> threadIds,
+                        @Param("commentIds") Collection<Long> commentIds);
+
+    interface UserVoteView {
+        TargetType getTargetType();
+        Long getTargetId();
+        VoteType getVoteType();
+    }
+
+    interface VoteUpsertResult {
+        Long getId();
+        LocalDateTime getCreatedAt();
+        Boolean getInserted();
+    }
 }
@@ -13,6 +13,7 @@ import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.Optional;
 
 /**
  * JWT authentication filter that validates JWT tokens in Authorization header.
@@ -20,14 +21,16 @@ import java.util.Collections;
  * Expected header format: Authorization: Bearer <jwt-token>
  * 
  * Extracts userId and username from token and sets authentication context.
+ * Claims come from {@link JwtClaimsCache}, so a token's signature is verified
+ * once rather than on every request.
  */
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
-    private final JwtUtil jwtUtil;
+    private final JwtClaimsCache jwtClaimsCache;
 
-    public JwtAuthenticationFilter(JwtUtil jwtUtil) {
-        this.jwtUtil = jwtUtil;
+    public JwtAuthenticationFilter(JwtClaimsCache jwtClaimsCache) {
+        this.jwtClaimsCache = jwtClaimsCache;
     }
 
     @Override
@@ -41,13 +44,11 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             String jwt = authHeader.substring(7);
             
             try {
-                if (jwtUtil.validateToken(jwt)) {
-                    String userId = jwtUtil.extractUserId(jwt);
-                    String username = jwtUtil.extractUsername(jwt);
-                    
+                Optional<JwtClaims> claims = jwtClaimsCache.resolve(jwt);
+                if (claims.isPresent()) {
                     UsernamePasswordAuthenticationToken authToken = 
                         new UsernamePasswordAuthenticationToken(
-                            userId, 
+                            claims.get().userId(), 
                             null, 
                             Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER"))
                         );
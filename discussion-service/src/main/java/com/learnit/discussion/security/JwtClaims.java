@@ -0,0 +1,13 @@
+package com.learnit.discussion.security;
+
+import java.time.Instant;
+
+/**
+ * Verified claims of a JWT, produced by one signature check
+ */
+public record JwtClaims(String userId, String username, Instant expiresAt) {
+
+    public boolean isExpired(Instant now) {
+        return expiresAt != null && !expiresAt.isAfter(now);
+    }
+}
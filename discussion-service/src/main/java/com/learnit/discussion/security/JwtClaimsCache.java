@@ -0,0 +1,91 @@
+package com.learnit.discussion.security;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Bounded LRU of verified JWT claims, keyed by the SHA-256 of the token.
+ *
+ * A client sends the same token on every request until it expires, so the
+ * signature is verified once and later requests pay one hash and a map lookup.
+ * Entries are never served past the token's own exp. Only valid tokens are
+ * cached; raw tokens are not kept in memory. A cache size of 0 disables it.
+ */
+@Component
+public class JwtClaimsCache {
+
+    private final JwtUtil jwtUtil;
+    private final Map<String, JwtClaims> claimsByTokenHash;
+    private final int maxEntries;
+    private final Clock clock;
+
+    @Autowired
+    public JwtClaimsCache(JwtUtil jwtUtil, @Value("${jwt.cache.size:10000}") int maxEntries) {
+        this(jwtUtil, maxEntries, Clock.systemUTC());
+    }
+
+    JwtClaimsCache(JwtUtil jwtUtil, int maxEntries, Clock clock) {
+        this.jwtUtil = jwtUtil;
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+        this.claimsByTokenHash = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, JwtClaims> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Claims of a valid, unexpired token; empty otherwise
+     */
+    public Optional<JwtClaims> resolve(String token) {
+        if (maxEntries <= 0) {
+            return jwtUtil.parseToken(token);
+        }
+        Instant now = clock.instant();
+        String key = hash(token);
+        synchronized (this) {
+            JwtClaims cached = claimsByTokenHash.get(key);
+            if (cached != null) {
+                if (!cached.isExpired(now)) {
+                    return Optional.of(cached);
+                }
+                claimsByTokenHash.remove(key);
+                return Optional.empty();
+            }
+        }
+
+        Optional<JwtClaims> parsed = jwtUtil.parseToken(token);
+        parsed.filter(claims -> !claims.isExpired(now)).ifPresent(claims -> {
+            synchronized (this) {
+                claimsByTokenHash.put(key, claims);
+            }
+        });
+        return parsed;
+    }
+
+    synchronized int size() {
+        return claimsByTokenHash.size();
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -1,14 +1,17 @@
 package com.learnit.discussion.security;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
 import java.util.Date;
+import java.util.Optional;
 import java.util.function.Function;
 
 /**
@@ -18,6 +21,9 @@ import java.util.function.Function;
  * - Subject: userId
  * - Claims: username, roles
  * - Expiration: 24 hours (configurable)
+ *
+ * The signing key and parser are built once; {@link #parseToken} verifies a
+ * token with a single signature check and returns all claims the service uses.
  */
 @Component
 public class JwtUtil {
@@ -28,8 +34,29 @@ public class JwtUtil {
     @Value("${jwt.expiration:86400000}") // 24 hours in milliseconds
     private Long expiration;
 
-    private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+    private SecretKey signingKey;
+    private JwtParser parser;
+
+    @PostConstruct
+    public void init() {
+        signingKey = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        parser = Jwts.parser().verifyWith(signingKey).build();
+    }
+
+    /**
+     * Verify the signature and expiry once and return the claims; empty when the token is invalid or expired
+     */
+    public Optional<JwtClaims> parseToken(String token) {
+        try {
+            Claims claims = extractAllClaims(token);
+            Date expiresAt = claims.getExpiration();
+            return Optional.of(new JwtClaims(
+                claims.getSubject(),
+                claims.get("username", String.class),
+                expiresAt == null ? null : expiresAt.toInstant()));
+        } catch (Exception e) {
+            return Optional.empty();
+        }
     }
 
     public String extractUserId(String token) {
@@ -50,11 +77,7 @@ public class JwtUtil {
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+        return parser.parseSignedClaims(token).getPayload();
     }
 
     private Boolean isTokenExpired(String token) {
@@ -75,7 +98,7 @@ public class JwtUtil {
                 .claim("username", username)
                 .issuedAt(new Date(System.currentTimeMillis()))
                 .expiration(new Date(System.currentTimeMillis() + expiration))
-                .signWith(getSigningKey())
+                .signWith(signingKey)
                 .compact();
     }
 }
@@ -27,6 +27,7 @@ import java.util.Arrays;
  * Authorization:
  * - Public: Read threads and comments (GET requests)
  * - Authenticated: Create/update threads, comments, votes (POST/PUT/DELETE)
+ * - Admin API key: Operator endpoints under /api/discussions/admin (outbox dead letters)
  */
 @Configuration
 @EnableWebSecurity
@@ -34,6 +35,9 @@ public class SecurityConfig {
 
     private final JwtAuthenticationFilter jwtAuthFilter;
 
+    @Value("${discussion.security.admin-api-key:}")
+    private String adminApiKey;
+
     public SecurityConfig(JwtAuthenticationFilter jwtAuthFilter) {
         this.jwtAuthFilter = jwtAuthFilter;
     }
@@ -45,6 +49,9 @@ public class SecurityConfig {
             .cors(cors -> cors.configurationSource(corsConfigurationSource()))
             .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
             .authorizeHttpRequests(auth -> auth
+                // Operator endpoints (checked before the public GET rule)
+                .requestMatchers("/api/discussions/admin/**").hasRole("ADMIN")
+
                 // Public endpoints - anyone can read discussions
                 .requestMatchers(HttpMethod.GET, "/api/discussions/**").permitAll()
                 
@@ -57,7 +64,8 @@ public class SecurityConfig {
                 // Default deny
                 .anyRequest().authenticated()
             )
-            .addFilterBefore(jwtAuthFilter, UsernamePasswordAuthenticationFilter.class);
+            .addFilterBefore(jwtAuthFilter, UsernamePasswordAuthenticationFilter.class)
+            .addFilterBefore(new AdminApiKeyFilter(adminApiKey), UsernamePasswordAuthenticationFilter.class);
 
         return http.build();
     }
@@ -0,0 +1,119 @@
+package com.learnit.discussion.service;
+
+import com.learnit.discussion.dto.CommentSort;
+import com.learnit.discussion.dto.CommentTreeNode;
+import com.learnit.discussion.entity.Comment;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded LRU of materialized comment trees, keyed by threadId.
+ *
+ * Trees are built in O(n) from the flat list of a thread's comments (one query)
+ * for every sort order and shared read-only between requests. Any comment change
+ * invalidates the thread's entry after commit; a per-thread generation counter
+ * (striped by thread id) keeps a load that raced with an invalidation of that
+ * thread from caching a stale tree, without discarding other threads' loads.
+ */
+@Component
+@Slf4j
+public class CommentTreeCache {
+
+    private static final Comparator<Comment> BY_TIME = Comparator
+        .comparing(Comment::getCreatedAt)
+        .thenComparing(Comment::getId);
+
+    private static final Comparator<Comment> BY_VOTES = Comparator
+        .comparingInt((Comment c) -> c.getUpvotes() - c.getDownvotes()).reversed()
+        .thenComparing(BY_TIME);
+
+    private final Map<Long, Map<CommentSort, List<CommentTreeNode>>> trees;
+    private final StripedGenerations generations = new StripedGenerations();
+
+    public CommentTreeCache(@Value("${discussion.comment-tree.cache-size:1000}") int maxThreads) {
+        this.trees = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Map<CommentSort, List<CommentTreeNode>>> eldest) {
+                return size() > maxThreads;
+            }
+        };
+    }
+
+    public synchronized List<CommentTreeNode> get(Long threadId, CommentSort sort) {
+        Map<CommentSort, List<CommentTreeNode>> cached = trees.get(threadId);
+        return cached == null ? null : cached.get(sort);
+    }
+
+    /**
+     * The thread's current generation; capture before loading comments and pass to {@link #put}
+     */
+    public long currentGeneration(Long threadId) {
+        return generations.current(threadId);
+    }
+
+    /**
+     * Build trees for every sort order and cache them unless the thread was
+     * invalidated since loadGeneration was captured.
+     */
+    public Map<CommentSort, List<CommentTreeNode>> put(Long threadId, List<Comment> comments, long loadGeneration) {
+        Map<CommentSort, List<CommentTreeNode>> built = new EnumMap<>(CommentSort.class);
+        built.put(CommentSort.TIME, build(comments, BY_TIME));
+        built.put(CommentSort.VOTES, build(comments, BY_VOTES));
+
+        synchronized (this) {
+            if (generations.matches(threadId, loadGeneration)) {
+                trees.put(threadId, built);
+            }
+        }
+        return built;
+    }
+
+    /**
+     * Drop a thread's tree now and again once the surrounding transaction commits
+     */
+    public void invalidate(Long threadId) {
+        evict(threadId);
+        AfterCommit.run(() -> evict(threadId));
+    }
+
+    private synchronized void evict(Long threadId) {
+        generations.bump(threadId);
+        trees.remove(threadId);
+    }
+
+    private List<CommentTreeNode> build(List<Comment> comments, Comparator<Comment> order) {
+        List<Comment> sorted = new ArrayList<>(comments);
+        sorted.sort(order);
+
+        // Parents are linked after all nodes exist, so siblings keep the sorted order
+        Map<Long, CommentTreeNode> nodes = new HashMap<>(sorted.size() * 2);
+        for (Comment comment : sorted) {
+            nodes.put(comment.getId(), new CommentTreeNode(comment));
+        }
+
+        List<CommentTreeNode> roots = new ArrayList<>();
+        for (Comment comment : sorted) {
+            CommentTreeNode node = nodes.get(comment.getId());
+            CommentTreeNode parent = comment.getParentCommentId() == null
+                ? null
+                : nodes.get(comment.getParentCommentId());
+            if (parent != null) {
+                parent.getReplies().add(node);
+            } else {
+                // Top-level comments, and replies whose parent was deleted
+                roots.add(node);
+            }
+        }
+        return Collections.unmodifiableList(roots);
+    }
+}
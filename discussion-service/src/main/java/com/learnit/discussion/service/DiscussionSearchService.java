@@ -0,0 +1,61 @@
+package com.learnit.discussion.service;
+
+import com.learnit.discussion.dto.SearchHit;
+import com.learnit.discussion.dto.SearchResultPage;
+import com.learnit.discussion.entity.ThreadStatus;
+import com.learnit.discussion.repository.ThreadRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Ranked full-text search over the threads and comments of a course.
+ * Backed by the generated tsvector columns and GIN indexes from db/search-index.sql,
+ * which PostgreSQL keeps current as threads and comments are created or edited.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@Transactional(readOnly = true)
+public class DiscussionSearchService {
+
+    private final ThreadRepository threadRepository;
+
+    @Value("${discussion.search.max-page-size:50}")
+    private Integer maxPageSize;
+
+    public SearchResultPage search(Long courseId, String query, int page, int size) {
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("Search query is required");
+        }
+        if (page < 0) {
+            throw new IllegalArgumentException("Page must not be negative");
+        }
+        int pageSize = Math.max(1, Math.min(size, maxPageSize));
+        int offset;
+        try {
+            offset = Math.multiplyExact(page, pageSize);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Page is too large");
+        }
+
+        // Fetch one extra row to know whether another page exists without a count query
+        List<ThreadRepository.SearchHitView> rows = threadRepository.searchDiscussions(
+            courseId, query, ThreadStatus.ACTIVE.name(), pageSize + 1, offset);
+
+        boolean hasMore = rows.size() > pageSize;
+        List<SearchHit> hits = rows.stream()
+            .limit(pageSize)
+            .map(row -> new SearchHit(row.getHitType(), row.getThreadId(), row.getCommentId(),
+                row.getTitle(), row.getSnippet(), row.getRank()))
+            .collect(Collectors.toList());
+
+        log.debug("Search '{}' in course {} returned {} hits (page {})", query, courseId, hits.size(), page);
+        return new SearchResultPage(query, page, pageSize, hasMore, hits);
+    }
+}
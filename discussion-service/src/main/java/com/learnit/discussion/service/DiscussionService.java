@@ -8,10 +8,22 @@ import com.learnit.discussion.repository.VoteRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -24,6 +36,13 @@ public class DiscussionService {
     private final CommentRepository commentRepository;
     private final VoteRepository voteRepository;
     private final OutboxService outboxService;
+    private final ViewCountBuffer viewCountBuffer;
+    private final CommentTreeCache commentTreeCache;
+    private final HotThreadRanker hotThreadRanker;
+    private final TagIndex tagIndex;
+    private final LiveFeedHub liveFeedHub;
+    private final UserVoteCache userVoteCache;
+    private final ThreadArchiveService threadArchiveService;
 
     @Value("${discussion.max-tags-per-thread:5}")
     private Integer maxTagsPerThread;
@@ -31,6 +50,12 @@ public class DiscussionService {
     @Value("${discussion.max-comment-depth:3}")
     private Integer maxCommentDepth;
 
+    @Value("${discussion.page.default-size:20}")
+    private Integer defaultPageSize;
+
+    @Value("${discussion.page.max-size:100}")
+    private Integer maxPageSize;
+
     // ==================== Thread Management ====================
 
     public ThreadResponse createThread(ThreadRequest request) {
@@ -55,80 +80,146 @@ public class DiscussionService {
 
         // Publish event to outbox (in same transaction)
         outboxService.publishThreadCreated(savedThread.getId(), savedThread.getCourseId());
+        hotThreadRanker.onThreadCreated(savedThread);
+        tagIndex.onThreadSaved(savedThread.getCourseId(), savedThread.getId(), savedThread.getTags());
 
         return new ThreadResponse(savedThread);
     }
 
     public ThreadResponse getThread(Long threadId) {
-        DiscussionThread thread = threadRepository.findById(threadId)
-            .orElseThrow(() -> new RuntimeException("Thread not found: " + threadId));
+        return getThread(threadId, null);
+    }
 
-        // Increment view count
-        thread.incrementViewCount();
-        threadRepository.save(thread);
+    /**
+     * viewerId is the signed-in user viewing the thread (null when anonymous)
+     */
+    public ThreadResponse getThread(Long threadId, String viewerId) {
+        Optional<DiscussionThread> live = threadRepository.findById(threadId);
+        if (live.isEmpty()) {
+            return archivedThreadResponse(archivedThread(threadId).getThread());
+        }
+        DiscussionThread thread = live.get();
 
-        // Publish thread viewed event
-        outboxService.publishThreadViewed(thread.getId(), thread.getCourseId());
+        // Buffer the view; count and thread_viewed event are flushed write-behind
+        viewCountBuffer.recordView(thread.getId(), thread.getCourseId(), viewerId);
+        hotThreadRanker.onView(thread.getCourseId(), thread.getId());
 
-        return new ThreadResponse(thread);
+        ThreadResponse response = new ThreadResponse(thread);
+        response.setViewCount(thread.getViewCount() + (int) viewCountBuffer.getPendingViews(threadId));
+        return response;
     }
 
-    public List<ThreadResponse> getThreadsByCourse(Long courseId) {
-        List<DiscussionThread> threads = threadRepository
-            .findByCourseIdAndStatusOrderByIsPinnedDescLastActivityAtDesc(courseId, ThreadStatus.ACTIVE);
+    public CursorPage<ThreadResponse> getThreadsByCourse(Long courseId, String cursor, Integer size) {
+        int limit = pageSize(size);
+        List<DiscussionThread> threads;
+        if (cursor == null) {
+            threads = threadRepository.findCoursePage(courseId, ThreadStatus.ACTIVE, PageRequest.of(0, limit + 1));
+        } else {
+            PageCursor after = PageCursor.decode(cursor);
+            if (after.getPinned() == null) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            threads = threadRepository.findCoursePageAfter(courseId, ThreadStatus.ACTIVE,
+                after.getPinned(), after.getTimestamp(), after.getId(), PageRequest.of(0, limit + 1));
+        }
 
-        return threads.stream()
-            .map(ThreadResponse::new)
-            .collect(Collectors.toList());
+        return toPage(threads, limit, this::toThreadResponses,
+            t -> new PageCursor(t.getIsPinned(), t.getLastActivityAt(), t.getId()));
     }
 
-    public List<ThreadResponse> getThreadsByCategory(Long courseId, ThreadCategory category) {
-        List<DiscussionThread> threads = threadRepository
-            .findByCourseIdAndCategoryAndStatusOrderByLastActivityAtDesc(courseId, category, ThreadStatus.ACTIVE);
+    public CursorPage<ThreadResponse> getThreadsByCategory(Long courseId, ThreadCategory category,
+                                                           String cursor, Integer size) {
+        int limit = pageSize(size);
+        List<DiscussionThread> threads;
+        if (cursor == null) {
+            threads = threadRepository.findCategoryPage(courseId, category, ThreadStatus.ACTIVE,
+                PageRequest.of(0, limit + 1));
+        } else {
+            PageCursor after = PageCursor.decode(cursor);
+            threads = threadRepository.findCategoryPageAfter(courseId, category, ThreadStatus.ACTIVE,
+                after.getTimestamp(), after.getId(), PageRequest.of(0, limit + 1));
+        }
 
-        return threads.stream()
-            .map(ThreadResponse::new)
-            .collect(Collectors.toList());
+        return toPage(threads, limit, this::toThreadResponses,
+            t -> new PageCursor(t.getLastActivityAt(), t.getId()));
     }
 
-    public List<ThreadResponse> getThreadsByAuthor(Long authorId) {
-        List<DiscussionThread> threads = threadRepository.findByAuthorIdOrderByCreatedAtDesc(authorId);
+    public CursorPage<ThreadResponse> getThreadsByAuthor(Long authorId, String cursor, Integer size) {
+        int limit = pageSize(size);
+        List<DiscussionThread> threads;
+        if (cursor == null) {
+            threads = threadRepository.findAuthorPage(authorId, PageRequest.of(0, limit + 1));
+        } else {
+            PageCursor after = PageCursor.decode(cursor);
+            threads = threadRepository.findAuthorPageAfter(authorId,
+                after.getTimestamp(), after.getId(), PageRequest.of(0, limit + 1));
+        }
 
-        return threads.stream()
-            .map(ThreadResponse::new)
-            .collect(Collectors.toList());
+        return toPage(threads, limit, this::toThreadResponses,
+            t -> new PageCursor(t.getCreatedAt(), t.getId()));
     }
 
     public List<ThreadResponse> searchThreads(Long courseId, String keyword) {
-        List<DiscussionThread> threads = threadRepository.searchThreads(courseId, keyword, ThreadStatus.ACTIVE);
+        List<DiscussionThread> threads = threadRepository.searchThreads(courseId, keyword, ThreadStatus.ACTIVE.name());
 
-        return threads.stream()
-            .map(ThreadResponse::new)
-            .collect(Collectors.toList());
+        return toThreadResponses(threads);
     }
 
-    public List<ThreadResponse> getThreadsByTag(Long courseId, String tag) {
-        List<DiscussionThread> threads = threadRepository.findByTag(courseId, tag, ThreadStatus.ACTIVE);
+    public CursorPage<ThreadResponse> getThreadsByTag(Long courseId, String tag, String cursor, Integer size) {
+        int limit = pageSize(size);
+        List<DiscussionThread> threads;
+        if (cursor == null) {
+            threads = threadRepository.findTagPage(courseId, tag, ThreadStatus.ACTIVE, PageRequest.of(0, limit + 1));
+        } else {
+            PageCursor after = PageCursor.decode(cursor);
+            threads = threadRepository.findTagPageAfter(courseId, tag, ThreadStatus.ACTIVE,
+                after.getTimestamp(), after.getId(), PageRequest.of(0, limit + 1));
+        }
 
-        return threads.stream()
-            .map(ThreadResponse::new)
-            .collect(Collectors.toList());
+        return toPage(threads, limit, this::toThreadResponses,
+            t -> new PageCursor(t.getLastActivityAt(), t.getId()));
     }
 
     public List<ThreadResponse> getPopularThreads(Long courseId) {
         List<DiscussionThread> threads = threadRepository.findPopularThreads(courseId, ThreadStatus.ACTIVE);
 
-        return threads.stream()
-            .map(ThreadResponse::new)
-            .collect(Collectors.toList());
+        return toThreadResponses(threads);
     }
 
-    public List<ThreadResponse> getUnansweredQuestions(Long courseId) {
-        List<DiscussionThread> threads = threadRepository.findUnansweredQuestions(courseId, ThreadStatus.ACTIVE);
+    /**
+     * Hottest threads of a course by time-decayed score, served from memory
+     */
+    public List<HotThread> getHotThreads(Long courseId, int limit) {
+        return hotThreadRanker.getHotThreads(courseId, limit);
+    }
 
-        return threads.stream()
-            .map(ThreadResponse::new)
-            .collect(Collectors.toList());
+    /**
+     * Tags used by a course's active threads with their counts, from the in-memory index
+     */
+    public List<TagCount> getCourseTags(Long courseId, int limit) {
+        return tagIndex.getTags(courseId, limit);
+    }
+
+    /**
+     * Tag autocomplete: tags of a course starting with prefix, most used first
+     */
+    public List<TagCount> suggestTags(Long courseId, String prefix, int limit) {
+        return tagIndex.suggest(courseId, prefix, limit);
+    }
+
+    public CursorPage<ThreadResponse> getUnansweredQuestions(Long courseId, String cursor, Integer size) {
+        int limit = pageSize(size);
+        List<DiscussionThread> threads;
+        if (cursor == null) {
+            threads = threadRepository.findUnansweredPage(courseId, ThreadStatus.ACTIVE, PageRequest.of(0, limit + 1));
+        } else {
+            PageCursor after = PageCursor.decode(cursor);
+            threads = threadRepository.findUnansweredPageAfter(courseId, ThreadStatus.ACTIVE,
+                after.getTimestamp(), after.getId(), PageRequest.of(0, limit + 1));
+        }
+
+        return toPage(threads, limit, this::toThreadResponses,
+            t -> new PageCursor(t.getCreatedAt(), t.getId()));
     }
 
     public ThreadResponse updateThread(Long threadId, ThreadRequest request) {
@@ -140,12 +231,19 @@ public class DiscussionService {
             throw new RuntimeException("Only thread author can update");
         }
 
+        if (request.getTags() != null && request.getTags().size() > maxTagsPerThread) {
+            throw new IllegalArgumentException("Maximum " + maxTagsPerThread + " tags allowed");
+        }
+
         thread.setTitle(request.getTitle());
         thread.setContent(request.getContent());
         thread.setCategory(request.getCategory());
         thread.setTags(request.getTags());
 
         DiscussionThread updatedThread = threadRepository.save(thread);
+        if (updatedThread.getStatus() == ThreadStatus.ACTIVE) {
+            tagIndex.onThreadSaved(updatedThread.getCourseId(), threadId, updatedThread.getTags());
+        }
         log.info("DiscussionThread updated: {}", threadId);
 
         return new ThreadResponse(updatedThread);
@@ -162,6 +260,8 @@ public class DiscussionService {
 
         thread.setStatus(ThreadStatus.DELETED);
         threadRepository.save(thread);
+        hotThreadRanker.onThreadRemoved(thread.getCourseId(), threadId);
+        tagIndex.onThreadRemoved(thread.getCourseId(), threadId);
         log.info("Thread deleted: {}", threadId);
     }
 
@@ -182,6 +282,7 @@ public class DiscussionService {
 
         thread.setIsLocked(isLocked);
         DiscussionThread updatedThread = threadRepository.save(thread);
+        liveFeedHub.publish("thread_locked", threadId, thread.getCourseId(), Map.of("isLocked", isLocked));
         log.info("Thread {} locked status: {}", threadId, isLocked);
 
         return new ThreadResponse(updatedThread);
@@ -221,24 +322,60 @@ public class DiscussionService {
 
         Comment savedComment = commentRepository.save(comment);
 
-        // Update thread reply count and last activity
-        thread.incrementReplyCount();
-        thread.updateLastActivity();
-        threadRepository.save(thread);
+        // Update thread reply count and last activity in place; a full save would undo concurrent votes
+        threadRepository.recordReply(thread.getId(), LocalDateTime.now());
 
         // Publish comment added event
-        outboxService.publishCommentAdded(savedComment.getId(), thread.getId(), thread.getCourseId());
+        outboxService.publishCommentAdded(savedComment.getId(), savedComment.getAuthorId(), thread.getId(), thread.getCourseId());
+        commentTreeCache.invalidate(thread.getId());
+        hotThreadRanker.onReply(thread.getCourseId(), thread.getId(), 1);
+
+        CommentResponse response = new CommentResponse(savedComment);
+        liveFeedHub.publish("comment_added", thread.getId(), thread.getCourseId(), Map.of("comment", response));
 
         log.info("Comment added with ID: {}", savedComment.getId());
-        return new CommentResponse(savedComment);
+        return response;
     }
 
-    public List<CommentResponse> getThreadComments(Long threadId) {
+    public CursorPage<CommentResponse> getThreadComments(Long threadId, String cursor, Integer size) {
+        int limit = pageSize(size);
+        List<Comment> comments;
+        if (cursor == null) {
+            comments = commentRepository.findThreadPage(threadId, PageRequest.of(0, limit + 1));
+        } else {
+            PageCursor after = PageCursor.decode(cursor);
+            comments = commentRepository.findThreadPageAfter(threadId,
+                after.getTimestamp(), after.getId(), PageRequest.of(0, limit + 1));
+        }
+        if (comments.isEmpty() && !threadRepository.existsById(threadId)) {
+            comments = archivedCommentPage(threadId, cursor == null ? null : PageCursor.decode(cursor), limit + 1);
+        }
+
+        return toPage(comments, limit, rows -> rows.stream()
+                .map(CommentResponse::new)
+                .collect(Collectors.toList()),
+            c -> new PageCursor(c.getCreatedAt(), c.getId()));
+    }
+
+    /**
+     * Whole comment tree of a thread, loaded with one query and served from
+     * the per-thread cache while no comment changes
+     */
+    @Transactional(readOnly = true)
+    public List<CommentTreeNode> getCommentTree(Long threadId, CommentSort sort) {
+        List<CommentTreeNode> cached = commentTreeCache.get(threadId, sort);
+        if (cached != null) {
+            return cached;
+        }
+
+        long generation = commentTreeCache.currentGeneration(threadId);
         List<Comment> comments = commentRepository.findByThreadIdOrderByCreatedAtAsc(threadId);
+        if (comments.isEmpty() && !threadRepository.existsById(threadId)) {
+            comments = archivedThread(threadId).getComments();
+        }
 
-        return comments.stream()
-            .map(CommentResponse::new)
-            .collect(Collectors.toList());
+        Map<CommentSort, List<CommentTreeNode>> trees = commentTreeCache.put(threadId, comments, generation);
+        return trees.get(sort);
     }
 
     public List<CommentResponse> getTopLevelComments(Long threadId) {
@@ -269,6 +406,7 @@ public class DiscussionService {
 
         comment.setContent(content);
         Comment updatedComment = commentRepository.save(comment);
+        commentTreeCache.invalidate(comment.getThreadId());
         log.info("Comment updated: {}", commentId);
 
         return new CommentResponse(updatedComment);
@@ -284,12 +422,13 @@ public class DiscussionService {
         }
 
         // Update thread reply count
-        DiscussionThread thread = threadRepository.findById(comment.getThreadId())
+        Long courseId = threadRepository.findCourseIdById(comment.getThreadId())
             .orElseThrow(() -> new RuntimeException("Thread not found"));
-        thread.decrementReplyCount();
-        threadRepository.save(thread);
+        threadRepository.removeReply(comment.getThreadId());
+        hotThreadRanker.onReply(courseId, comment.getThreadId(), -1);
 
         commentRepository.delete(comment);
+        commentTreeCache.invalidate(comment.getThreadId());
         log.info("Comment deleted: {}", commentId);
     }
 
@@ -305,10 +444,13 @@ public class DiscussionService {
         }
 
         // Unmark previous answer if exists
+        Map<String, Object> liveData = new HashMap<>();
+        liveData.put("commentId", commentId);
         commentRepository.findByThreadIdAndIsAnswerTrue(threadId)
             .ifPresent(prevAnswer -> {
                 prevAnswer.unmarkAsAnswer();
                 commentRepository.save(prevAnswer);
+                liveData.put("previousAnswerId", prevAnswer.getId());
             });
 
         // Mark new answer
@@ -318,6 +460,8 @@ public class DiscussionService {
         // Update thread with accepted answer
         thread.setAcceptedAnswerId(commentId);
         threadRepository.save(thread);
+        commentTreeCache.invalidate(threadId);
+        liveFeedHub.publish("answer_marked", threadId, thread.getCourseId(), liveData);
 
         log.info("Comment {} marked as answer for thread {}", commentId, threadId);
         return new CommentResponse(savedComment);
@@ -329,113 +473,190 @@ public class DiscussionService {
         log.info("User {} casting {} on {} {}", 
             request.getUserId(), request.getVoteType(), request.getTargetType(), request.getTargetId());
 
-        // Check if user already voted
-        voteRepository.findByUserIdAndTargetTypeAndTargetId(
-            request.getUserId(), request.getTargetType(), request.getTargetId()
-        ).ifPresent(existingVote -> {
-            // Remove old vote counts
-            updateVoteCount(existingVote.getTargetType(), existingVote.getTargetId(), 
-                           existingVote.getVoteType(), false);
-            voteRepository.delete(existingVote);
-        });
-
-        // Create new vote
-        Vote vote = new Vote();
-        vote.setUserId(request.getUserId());
-        vote.setTargetType(request.getTargetType());
-        vote.setTargetId(request.getTargetId());
-        vote.setVoteType(request.getVoteType());
-
-        Vote savedVote = voteRepository.save(vote);
-
-        // Update vote count
-        updateVoteCount(request.getTargetType(), request.getTargetId(), request.getVoteType(), true);
-
-        // Get thread and course info for event
+        // Resolve thread and course first; this also rejects unknown targets
         Long threadId = getThreadIdForTarget(request.getTargetType(), request.getTargetId());
         Long courseId = getCourseIdForThread(threadId);
 
+        userVoteCache.invalidate(request.getUserId());
+
+        // Insert or switch the vote in one statement
+        VoteRepository.VoteUpsertResult result = voteRepository.upsertVote(
+            request.getUserId(), request.getTargetType().name(),
+            request.getTargetId(), request.getVoteType().name()
+        ).orElse(null);
+
+        if (result == null) {
+            // Same vote already cast, nothing changes
+            return new VoteResponse(voteRepository.findByUserIdAndTargetTypeAndTargetId(
+                    request.getUserId(), request.getTargetType(), request.getTargetId())
+                .orElseThrow(() -> new RuntimeException("Vote not found")));
+        }
+
+        // A switched vote moves one count from the opposite type to the new one
+        VoteType previousVoteType = Boolean.TRUE.equals(result.getInserted())
+            ? null
+            : opposite(request.getVoteType());
+        applyVoteDelta(request.getTargetType(), request.getTargetId(), request.getVoteType(), 1);
+        if (previousVoteType != null) {
+            applyVoteDelta(request.getTargetType(), request.getTargetId(), previousVoteType, -1);
+        }
+        if (request.getTargetType() == TargetType.COMMENT) {
+            commentTreeCache.invalidate(threadId);
+        } else {
+            hotThreadRanker.onVote(courseId, threadId, request.getVoteType(), previousVoteType);
+        }
+
         // Publish vote cast event
         outboxService.publishVoteCast(
-            savedVote.getId(),
+            result.getId(),
+            request.getUserId(),
             request.getTargetType().name(),
             request.getTargetId(),
             request.getVoteType().name(),
+            previousVoteType == null ? null : previousVoteType.name(),
             threadId,
             courseId
         );
+        publishVoteChanged(threadId, courseId, request.getTargetType(), request.getTargetId(),
+            request.getVoteType(), previousVoteType);
 
         log.info("Vote cast successfully");
-        return new VoteResponse(savedVote);
+        return new VoteResponse(result.getId(), request.getUserId(), request.getTargetType(),
+            request.getTargetId(), request.getVoteType(), result.getCreatedAt());
     }
 
     public void removeVote(Long userId, TargetType targetType, Long targetId) {
-        Vote vote = voteRepository.findByUserIdAndTargetTypeAndTargetId(userId, targetType, targetId)
+        String removedVoteType = voteRepository.deleteVoteReturningType(userId, targetType.name(), targetId)
             .orElseThrow(() -> new RuntimeException("Vote not found"));
 
+        userVoteCache.invalidate(userId);
+
         // Update vote count
-        updateVoteCount(targetType, targetId, vote.getVoteType(), false);
+        VoteType removed = VoteType.valueOf(removedVoteType);
+        applyVoteDelta(targetType, targetId, removed, -1);
+        Long threadId = getThreadIdForTarget(targetType, targetId);
+        Long courseId = getCourseIdForThread(threadId);
+        if (targetType == TargetType.COMMENT) {
+            commentTreeCache.invalidate(threadId);
+        } else {
+            hotThreadRanker.onVote(courseId, targetId, null, removed);
+        }
+        publishVoteChanged(threadId, courseId, targetType, targetId, null, removed);
 
-        voteRepository.delete(vote);
         log.info("Vote removed for user {} on {} {}", userId, targetType, targetId);
     }
 
-    public VoteResponse getUserVote(Long userId, TargetType targetType, Long targetId) {
-        Vote vote = voteRepository.findByUserIdAndTargetTypeAndTargetId(userId, targetType, targetId)
-            .orElseThrow(() -> new RuntimeException("User has not voted on this target"));
-
-        return new VoteResponse(vote);
+    /**
+     * The user's vote on a target; empty when the user has not voted
+     */
+    @Transactional(readOnly = true)
+    public Optional<VoteResponse> getUserVote(Long userId, TargetType targetType, Long targetId) {
+        return voteRepository.findByUserIdAndTargetTypeAndTargetId(userId, targetType, targetId)
+            .map(VoteResponse::new);
     }
 
-    private void updateVoteCount(TargetType targetType, Long targetId, VoteType voteType, boolean increment) {
-        if (targetType == TargetType.THREAD) {
-            DiscussionThread thread = threadRepository.findById(targetId)
-                .orElseThrow(() -> new RuntimeException("Thread not found"));
-
-            if (voteType == VoteType.UPVOTE) {
-                if (increment) {
-                    thread.addUpvote();
-                } else {
-                    thread.removeUpvote();
-                }
-            } else {
-                if (increment) {
-                    thread.addDownvote();
-                } else {
-                    thread.removeDownvote();
+    /**
+     * The user's votes on many threads and comments at once (one query for
+     * whatever the per-user cache does not already know)
+     */
+    @Transactional(readOnly = true)
+    public VoteLookupResponse lookupVotes(VoteLookupRequest request) {
+        Long userId = request.getUserId();
+        Set<String> keys = new LinkedHashSet<>();
+        for (VoteTarget target : request.getTargets()) {
+            keys.add(UserVoteCache.key(target.getTargetType(), target.getTargetId()));
+        }
+
+        Map<String, VoteType> states = userVoteCache.getKnown(userId, keys);
+        if (states.size() < keys.size()) {
+            long generation = userVoteCache.currentGeneration(userId);
+            Map<String, VoteType> loaded = new HashMap<>();
+            Set<Long> threadIds = new HashSet<>();
+            Set<Long> commentIds = new HashSet<>();
+            for (VoteTarget target : request.getTargets()) {
+                String key = UserVoteCache.key(target.getTargetType(), target.getTargetId());
+                if (!states.containsKey(key)) {
+                    loaded.put(key, null);
+                    (target.getTargetType() == TargetType.THREAD ? threadIds : commentIds).add(target.getTargetId());
                 }
             }
-            threadRepository.save(thread);
+            voteRepository.findUserVotes(userId, threadIds, commentIds).forEach(vote ->
+                loaded.put(UserVoteCache.key(vote.getTargetType(), vote.getTargetId()), vote.getVoteType()));
+
+            userVoteCache.put(userId, loaded, generation);
+            states.putAll(loaded);
+        }
+
+        List<VoteTarget> votes = request.getTargets().stream()
+            .map(target -> new VoteTarget(target.getTargetType(), target.getTargetId(),
+                states.get(UserVoteCache.key(target.getTargetType(), target.getTargetId()))))
+            .collect(Collectors.toList());
+        return new VoteLookupResponse(userId, votes);
+    }
+
+    /**
+     * Apply a vote count change with a single atomic UPDATE on the target row
+     */
+    private void applyVoteDelta(TargetType targetType, Long targetId, VoteType voteType, int delta) {
+        int upDelta = voteType == VoteType.UPVOTE ? delta : 0;
+        int downDelta = voteType == VoteType.DOWNVOTE ? delta : 0;
+
+        int updated;
+        if (targetType == TargetType.THREAD) {
+            updated = threadRepository.applyVoteDelta(targetId, upDelta, downDelta);
         } else if (targetType == TargetType.COMMENT) {
-            Comment comment = commentRepository.findById(targetId)
-                .orElseThrow(() -> new RuntimeException("Comment not found"));
+            updated = commentRepository.applyVoteDelta(targetId, upDelta, downDelta);
+        } else {
+            throw new IllegalArgumentException("Unknown target type: " + targetType);
+        }
 
-            if (voteType == VoteType.UPVOTE) {
-                if (increment) {
-                    comment.addUpvote();
-                } else {
-                    comment.removeUpvote();
-                }
-            } else {
-                if (increment) {
-                    comment.addDownvote();
-                } else {
-                    comment.removeDownvote();
-                }
-            }
-            commentRepository.save(comment);
+        if (updated == 0) {
+            throw new RuntimeException(targetType == TargetType.THREAD ? "Thread not found" : "Comment not found");
+        }
+    }
+
+    /**
+     * Live feed update for a vote; voteType is null when a vote was removed
+     */
+    private void publishVoteChanged(Long threadId, Long courseId, TargetType targetType, Long targetId,
+                                    VoteType voteType, VoteType previousVoteType) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("targetType", targetType.name());
+        data.put("targetId", targetId);
+        data.put("voteType", voteType == null ? null : voteType.name());
+        data.put("previousVoteType", previousVoteType == null ? null : previousVoteType.name());
+        liveFeedHub.publish("vote_changed", threadId, courseId, data);
+    }
+
+    private VoteType opposite(VoteType voteType) {
+        return voteType == VoteType.UPVOTE ? VoteType.DOWNVOTE : VoteType.UPVOTE;
+    }
+
+    // ==================== Live Feed ====================
+
+    @Transactional(readOnly = true)
+    public SseEmitter streamThread(Long threadId) {
+        if (!threadRepository.existsById(threadId)) {
+            throw new RuntimeException("Thread not found: " + threadId);
         }
+        return liveFeedHub.subscribeThread(threadId);
+    }
+
+    public SseEmitter streamCourse(Long courseId) {
+        return liveFeedHub.subscribeCourse(courseId);
     }
 
     // ==================== Statistics ====================
 
     public ThreadStatistics getThreadStatistics(Long threadId) {
         DiscussionThread thread = threadRepository.findById(threadId)
-            .orElseThrow(() -> new RuntimeException("Thread not found: " + threadId));
+            .orElseGet(() -> archivedThread(threadId).getThread());
+
+        int totalViews = thread.getViewCount() + (int) viewCountBuffer.getPendingViews(threadId);
 
         ThreadStatistics stats = new ThreadStatistics();
         stats.setThreadId(threadId);
-        stats.setTotalViews(thread.getViewCount());
+        stats.setTotalViews(totalViews);
         stats.setTotalReplies(thread.getReplyCount());
         stats.setTotalUpvotes(thread.getUpvotes());
         stats.setTotalDownvotes(thread.getDownvotes());
@@ -443,7 +664,7 @@ public class DiscussionService {
         stats.setHasAcceptedAnswer(thread.getAcceptedAnswerId() != null);
 
         // Calculate engagement score: views + (replies * 2) + (netVotes * 5)
-        double engagementScore = thread.getViewCount() + 
+        double engagementScore = totalViews + 
                                 (thread.getReplyCount() * 2.0) + 
                                 ((thread.getUpvotes() - thread.getDownvotes()) * 5.0);
         stats.setEngagementScore(engagementScore);
@@ -457,16 +678,90 @@ public class DiscussionService {
         if (targetType == TargetType.THREAD) {
             return targetId;
         } else if (targetType == TargetType.COMMENT) {
-            Comment comment = commentRepository.findById(targetId)
+            return commentRepository.findThreadIdById(targetId)
                 .orElseThrow(() -> new RuntimeException("Comment not found"));
-            return comment.getThreadId();
         }
         throw new IllegalArgumentException("Unknown target type: " + targetType);
     }
 
     private Long getCourseIdForThread(Long threadId) {
-        DiscussionThread thread = threadRepository.findById(threadId)
+        return threadRepository.findCourseIdById(threadId)
             .orElseThrow(() -> new RuntimeException("Thread not found"));
-        return thread.getCourseId();
+    }
+
+    // ==================== Archived Threads ====================
+
+    /**
+     * Threads moved to the archive tier are served read-only from their snapshot
+     */
+    private ThreadArchiveService.ThreadSnapshot archivedThread(Long threadId) {
+        return threadArchiveService.findArchived(threadId)
+            .orElseThrow(() -> new RuntimeException("Thread not found: " + threadId));
+    }
+
+    private ThreadResponse archivedThreadResponse(DiscussionThread thread) {
+        ThreadResponse response = new ThreadResponse(thread);
+        if (thread.getStatus() != ThreadStatus.DELETED) {
+            response.setStatus(ThreadStatus.ARCHIVED);
+        }
+        return response;
+    }
+
+    // Same order and cursor semantics as CommentRepository.findThreadPage/findThreadPageAfter;
+    // like the live query, an unknown thread yields an empty page
+    private List<Comment> archivedCommentPage(Long threadId, PageCursor after, int limit) {
+        List<Comment> comments = threadArchiveService.findArchived(threadId)
+            .map(ThreadArchiveService.ThreadSnapshot::getComments)
+            .orElse(List.of());
+        return comments.stream()
+            .filter(c -> after == null || c.getCreatedAt().isAfter(after.getTimestamp())
+                || (c.getCreatedAt().isEqual(after.getTimestamp()) && c.getId() > after.getId()))
+            .sorted(Comparator.comparing(Comment::getCreatedAt).thenComparing(Comment::getId))
+            .limit(limit)
+            .collect(Collectors.toList());
+    }
+
+    // ==================== Keyset Paging Helpers ====================
+
+    private int pageSize(Integer requested) {
+        if (requested == null) {
+            return defaultPageSize;
+        }
+        return Math.max(1, Math.min(requested, maxPageSize));
+    }
+
+    /**
+     * Trim the extra look-ahead row and point the cursor at the last row kept
+     */
+    private <E, R> CursorPage<R> toPage(List<E> rows, int limit, Function<List<E>, List<R>> mapper,
+                                        Function<E, PageCursor> cursorOf) {
+        boolean hasMore = rows.size() > limit;
+        List<E> page = hasMore ? rows.subList(0, limit) : rows;
+        String nextCursor = hasMore ? cursorOf.apply(page.get(page.size() - 1)).encode() : null;
+
+        return new CursorPage<>(mapper.apply(page), nextCursor, hasMore);
+    }
+
+    /**
+     * Map threads to responses, loading the tags of all of them with one query
+     * instead of initializing each lazy tag collection separately
+     */
+    private List<ThreadResponse> toThreadResponses(List<DiscussionThread> threads) {
+        if (threads.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<Long> threadIds = threads.stream().map(DiscussionThread::getId).collect(Collectors.toList());
+        Map<Long, Set<String>> tagsByThread = new HashMap<>();
+        threadRepository.findTagsByThreadIds(threadIds).forEach(row ->
+            tagsByThread.computeIfAbsent(row.getThreadId(), id -> new HashSet<>()).add(row.getTag()));
+
+        return threads.stream()
+            .map(thread -> {
+                ThreadResponse response = new ThreadResponse(thread);
+                response.setTags(tagsByThread.getOrDefault(thread.getId(), new HashSet<>()));
+                return response;
+            })
+            .collect(Collectors.toList());
     }
 }
@@ -0,0 +1,436 @@
+package com.learnit.discussion.service;
+
+import com.learnit.discussion.dto.HotThread;
+import com.learnit.discussion.entity.DiscussionThread;
+import com.learnit.discussion.entity.ThreadCategory;
+import com.learnit.discussion.entity.ThreadStatus;
+import com.learnit.discussion.entity.VoteType;
+import com.learnit.discussion.repository.ThreadRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * In-memory "hot" ranking of course threads.
+ *
+ * Each course keeps a bounded set of candidate threads (recently active ones)
+ * and a precomputed top-K list ranked by a time-decayed score:
+ *
+ *   points = voteWeight * netVotes + commentWeight * replies + viewWeight * ln(1 + views)
+ *   score  = points / (ageHours + 2) ^ gravity    (points * (ageHours + 2) ^ gravity when negative,
+ *                                                  so older downvoted threads sink further)
+ *
+ * Votes, comments and views update the affected entry after commit; the published
+ * list changes only when the entry enters, leaves or moves within the top-K. Between
+ * scheduled passes ages are taken at the last pass, so updated and untouched entries
+ * compare fairly. The scheduled pass re-decays all scores as threads age, refreshes
+ * candidates from the database and evicts courses nobody reads. Changes arriving
+ * while candidates load are applied on top of them once loaded.
+ * Reads return the precomputed list and never touch the database once warm.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class HotThreadRanker {
+
+    private static final Comparator<HotEntry> BY_SCORE = Comparator
+        .comparingDouble((HotEntry e) -> e.score)
+        .thenComparingLong(e -> e.threadId);
+    private static final Comparator<HotEntry> HOTTEST_FIRST = BY_SCORE.reversed();
+
+    private final ThreadRepository threadRepository;
+    private final ViewCountBuffer viewCountBuffer;
+
+    private final Map<Long, CourseRanking> courses = new ConcurrentHashMap<>();
+
+    @Value("${discussion.hot.top-k:50}")
+    private Integer topK;
+
+    @Value("${discussion.hot.candidates-per-course:500}")
+    private Integer candidatesPerCourse;
+
+    @Value("${discussion.hot.candidate-window-days:30}")
+    private Integer candidateWindowDays;
+
+    @Value("${discussion.hot.gravity:1.8}")
+    private Double gravity;
+
+    @Value("${discussion.hot.vote-weight:1.0}")
+    private Double voteWeight;
+
+    @Value("${discussion.hot.comment-weight:2.0}")
+    private Double commentWeight;
+
+    @Value("${discussion.hot.view-weight:0.5}")
+    private Double viewWeight;
+
+    @Value("${discussion.hot.refresh-interval-ms:300000}")
+    private Long refreshIntervalMs;
+
+    @Value("${discussion.hot.idle-eviction-ms:3600000}")
+    private Long idleEvictionMs;
+
+    /**
+     * Top threads of a course, hottest first. Loads candidates on first access.
+     */
+    public List<HotThread> getHotThreads(Long courseId, int limit) {
+        CourseRanking ranking = courses.get(courseId);
+        if (ranking == null) {
+            // registered before loading, so changes committed meanwhile are kept for it
+            CourseRanking created = new CourseRanking();
+            ranking = courses.putIfAbsent(courseId, created);
+            if (ranking == null) {
+                ranking = created;
+                try {
+                    created.finishLoad(loadCandidates(courseId));
+                } catch (RuntimeException e) {
+                    courses.remove(courseId, created);
+                    created.loaded.completeExceptionally(e);
+                    throw e;
+                }
+            }
+        }
+        ranking.loaded.join();
+        ranking.lastAccess = System.currentTimeMillis();
+
+        List<HotThread> top = ranking.top;
+        int size = Math.max(0, Math.min(limit, top.size()));
+        return top.subList(0, size);
+    }
+
+    public void onThreadCreated(DiscussionThread thread) {
+        HotEntry entry = new HotEntry(thread, 0);
+        AfterCommit.run(() -> {
+            CourseRanking ranking = courses.get(entry.courseId);
+            if (ranking != null) {
+                ranking.add(entry);
+            }
+        });
+    }
+
+    public void onThreadRemoved(Long courseId, Long threadId) {
+        AfterCommit.run(() -> {
+            CourseRanking ranking = courses.get(courseId);
+            if (ranking != null) {
+                ranking.remove(threadId);
+            }
+        });
+    }
+
+    /**
+     * A thread vote was added and/or removed (a switch carries both)
+     */
+    public void onVote(Long courseId, Long threadId, VoteType added, VoteType removed) {
+        int upDelta = (added == VoteType.UPVOTE ? 1 : 0) - (removed == VoteType.UPVOTE ? 1 : 0);
+        int downDelta = (added == VoteType.DOWNVOTE ? 1 : 0) - (removed == VoteType.DOWNVOTE ? 1 : 0);
+        update(courseId, threadId, entry -> {
+            entry.upvotes += upDelta;
+            entry.downvotes += downDelta;
+        });
+    }
+
+    public void onReply(Long courseId, Long threadId, int delta) {
+        update(courseId, threadId, entry -> entry.replyCount = Math.max(0, entry.replyCount + delta));
+    }
+
+    public void onView(Long courseId, Long threadId) {
+        update(courseId, threadId, entry -> entry.viewCount++);
+    }
+
+    /**
+     * Re-decay scores as threads age, refresh stale candidate sets and drop idle courses
+     */
+    @Scheduled(fixedDelayString = "${discussion.hot.redecay-interval-ms:60000}")
+    public void redecay() {
+        long now = System.currentTimeMillis();
+        courses.forEach((courseId, ranking) -> {
+            if (ranking.isLoading()) {
+                return;
+            }
+            if (now - ranking.lastAccess > idleEvictionMs) {
+                courses.remove(courseId, ranking);
+            } else if (now - ranking.loadedAt > refreshIntervalMs) {
+                refresh(courseId, ranking);
+            } else {
+                ranking.rerankAll();
+            }
+        });
+    }
+
+    private void refresh(Long courseId, CourseRanking ranking) {
+        if (!ranking.beginLoad()) {
+            return; // first load still running
+        }
+        List<HotEntry> candidates = null;
+        try {
+            candidates = loadCandidates(courseId);
+        } finally {
+            ranking.finishLoad(candidates);
+        }
+    }
+
+    private void update(Long courseId, Long threadId, Consumer<HotEntry> change) {
+        AfterCommit.run(() -> {
+            CourseRanking ranking = courses.get(courseId);
+            if (ranking != null) {
+                // Threads outside the candidate set are picked up on the next refresh
+                ranking.update(threadId, change);
+            }
+        });
+    }
+
+    private List<HotEntry> loadCandidates(Long courseId) {
+        LocalDateTime since = LocalDateTime.now().minusDays(candidateWindowDays);
+        List<DiscussionThread> threads = threadRepository
+            .findByCourseIdAndStatusAndLastActivityAtAfterOrderByLastActivityAtDesc(
+                courseId, ThreadStatus.ACTIVE, since, PageRequest.of(0, candidatesPerCourse));
+
+        List<HotEntry> entries = new ArrayList<>(threads.size());
+        for (DiscussionThread thread : threads) {
+            entries.add(new HotEntry(thread, viewCountBuffer.getPendingViews(thread.getId())));
+        }
+        log.debug("Loaded {} hot candidates for course {}", entries.size(), courseId);
+        return entries;
+    }
+
+    private double score(HotEntry entry, long now) {
+        double ageHours = Math.max(0, (now - entry.createdAtMillis) / 3_600_000.0);
+        double points = voteWeight * (entry.upvotes - entry.downvotes)
+            + commentWeight * entry.replyCount
+            + viewWeight * Math.log1p(entry.viewCount);
+        double decay = Math.pow(ageHours + 2, gravity);
+        return points >= 0 ? points / decay : points * decay;
+    }
+
+    private final class CourseRanking {
+        private final Map<Long, HotEntry> entries = new HashMap<>();
+        // the top-K entries, hottest first
+        private final List<HotEntry> ranked = new ArrayList<>();
+        private final CompletableFuture<Void> loaded = new CompletableFuture<>();
+        // no entry outside the top-K scores higher than this
+        private double floor = Double.NEGATIVE_INFINITY;
+        // ages are taken at the last full pass
+        private long scoredAt = System.currentTimeMillis();
+        // changes to apply once the candidates being loaded are in; null when not loading
+        private List<Runnable> buffered = new ArrayList<>();
+        private volatile List<HotThread> top = List.of();
+        private volatile long lastAccess = System.currentTimeMillis();
+        private volatile long loadedAt;
+
+        synchronized boolean beginLoad() {
+            if (buffered != null) {
+                return false;
+            }
+            buffered = new ArrayList<>();
+            return true;
+        }
+
+        /**
+         * Swap in the loaded candidates (null keeps the current ones), apply the changes
+         * made meanwhile and re-rank
+         */
+        synchronized void finishLoad(List<HotEntry> candidates) {
+            if (candidates != null) {
+                entries.clear();
+                candidates.forEach(entry -> entries.put(entry.threadId, entry));
+                loadedAt = System.currentTimeMillis();
+            }
+            List<Runnable> changes = buffered;
+            buffered = null;
+            changes.forEach(Runnable::run);
+            rerankAll();
+            loaded.complete(null);
+        }
+
+        synchronized void add(HotEntry entry) {
+            if (buffered != null) {
+                buffered.add(() -> entries.put(entry.threadId, entry));
+                return;
+            }
+            HotEntry replaced = entries.put(entry.threadId, entry);
+            if (replaced != null || entries.size() > candidatesPerCourse) {
+                entry.score = score(entry, scoredAt);
+                publishTop();
+            } else {
+                rescore(entry);
+            }
+        }
+
+        synchronized void remove(Long threadId) {
+            if (buffered != null) {
+                buffered.add(() -> entries.remove(threadId));
+                return;
+            }
+            HotEntry removed = entries.remove(threadId);
+            if (removed == null || !removed.ranked) {
+                return;
+            }
+            ranked.remove(removed);
+            if (entries.size() > ranked.size()) {
+                publishTop(); // refill from outside the top-K
+            } else {
+                publish();
+            }
+        }
+
+        synchronized void update(Long threadId, Consumer<HotEntry> change) {
+            if (buffered != null) {
+                buffered.add(() -> {
+                    HotEntry entry = entries.get(threadId);
+                    if (entry != null) {
+                        change.accept(entry);
+                    }
+                });
+                return;
+            }
+            HotEntry entry = entries.get(threadId);
+            if (entry == null) {
+                return;
+            }
+            change.accept(entry);
+            rescore(entry);
+        }
+
+        synchronized void rerankAll() {
+            scoredAt = System.currentTimeMillis();
+            entries.values().forEach(entry -> entry.score = score(entry, scoredAt));
+            publishTop();
+        }
+
+        boolean isLoading() {
+            return !loaded.isDone();
+        }
+
+        /**
+         * Place one changed entry: only the top-K list is touched unless a ranked
+         * entry drops below an unranked one
+         */
+        private void rescore(HotEntry entry) {
+            entry.score = score(entry, scoredAt);
+            if (entry.ranked) {
+                if (entry.score < floor && entries.size() > ranked.size()) {
+                    publishTop();
+                    return;
+                }
+                int from = ranked.indexOf(entry);
+                ranked.remove(from);
+                int to = position(entry);
+                ranked.add(to, entry);
+                if (to != from) {
+                    publish();
+                }
+            } else if (entry.score > floor || ranked.size() < topK) {
+                ranked.add(position(entry), entry);
+                entry.ranked = true;
+                if (ranked.size() > topK) {
+                    HotEntry evicted = ranked.remove(ranked.size() - 1);
+                    evicted.ranked = false;
+                    floor = evicted.score;
+                    if (evicted == entry) {
+                        return;
+                    }
+                }
+                publish();
+            }
+        }
+
+        private int position(HotEntry entry) {
+            int index = Collections.binarySearch(ranked, entry, HOTTEST_FIRST);
+            return index >= 0 ? index : -index - 1;
+        }
+
+        /**
+         * Select the top-K with a bounded min-heap, trim the candidate set and
+         * publish an immutable snapshot for lock-free reads
+         */
+        private void publishTop() {
+            if (entries.size() > candidatesPerCourse) {
+                PriorityQueue<HotEntry> keep = new PriorityQueue<>(BY_SCORE);
+                for (HotEntry entry : entries.values()) {
+                    keep.offer(entry);
+                    if (keep.size() > candidatesPerCourse) {
+                        keep.poll();
+                    }
+                }
+                entries.clear();
+                keep.forEach(entry -> entries.put(entry.threadId, entry));
+            }
+
+            PriorityQueue<HotEntry> heap = new PriorityQueue<>(BY_SCORE);
+            for (HotEntry entry : entries.values()) {
+                entry.ranked = false;
+                heap.offer(entry);
+                if (heap.size() > topK) {
+                    heap.poll();
+                }
+            }
+
+            ranked.clear();
+            while (!heap.isEmpty()) {
+                HotEntry entry = heap.poll();
+                entry.ranked = true;
+                ranked.add(entry);
+            }
+            Collections.reverse(ranked);
+            floor = ranked.size() < topK ? Double.NEGATIVE_INFINITY : ranked.get(ranked.size() - 1).score;
+            publish();
+        }
+
+        private void publish() {
+            List<HotThread> snapshot = new ArrayList<>(ranked.size());
+            ranked.forEach(entry -> snapshot.add(entry.toHotThread()));
+            top = Collections.unmodifiableList(snapshot);
+        }
+    }
+
+    private static final class HotEntry {
+        private final Long threadId;
+        private final Long courseId;
+        private final Long authorId;
+        private final String title;
+        private final ThreadCategory category;
+        private final LocalDateTime createdAt;
+        private final long createdAtMillis;
+        private int upvotes;
+        private int downvotes;
+        private int replyCount;
+        private long viewCount;
+        private double score;
+        private boolean ranked;
+
+        private HotEntry(DiscussionThread thread, long pendingViews) {
+            this.threadId = thread.getId();
+            this.courseId = thread.getCourseId();
+            this.authorId = thread.getAuthorId();
+            this.title = thread.getTitle();
+            this.category = thread.getCategory();
+            this.createdAt = thread.getCreatedAt();
+            this.createdAtMillis = createdAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            this.upvotes = thread.getUpvotes();
+            this.downvotes = thread.getDownvotes();
+            this.replyCount = thread.getReplyCount();
+            this.viewCount = thread.getViewCount() + pendingViews;
+        }
+
+        private HotThread toHotThread() {
+            return new HotThread(threadId, courseId, authorId, title, category,
+                upvotes, downvotes, replyCount, viewCount, createdAt, score);
+        }
+    }
+}
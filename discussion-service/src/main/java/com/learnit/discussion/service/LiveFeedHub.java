@@ -0,0 +1,346 @@
+package com.learnit.discussion.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.learnit.discussion.dto.LiveEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process fan-out of thread activity to Server-Sent Events subscribers.
+ *
+ * Subscribers attach to a thread or a course topic. Events are published after
+ * commit, serialized once, and offered to a small bounded buffer per
+ * subscriber; when a client cannot keep up the oldest buffered event is
+ * dropped. Each subscriber with buffered frames is drained on a thread of its
+ * own, since SseEmitter.send is a blocking servlet write: virtual threads
+ * when the runtime has them (Java 21+), otherwise an elastic platform pool of
+ * up to dispatch-threads whose idle threads time out. An idle connection holds
+ * no thread, a slow one never blocks the publisher, and a client whose writes
+ * are stuck on a full TCP window only ties up its own drain.
+ * Heartbeats run on their own timer thread, so long scheduled jobs cannot delay them.
+ * Heartbeats keep proxies from closing quiet streams, and subscribers whose
+ * writes stall past the idle timeout are evicted.
+ */
+@Component
+@Slf4j
+public class LiveFeedHub {
+
+    static final String HEARTBEAT = "heartbeat";
+
+    private final Map<String, Set<Subscriber>> topics = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ObjectWriter eventWriter;
+    private final Executor dispatcher;
+    private final Counter droppedCounter;
+    private ScheduledExecutorService heartbeats;
+
+    @Value("${discussion.stream.max-subscribers:20000}")
+    private Integer maxSubscribers;
+
+    @Value("${discussion.stream.buffer-size:64}")
+    private Integer bufferSize;
+
+    @Value("${discussion.stream.timeout-ms:1800000}")
+    private Long timeoutMs;
+
+    @Value("${discussion.stream.heartbeat-ms:15000}")
+    private Long heartbeatMs;
+
+    @Value("${discussion.stream.idle-timeout-ms:60000}")
+    private Long idleTimeoutMs;
+
+    @Autowired
+    public LiveFeedHub(ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                       @Value("${discussion.stream.dispatch-threads:512}") int dispatchThreads) {
+        this(objectMapper, meterRegistry, dispatchExecutor(dispatchThreads));
+    }
+
+    LiveFeedHub(ObjectMapper objectMapper, MeterRegistry meterRegistry, Executor dispatcher) {
+        this.eventWriter = objectMapper.writerFor(LiveEvent.class);
+        this.dispatcher = dispatcher;
+        this.droppedCounter = Counter.builder("discussion.stream.dropped")
+            .description("Live feed events dropped for subscribers that fell behind")
+            .register(meterRegistry);
+        Gauge.builder("discussion.stream.subscribers", subscriberCount, AtomicInteger::get)
+            .description("Open live feed (SSE) connections")
+            .register(meterRegistry);
+    }
+
+    /**
+     * A thread per active drain: virtual threads on Java 21+, otherwise platform threads
+     * created on demand up to maxThreads (then queued) and released after 30s idle
+     */
+    static ExecutorService dispatchExecutor(int maxThreads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads, maxThreads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "live-feed-dispatch");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "live-feed-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeats.scheduleWithFixedDelay(this::heartbeatQuietly, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (heartbeats != null) {
+            heartbeats.shutdownNow();
+        }
+        topics.values().forEach(subscribers -> subscribers.forEach(s -> s.emitter.complete()));
+        if (dispatcher instanceof ExecutorService executor) {
+            executor.shutdownNow();
+        }
+    }
+
+    public SseEmitter subscribeThread(Long threadId) {
+        return subscribe(threadTopic(threadId), new SseEmitter(timeoutMs));
+    }
+
+    public SseEmitter subscribeCourse(Long courseId) {
+        return subscribe(courseTopic(courseId), new SseEmitter(timeoutMs));
+    }
+
+    SseEmitter subscribe(String topic, SseEmitter emitter) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many live feed subscribers");
+        }
+        Subscriber subscriber = new Subscriber(topic, emitter, bufferSize);
+        topics.computeIfAbsent(topic, key -> ConcurrentHashMap.newKeySet()).add(subscriber);
+
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(error -> remove(subscriber));
+        return emitter;
+    }
+
+    /**
+     * Publish to the thread's and the course's subscribers once the transaction commits
+     */
+    public void publish(String type, Long threadId, Long courseId, Map<String, Object> data) {
+        LiveEvent event = new LiveEvent(type, threadId, courseId, Instant.now(), data);
+        AfterCommit.run(() -> {
+            Set<Subscriber> threadSubscribers = topics.get(threadTopic(threadId));
+            Set<Subscriber> courseSubscribers = courseId == null ? null : topics.get(courseTopic(courseId));
+            if (isEmpty(threadSubscribers) && isEmpty(courseSubscribers)) {
+                return;
+            }
+            Frame frame;
+            try {
+                frame = new Frame(sequence.incrementAndGet(), type, eventWriter.writeValueAsString(event));
+            } catch (JsonProcessingException e) {
+                log.error("Failed to serialize live event {} for thread {}", type, threadId, e);
+                return;
+            }
+            offer(threadSubscribers, frame);
+            offer(courseSubscribers, frame);
+        });
+    }
+
+    int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    private void heartbeatQuietly() {
+        try {
+            heartbeat();
+        } catch (RuntimeException e) {
+            // an exception would cancel the schedule
+            log.error("Live feed heartbeat failed", e);
+        }
+    }
+
+    /**
+     * Heartbeat quiet subscribers and evict the ones whose writes have stalled.
+     * Eviction frees the subscriber slot; a write already blocked stays on its own
+     * drain thread until the container's write timeout fails it.
+     */
+    public void heartbeat() {
+        long now = System.nanoTime();
+        long heartbeatNanos = heartbeatMs * 1_000_000;
+        long idleNanos = idleTimeoutMs * 1_000_000;
+        Frame heartbeat = new Frame(0, HEARTBEAT, null);
+        int evicted = 0;
+        for (Set<Subscriber> subscribers : topics.values()) {
+            for (Subscriber subscriber : subscribers) {
+                long sinceWrite = now - subscriber.lastWriteNanos;
+                if (subscriber.isDraining() && sinceWrite > idleNanos) {
+                    subscriber.emitter.complete();
+                    remove(subscriber);
+                    evicted++;
+                } else if (sinceWrite > heartbeatNanos) {
+                    offer(subscriber, heartbeat);
+                }
+            }
+        }
+        if (evicted > 0) {
+            log.info("Evicted {} stalled live feed subscribers", evicted);
+        }
+    }
+
+    private void offer(Set<Subscriber> subscribers, Frame frame) {
+        if (subscribers != null) {
+            subscribers.forEach(subscriber -> offer(subscriber, frame));
+        }
+    }
+
+    private void offer(Subscriber subscriber, Frame frame) {
+        boolean schedule;
+        synchronized (subscriber) {
+            if (subscriber.closed) {
+                return;
+            }
+            if (subscriber.buffer.size() == subscriber.capacity) {
+                subscriber.buffer.pollFirst();
+                droppedCounter.increment();
+            }
+            subscriber.buffer.addLast(frame);
+            schedule = !subscriber.draining;
+            subscriber.draining = true;
+        }
+        if (schedule) {
+            dispatcher.execute(() -> drain(subscriber));
+        }
+    }
+
+    /**
+     * Write buffered frames until the buffer is empty; one drain per subscriber at a time
+     */
+    private void drain(Subscriber subscriber) {
+        while (true) {
+            Frame frame;
+            synchronized (subscriber) {
+                frame = subscriber.buffer.pollFirst();
+                if (frame == null || subscriber.closed) {
+                    subscriber.draining = false;
+                    return;
+                }
+            }
+            try {
+                subscriber.emitter.send(frame.toEvent());
+                subscriber.lastWriteNanos = System.nanoTime();
+            } catch (Exception e) {
+                // Client went away; the container reports completion separately
+                log.debug("Dropping live feed subscriber on {}: {}", subscriber.topic, e.getMessage());
+                subscriber.emitter.completeWithError(e);
+                remove(subscriber);
+            }
+        }
+    }
+
+    private void remove(Subscriber subscriber) {
+        synchronized (subscriber) {
+            if (subscriber.closed) {
+                return;
+            }
+            subscriber.closed = true;
+            subscriber.buffer.clear();
+        }
+        subscriberCount.decrementAndGet();
+        topics.computeIfPresent(subscriber.topic, (key, subscribers) -> {
+            subscribers.remove(subscriber);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
+    private static boolean isEmpty(Set<Subscriber> subscribers) {
+        return subscribers == null || subscribers.isEmpty();
+    }
+
+    static String threadTopic(Long threadId) {
+        return "thread:" + threadId;
+    }
+
+    static String courseTopic(Long courseId) {
+        return "course:" + courseId;
+    }
+
+    /**
+     * Event serialized once and shared by every subscriber
+     */
+    private static final class Frame {
+        private final long id;
+        private final String name;
+        private final String json;
+
+        Frame(long id, String name, String json) {
+            this.id = id;
+            this.name = name;
+            this.json = json;
+        }
+
+        SseEmitter.SseEventBuilder toEvent() {
+            if (json == null) {
+                return SseEmitter.event().comment(name);
+            }
+            return SseEmitter.event().id(Long.toString(id)).name(name).data(json, MediaType.APPLICATION_JSON);
+        }
+    }
+
+    private static final class Subscriber {
+        private final String topic;
+        private final SseEmitter emitter;
+        private final int capacity;
+        private final ArrayDeque<Frame> buffer;
+        private boolean draining;
+        private boolean closed;
+        private volatile long lastWriteNanos = System.nanoTime();
+
+        Subscriber(String topic, SseEmitter emitter, int capacity) {
+            this.topic = topic;
+            this.emitter = emitter;
+            this.capacity = capacity;
+            this.buffer = new ArrayDeque<>(Math.min(capacity, 16));
+        }
+
+        /**
+         * Has frames queued or a write in progress
+         */
+        synchronized boolean isDraining() {
+            return draining;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.learnit.discussion.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnit.discussion.dto.ModerationFilter;
+import com.learnit.discussion.dto.ModerationJobResponse;
+import com.learnit.discussion.dto.ModerationRequest;
+import com.learnit.discussion.entity.ModerationAction;
+import com.learnit.discussion.entity.ModerationJob;
+import com.learnit.discussion.entity.ModerationJobStatus;
+import com.learnit.discussion.entity.ThreadStatus;
+import com.learnit.discussion.repository.CommentRepository;
+import com.learnit.discussion.repository.CommentRepository.ThreadCommentCountView;
+import com.learnit.discussion.repository.ModerationJobRepository;
+import com.learnit.discussion.repository.ThreadRepository;
+import com.learnit.discussion.repository.ThreadRepository.ThreadCourseView;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Bulk moderation of threads and comments.
+ * Targets are resolved once, then changed with set-based updates in chunked transactions;
+ * each chunk records its progress and one outbox event in the same transaction. Reply counts
+ * of threads that lost comments are recomputed in one aggregate pass at the end.
+ */
+@Service
+@Slf4j
+public class ModerationService {
+
+    private static final int RECOUNT_CHUNK = 1000;
+
+    private final ModerationJobRepository jobRepository;
+    private final ThreadRepository threadRepository;
+    private final CommentRepository commentRepository;
+    private final OutboxService outboxService;
+    private final HotThreadRanker hotThreadRanker;
+    private final TagIndex tagIndex;
+    private final CommentTreeCache commentTreeCache;
+    private final LiveFeedHub liveFeedHub;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final Executor executor;
+
+    @Value("${discussion.moderation.chunk-size:500}")
+    private Integer chunkSize;
+
+    @Value("${discussion.moderation.max-targets:50000}")
+    private Integer maxTargets;
+
+    @Autowired
+    public ModerationService(ModerationJobRepository jobRepository, ThreadRepository threadRepository,
+                             CommentRepository commentRepository, OutboxService outboxService,
+                             HotThreadRanker hotThreadRanker, TagIndex tagIndex,
+                             CommentTreeCache commentTreeCache, LiveFeedHub liveFeedHub,
+                             TransactionTemplate transactionTemplate, ObjectMapper objectMapper,
+                             @Value("${discussion.moderation.worker-threads:1}") int workerThreads) {
+        this(jobRepository, threadRepository, commentRepository, outboxService, hotThreadRanker, tagIndex,
+            commentTreeCache, liveFeedHub, transactionTemplate, objectMapper,
+            Executors.newFixedThreadPool(workerThreads, runnable -> {
+                Thread thread = new Thread(runnable, "moderation-worker");
+                thread.setDaemon(true);
+                return thread;
+            }));
+    }
+
+    ModerationService(ModerationJobRepository jobRepository, ThreadRepository threadRepository,
+                      CommentRepository commentRepository, OutboxService outboxService,
+                      HotThreadRanker hotThreadRanker, TagIndex tagIndex,
+                      CommentTreeCache commentTreeCache, LiveFeedHub liveFeedHub,
+                      TransactionTemplate transactionTemplate, ObjectMapper objectMapper, Executor executor) {
+        this.jobRepository = jobRepository;
+        this.threadRepository = threadRepository;
+        this.commentRepository = commentRepository;
+        this.outboxService = outboxService;
+        this.hotThreadRanker = hotThreadRanker;
+        this.tagIndex = tagIndex;
+        this.commentTreeCache = commentTreeCache;
+        this.liveFeedHub = liveFeedHub;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.executor = executor;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor instanceof ExecutorService service) {
+            service.shutdownNow();
+        }
+    }
+
+    /**
+     * Jobs interrupted by a restart would otherwise stay RUNNING forever
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void failInterruptedJobs() {
+        Integer failed = transactionTemplate.execute(status -> jobRepository.failUnfinished(
+            List.of(ModerationJobStatus.QUEUED, ModerationJobStatus.RUNNING),
+            "Interrupted by service restart", LocalDateTime.now()));
+        if (failed != null && failed > 0) {
+            log.warn("Marked {} interrupted moderation jobs as failed", failed);
+        }
+    }
+
+    /**
+     * Record the job and run it in the background; poll getJob for progress
+     */
+    public ModerationJobResponse submit(ModerationRequest request) {
+        validate(request);
+
+        ModerationJob job = new ModerationJob();
+        job.setAction(request.getAction());
+        job.setStatus(ModerationJobStatus.QUEUED);
+        job.setCriteria(describe(request));
+        ModerationJob saved = jobRepository.save(job);
+
+        executor.execute(() -> run(saved.getId(), request));
+        log.info("Moderation job {} queued: {}", saved.getId(), request.getAction());
+        return new ModerationJobResponse(saved);
+    }
+
+    public ModerationJobResponse getJob(Long jobId) {
+        return jobRepository.findById(jobId)
+            .map(ModerationJobResponse::new)
+            .orElseThrow(() -> new RuntimeException("Moderation job not found: " + jobId));
+    }
+
+    void run(Long jobId, ModerationRequest request) {
+        ModerationAction action = request.getAction();
+        Set<Long> recountThreads = new HashSet<>();
+        try {
+            List<Long> targets = resolveTargets(request);
+            transactionTemplate.execute(status ->
+                jobRepository.markStarted(jobId, ModerationJobStatus.RUNNING, targets.size(), LocalDateTime.now()));
+
+            for (int from = 0; from < targets.size(); from += chunkSize) {
+                List<Long> chunk = targets.subList(from, Math.min(from + chunkSize, targets.size()));
+                Set<Long> chunkThreads = new HashSet<>();
+                transactionTemplate.execute(status -> {
+                    int affected = applyChunk(jobId, action, chunk, chunkThreads);
+                    return jobRepository.recordProgress(jobId, chunk.size(), affected);
+                });
+                // Only threads whose chunk committed need a recount
+                recountThreads.addAll(chunkThreads);
+            }
+
+            recomputeReplyCounts(recountThreads);
+            transactionTemplate.execute(status ->
+                jobRepository.markFinished(jobId, ModerationJobStatus.COMPLETED, null, LocalDateTime.now()));
+            log.info("Moderation job {} completed: {} on {} targets", jobId, action, targets.size());
+
+        } catch (RuntimeException e) {
+            log.error("Moderation job {} failed", jobId, e);
+            try {
+                recomputeReplyCounts(recountThreads);
+            } catch (RuntimeException recountError) {
+                log.error("Reply count recompute failed for job {}", jobId, recountError);
+            }
+            transactionTemplate.execute(status ->
+                jobRepository.markFinished(jobId, ModerationJobStatus.FAILED, e.getMessage(), LocalDateTime.now()));
+        }
+    }
+
+    /**
+     * Apply one chunk inside the caller's transaction and return the number of rows changed.
+     * Threads that lost comments are added to touchedThreads.
+     */
+    private int applyChunk(Long jobId, ModerationAction action, List<Long> chunk, Set<Long> touchedThreads) {
+        LocalDateTime now = LocalDateTime.now();
+
+        if (action == ModerationAction.DELETE_COMMENTS) {
+            List<ThreadCommentCountView> perThread = commentRepository.countByThreadForIds(chunk);
+            if (perThread.isEmpty()) {
+                return 0;
+            }
+            threadRepository.clearAcceptedAnswers(chunk);
+            int deleted = commentRepository.deleteByIds(chunk);
+
+            Map<Long, Long> removedByThread = new HashMap<>();
+            perThread.forEach(view -> removedByThread.put(view.getThreadId(), view.getComments()));
+            for (ThreadCourseView thread : threadRepository.findCourseIdsByIds(removedByThread.keySet())) {
+                int removed = removedByThread.get(thread.getThreadId()).intValue();
+                hotThreadRanker.onReply(thread.getCourseId(), thread.getThreadId(), -removed);
+                commentTreeCache.invalidate(thread.getThreadId());
+            }
+            touchedThreads.addAll(removedByThread.keySet());
+            outboxService.publishModerationBatch(jobId, action.name(), "COMMENT", chunk, removedByThread.keySet());
+            return deleted;
+        }
+
+        List<ThreadCourseView> threads = threadRepository.findCourseIdsByIds(chunk);
+        if (threads.isEmpty()) {
+            return 0;
+        }
+        int affected = switch (action) {
+            case DELETE_THREADS -> threadRepository.bulkSetStatus(chunk, ThreadStatus.DELETED, now);
+            case LOCK_THREADS, UNLOCK_THREADS ->
+                threadRepository.bulkSetLocked(chunk, action == ModerationAction.LOCK_THREADS, now);
+            case PIN_THREADS, UNPIN_THREADS ->
+                threadRepository.bulkSetPinned(chunk, action == ModerationAction.PIN_THREADS, now);
+            default -> throw new IllegalArgumentException("Unsupported moderation action: " + action);
+        };
+
+        for (ThreadCourseView thread : threads) {
+            if (action == ModerationAction.DELETE_THREADS) {
+                hotThreadRanker.onThreadRemoved(thread.getCourseId(), thread.getThreadId());
+                tagIndex.onThreadRemoved(thread.getCourseId(), thread.getThreadId());
+            } else if (action == ModerationAction.LOCK_THREADS || action == ModerationAction.UNLOCK_THREADS) {
+                liveFeedHub.publish("thread_locked", thread.getThreadId(), thread.getCourseId(),
+                    Map.of("isLocked", action == ModerationAction.LOCK_THREADS));
+            }
+        }
+        List<Long> threadIds = threads.stream().map(ThreadCourseView::getThreadId).toList();
+        outboxService.publishModerationBatch(jobId, action.name(), "THREAD", threadIds, null);
+        return affected;
+    }
+
+    /**
+     * One aggregate UPDATE per slice instead of a reload and decrement per comment
+     */
+    private void recomputeReplyCounts(Set<Long> threadIds) {
+        if (threadIds.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(threadIds);
+        Collections.sort(ids);
+        for (int from = 0; from < ids.size(); from += RECOUNT_CHUNK) {
+            List<Long> slice = ids.subList(from, Math.min(from + RECOUNT_CHUNK, ids.size()));
+            transactionTemplate.execute(status -> threadRepository.recomputeReplyCounts(slice));
+        }
+    }
+
+    List<Long> resolveTargets(ModerationRequest request) {
+        if (request.getIds() != null && !request.getIds().isEmpty()) {
+            // Sorted so concurrent jobs lock rows in the same order
+            return request.getIds().stream().filter(Objects::nonNull).distinct().sorted().toList();
+        }
+
+        ModerationFilter filter = request.getFilter();
+        PageRequest limit = PageRequest.of(0, maxTargets + 1);
+        List<Long> ids = request.getAction().targetsComments()
+            ? commentRepository.findIdsForModeration(filter.getCourseId(), filter.getAuthorId(),
+                filter.getCreatedFrom(), filter.getCreatedTo(), limit)
+            : threadRepository.findIdsForModeration(filter.getCourseId(), filter.getAuthorId(),
+                filter.getCreatedFrom(), filter.getCreatedTo(), limit);
+        if (ids.size() > maxTargets) {
+            throw new IllegalArgumentException(
+                "Filter matches more than " + maxTargets + " targets; narrow it down");
+        }
+        return ids;
+    }
+
+    private void validate(ModerationRequest request) {
+        boolean hasIds = request.getIds() != null && !request.getIds().isEmpty();
+        ModerationFilter filter = request.getFilter();
+        if (hasIds == (filter != null)) {
+            throw new IllegalArgumentException("Provide either ids or a filter");
+        }
+        if (filter != null) {
+            if (filter.getCourseId() == null && filter.getAuthorId() == null) {
+                throw new IllegalArgumentException("Filter needs a courseId or an authorId");
+            }
+            if (filter.getCreatedFrom() != null && filter.getCreatedTo() != null
+                    && !filter.getCreatedFrom().isBefore(filter.getCreatedTo())) {
+                throw new IllegalArgumentException("createdFrom must be before createdTo");
+            }
+        }
+    }
+
+    private String describe(ModerationRequest request) {
+        try {
+            if (request.getFilter() != null) {
+                return objectMapper.writeValueAsString(Map.of("filter", request.getFilter()));
+            }
+            return objectMapper.writeValueAsString(Map.of("idCount", request.getIds().size()));
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.learnit.discussion.service;
+
+import com.learnit.discussion.dto.DeadLetterResponse;
+import com.learnit.discussion.SchedulingConfig;
+import com.learnit.discussion.repository.OutboxDeadLetterRepository;
+import com.learnit.discussion.repository.OutboxEventRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Retention and dead-lettering for the outbox table.
+ *
+ * Processed events are removed with set-based statements instead of being
+ * loaded into the heap. When outbox_events is range-partitioned by created_at
+ * (see db/outbox-partitioning.sql) daily partitions are created ahead of time
+ * and whole partitions are dropped once expired; otherwise rows are deleted in
+ * short chunks, each in its own transaction.
+ *
+ * Events that exhausted their publish attempts are moved to outbox_dead_letters
+ * so they stop counting as pending, and can be replayed from there.
+ */
+@Service
+@Slf4j
+public class OutboxRetentionService {
+
+    static final String TABLE = "outbox_events";
+    static final String DEFAULT_PARTITION = TABLE + "_default";
+    private static final DateTimeFormatter PARTITION_DAY = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final Pattern DAILY_PARTITION = Pattern.compile(TABLE + "_p(\\d{8})");
+
+    private final OutboxEventRepository outboxRepository;
+    private final OutboxDeadLetterRepository deadLetterRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final OutboxWakeup outboxWakeup;
+
+    @Value("${discussion.outbox.retention.days:7}")
+    private Integer retentionDays;
+
+    @Value("${discussion.outbox.retention.chunk-size:5000}")
+    private Integer chunkSize;
+
+    @Value("${discussion.outbox.retention.chunk-pause-ms:50}")
+    private Long chunkPauseMs;
+
+    @Value("${discussion.outbox.retention.premake-days:3}")
+    private Integer premakeDays;
+
+    @Value("${discussion.outbox.max-attempts:5}")
+    private Integer maxAttempts;
+
+    @Value("${discussion.outbox.dead-letter.batch-size:500}")
+    private Integer deadLetterBatchSize;
+
+    public OutboxRetentionService(OutboxEventRepository outboxRepository,
+                                  OutboxDeadLetterRepository deadLetterRepository,
+                                  JdbcTemplate jdbcTemplate,
+                                  TransactionTemplate transactionTemplate,
+                                  OutboxWakeup outboxWakeup) {
+        this.outboxRepository = outboxRepository;
+        this.deadLetterRepository = deadLetterRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.outboxWakeup = outboxWakeup;
+    }
+
+    /**
+     * Make sure today's partition exists before the first event is written
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        try {
+            if (isPartitioned()) {
+                ensurePartitions(LocalDate.now());
+            }
+        } catch (Exception e) {
+            log.warn("Could not prepare outbox partitions on startup: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Daily retention run: drop or delete processed events older than the retention window
+     */
+    @Scheduled(cron = "${discussion.outbox.retention.cron:0 0 2 * * *}", scheduler = SchedulingConfig.MAINTENANCE_SCHEDULER)
+    public void runRetention() {
+        LocalDate today = LocalDate.now();
+        LocalDateTime cutoff = today.atStartOfDay().minusDays(retentionDays);
+        try {
+            if (isPartitioned()) {
+                ensurePartitions(today);
+                int dropped = dropExpiredPartitions(cutoff.toLocalDate());
+                // Rows that landed in the default partition still need deleting row by row
+                long deleted = hasDefaultPartition() ? deleteProcessedBefore(DEFAULT_PARTITION, cutoff) : 0;
+                log.info("Outbox retention: dropped {} partitions, deleted {} rows from {}",
+                         dropped, deleted, DEFAULT_PARTITION);
+            } else {
+                long deleted = deleteProcessedBefore(TABLE, cutoff);
+                log.info("Outbox retention: deleted {} processed events older than {}", deleted, cutoff);
+            }
+        } catch (Exception e) {
+            log.error("Outbox retention run failed", e);
+        }
+    }
+
+    /**
+     * Move events that exhausted their attempts to the dead-letter table
+     */
+    @Scheduled(fixedDelayString = "${discussion.outbox.dead-letter.interval-ms:60000}")
+    public void moveExhaustedEvents() {
+        int total = 0;
+        int moved;
+        do {
+            moved = transactionTemplate.execute(
+                status -> outboxRepository.moveExhaustedToDeadLetters(maxAttempts, deadLetterBatchSize));
+            total += moved;
+        } while (moved == deadLetterBatchSize);
+
+        if (total > 0) {
+            log.warn("Moved {} outbox events with {} or more failed attempts to outbox_dead_letters",
+                     total, maxAttempts);
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public List<DeadLetterResponse> getDeadLetters(String eventType, int limit) {
+        PageRequest page = PageRequest.of(0, limit);
+        return (eventType == null
+                ? deadLetterRepository.findOldest(page)
+                : deadLetterRepository.findOldestByEventType(eventType, page))
+            .stream()
+            .map(DeadLetterResponse::new)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Requeue one dead letter as a fresh pending outbox event
+     */
+    @Transactional
+    public void replayDeadLetter(Long id) {
+        if (deadLetterRepository.replay(id) == 0) {
+            throw new RuntimeException("Dead letter not found with id: " + id);
+        }
+        outboxWakeup.onEventWritten();
+        log.info("Replayed outbox dead letter {}", id);
+    }
+
+    /**
+     * Requeue the oldest dead letters, returns how many were requeued
+     */
+    @Transactional
+    public int replayDeadLetters(int limit) {
+        int replayed = deadLetterRepository.replayOldest(limit);
+        if (replayed > 0) {
+            outboxWakeup.onEventWritten();
+            log.info("Replayed {} outbox dead letters", replayed);
+        }
+        return replayed;
+    }
+
+    // ==================== Set-based deletes ====================
+
+    /**
+     * Delete processed rows older than the cutoff in chunks. Each chunk is its
+     * own statement (auto-commit), so locks and WAL stay bounded and vacuum can
+     * keep up between chunks.
+     */
+    long deleteProcessedBefore(String table, LocalDateTime cutoff) {
+        String sql = "DELETE FROM " + table + " WHERE id IN (SELECT id FROM " + table +
+                     " WHERE processed = true AND processed_at < ? ORDER BY id LIMIT ?)";
+        Timestamp cutoffTimestamp = Timestamp.valueOf(cutoff);
+        long total = 0;
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update(sql, cutoffTimestamp, chunkSize);
+            total += deleted;
+            if (deleted == chunkSize && chunkPauseMs > 0) {
+                try {
+                    Thread.sleep(chunkPauseMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        } while (deleted == chunkSize);
+        return total;
+    }
+
+    // ==================== Partitions ====================
+
+    boolean isPartitioned() {
+        Boolean partitioned = jdbcTemplate.queryForObject(
+            "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table pt JOIN pg_class c ON c.oid = pt.partrelid " +
+            "WHERE c.relname = ? AND pg_table_is_visible(c.oid))", Boolean.class, TABLE);
+        return Boolean.TRUE.equals(partitioned);
+    }
+
+    private boolean hasDefaultPartition() {
+        return !partitionNames(DEFAULT_PARTITION).isEmpty();
+    }
+
+    /**
+     * Create daily partitions from today through today + premake-days
+     */
+    void ensurePartitions(LocalDate today) {
+        for (int i = 0; i <= premakeDays; i++) {
+            LocalDate day = today.plusDays(i);
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partitionName(day) +
+                " PARTITION OF " + TABLE + " FOR VALUES FROM ('" + day + "') TO ('" + day.plusDays(1) + "')");
+        }
+    }
+
+    /**
+     * Drop daily partitions that end on or before the cutoff day. A partition
+     * still holding pending events (e.g. a Kafka outage longer than the
+     * retention window) is kept and retried on the next run.
+     */
+    int dropExpiredPartitions(LocalDate cutoffDay) {
+        int dropped = 0;
+        for (String partition : partitionNames(null)) {
+            LocalDate day = partitionDay(partition);
+            if (day == null || day.plusDays(1).isAfter(cutoffDay)) {
+                continue;
+            }
+            Boolean pending = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM " + partition + " WHERE processed = false)", Boolean.class);
+            if (Boolean.TRUE.equals(pending)) {
+                log.warn("Keeping expired outbox partition {}: it still has pending events", partition);
+                continue;
+            }
+            jdbcTemplate.execute("DROP TABLE " + partition);
+            dropped++;
+        }
+        return dropped;
+    }
+
+    private List<String> partitionNames(String name) {
+        String sql = "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                     "JOIN pg_class p ON p.oid = i.inhparent WHERE p.relname = ? AND pg_table_is_visible(p.oid)";
+        List<String> names = jdbcTemplate.queryForList(sql, String.class, TABLE);
+        return name == null ? names : names.stream().filter(name::equals).collect(Collectors.toList());
+    }
+
+    static String partitionName(LocalDate day) {
+        return TABLE + "_p" + PARTITION_DAY.format(day);
+    }
+
+    /**
+     * Day covered by a daily partition, or null for other partitions (default, manual)
+     */
+    static LocalDate partitionDay(String partition) {
+        Matcher matcher = DAILY_PARTITION.matcher(partition);
+        return matcher.matches() ? LocalDate.parse(matcher.group(1), PARTITION_DAY) : null;
+    }
+}
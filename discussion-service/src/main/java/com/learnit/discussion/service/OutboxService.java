@@ -2,17 +2,19 @@ package com.learnit.discussion.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.learnit.discussion.dto.EventEnvelope;
 import com.learnit.discussion.entity.OutboxEvent;
 import com.learnit.discussion.repository.OutboxEventRepository;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -21,12 +23,20 @@ import java.util.UUID;
  * Must be called within the same transaction as domain entity operations.
  */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class OutboxService {
 
     private final OutboxEventRepository outboxRepository;
-    private final ObjectMapper objectMapper;
+    private final ObjectWriter envelopeWriter;
+    private final OutboxWakeup outboxWakeup;
+
+    public OutboxService(OutboxEventRepository outboxRepository, ObjectMapper objectMapper,
+                         OutboxWakeup outboxWakeup) {
+        this.outboxRepository = outboxRepository;
+        // Shared application mapper: ISO-8601 dates, built once instead of per event
+        this.envelopeWriter = objectMapper.writerFor(EventEnvelope.class);
+        this.outboxWakeup = outboxWakeup;
+    }
 
     /**
      * Create outbox event for thread creation
@@ -41,13 +51,19 @@ public class OutboxService {
     }
 
     /**
-     * Create outbox event for thread view
+     * Create outbox event for thread views.
+     * Views are coalesced per flush window, so viewCount carries the delta and
+     * userIds the distinct signed-in viewers of the window (for unique-viewer counts).
      */
     @Transactional
-    public void publishThreadViewed(Long threadId, Long courseId) {
+    public void publishThreadViewed(Long threadId, Long courseId, long viewCount, Collection<String> userIds) {
         Map<String, Object> payload = new HashMap<>();
         payload.put("threadId", threadId);
         payload.put("courseId", courseId);
+        payload.put("viewCount", viewCount);
+        if (userIds != null && !userIds.isEmpty()) {
+            payload.put("userIds", List.copyOf(userIds));
+        }
 
         createOutboxEvent("THREAD", threadId.toString(), "thread_viewed", payload);
     }
@@ -56,9 +72,10 @@ public class OutboxService {
      * Create outbox event for comment addition
      */
     @Transactional
-    public void publishCommentAdded(Long commentId, Long threadId, Long courseId) {
+    public void publishCommentAdded(Long commentId, Long userId, Long threadId, Long courseId) {
         Map<String, Object> payload = new HashMap<>();
         payload.put("commentId", commentId);
+        payload.put("userId", userId);
         payload.put("threadId", threadId);
         payload.put("courseId", courseId);
 
@@ -66,22 +83,48 @@ public class OutboxService {
     }
 
     /**
-     * Create outbox event for vote cast
+     * Create outbox event for vote cast.
+     * previousVoteType is set when an existing vote was switched, so consumers
+     * can move the count instead of adding a second vote.
      */
     @Transactional
-    public void publishVoteCast(Long voteId, String targetType, Long targetId, 
-                                 String voteType, Long threadId, Long courseId) {
+    public void publishVoteCast(Long voteId, Long userId, String targetType, Long targetId,
+                                 String voteType, String previousVoteType, Long threadId, Long courseId) {
         Map<String, Object> payload = new HashMap<>();
         payload.put("voteId", voteId);
+        payload.put("userId", userId);
         payload.put("targetType", targetType);
         payload.put("targetId", targetId);
         payload.put("voteType", voteType);
+        if (previousVoteType != null) {
+            payload.put("previousVoteType", previousVoteType);
+        }
         payload.put("threadId", threadId);
         payload.put("courseId", courseId);
 
         createOutboxEvent("VOTE", voteId.toString(), "vote_cast", payload);
     }
 
+    /**
+     * Create one outbox event for a chunk of a bulk moderation job.
+     * targetIds are the threads or comments in the chunk; threadIds lists the
+     * threads whose comments were removed (their reply counts are recomputed).
+     */
+    @Transactional
+    public void publishModerationBatch(Long jobId, String action, String targetType,
+                                       List<Long> targetIds, Collection<Long> threadIds) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("jobId", jobId);
+        payload.put("action", action);
+        payload.put("targetType", targetType);
+        payload.put("targetIds", targetIds);
+        if (threadIds != null) {
+            payload.put("threadIds", threadIds);
+        }
+
+        createOutboxEvent("MODERATION", jobId.toString(), "moderation_applied", payload);
+    }
+
     /**
      * Core method to create outbox event with EventEnvelope format
      */
@@ -92,15 +135,13 @@ public class OutboxService {
             EventEnvelope envelope = new EventEnvelope();
             envelope.setEventType(eventType);
             envelope.setEventId(generateEventId(eventType, aggregateId));
-            envelope.setOccurredAt(LocalDateTime.now());
+            envelope.setOccurredAt(Instant.now());
             envelope.setSchemaVersion(1);
             envelope.setSourceService("discussion-service");
             envelope.setPayload(payload);
 
-            // Serialize to JSON
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.registerModule(new JavaTimeModule());
-            String jsonPayload = mapper.writeValueAsString(envelope);
+            // Stored as JSON; the publisher re-encodes it with the topic's codec
+            String jsonPayload = envelopeWriter.writeValueAsString(envelope);
 
             // Create outbox event
             OutboxEvent outboxEvent = new OutboxEvent();
@@ -113,6 +154,7 @@ public class OutboxService {
             outboxEvent.setAttemptCount(0);
 
             outboxRepository.save(outboxEvent);
+            outboxWakeup.onEventWritten();
 
             log.debug("Created outbox event: {} for {}:{}", eventType, aggregateType, aggregateId);
 
@@ -0,0 +1,129 @@
+package com.learnit.discussion.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Wakes the outbox publisher as soon as new events are committed, instead of
+ * letting them wait for the next poll.
+ *
+ * The first outbox write of a transaction registers one synchronization that
+ * signals the publisher after commit (in-process). With
+ * discussion.outbox.notify.enabled it also issues a PostgreSQL NOTIFY before
+ * commit, which the database delivers to listening instances on commit only.
+ * Signals coalesce: any number of commits while the publisher is busy wake it
+ * once more.
+ *
+ * While the LISTEN connection is up every commit reaches this instance as a
+ * signal, so the publisher needs no timed poll when idle (see isListening).
+ */
+@Component
+@Slf4j
+public class OutboxWakeup {
+
+    public static final String CHANNEL = "outbox_events";
+
+    private static final Object TRANSACTION_KEY = new Object();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean notifyEnabled;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition signalled = lock.newCondition();
+    private boolean pending;
+    private volatile boolean listening;
+
+    public OutboxWakeup(JdbcTemplate jdbcTemplate,
+                        @Value("${discussion.outbox.notify.enabled:false}") boolean notifyEnabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.notifyEnabled = notifyEnabled;
+    }
+
+    /**
+     * Called for every outbox row written; registers the wakeup once per transaction
+     */
+    public void onEventWritten() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            signal();
+            return;
+        }
+        if (TransactionSynchronizationManager.hasResource(TRANSACTION_KEY)) {
+            return;
+        }
+
+        TransactionSynchronizationManager.bindResource(TRANSACTION_KEY, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                if (notifyEnabled) {
+                    jdbcTemplate.execute("NOTIFY " + CHANNEL);
+                }
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(TRANSACTION_KEY);
+                if (status == STATUS_COMMITTED) {
+                    signal();
+                }
+            }
+        });
+    }
+
+    /**
+     * Wake a waiting publisher, or make its next wait return immediately
+     */
+    public void signal() {
+        lock.lock();
+        try {
+            pending = true;
+            signalled.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Set by OutboxNotificationListener while it holds a working LISTEN connection.
+     * Losing it signals the publisher so it goes back to timed polling.
+     */
+    public void setListening(boolean listening) {
+        boolean wasListening = this.listening;
+        this.listening = listening;
+        if (wasListening && !listening) {
+            signal();
+        }
+    }
+
+    public boolean isListening() {
+        return listening;
+    }
+
+    /**
+     * Wait until signalled or the timeout elapses (Long.MAX_VALUE waits for a signal only).
+     *
+     * @return true if a signal arrived (including one raised before the call)
+     */
+    public boolean await(long timeoutMs) throws InterruptedException {
+        lock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            while (!pending && remaining > 0) {
+                remaining = signalled.awaitNanos(remaining);
+            }
+            boolean wasSignalled = pending;
+            pending = false;
+            return wasSignalled;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
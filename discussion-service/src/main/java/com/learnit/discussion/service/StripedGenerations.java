@@ -0,0 +1,41 @@
+package com.learnit.discussion.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Generation counters striped by id, shared by the in-memory caches.
+ *
+ * A cache captures the generation of an id before loading and only stores the
+ * result if it still matches, so a load that raced with an invalidation of that
+ * id is never cached. Invalidating one id only discards the loads in flight of
+ * ids sharing its stripe.
+ */
+final class StripedGenerations {
+
+    private static final int STRIPES = 1024;
+
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+
+    /**
+     * The id's current generation; capture before loading
+     */
+    long current(Long id) {
+        return generations.get(stripe(id));
+    }
+
+    void bump(Long id) {
+        generations.incrementAndGet(stripe(id));
+    }
+
+    /**
+     * Whether the id was not invalidated since loadGeneration was captured
+     */
+    boolean matches(Long id, long loadGeneration) {
+        return generations.get(stripe(id)) == loadGeneration;
+    }
+
+    private static int stripe(Long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 54); // top 10 bits
+    }
+}
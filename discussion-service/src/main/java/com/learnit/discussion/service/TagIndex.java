@@ -0,0 +1,260 @@
+package com.learnit.discussion.service;
+
+import com.learnit.discussion.dto.TagCount;
+import com.learnit.discussion.entity.ThreadStatus;
+import com.learnit.discussion.repository.ThreadRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory tag index of active threads, one per course.
+ *
+ * Each course keeps tag -> postings (thread ids), so a tag's count is the size
+ * of its postings, plus a character trie over lower-cased tags for prefix
+ * autocomplete. Courses are loaded lazily with a single query and kept in sync
+ * by createThread / updateThread / deleteThread after commit; courses nobody
+ * reads are evicted. A striped generation counter keeps a load that raced with
+ * a change from caching a stale index.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TagIndex {
+
+    private static final Comparator<TagCount> BY_COUNT = Comparator
+        .comparingInt(TagCount::getThreadCount).reversed()
+        .thenComparing(TagCount::getTag);
+
+    private final ThreadRepository threadRepository;
+
+    private final Map<Long, CourseTags> courses = new ConcurrentHashMap<>();
+    private final StripedGenerations generations = new StripedGenerations();
+
+    @Value("${discussion.tags.idle-eviction-ms:3600000}")
+    private Long idleEvictionMs;
+
+    /**
+     * Tags of a course, most used first
+     */
+    public List<TagCount> getTags(Long courseId, int limit) {
+        List<TagCount> ranked = course(courseId).ranked();
+        return ranked.subList(0, Math.max(0, Math.min(limit, ranked.size())));
+    }
+
+    /**
+     * Tags starting with prefix (case-insensitive), most used first
+     */
+    public List<TagCount> suggest(Long courseId, String prefix, int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        return course(courseId).suggest(prefix == null ? "" : prefix.toLowerCase(Locale.ROOT), limit);
+    }
+
+    /**
+     * A thread was created or its tags changed; replaces its previous tags
+     */
+    public void onThreadSaved(Long courseId, Long threadId, Set<String> tags) {
+        Set<String> copy = tags == null ? Set.of() : Set.copyOf(tags);
+        AfterCommit.run(() -> {
+            generations.bump(courseId);
+            CourseTags course = courses.get(courseId);
+            if (course != null) {
+                course.put(threadId, copy);
+            }
+        });
+    }
+
+    public void onThreadRemoved(Long courseId, Long threadId) {
+        AfterCommit.run(() -> {
+            generations.bump(courseId);
+            CourseTags course = courses.get(courseId);
+            if (course != null) {
+                course.remove(threadId);
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${discussion.tags.idle-eviction-ms:3600000}")
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        courses.forEach((courseId, course) -> {
+            if (now - course.lastAccess > idleEvictionMs) {
+                courses.remove(courseId, course);
+            }
+        });
+    }
+
+    private CourseTags course(Long courseId) {
+        CourseTags course = courses.get(courseId);
+        if (course == null) {
+            course = load(courseId);
+        }
+        course.lastAccess = System.currentTimeMillis();
+        return course;
+    }
+
+    private CourseTags load(Long courseId) {
+        long generation = generations.current(courseId);
+
+        CourseTags loaded = new CourseTags();
+        List<ThreadRepository.ThreadTagView> rows =
+            threadRepository.findTagsByCourse(courseId, ThreadStatus.ACTIVE);
+        Map<Long, Set<String>> byThread = new HashMap<>();
+        rows.forEach(row -> byThread.computeIfAbsent(row.getThreadId(), id -> new HashSet<>()).add(row.getTag()));
+        byThread.forEach(loaded::put);
+        log.debug("Loaded {} tagged threads for course {}", byThread.size(), courseId);
+
+        if (!generations.matches(courseId, generation)) {
+            // A change committed while loading; serve this result but do not cache it
+            return loaded;
+        }
+        CourseTags existing = courses.putIfAbsent(courseId, loaded);
+        return existing != null ? existing : loaded;
+    }
+
+    private static final class CourseTags {
+        private final Map<Long, Set<String>> threadTags = new HashMap<>();
+        private final Map<String, Set<Long>> postings = new HashMap<>();
+        private final TrieNode trie = new TrieNode();
+        private List<TagCount> ranked;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        synchronized void put(Long threadId, Set<String> tags) {
+            removeThread(threadId);
+            if (!tags.isEmpty()) {
+                threadTags.put(threadId, tags);
+                tags.forEach(tag -> addPosting(tag, threadId));
+            }
+            ranked = null;
+        }
+
+        synchronized void remove(Long threadId) {
+            removeThread(threadId);
+            ranked = null;
+        }
+
+        synchronized List<TagCount> ranked() {
+            if (ranked == null) {
+                List<TagCount> counts = new ArrayList<>(postings.size());
+                postings.forEach((tag, threads) -> counts.add(new TagCount(tag, threads.size())));
+                counts.sort(BY_COUNT);
+                ranked = List.copyOf(counts);
+            }
+            return ranked;
+        }
+
+        /**
+         * Walk to the prefix node, then keep the most used tags below it in a bounded min-heap
+         */
+        synchronized List<TagCount> suggest(String prefix, int limit) {
+            TrieNode node = trie;
+            for (int i = 0; i < prefix.length() && node != null; i++) {
+                node = node.children.get(prefix.charAt(i));
+            }
+            if (node == null) {
+                return List.of();
+            }
+
+            PriorityQueue<TagCount> heap = new PriorityQueue<>(BY_COUNT.reversed());
+            Deque<TrieNode> pending = new ArrayDeque<>();
+            pending.push(node);
+            while (!pending.isEmpty()) {
+                TrieNode current = pending.pop();
+                for (String tag : current.tags) {
+                    heap.offer(new TagCount(tag, postings.get(tag).size()));
+                    if (heap.size() > limit) {
+                        heap.poll();
+                    }
+                }
+                current.children.values().forEach(pending::push);
+            }
+
+            List<TagCount> result = new ArrayList<>(heap);
+            result.sort(BY_COUNT);
+            return result;
+        }
+
+        private void removeThread(Long threadId) {
+            Set<String> previous = threadTags.remove(threadId);
+            if (previous != null) {
+                previous.forEach(tag -> removePosting(tag, threadId));
+            }
+        }
+
+        private void addPosting(String tag, Long threadId) {
+            Set<Long> threads = postings.get(tag);
+            if (threads == null) {
+                threads = new HashSet<>();
+                postings.put(tag, threads);
+                trie.insert(tag);
+            }
+            threads.add(threadId);
+        }
+
+        private void removePosting(String tag, Long threadId) {
+            Set<Long> threads = postings.get(tag);
+            if (threads == null) {
+                return;
+            }
+            threads.remove(threadId);
+            if (threads.isEmpty()) {
+                postings.remove(tag);
+                trie.delete(tag);
+            }
+        }
+    }
+
+    /**
+     * Trie over lower-cased tags; a node lists the original spellings that end there
+     */
+    private static final class TrieNode {
+        private final Map<Character, TrieNode> children = new TreeMap<>();
+        private final Set<String> tags = new HashSet<>(1);
+
+        void insert(String tag) {
+            String key = tag.toLowerCase(Locale.ROOT);
+            TrieNode node = this;
+            for (int i = 0; i < key.length(); i++) {
+                node = node.children.computeIfAbsent(key.charAt(i), c -> new TrieNode());
+            }
+            node.tags.add(tag);
+        }
+
+        void delete(String tag) {
+            delete(tag, tag.toLowerCase(Locale.ROOT), 0);
+        }
+
+        /**
+         * Remove the tag and prune nodes left without tags or children
+         */
+        private boolean delete(String tag, String key, int depth) {
+            if (depth == key.length()) {
+                tags.remove(tag);
+            } else {
+                TrieNode child = children.get(key.charAt(depth));
+                if (child != null && child.delete(tag, key, depth + 1)) {
+                    children.remove(key.charAt(depth));
+                }
+            }
+            return tags.isEmpty() && children.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.learnit.discussion.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnit.discussion.SchedulingConfig;
+import com.learnit.discussion.entity.*;
+import com.learnit.discussion.repository.ArchivedThreadRepository;
+import com.learnit.discussion.repository.CommentRepository;
+import com.learnit.discussion.repository.ThreadRepository;
+import com.learnit.discussion.repository.VoteRepository;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cold-thread archival tier.
+ * Threads without activity for discussion.archive.inactive-days are moved, with their tags,
+ * comments and votes, out of the live tables into archived_threads as one compressed snapshot
+ * per thread, so listings and indexes only cover live forums. Archived threads stay readable
+ * by id (see DiscussionService) and can be restored into the live tables.
+ */
+@Service
+@Slf4j
+public class ThreadArchiveService {
+
+    private final ThreadRepository threadRepository;
+    private final CommentRepository commentRepository;
+    private final VoteRepository voteRepository;
+    private final ArchivedThreadRepository archivedThreadRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final HotThreadRanker hotThreadRanker;
+    private final TagIndex tagIndex;
+    private final CommentTreeCache commentTreeCache;
+    private final ViewCountBuffer viewCountBuffer;
+
+    @Value("${discussion.archive.enabled:true}")
+    private Boolean enabled;
+
+    @Value("${discussion.archive.inactive-days:365}")
+    private Integer inactiveDays;
+
+    @Value("${discussion.archive.batch-size:100}")
+    private Integer batchSize;
+
+    @Value("${discussion.archive.max-batches-per-run:200}")
+    private Integer maxBatchesPerRun;
+
+    @Value("${discussion.archive.batch-pause-ms:200}")
+    private Long batchPauseMs;
+
+    public ThreadArchiveService(ThreadRepository threadRepository, CommentRepository commentRepository,
+                                VoteRepository voteRepository, ArchivedThreadRepository archivedThreadRepository,
+                                JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                ObjectMapper objectMapper, HotThreadRanker hotThreadRanker, TagIndex tagIndex,
+                                CommentTreeCache commentTreeCache, ViewCountBuffer viewCountBuffer) {
+        this.threadRepository = threadRepository;
+        this.commentRepository = commentRepository;
+        this.voteRepository = voteRepository;
+        this.archivedThreadRepository = archivedThreadRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.hotThreadRanker = hotThreadRanker;
+        this.tagIndex = tagIndex;
+        this.commentTreeCache = commentTreeCache;
+        this.viewCountBuffer = viewCountBuffer;
+    }
+
+    /**
+     * Everything archived for one thread
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ThreadSnapshot {
+        private DiscussionThread thread;
+        private List<Comment> comments = new ArrayList<>();
+        private List<Vote> votes = new ArrayList<>(); // On the thread and on its comments
+    }
+
+    @Scheduled(cron = "${discussion.archive.cron:0 30 3 * * *}", scheduler = SchedulingConfig.MAINTENANCE_SCHEDULER)
+    public void scheduledRun() {
+        if (enabled) {
+            archiveInactiveThreads();
+        }
+    }
+
+    /**
+     * Move inactive threads batch by batch, one transaction per batch, pausing between
+     * batches so the migrator never competes with live traffic for long
+     */
+    public int archiveInactiveThreads() {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(inactiveDays);
+        int total = 0;
+        for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+            Integer archived = transactionTemplate.execute(status -> archiveBatch(cutoff, batchSize));
+            int count = archived == null ? 0 : archived;
+            total += count;
+            if (count < batchSize || !pause()) {
+                break;
+            }
+        }
+        if (total > 0) {
+            log.info("Archived {} threads inactive since {}", total, cutoff);
+        }
+        return total;
+    }
+
+    /**
+     * Archive up to limit threads inside the caller's transaction
+     */
+    int archiveBatch(LocalDateTime cutoff, int limit) {
+        List<Long> threadIds = threadRepository.lockArchivableIds(cutoff, limit);
+        if (threadIds.isEmpty()) {
+            return 0;
+        }
+
+        // Buffered views go into the rows before they are snapshotted
+        viewCountBuffer.flushThreads(threadIds);
+        List<DiscussionThread> threads = threadRepository.findWithTagsByIdIn(threadIds);
+        List<Comment> comments = commentRepository.findByThreadIdIn(threadIds);
+        Map<Long, Long> threadOfComment = comments.stream()
+            .collect(Collectors.toMap(Comment::getId, Comment::getThreadId));
+        List<Vote> votes = voteRepository.findByTargets(threadIds, threadOfComment.keySet());
+
+        Map<Long, ThreadSnapshot> snapshots = new HashMap<>();
+        threads.forEach(thread -> snapshots.put(thread.getId(),
+            new ThreadSnapshot(thread, new ArrayList<>(), new ArrayList<>())));
+        comments.forEach(comment -> snapshots.get(comment.getThreadId()).getComments().add(comment));
+        for (Vote vote : votes) {
+            Long threadId = vote.getTargetType() == TargetType.THREAD
+                ? vote.getTargetId() : threadOfComment.get(vote.getTargetId());
+            snapshots.get(threadId).getVotes().add(vote);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<ArchivedThread> rows = new ArrayList<>(snapshots.size());
+        for (ThreadSnapshot snapshot : snapshots.values()) {
+            DiscussionThread thread = snapshot.getThread();
+            ArchivedThread row = new ArchivedThread();
+            row.setId(thread.getId());
+            row.setCourseId(thread.getCourseId());
+            row.setAuthorId(thread.getAuthorId());
+            row.setTitle(thread.getTitle());
+            row.setLastActivityAt(thread.getLastActivityAt());
+            row.setCommentCount(snapshot.getComments().size());
+            row.setVoteCount(snapshot.getVotes().size());
+            row.setSnapshot(compress(snapshot));
+            row.setArchivedAt(now);
+            rows.add(row);
+        }
+        archivedThreadRepository.saveAll(rows);
+
+        // Children first: votes, comments, tags, then the threads themselves
+        voteRepository.deleteByTargets(threadIds, threadOfComment.keySet());
+        commentRepository.deleteByThreadIds(threadIds);
+        threadRepository.deleteTagsByThreadIds(threadIds);
+        threadRepository.deleteByIds(threadIds);
+
+        for (DiscussionThread thread : threads) {
+            hotThreadRanker.onThreadRemoved(thread.getCourseId(), thread.getId());
+            tagIndex.onThreadRemoved(thread.getCourseId(), thread.getId());
+            commentTreeCache.invalidate(thread.getId());
+        }
+        return threads.size();
+    }
+
+    /**
+     * Snapshot of an archived thread, decompressed on demand
+     */
+    public Optional<ThreadSnapshot> findArchived(Long threadId) {
+        return archivedThreadRepository.findById(threadId).map(row -> decompress(row.getSnapshot()));
+    }
+
+    /**
+     * Put an archived thread back into the live tables with its original ids.
+     * Its last activity is reset to now so the next migrator run does not archive it again.
+     */
+    public DiscussionThread restore(Long threadId) {
+        return transactionTemplate.execute(status -> {
+            ArchivedThread row = archivedThreadRepository.findById(threadId)
+                .orElseThrow(() -> new RuntimeException("Archived thread not found: " + threadId));
+            ThreadSnapshot snapshot = decompress(row.getSnapshot());
+            DiscussionThread thread = snapshot.getThread();
+            thread.setLastActivityAt(LocalDateTime.now());
+
+            insertThread(thread);
+            insertComments(snapshot.getComments());
+            insertVotes(snapshot.getVotes());
+            archivedThreadRepository.delete(row);
+
+            hotThreadRanker.onThreadCreated(thread);
+            if (thread.getStatus() == ThreadStatus.ACTIVE) {
+                tagIndex.onThreadSaved(thread.getCourseId(), thread.getId(), thread.getTags());
+            }
+            log.info("Restored archived thread {} ({} comments, {} votes)",
+                threadId, snapshot.getComments().size(), snapshot.getVotes().size());
+            return thread;
+        });
+    }
+
+    private void insertThread(DiscussionThread t) {
+        jdbcTemplate.update("INSERT INTO threads (id, course_id, author_id, title, content, category, status, " +
+                "is_pinned, is_locked, view_count, reply_count, upvotes, downvotes, accepted_answer_id, " +
+                "created_at, updated_at, last_activity_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+            t.getId(), t.getCourseId(), t.getAuthorId(), t.getTitle(), t.getContent(), t.getCategory().name(),
+            t.getStatus().name(), t.getIsPinned(), t.getIsLocked(), t.getViewCount(), t.getReplyCount(),
+            t.getUpvotes(), t.getDownvotes(), t.getAcceptedAnswerId(), timestamp(t.getCreatedAt()),
+            timestamp(t.getUpdatedAt()), timestamp(t.getLastActivityAt()));
+        if (t.getTags() != null && !t.getTags().isEmpty()) {
+            List<Object[]> tagRows = t.getTags().stream()
+                .map(tag -> new Object[]{t.getId(), tag})
+                .toList();
+            jdbcTemplate.batchUpdate("INSERT INTO thread_tags (thread_id, tag) VALUES (?, ?)", tagRows);
+        }
+    }
+
+    private void insertComments(List<Comment> comments) {
+        if (comments.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = comments.stream()
+            .map(c -> new Object[]{c.getId(), c.getThreadId(), c.getParentCommentId(), c.getAuthorId(),
+                c.getContent(), c.getIsAnswer(), c.getIsEdited(), c.getUpvotes(), c.getDownvotes(), c.getDepth(),
+                timestamp(c.getCreatedAt()), timestamp(c.getUpdatedAt())})
+            .toList();
+        jdbcTemplate.batchUpdate("INSERT INTO comments (id, thread_id, parent_comment_id, author_id, content, " +
+            "is_answer, is_edited, upvotes, downvotes, depth, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", rows);
+    }
+
+    private void insertVotes(List<Vote> votes) {
+        if (votes.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = votes.stream()
+            .map(v -> new Object[]{v.getId(), v.getUserId(), v.getTargetType().name(), v.getTargetId(),
+                v.getVoteType().name(), timestamp(v.getCreatedAt())})
+            .toList();
+        jdbcTemplate.batchUpdate("INSERT INTO votes (id, user_id, target_type, target_id, vote_type, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?)", rows);
+    }
+
+    byte[] compress(ThreadSnapshot snapshot) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            objectMapper.writeValue(out, snapshot);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to compress thread snapshot", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    ThreadSnapshot decompress(byte[] data) {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return objectMapper.readValue(in, ThreadSnapshot.class);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read thread snapshot", e);
+        }
+    }
+
+    private static Timestamp timestamp(LocalDateTime time) {
+        return time == null ? null : Timestamp.valueOf(time);
+    }
+
+    private boolean pause() {
+        if (batchPauseMs <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(batchPauseMs);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
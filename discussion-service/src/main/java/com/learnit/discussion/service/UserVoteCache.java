@@ -0,0 +1,98 @@
+package com.learnit.discussion.service;
+
+import com.learnit.discussion.entity.TargetType;
+import com.learnit.discussion.entity.VoteType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU of recently looked-up vote states per user.
+ *
+ * Each user entry maps "TYPE:id" to the user's vote on that target, with null
+ * recorded for targets the user has not voted on, so repeated page loads skip
+ * the lookup query. Casting or removing a vote drops the user's entry after
+ * commit; a per-user generation counter (striped by user id) keeps a lookup that
+ * raced with an invalidation of that user from caching a stale state, without
+ * discarding other users' lookups. A cache size of 0 disables it.
+ */
+@Component
+public class UserVoteCache {
+
+    private final Map<Long, Map<String, VoteType>> users;
+    private final StripedGenerations generations = new StripedGenerations();
+    private final int maxUsers;
+    private final int maxTargetsPerUser;
+
+    public UserVoteCache(@Value("${discussion.votes.cache-size:10000}") int maxUsers,
+                         @Value("${discussion.votes.cache-targets-per-user:1000}") int maxTargetsPerUser) {
+        this.maxUsers = maxUsers;
+        this.maxTargetsPerUser = maxTargetsPerUser;
+        this.users = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Map<String, VoteType>> eldest) {
+                return size() > maxUsers;
+            }
+        };
+    }
+
+    static String key(TargetType targetType, Long targetId) {
+        return targetType.name() + ":" + targetId;
+    }
+
+    /**
+     * Cached states among the given keys; a key mapped to null means "not voted"
+     */
+    public synchronized Map<String, VoteType> getKnown(Long userId, Collection<String> keys) {
+        Map<String, VoteType> known = new HashMap<>();
+        Map<String, VoteType> cached = users.get(userId);
+        if (cached != null) {
+            for (String key : keys) {
+                if (cached.containsKey(key)) {
+                    known.put(key, cached.get(key));
+                }
+            }
+        }
+        return known;
+    }
+
+    /**
+     * The user's current generation; capture before querying votes and pass to {@link #put}
+     */
+    public long currentGeneration(Long userId) {
+        return generations.current(userId);
+    }
+
+    /**
+     * Cache loaded states unless an invalidation happened since loadGeneration was captured
+     */
+    public synchronized void put(Long userId, Map<String, VoteType> states, long loadGeneration) {
+        if (maxUsers <= 0 || !generations.matches(userId, loadGeneration)) {
+            return;
+        }
+        Map<String, VoteType> cached = users.computeIfAbsent(userId, id -> new HashMap<>());
+        if (cached.size() + states.size() > maxTargetsPerUser) {
+            cached.clear();
+        }
+        if (states.size() <= maxTargetsPerUser) {
+            cached.putAll(states);
+        }
+    }
+
+    /**
+     * Drop a user's states now and again once the surrounding transaction commits
+     */
+    public void invalidate(Long userId) {
+        evict(userId);
+        AfterCommit.run(() -> evict(userId));
+    }
+
+    private synchronized void evict(Long userId) {
+        generations.bump(userId);
+        users.remove(userId);
+    }
+}
@@ -0,0 +1,250 @@
+package com.learnit.discussion.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Write-behind buffer for thread view counts.
+ *
+ * Views are accumulated in striped in-memory counters keyed by threadId and
+ * flushed periodically as one batched "view_count = view_count + ?" update,
+ * together with a single coalesced thread_viewed outbox event per thread that
+ * also lists the window's distinct signed-in viewers (up to
+ * max-viewers-per-thread; analytics counts unique viewers from them).
+ * When the buffer is full, views are written through directly so memory
+ * stays bounded. Pending views are drained on shutdown, and flushed by
+ * flushThreads before a thread leaves the live table (archival); views
+ * whose thread row is already gone at flush time are discarded and logged.
+ */
+@Component
+@Slf4j
+public class ViewCountBuffer {
+
+    private static final String INCREMENT_VIEW_COUNT_SQL =
+        "UPDATE threads SET view_count = view_count + ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final OutboxService outboxService;
+
+    private final Stripe[] stripes;
+    private final int maxPendingThreads;
+    private final int maxViewersPerThread;
+    private final AtomicInteger pendingThreads = new AtomicInteger();
+
+    public ViewCountBuffer(JdbcTemplate jdbcTemplate,
+                           TransactionTemplate transactionTemplate,
+                           OutboxService outboxService,
+                           @Value("${discussion.views.stripes:32}") int stripeCount,
+                           @Value("${discussion.views.max-pending-threads:10000}") int maxPendingThreads,
+                           @Value("${discussion.views.max-viewers-per-thread:1000}") int maxViewersPerThread) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.outboxService = outboxService;
+        this.maxPendingThreads = maxPendingThreads;
+        this.maxViewersPerThread = maxViewersPerThread;
+        this.stripes = new Stripe[Math.max(1, stripeCount)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Record a single view by viewerId (null when anonymous). Buffered when
+     * there is room, otherwise written through in the caller's transaction.
+     */
+    public void recordView(Long threadId, Long courseId, String viewerId) {
+        if (!tryBuffer(threadId, courseId, 1, viewerId)) {
+            writeThrough(threadId, courseId, 1, viewerId);
+        }
+    }
+
+    /**
+     * Number of views recorded for a thread that have not been flushed yet
+     */
+    public long getPendingViews(Long threadId) {
+        Stripe stripe = stripeFor(threadId);
+        synchronized (stripe) {
+            PendingViews pending = stripe.views.get(threadId);
+            return pending == null ? 0 : pending.count;
+        }
+    }
+
+    /**
+     * Number of distinct threads currently holding buffered views (for monitoring)
+     */
+    public int getPendingThreadCount() {
+        return pendingThreads.get();
+    }
+
+    /**
+     * Flush buffered views to the database and outbox.
+     * Failed flushes are merged back into the buffer and retried next window.
+     */
+    @Scheduled(fixedDelayString = "${discussion.views.flush-interval-ms:5000}",
+               initialDelayString = "${discussion.views.flush-interval-ms:5000}")
+    public synchronized void flush() {
+        Map<Long, PendingViews> drained = drain();
+        if (drained.isEmpty()) {
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> write(drained));
+            log.debug("Flushed buffered views for {} threads", drained.size());
+        } catch (Exception e) {
+            log.error("Failed to flush buffered views for {} threads, requeueing", drained.size(), e);
+            // Requeue past the bound: these views were already acknowledged to readers
+            drained.forEach((threadId, pending) -> forceBuffer(threadId, pending));
+        }
+    }
+
+    /**
+     * Write the pending views of the given threads in the caller's transaction,
+     * before those rows are moved or deleted. Requeued if that transaction rolls back.
+     */
+    public void flushThreads(Collection<Long> threadIds) {
+        Map<Long, PendingViews> drained = new TreeMap<>();
+        for (Long threadId : threadIds) {
+            Stripe stripe = stripeFor(threadId);
+            synchronized (stripe) {
+                PendingViews pending = stripe.views.remove(threadId);
+                if (pending != null) {
+                    pendingThreads.decrementAndGet();
+                    drained.put(threadId, pending);
+                }
+            }
+        }
+        if (drained.isEmpty()) {
+            return;
+        }
+
+        AfterCommit.onRollback(() -> drained.forEach(this::forceBuffer));
+        write(drained);
+    }
+
+    @PreDestroy
+    public void drainOnShutdown() {
+        log.info("Draining {} buffered thread view counters before shutdown", pendingThreads.get());
+        flush();
+    }
+
+    private boolean tryBuffer(Long threadId, Long courseId, long views, String viewerId) {
+        Stripe stripe = stripeFor(threadId);
+        synchronized (stripe) {
+            PendingViews pending = stripe.views.get(threadId);
+            if (pending == null) {
+                if (pendingThreads.get() >= maxPendingThreads) {
+                    return false;
+                }
+                pending = new PendingViews(courseId);
+                stripe.views.put(threadId, pending);
+                pendingThreads.incrementAndGet();
+            }
+            pending.count += views;
+            pending.addViewer(viewerId, maxViewersPerThread);
+            return true;
+        }
+    }
+
+    private void forceBuffer(Long threadId, PendingViews requeued) {
+        Stripe stripe = stripeFor(threadId);
+        synchronized (stripe) {
+            PendingViews pending = stripe.views.get(threadId);
+            if (pending == null) {
+                pending = new PendingViews(requeued.courseId);
+                stripe.views.put(threadId, pending);
+                pendingThreads.incrementAndGet();
+            }
+            pending.count += requeued.count;
+            for (String viewerId : requeued.viewers) {
+                pending.addViewer(viewerId, maxViewersPerThread);
+            }
+        }
+    }
+
+    private Map<Long, PendingViews> drain() {
+        // Sorted by threadId so concurrent flushers lock rows in the same order
+        Map<Long, PendingViews> drained = new TreeMap<>();
+        for (Stripe stripe : stripes) {
+            Map<Long, PendingViews> views;
+            synchronized (stripe) {
+                if (stripe.views.isEmpty()) {
+                    continue;
+                }
+                views = stripe.views;
+                stripe.views = new HashMap<>();
+                pendingThreads.addAndGet(-views.size());
+            }
+            drained.putAll(views);
+        }
+        return drained;
+    }
+
+    private void write(Map<Long, PendingViews> drained) {
+        List<Object[]> batchArgs = new ArrayList<>(drained.size());
+        drained.forEach((threadId, pending) -> batchArgs.add(new Object[]{pending.count, threadId}));
+        int[] updated = jdbcTemplate.batchUpdate(INCREMENT_VIEW_COUNT_SQL, batchArgs);
+
+        int i = 0;
+        long discardedViews = 0;
+        List<Long> goneThreadIds = new ArrayList<>();
+        for (Map.Entry<Long, PendingViews> entry : drained.entrySet()) {
+            PendingViews pending = entry.getValue();
+            if (updated[i++] == 0) {
+                // Thread deleted or archived after the view was buffered
+                goneThreadIds.add(entry.getKey());
+                discardedViews += pending.count;
+                continue;
+            }
+            outboxService.publishThreadViewed(entry.getKey(), pending.courseId, pending.count, pending.viewers);
+        }
+        if (!goneThreadIds.isEmpty()) {
+            log.warn("Discarded {} buffered views of threads no longer live: {}", discardedViews, goneThreadIds);
+        }
+    }
+
+    private void writeThrough(Long threadId, Long courseId, long views, String viewerId) {
+        jdbcTemplate.update(INCREMENT_VIEW_COUNT_SQL, views, threadId);
+        outboxService.publishThreadViewed(threadId, courseId, views, viewerId == null ? List.of() : List.of(viewerId));
+    }
+
+    private Stripe stripeFor(Long threadId) {
+        return stripes[Math.floorMod(threadId.hashCode(), stripes.length)];
+    }
+
+    private static final class Stripe {
+        private Map<Long, PendingViews> views = new HashMap<>();
+    }
+
+    private static final class PendingViews {
+        private final Long courseId;
+        private long count;
+        private final Set<String> viewers = new LinkedHashSet<>();
+
+        private PendingViews(Long courseId) {
+            this.courseId = courseId;
+        }
+
+        private void addViewer(String viewerId, int max) {
+            if (viewerId != null && viewers.size() < max) {
+                viewers.add(viewerId);
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+-- Converts outbox_events to daily range partitions on created_at.
+-- Not run automatically: apply once with psql during a maintenance window
+-- (stop the publishers first), e.g.
+--   psql -d discussion_db -f outbox-partitioning.sql
+-- OutboxRetentionService detects the partitioned table, creates partitions
+-- ahead of time and drops expired ones instead of deleting rows.
+--
+-- Identity columns are not supported on partitioned tables before
+-- PostgreSQL 17, so ids come from a sequence default. The primary key must
+-- include the partition key.
+
+BEGIN;
+
+ALTER TABLE outbox_events RENAME TO outbox_events_legacy;
+ALTER INDEX IF EXISTS idx_outbox_pending RENAME TO idx_outbox_pending_legacy;
+
+CREATE SEQUENCE outbox_events_id_seq;
+SELECT setval('outbox_events_id_seq', (SELECT COALESCE(MAX(id), 0) + 1 FROM outbox_events_legacy), false);
+
+CREATE TABLE outbox_events (
+    id             BIGINT       NOT NULL DEFAULT nextval('outbox_events_id_seq'),
+    aggregate_type VARCHAR(50)  NOT NULL,
+    aggregate_id   VARCHAR(255) NOT NULL,
+    event_type     VARCHAR(100) NOT NULL,
+    payload        TEXT         NOT NULL,
+    processed      BOOLEAN      NOT NULL,
+    created_at     TIMESTAMP(6) NOT NULL,
+    processed_at   TIMESTAMP(6),
+    attempt_count  INTEGER      NOT NULL,
+    last_error     TEXT,
+    claimed_by     VARCHAR(100),
+    claimed_until  TIMESTAMP(6),
+    PRIMARY KEY (id, created_at)
+) PARTITION BY RANGE (created_at);
+
+ALTER SEQUENCE outbox_events_id_seq OWNED BY outbox_events.id;
+
+CREATE INDEX idx_outbox_pending ON outbox_events (processed, id);
+
+-- Catches rows outside the daily partitions (e.g. clock skew, partitions not yet created)
+CREATE TABLE outbox_events_default PARTITION OF outbox_events DEFAULT;
+
+-- Today and the next three days; the service keeps creating them from here on
+DO $$
+DECLARE
+    day DATE;
+BEGIN
+    FOR i IN 0..3 LOOP
+        day := CURRENT_DATE + i;
+        EXECUTE format('CREATE TABLE outbox_events_p%s PARTITION OF outbox_events FOR VALUES FROM (%L) TO (%L)',
+                       to_char(day, 'YYYYMMDD'), day, day + 1);
+    END LOOP;
+END $$;
+
+-- Keep only what has not been published yet; processed history is not carried over
+INSERT INTO outbox_events (id, aggregate_type, aggregate_id, event_type, payload, processed,
+                           created_at, processed_at, attempt_count, last_error)
+SELECT id, aggregate_type, aggregate_id, event_type, payload, processed,
+       created_at, processed_at, attempt_count, last_error
+FROM outbox_events_legacy
+WHERE processed = false;
+
+DROP TABLE outbox_events_legacy;
+
+COMMIT;
@@ -0,0 +1,17 @@
+-- Full-text search index for discussion threads and comments.
+-- Runs after Hibernate schema update (spring.jpa.defer-datasource-initialization).
+-- Generated tsvector columns are recomputed by PostgreSQL on every insert/update,
+-- so the index stays current without application code. Title matches rank higher.
+
+ALTER TABLE threads ADD COLUMN IF NOT EXISTS search_vector tsvector
+    GENERATED ALWAYS AS (
+        setweight(to_tsvector('english', coalesce(title, '')), 'A') ||
+        setweight(to_tsvector('english', coalesce(content, '')), 'B')
+    ) STORED;
+
+CREATE INDEX IF NOT EXISTS idx_threads_search_vector ON threads USING GIN (search_vector);
+
+ALTER TABLE comments ADD COLUMN IF NOT EXISTS search_vector tsvector
+    GENERATED ALWAYS AS (to_tsvector('english', coalesce(content, ''))) STORED;
+
+CREATE INDEX IF NOT EXISTS idx_comments_search_vector ON comments USING GIN (search_vector);
@@ -0,0 +1,38 @@
+package com.learnit.discussion.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PageCursorTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 10, 30, 12, 0, 5, 123_456_000);
+
+    @Test
+    void testEncodeDecode_roundTripsCourseCursor() {
+        PageCursor cursor = PageCursor.decode(new PageCursor(true, T0, 42L).encode());
+
+        assertEquals(true, cursor.getPinned());
+        assertEquals(T0, cursor.getTimestamp());
+        assertEquals(42L, cursor.getId());
+    }
+
+    @Test
+    void testEncodeDecode_roundTripsCursorWithoutPinned() {
+        PageCursor cursor = PageCursor.decode(new PageCursor(T0, 7L).encode());
+
+        assertNull(cursor.getPinned());
+        assertEquals(T0, cursor.getTimestamp());
+        assertEquals(7L, cursor.getId());
+    }
+
+    @Test
+    void testDecode_rejectsGarbage() {
+        assertThrows(IllegalArgumentException.class, () -> PageCursor.decode("not a cursor"));
+        assertThrows(IllegalArgumentException.class, () -> PageCursor.decode("dHJ1ZXx4fDE"));
+    }
+}
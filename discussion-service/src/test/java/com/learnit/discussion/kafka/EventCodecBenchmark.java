@@ -0,0 +1,72 @@
+package com.learnit.discussion.kafka;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.learnit.discussion.dto.EventEnvelope;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the event codecs on a typical vote_cast envelope:
+ * encoding the object, re-encoding the JSON stored in the outbox (the
+ * publisher's path) and decoding (the consumer's path).
+ * Run through EventCodecBenchmarkTest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventCodecBenchmark {
+
+    @Param({EventCodecs.JSON, EventCodecs.SMILE, EventCodecs.CBOR})
+    public String codecName;
+
+    private EventCodec codec;
+    private EventEnvelope envelope;
+    private String storedJson;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws Exception {
+        ObjectMapper objectMapper = mapper();
+        codec = new EventCodecs(objectMapper, EventCodecs.JSON, "").byName(codecName);
+        envelope = EventCodecsTest.envelope();
+        storedJson = objectMapper.writeValueAsString(envelope);
+        encoded = codec.encode(envelope);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return codec.encode(envelope);
+    }
+
+    @Benchmark
+    public byte[] fromStoredJson() {
+        return codec.fromJson(storedJson);
+    }
+
+    @Benchmark
+    public EventEnvelope decode() {
+        return codec.decode(encoded);
+    }
+
+    static ObjectMapper mapper() {
+        return new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+}
@@ -0,0 +1,51 @@
+package com.learnit.discussion.kafka;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnit.discussion.dto.EventEnvelope;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs EventCodecBenchmark: prints bytes per event for each codec, then JMH
+ * timings (ns/op) with the GC profiler for allocation rate (gc.alloc.rate.norm,
+ * bytes allocated per operation).
+ *
+ * Opt-in:
+ *   mvn -pl discussion-service test -Dtest=EventCodecBenchmarkTest -Dcodec.benchmark=true
+ */
+@EnabledIfSystemProperty(named = "codec.benchmark", matches = "true")
+class EventCodecBenchmarkTest {
+
+    @Test
+    void benchmarkCodecs() throws Exception {
+        ObjectMapper objectMapper = EventCodecBenchmark.mapper();
+        EventCodecs codecs = new EventCodecs(objectMapper, EventCodecs.JSON, "");
+        EventEnvelope envelope = EventCodecsTest.envelope();
+        String storedJson = objectMapper.writeValueAsString(envelope);
+
+        for (String name : new String[]{EventCodecs.JSON, EventCodecs.SMILE, EventCodecs.CBOR}) {
+            EventCodec codec = codecs.byName(name);
+            byte[] encoded = codec.fromJson(storedJson);
+            assertEquals(envelope, codec.decode(encoded));
+            System.out.printf("Codec %-5s %4d bytes/event (json text %d)%n",
+                name, encoded.length, storedJson.getBytes(StandardCharsets.UTF_8).length);
+        }
+
+        Options options = new OptionsBuilder()
+            .include(EventCodecBenchmark.class.getName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        Collection<RunResult> results = new Runner(options).run();
+        assertEquals(9, results.size());
+    }
+}
@@ -0,0 +1,78 @@
+package com.learnit.discussion.kafka;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.learnit.discussion.dto.EventEnvelope;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventCodecsTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+        .registerModule(new JavaTimeModule())
+        .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @Test
+    void testBinaryCodecs_roundTripStoredJson() throws Exception {
+        // Given: an envelope as stored in the outbox
+        EventCodecs codecs = new EventCodecs(objectMapper, EventCodecs.JSON, "");
+        EventEnvelope envelope = envelope();
+        String json = objectMapper.writeValueAsString(envelope);
+
+        for (String name : new String[]{EventCodecs.SMILE, EventCodecs.CBOR}) {
+            EventCodec codec = codecs.byName(name);
+
+            // When: re-encoded from the stored JSON text
+            byte[] encoded = codec.fromJson(json);
+
+            // Then: same envelope, fewer bytes, same bytes as encoding the object
+            assertEquals(envelope, codec.decode(encoded), name);
+            assertTrue(encoded.length < json.getBytes(StandardCharsets.UTF_8).length, name);
+            assertEquals(envelope, codec.decode(codec.encode(envelope)), name);
+        }
+    }
+
+    @Test
+    void testJsonCodec_keepsStoredTextAndIsoDates() throws Exception {
+        EventCodec json = new EventCodecs(objectMapper, EventCodecs.JSON, "").byName(EventCodecs.JSON);
+        EventEnvelope envelope = envelope();
+
+        String encoded = new String(json.encode(envelope), StandardCharsets.UTF_8);
+
+        assertTrue(encoded.contains("\"occurredAt\":\"2024-05-01T10:15:30.123Z\""), encoded);
+        assertEquals(encoded, new String(json.fromJson(encoded), StandardCharsets.UTF_8));
+        assertEquals(envelope, json.decode(json.fromJson(encoded)));
+    }
+
+    @Test
+    void testForTopic_usesOverridesThenDefault() {
+        EventCodecs codecs = new EventCodecs(objectMapper, EventCodecs.CBOR, "discussion.events=smile, other=json");
+
+        assertEquals("application/x-jackson-smile", codecs.forTopic("discussion.events").contentType());
+        assertEquals("application/json", codecs.forTopic("other").contentType());
+        assertEquals("application/cbor", codecs.forTopic("unlisted").contentType());
+        assertThrows(IllegalArgumentException.class, () -> new EventCodecs(objectMapper, "avro", ""));
+    }
+
+    static EventEnvelope envelope() {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("voteId", 9876);
+        payload.put("userId", 42);
+        payload.put("targetType", "THREAD");
+        payload.put("targetId", 1234);
+        payload.put("voteType", "UPVOTE");
+        payload.put("threadId", 1234);
+        payload.put("courseId", 7);
+        return new EventEnvelope("vote_cast", "vote_cast-9876-1a2b3c4d",
+            Instant.parse("2024-05-01T10:15:30.123Z"), 1, "discussion-service", payload);
+    }
+}
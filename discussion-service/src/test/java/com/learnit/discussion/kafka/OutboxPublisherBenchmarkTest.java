@@ -0,0 +1,206 @@
+package com.learnit.discussion.kafka;
+
+import com.learnit.discussion.repository.OutboxEventRepository;
+import com.learnit.discussion.service.OutboxService;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Benchmarks of the outbox publisher against an in-JVM Kafka broker.
+ * Throughput: several publishers drain one outbox concurrently (as separate
+ * instances would) and every event must arrive exactly once and in order per
+ * aggregate. Latency: events committed one by one must reach Kafka within
+ * 50 ms (p99) through the after-commit wakeup, without waiting for a poll.
+ *
+ * Opt-in and needs Docker for PostgreSQL (SKIP LOCKED):
+ *   mvn -pl discussion-service test -Dtest=OutboxPublisherBenchmarkTest -Doutbox.benchmark=true
+ */
+@SpringBootTest(properties = {
+    "discussion.kafka.enabled=true",
+    "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+    "discussion.outbox.initial-delay-ms=0",
+    "discussion.outbox.notify.enabled=true"
+})
+@ActiveProfiles("test")
+@EmbeddedKafka(partitions = 6, topics = "discussion.events")
+@Testcontainers(disabledWithoutDocker = true)
+@EnabledIfSystemProperty(named = "outbox.benchmark", matches = "true")
+class OutboxPublisherBenchmarkTest {
+
+    private static final int EVENTS = 20_000;
+    private static final int AGGREGATES = 500;
+    private static final int INSTANCES = 4;
+    private static final int LATENCY_EVENTS = 500;
+    private static final long LATENCY_THREAD_ID_BASE = 1_000_000L;
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15");
+
+    @Autowired
+    private OutboxPublisher publisher;
+
+    @Autowired
+    private OutboxEventRepository outboxRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EmbeddedKafkaBroker broker;
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void benchmarkConcurrentPublishers() throws Exception {
+        // Given: a backlog spread over many aggregates, several events each
+        List<Object[]> rows = new ArrayList<>(EVENTS);
+        Timestamp createdAt = Timestamp.valueOf(LocalDateTime.now());
+        for (int i = 0; i < EVENTS; i++) {
+            String aggregateId = String.valueOf(i % AGGREGATES);
+            rows.add(new Object[]{aggregateId, aggregateId + ":" + i, createdAt});
+        }
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO outbox_events (aggregate_type, aggregate_id, event_type, payload, processed, created_at, attempt_count) " +
+            "VALUES ('THREAD', ?, 'benchmark', ?, false, ?, 0)", rows);
+
+        // When: several publishers (plus the background worker) drain it at the same time
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(INSTANCES);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < INSTANCES; i++) {
+            futures.add(executor.submit(() -> {
+                long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(5);
+                while (outboxRepository.countByProcessedFalse() > 0 && System.currentTimeMillis() < deadline) {
+                    publisher.publishPendingEvents();
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(6, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Outbox benchmark: %d events, %d publishers, %.2f s, %.0f events/s%n",
+            EVENTS, INSTANCES, seconds, EVENTS / seconds);
+
+        // Then: everything is marked, delivered once, and ordered per aggregate
+        assertEquals(0, outboxRepository.countByProcessedFalse());
+
+        Map<String, Integer> lastSeen = new HashMap<>();
+        int received = 0;
+        try (Consumer<String, String> consumer = consumer("outbox-benchmark")) {
+            long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+            while (received < EVENTS && System.currentTimeMillis() < deadline) {
+                for (ConsumerRecord<String, String> record : consumer.poll(Duration.ofMillis(500))) {
+                    if (!"benchmark".equals(eventType(record))) {
+                        continue;
+                    }
+                    int sequence = Integer.parseInt(record.value().substring(record.value().indexOf(':') + 1));
+                    Integer previous = lastSeen.put(record.key(), sequence);
+                    assertTrue(previous == null || previous < sequence,
+                        "Aggregate " + record.key() + " out of order: " + previous + " then " + sequence);
+                    received++;
+                }
+            }
+        }
+        assertEquals(EVENTS, received);
+    }
+
+    @Test
+    void benchmarkCommitToKafkaLatency() throws Exception {
+        Map<String, Long> committedAt = new ConcurrentHashMap<>();
+        List<Long> latenciesNanos = new ArrayList<>();
+
+        try (Consumer<String, String> consumer = consumer("outbox-latency")) {
+            // Given: the consumer is attached before anything is committed
+            consumer.poll(Duration.ofMillis(500));
+
+            // When: events are committed one transaction at a time
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < LATENCY_EVENTS; i++) {
+                    long threadId = LATENCY_THREAD_ID_BASE + i;
+                    // Stamped before the transaction so a fast delivery never beats the stamp
+                    committedAt.put(String.valueOf(threadId), System.nanoTime());
+                    transactionTemplate.executeWithoutResult(status -> outboxService.publishThreadCreated(threadId, 42L));
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            });
+            producer.start();
+
+            // Then: each one reaches Kafka shortly after its commit
+            long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+            while (latenciesNanos.size() < LATENCY_EVENTS && System.currentTimeMillis() < deadline) {
+                for (ConsumerRecord<String, String> record : consumer.poll(Duration.ofMillis(100))) {
+                    long receivedAt = System.nanoTime();
+                    Long committed = committedAt.get(record.key());
+                    if (committed != null) {
+                        latenciesNanos.add(receivedAt - committed);
+                    }
+                }
+            }
+            producer.join();
+        }
+
+        assertEquals(LATENCY_EVENTS, latenciesNanos.size());
+        Collections.sort(latenciesNanos);
+        double p50 = latenciesNanos.get(LATENCY_EVENTS / 2) / 1e6;
+        double p99 = latenciesNanos.get(LATENCY_EVENTS * 99 / 100) / 1e6;
+        System.out.printf("Outbox latency: %d events, p50 %.1f ms, p99 %.1f ms%n", LATENCY_EVENTS, p50, p99);
+        assertTrue(p99 < 50, "p99 commit-to-Kafka latency " + p99 + " ms");
+    }
+
+    private Consumer<String, String> consumer(String group) {
+        Map<String, Object> props = KafkaTestUtils.consumerProps(group, "false", broker);
+        Consumer<String, String> consumer = new DefaultKafkaConsumerFactory<>(
+            props, new StringDeserializer(), new StringDeserializer()).createConsumer();
+        broker.consumeFromAnEmbeddedTopic(consumer, "discussion.events");
+        return consumer;
+    }
+
+    private String eventType(ConsumerRecord<String, String> record) {
+        return record.value().contains("\"eventType\"") ? "envelope" : "benchmark";
+    }
+}
@@ -0,0 +1,249 @@
+package com.learnit.discussion.kafka;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnit.discussion.entity.OutboxEvent;
+import com.learnit.discussion.repository.OutboxEventRepository;
+import com.learnit.discussion.service.OutboxWakeup;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class OutboxPublisherTest {
+
+    @Mock
+    private OutboxEventRepository outboxRepository;
+
+    @Mock
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private OutboxWakeup outboxWakeup;
+
+    private OutboxPublisher publisher;
+
+    private final AtomicBoolean inTransaction = new AtomicBoolean();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocation -> {
+            inTransaction.set(true);
+            try {
+                return invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null);
+            } finally {
+                inTransaction.set(false);
+            }
+        });
+        lenient().doAnswer(invocation -> {
+            inTransaction.set(true);
+            try {
+                invocation.<Consumer<Object>>getArgument(0).accept(null);
+                return null;
+            } finally {
+                inTransaction.set(false);
+            }
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        publisher = new OutboxPublisher(outboxRepository, kafkaTemplate, transactionTemplate,
+            outboxWakeup, new EventCodecs(new ObjectMapper(), EventCodecs.JSON, ""), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(publisher, "batchSize", 100);
+        ReflectionTestUtils.setField(publisher, "maxAttempts", 5);
+        ReflectionTestUtils.setField(publisher, "sendTimeoutMs", 5000L);
+        ReflectionTestUtils.setField(publisher, "claimTimeoutMs", 10000L);
+    }
+
+    @Test
+    void testPublishBatch_marksWholeBatchWithOneUpdate() {
+        // Given
+        when(outboxRepository.claimBatch(eq(5), any(LocalDateTime.class), eq(100))).thenReturn(List.of(
+            event(1L, "10"), event(2L, "11"), event(3L, "10")));
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(acked());
+
+        // When
+        OutboxPublisher.BatchResult result = publisher.publishBatch();
+
+        // Then
+        assertEquals(3, result.published);
+        assertEquals(0, result.failed);
+        verify(outboxRepository).markPublished(eq(Set.of(1L, 2L, 3L)), any(LocalDateTime.class));
+    }
+
+    @Test
+    void testPublishBatch_sendsOutsideTheClaimAndMarkTransactions() {
+        // Given
+        when(outboxRepository.claimBatch(eq(5), any(LocalDateTime.class), eq(100))).thenReturn(List.of(
+            event(1L, "10"), event(2L, "11")));
+        List<Boolean> sentInTransaction = new ArrayList<>();
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenAnswer(invocation -> {
+            sentInTransaction.add(inTransaction.get());
+            return acked();
+        });
+
+        // When
+        publisher.publishBatch();
+
+        // Then: the batch is leased while claiming, no transaction is open during
+        // the sends, and the outcome is written in a second transaction
+        verify(outboxRepository).lease(eq(List.of(1L, 2L)), anyString(), any(LocalDateTime.class));
+        assertEquals(List.of(false, false), sentInTransaction);
+        verify(transactionTemplate).execute(any());
+        verify(transactionTemplate).executeWithoutResult(any());
+        verify(outboxRepository).markPublished(eq(Set.of(1L, 2L)), any(LocalDateTime.class));
+    }
+
+    @Test
+    void testPublishBatch_failureStopsLaterEventsOfSameAggregate() {
+        // Given: the first event of aggregate 10 fails
+        when(outboxRepository.claimBatch(eq(5), any(LocalDateTime.class), eq(100))).thenReturn(List.of(
+            event(1L, "10"), event(2L, "11"), event(3L, "10")));
+        when(kafkaTemplate.send(record("10", "payload-1")))
+            .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")));
+        when(kafkaTemplate.send(record("11", "payload-2"))).thenReturn(acked());
+
+        // When
+        OutboxPublisher.BatchResult result = publisher.publishBatch();
+
+        // Then: event 3 is never sent and stays pending without an attempt
+        verify(kafkaTemplate, never()).send(record("10", "payload-3"));
+        assertEquals(1, result.published);
+        assertEquals(1, result.failed);
+        verify(outboxRepository).markPublished(eq(Set.of(2L)), any(LocalDateTime.class));
+        verify(outboxRepository).recordFailure(eq(1L), startsWith("IllegalStateException"));
+        verify(outboxRepository, never()).recordFailure(eq(3L), any());
+        verify(outboxRepository).releaseClaims(eq(Set.of(3L)), anyString());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testPublishBatch_defersAggregatesWithEarlierEventClaimedElsewhere() {
+        // Given: another instance still holds event 5 of aggregate 10
+        when(outboxRepository.claimBatch(eq(5), any(LocalDateTime.class), eq(100))).thenReturn(List.of(event(7L, "10"), event(8L, "11")));
+        OutboxEventRepository.PendingAggregateView blocker = new OutboxEventRepository.PendingAggregateView() {
+            public String getAggregateType() {
+                return "THREAD";
+            }
+
+            public String getAggregateId() {
+                return "10";
+            }
+
+            public Long getFirstPendingId() {
+                return 5L;
+            }
+        };
+        when(outboxRepository.findEarlierPendingAggregates(anyInt(), anyLong(), anyCollection(), anyCollection()))
+            .thenReturn(List.of(blocker));
+        when(kafkaTemplate.send(record("11", "payload-8"))).thenReturn(acked());
+
+        // When
+        publisher.publishBatch();
+
+        // Then
+        verify(kafkaTemplate, never()).send(record("10", "payload-7"));
+        ArgumentCaptor<Collection<Long>> ids = ArgumentCaptor.forClass(Collection.class);
+        verify(outboxRepository).markPublished(ids.capture(), any(LocalDateTime.class));
+        assertEquals(Set.of(8L), Set.copyOf(ids.getValue()));
+        verify(outboxRepository).releaseClaims(eq(Set.of(7L)), anyString());
+    }
+
+    @Test
+    void testPublishPendingEvents_fullyDeferredBatchEndsThePoll() {
+        // Given: a full batch whose aggregates all wait on events leased by another instance
+        ReflectionTestUtils.setField(publisher, "batchSize", 2);
+        ReflectionTestUtils.setField(publisher, "maxBatchesPerPoll", 50);
+        when(outboxRepository.claimBatch(eq(5), any(LocalDateTime.class), eq(2)))
+            .thenReturn(List.of(event(7L, "10"), event(8L, "11")));
+        when(outboxRepository.findEarlierPendingAggregates(anyInt(), anyLong(), anyCollection(), anyCollection()))
+            .thenReturn(List.of(blocker("10", 5L), blocker("11", 6L)));
+
+        // When
+        OutboxPublisher.PollResult result = publisher.publishPendingEvents();
+
+        // Then: claimed once, not reported as backlog, so the worker waits before retrying
+        verify(outboxRepository, times(1)).claimBatch(eq(5), any(LocalDateTime.class), eq(2));
+        verify(kafkaTemplate, never()).send(any(ProducerRecord.class));
+        verify(outboxRepository).releaseClaims(eq(Set.of(7L, 8L)), anyString());
+        assertEquals(0, result.getPublished());
+        assertFalse(result.isBacklog());
+    }
+
+    private OutboxEventRepository.PendingAggregateView blocker(String aggregateId, Long firstPendingId) {
+        return new OutboxEventRepository.PendingAggregateView() {
+            public String getAggregateType() {
+                return "THREAD";
+            }
+
+            public String getAggregateId() {
+                return aggregateId;
+            }
+
+            public Long getFirstPendingId() {
+                return firstPendingId;
+            }
+        };
+    }
+
+    private OutboxEvent event(Long id, String aggregateId) {
+        OutboxEvent event = new OutboxEvent();
+        event.setId(id);
+        event.setAggregateType("THREAD");
+        event.setAggregateId(aggregateId);
+        event.setEventType("thread_viewed");
+        event.setPayload("payload-" + id);
+        event.setCreatedAt(LocalDateTime.now());
+        return event;
+    }
+
+    private ProducerRecord<String, byte[]> record(String key, String payload) {
+        return argThat(record -> record != null
+            && "discussion.events".equals(record.topic())
+            && key.equals(record.key())
+            && payload.equals(new String(record.value(), StandardCharsets.UTF_8))
+            && record.headers().lastHeader(EventCodec.CONTENT_TYPE_HEADER) != null);
+    }
+
+    private CompletableFuture<SendResult<String, byte[]>> acked() {
+        return CompletableFuture.completedFuture(null);
+    }
+}
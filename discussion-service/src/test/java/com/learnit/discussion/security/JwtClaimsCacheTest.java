@@ -0,0 +1,101 @@
+package com.learnit.discussion.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class JwtClaimsCacheTest {
+
+    private JwtUtil jwtUtil;
+
+    @BeforeEach
+    void setUp() {
+        jwtUtil = spy(new JwtUtil());
+        ReflectionTestUtils.setField(jwtUtil, "secret", "test-secret-that-is-at-least-32-characters-long");
+        ReflectionTestUtils.setField(jwtUtil, "expiration", 60_000L);
+        jwtUtil.init();
+    }
+
+    @Test
+    void testResolve_verifiesTokenOnce() {
+        JwtClaimsCache cache = new JwtClaimsCache(jwtUtil, 100, Clock.systemUTC());
+        String token = jwtUtil.generateToken(42L, "alice");
+
+        Optional<JwtClaims> first = cache.resolve(token);
+        Optional<JwtClaims> second = cache.resolve(token);
+
+        assertEquals("42", first.orElseThrow().userId());
+        assertEquals("alice", first.get().username());
+        assertEquals(first, second);
+        verify(jwtUtil, times(1)).parseToken(token);
+    }
+
+    @Test
+    void testResolve_neverServesPastTokenExpiry() {
+        // Given: a cached token
+        MutableClock clock = new MutableClock(Instant.now());
+        JwtClaimsCache cache = new JwtClaimsCache(jwtUtil, 100, clock);
+        String token = jwtUtil.generateToken(42L, "alice");
+        assertTrue(cache.resolve(token).isPresent());
+
+        // When: the clock passes the token's exp
+        clock.advance(Duration.ofMinutes(2));
+
+        // Then: rejected and dropped
+        assertTrue(cache.resolve(token).isEmpty());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testResolve_rejectsTamperedTokensAndStaysBounded() {
+        JwtClaimsCache cache = new JwtClaimsCache(jwtUtil, 2, Clock.systemUTC());
+        String token = jwtUtil.generateToken(1L, "a");
+
+        assertTrue(cache.resolve(token.substring(0, token.length() - 2) + "xx").isEmpty());
+        assertEquals(0, cache.size());
+
+        cache.resolve(token);
+        cache.resolve(jwtUtil.generateToken(2L, "b"));
+        cache.resolve(jwtUtil.generateToken(3L, "c"));
+        assertEquals(2, cache.size());
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+
+        @Override
+        public java.time.ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.learnit.discussion.security;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs JwtFilterBenchmark (ns per authenticated request before and after).
+ *
+ * Opt-in:
+ *   mvn -pl discussion-service test -Dtest=JwtFilterBenchmarkTest -Djwt.benchmark=true
+ */
+@EnabledIfSystemProperty(named = "jwt.benchmark", matches = "true")
+class JwtFilterBenchmarkTest {
+
+    @Test
+    void benchmarkFilter() throws Exception {
+        Options options = new OptionsBuilder()
+            .include(JwtFilterBenchmark.class.getName())
+            .build();
+        Collection<RunResult> results = new Runner(options).run();
+        assertEquals(3, results.size());
+    }
+}
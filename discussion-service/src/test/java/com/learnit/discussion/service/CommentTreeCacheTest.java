@@ -0,0 +1,118 @@
+package com.learnit.discussion.service;
+
+import com.learnit.discussion.dto.CommentSort;
+import com.learnit.discussion.dto.CommentTreeNode;
+import com.learnit.discussion.entity.Comment;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CommentTreeCacheTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 10, 30, 12, 0);
+
+    @Test
+    void testPut_buildsNestedTreeForEachSort() {
+        // Given: two top-level comments, the later one more popular, with a reply each
+        CommentTreeCache cache = new CommentTreeCache(10);
+        List<Comment> comments = List.of(
+            comment(1L, null, 0, 1, 0),
+            comment(2L, null, 5, 0, 1),
+            comment(3L, 1L, 0, 0, 2),
+            comment(4L, 2L, 0, 0, 3),
+            comment(5L, 1L, 3, 0, 4)
+        );
+
+        // When
+        Map<CommentSort, List<CommentTreeNode>> trees = cache.put(7L, comments, cache.currentGeneration(7L));
+
+        // Then: time order keeps creation order at every level
+        List<CommentTreeNode> byTime = trees.get(CommentSort.TIME);
+        assertEquals(List.of(1L, 2L), ids(byTime));
+        assertEquals(List.of(3L, 5L), ids(byTime.get(0).getReplies()));
+        assertEquals(List.of(4L), ids(byTime.get(1).getReplies()));
+
+        // And vote order puts higher net votes first at every level
+        List<CommentTreeNode> byVotes = trees.get(CommentSort.VOTES);
+        assertEquals(List.of(2L, 1L), ids(byVotes));
+        assertEquals(List.of(5L, 3L), ids(byVotes.get(1).getReplies()));
+
+        assertNotNull(cache.get(7L, CommentSort.VOTES));
+    }
+
+    @Test
+    void testPut_orphanedRepliesBecomeTopLevel() {
+        CommentTreeCache cache = new CommentTreeCache(10);
+
+        Map<CommentSort, List<CommentTreeNode>> trees = cache.put(
+            7L, List.of(comment(2L, 99L, 0, 0, 0)), cache.currentGeneration(7L));
+
+        assertEquals(List.of(2L), ids(trees.get(CommentSort.TIME)));
+    }
+
+    @Test
+    void testPut_staleLoadIsNotCached() {
+        // Given: an invalidation between capturing the generation and storing the tree
+        CommentTreeCache cache = new CommentTreeCache(10);
+        long generation = cache.currentGeneration(7L);
+        cache.invalidate(7L);
+
+        // When
+        cache.put(7L, List.of(comment(1L, null, 0, 0, 0)), generation);
+
+        // Then
+        assertNull(cache.get(7L, CommentSort.TIME));
+    }
+
+    @Test
+    void testPut_keepsLoadWhenAnotherThreadChanged() {
+        // Given: a load for thread 7 started, then a comment changed on thread 8
+        CommentTreeCache cache = new CommentTreeCache(10);
+        long generation = cache.currentGeneration(7L);
+        cache.invalidate(8L);
+
+        // When
+        cache.put(7L, List.of(comment(1L, null, 0, 0, 0)), generation);
+
+        // Then
+        assertEquals(List.of(1L), ids(cache.get(7L, CommentSort.TIME)));
+    }
+
+    @Test
+    void testPut_evictsLeastRecentlyUsedThread() {
+        CommentTreeCache cache = new CommentTreeCache(2);
+        cache.put(1L, List.of(), cache.currentGeneration(1L));
+        cache.put(2L, List.of(), cache.currentGeneration(2L));
+        cache.get(1L, CommentSort.TIME);
+
+        cache.put(3L, List.of(), cache.currentGeneration(3L));
+
+        assertNotNull(cache.get(1L, CommentSort.TIME));
+        assertNull(cache.get(2L, CommentSort.TIME));
+        assertNotNull(cache.get(3L, CommentSort.TIME));
+    }
+
+    private Comment comment(Long id, Long parentId, int upvotes, int downvotes, int minutes) {
+        Comment comment = new Comment();
+        comment.setId(id);
+        comment.setThreadId(7L);
+        comment.setParentCommentId(parentId);
+        comment.setAuthorId(100L);
+        comment.setContent("comment " + id);
+        comment.setUpvotes(upvotes);
+        comment.setDownvotes(downvotes);
+        comment.setCreatedAt(T0.plusMinutes(minutes));
+        comment.setUpdatedAt(T0.plusMinutes(minutes));
+        return comment;
+    }
+
+    private List<Long> ids(List<CommentTreeNode> nodes) {
+        return nodes.stream().map(CommentTreeNode::getId).toList();
+    }
+}
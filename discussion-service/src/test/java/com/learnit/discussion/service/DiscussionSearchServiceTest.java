@@ -0,0 +1,43 @@
+package com.learnit.discussion.service;
+
+import com.learnit.discussion.repository.ThreadRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class DiscussionSearchServiceTest {
+
+    private final ThreadRepository threadRepository = mock(ThreadRepository.class);
+    private DiscussionSearchService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new DiscussionSearchService(threadRepository);
+        ReflectionTestUtils.setField(service, "maxPageSize", 50);
+    }
+
+    @Test
+    void testSearch_pagesByOffset() {
+        when(threadRepository.searchDiscussions(anyLong(), anyString(), anyString(), anyInt(), anyInt())).thenReturn(List.of());
+
+        service.search(42L, "kafka", 3, 20);
+
+        verify(threadRepository).searchDiscussions(42L, "kafka", "ACTIVE", 21, 60);
+    }
+
+    @Test
+    void testSearch_rejectsPageWhoseOffsetOverflows() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+            () -> service.search(42L, "kafka", Integer.MAX_VALUE / 10, 20));
+
+        assertEquals("Page is too large", e.getMessage());
+        verifyNoInteractions(threadRepository);
+    }
+}
@@ -0,0 +1,72 @@
+package com.learnit.discussion.service;
+
+import com.learnit.discussion.dto.CommentResponse;
+import com.learnit.discussion.dto.CursorPage;
+import com.learnit.discussion.entity.Comment;
+import com.learnit.discussion.repository.CommentRepository;
+import com.learnit.discussion.repository.ThreadRepository;
+import com.learnit.discussion.repository.VoteRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class DiscussionServiceTest {
+
+    private final ThreadRepository threadRepository = mock(ThreadRepository.class);
+    private final CommentRepository commentRepository = mock(CommentRepository.class);
+    private final ThreadArchiveService threadArchiveService = mock(ThreadArchiveService.class);
+    private DiscussionService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new DiscussionService(threadRepository, commentRepository, mock(VoteRepository.class),
+            mock(OutboxService.class), mock(ViewCountBuffer.class), mock(CommentTreeCache.class),
+            mock(HotThreadRanker.class), mock(TagIndex.class), mock(LiveFeedHub.class),
+            mock(UserVoteCache.class), threadArchiveService);
+        ReflectionTestUtils.setField(service, "defaultPageSize", 20);
+        ReflectionTestUtils.setField(service, "maxPageSize", 100);
+        when(commentRepository.findThreadPage(anyLong(), any())).thenReturn(List.of());
+        when(threadRepository.existsById(anyLong())).thenReturn(false);
+    }
+
+    @Test
+    void testGetThreadComments_unknownThreadReturnsEmptyPage() {
+        when(threadArchiveService.findArchived(7L)).thenReturn(Optional.empty());
+
+        CursorPage<CommentResponse> page = service.getThreadComments(7L, null, null);
+
+        assertTrue(page.getItems().isEmpty());
+        assertFalse(page.getHasMore());
+    }
+
+    @Test
+    void testGetThreadComments_servesArchivedThreadFromSnapshot() {
+        ThreadArchiveService.ThreadSnapshot snapshot = new ThreadArchiveService.ThreadSnapshot();
+        snapshot.getComments().add(comment(2L, 1));
+        snapshot.getComments().add(comment(1L, 2));
+        when(threadArchiveService.findArchived(7L)).thenReturn(Optional.of(snapshot));
+
+        CursorPage<CommentResponse> page = service.getThreadComments(7L, null, null);
+
+        assertEquals(List.of(1L, 2L), page.getItems().stream().map(CommentResponse::getId).toList());
+    }
+
+    private static Comment comment(Long id, int ageMinutes) {
+        Comment comment = new Comment();
+        comment.setId(id);
+        comment.setThreadId(7L);
+        comment.setContent("Comment " + id);
+        comment.setCreatedAt(LocalDateTime.now().minusMinutes(ageMinutes));
+        return comment;
+    }
+}
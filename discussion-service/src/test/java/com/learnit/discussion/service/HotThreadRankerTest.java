@@ -0,0 +1,100 @@
+package com.learnit.discussion.service;
+
+import com.learnit.discussion.dto.HotThread;
+import com.learnit.discussion.entity.DiscussionThread;
+import com.learnit.discussion.entity.VoteType;
+import com.learnit.discussion.repository.ThreadRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class HotThreadRankerTest {
+
+    private final ThreadRepository threadRepository = mock(ThreadRepository.class);
+    private final List<DiscussionThread> stored = new ArrayList<>();
+    private HotThreadRanker ranker;
+
+    @BeforeEach
+    void setUp() {
+        ranker = new HotThreadRanker(threadRepository, mock(ViewCountBuffer.class));
+        ReflectionTestUtils.setField(ranker, "topK", 2);
+        ReflectionTestUtils.setField(ranker, "candidatesPerCourse", 500);
+        ReflectionTestUtils.setField(ranker, "candidateWindowDays", 30);
+        ReflectionTestUtils.setField(ranker, "gravity", 1.8);
+        ReflectionTestUtils.setField(ranker, "voteWeight", 1.0);
+        ReflectionTestUtils.setField(ranker, "commentWeight", 2.0);
+        ReflectionTestUtils.setField(ranker, "viewWeight", 0.5);
+        ReflectionTestUtils.setField(ranker, "refreshIntervalMs", 300000L);
+        ReflectionTestUtils.setField(ranker, "idleEvictionMs", 3600000L);
+        when(threadRepository.findByCourseIdAndStatusAndLastActivityAtAfterOrderByLastActivityAtDesc(
+            eq(42L), any(), any(), any())).thenAnswer(inv -> List.copyOf(stored));
+    }
+
+    @Test
+    void testScore_olderDownvotedThreadRanksBelowNewerOne() {
+        stored.add(thread(1L, 48, 0, 5));
+        stored.add(thread(2L, 1, 0, 5));
+        stored.add(thread(3L, 1, 1, 0));
+
+        List<HotThread> hot = ranker.getHotThreads(42L, 10);
+
+        assertEquals(List.of(3L, 2L), hot.stream().map(HotThread::getThreadId).toList());
+        // the older thread is out of the top-K; promoted once its score turns positive
+        ranker.onVote(42L, 1L, VoteType.UPVOTE, VoteType.DOWNVOTE);
+        ranker.onVote(42L, 1L, VoteType.UPVOTE, VoteType.DOWNVOTE);
+        ranker.onVote(42L, 1L, VoteType.UPVOTE, VoteType.DOWNVOTE);
+        assertEquals(List.of(3L, 1L), ranker.getHotThreads(42L, 10).stream().map(HotThread::getThreadId).toList());
+    }
+
+    @Test
+    void testOnView_keepsPublishedListWhenOrderIsUnchanged() {
+        stored.add(thread(1L, 1, 10, 0));
+        stored.add(thread(2L, 1, 1, 0));
+        List<HotThread> before = ranker.getHotThreads(42L, 10);
+
+        ranker.onView(42L, 2L);
+
+        // same snapshot: not rebuilt for a view that does not move the thread
+        assertSame(before.get(1), ranker.getHotThreads(42L, 10).get(1));
+    }
+
+    @Test
+    void testGetHotThreads_appliesChangesCommittedWhileLoading() {
+        stored.add(thread(1L, 1, 3, 0));
+        stored.add(thread(2L, 1, 1, 0));
+        when(threadRepository.findByCourseIdAndStatusAndLastActivityAtAfterOrderByLastActivityAtDesc(
+            eq(42L), any(), any(), any())).thenAnswer(inv -> {
+                List<DiscussionThread> loaded = List.copyOf(stored);
+                // a vote commits while the candidates are being read
+                ranker.onVote(42L, 2L, VoteType.UPVOTE, null);
+                ranker.onVote(42L, 2L, VoteType.UPVOTE, null);
+                ranker.onVote(42L, 2L, VoteType.UPVOTE, null);
+                return loaded;
+            });
+
+        List<HotThread> hot = ranker.getHotThreads(42L, 10);
+
+        assertEquals(2L, hot.get(0).getThreadId());
+        assertEquals(4, hot.get(0).getUpvotes());
+    }
+
+    private static DiscussionThread thread(Long id, int ageHours, int upvotes, int downvotes) {
+        DiscussionThread thread = new DiscussionThread();
+        thread.setId(id);
+        thread.setCourseId(42L);
+        thread.setTitle("Thread " + id);
+        thread.setCreatedAt(LocalDateTime.now().minusHours(ageHours));
+        thread.setUpvotes(upvotes);
+        thread.setDownvotes(downvotes);
+        return thread;
+    }
+}
@@ -0,0 +1,169 @@
+package com.learnit.discussion.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LiveFeedHubTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void testPublish_reachesThreadAndCourseSubscribers() {
+        LiveFeedHub hub = hub(Runnable::run, 10, 64);
+        RecordingEmitter threadSubscriber = new RecordingEmitter();
+        RecordingEmitter courseSubscriber = new RecordingEmitter();
+        RecordingEmitter otherThread = new RecordingEmitter();
+        hub.subscribe(LiveFeedHub.threadTopic(1L), threadSubscriber);
+        hub.subscribe(LiveFeedHub.courseTopic(7L), courseSubscriber);
+        hub.subscribe(LiveFeedHub.threadTopic(2L), otherThread);
+
+        hub.publish("thread_locked", 1L, 7L, Map.of("isLocked", true));
+
+        assertEquals(1, threadSubscriber.events.size());
+        assertTrue(threadSubscriber.events.get(0).contains("event:thread_locked"));
+        assertTrue(threadSubscriber.events.get(0).contains("\"isLocked\":true"));
+        assertEquals(threadSubscriber.events, courseSubscriber.events);
+        assertTrue(otherThread.events.isEmpty());
+    }
+
+    @Test
+    void testSlowSubscriber_dropsOldestEvents() {
+        // Given: a dispatcher that has not run yet and a buffer of 3
+        Queue<Runnable> pending = new ArrayDeque<>();
+        LiveFeedHub hub = hub(pending::add, 10, 3);
+        RecordingEmitter subscriber = new RecordingEmitter();
+        hub.subscribe(LiveFeedHub.threadTopic(1L), subscriber);
+
+        // When: five events arrive before the subscriber is drained
+        for (int i = 1; i <= 5; i++) {
+            hub.publish("comment_added", 1L, 7L, Map.of("n", i));
+        }
+        assertEquals(1, pending.size());
+        pending.poll().run();
+
+        // Then: only the three newest are delivered
+        assertEquals(3, subscriber.events.size());
+        assertTrue(subscriber.events.get(0).contains("\"n\":3"));
+        assertTrue(subscriber.events.get(2).contains("\"n\":5"));
+        assertEquals(2.0, meterRegistry.counter("discussion.stream.dropped").count());
+    }
+
+    @Test
+    void testFailedWrite_removesSubscriberAndCapacityIsEnforced() {
+        LiveFeedHub hub = hub(Runnable::run, 1, 64);
+        RecordingEmitter broken = new RecordingEmitter();
+        broken.fail = true;
+        hub.subscribe(LiveFeedHub.threadTopic(1L), broken);
+
+        // At capacity
+        ResponseStatusException full = assertThrows(ResponseStatusException.class,
+            () -> hub.subscribe(LiveFeedHub.threadTopic(1L), new RecordingEmitter()));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, full.getStatusCode());
+
+        // The failed write frees the slot
+        hub.publish("thread_locked", 1L, 7L, Map.of("isLocked", true));
+        assertEquals(0, hub.getSubscriberCount());
+        hub.subscribe(LiveFeedHub.threadTopic(1L), new RecordingEmitter());
+        assertEquals(1, hub.getSubscriberCount());
+    }
+
+    @Test
+    void testStalledSubscribers_doNotBlockDeliveryToOthers() throws Exception {
+        // Given: more subscribers stuck on a full TCP window than the old fixed pool had threads
+        ExecutorService dispatcher = LiveFeedHub.dispatchExecutor(64);
+        LiveFeedHub hub = hub(dispatcher, 1000, 64);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 16; i++) {
+            hub.subscribe(LiveFeedHub.courseTopic(7L), new StalledEmitter(release));
+        }
+        CountDownLatch delivered = new CountDownLatch(200);
+        for (int i = 0; i < 200; i++) {
+            hub.subscribe(LiveFeedHub.courseTopic(7L), new CountingEmitter(delivered));
+        }
+
+        try {
+            // When
+            hub.publish("comment_added", 1L, 7L, Map.of("n", 1));
+
+            // Then: every healthy subscriber gets the event while the stalled writes are still blocked
+            assertTrue(delivered.await(5, TimeUnit.SECONDS));
+            assertEquals(1, release.getCount());
+        } finally {
+            release.countDown();
+            dispatcher.shutdownNow();
+        }
+    }
+
+    private LiveFeedHub hub(Executor executor, int maxSubscribers, int bufferSize) {
+        LiveFeedHub hub = new LiveFeedHub(new ObjectMapper().findAndRegisterModules(), meterRegistry, executor);
+        ReflectionTestUtils.setField(hub, "maxSubscribers", maxSubscribers);
+        ReflectionTestUtils.setField(hub, "bufferSize", bufferSize);
+        return hub;
+    }
+
+    private static class RecordingEmitter extends SseEmitter {
+        private final List<String> events = new ArrayList<>();
+        private boolean fail;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (fail) {
+                throw new IOException("Broken pipe");
+            }
+            StringBuilder text = new StringBuilder();
+            builder.build().forEach(part -> text.append(part.getData()));
+            events.add(text.toString());
+        }
+    }
+
+    private static class StalledEmitter extends SseEmitter {
+        private final CountDownLatch release;
+
+        StalledEmitter(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted", e);
+            }
+        }
+    }
+
+    private static class CountingEmitter extends SseEmitter {
+        private final CountDownLatch delivered;
+
+        CountingEmitter(CountDownLatch delivered) {
+            this.delivered = delivered;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            delivered.countDown();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.learnit.discussion.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnit.discussion.dto.ModerationFilter;
+import com.learnit.discussion.dto.ModerationRequest;
+import com.learnit.discussion.entity.ModerationAction;
+import com.learnit.discussion.entity.ModerationJob;
+import com.learnit.discussion.entity.ModerationJobStatus;
+import com.learnit.discussion.repository.CommentRepository;
+import com.learnit.discussion.repository.CommentRepository.ThreadCommentCountView;
+import com.learnit.discussion.repository.ModerationJobRepository;
+import com.learnit.discussion.repository.ThreadRepository;
+import com.learnit.discussion.repository.ThreadRepository.ThreadCourseView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ModerationServiceTest {
+
+    private final ModerationJobRepository jobRepository = mock(ModerationJobRepository.class);
+    private final ThreadRepository threadRepository = mock(ThreadRepository.class);
+    private final CommentRepository commentRepository = mock(CommentRepository.class);
+    private final OutboxService outboxService = mock(OutboxService.class);
+    private final HotThreadRanker hotThreadRanker = mock(HotThreadRanker.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private ModerationService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        when(transactionTemplate.execute(any())).thenAnswer(inv ->
+            ((TransactionCallback<Object>) inv.getArgument(0)).doInTransaction(null));
+        when(jobRepository.save(any(ModerationJob.class))).thenAnswer(inv -> {
+            ModerationJob job = inv.getArgument(0);
+            job.setId(9L);
+            return job;
+        });
+        service = new ModerationService(jobRepository, threadRepository, commentRepository, outboxService,
+            hotThreadRanker, mock(TagIndex.class), mock(CommentTreeCache.class), mock(LiveFeedHub.class),
+            transactionTemplate, new ObjectMapper(), Runnable::run);
+        ReflectionTestUtils.setField(service, "chunkSize", 2);
+        ReflectionTestUtils.setField(service, "maxTargets", 3);
+    }
+
+    @Test
+    void testDeleteComments_chunksAndRecountsOnce() {
+        when(commentRepository.countByThreadForIds(List.of(1L, 2L))).thenReturn(List.of(count(100L, 2)));
+        when(commentRepository.countByThreadForIds(List.of(3L))).thenReturn(List.of(count(101L, 1)));
+        when(commentRepository.deleteByIds(anyCollection())).thenAnswer(inv -> ((Collection<?>) inv.getArgument(0)).size());
+        when(threadRepository.findCourseIdsByIds(Set.of(100L))).thenReturn(List.of(course(100L, 5L)));
+        when(threadRepository.findCourseIdsByIds(Set.of(101L))).thenReturn(List.of(course(101L, 5L)));
+
+        service.submit(new ModerationRequest(ModerationAction.DELETE_COMMENTS, List.of(3L, 1L, 2L, 1L), null));
+
+        verify(commentRepository).deleteByIds(List.of(1L, 2L));
+        verify(commentRepository).deleteByIds(List.of(3L));
+        verify(hotThreadRanker).onReply(5L, 100L, -2);
+        verify(hotThreadRanker).onReply(5L, 101L, -1);
+        verify(jobRepository).recordProgress(9L, 2, 2);
+        verify(jobRepository).recordProgress(9L, 1, 1);
+        verify(outboxService, times(2)).publishModerationBatch(eq(9L), eq("DELETE_COMMENTS"), eq("COMMENT"), anyList(), anyCollection());
+        verify(threadRepository, times(1)).recomputeReplyCounts(List.of(100L, 101L));
+        verify(jobRepository).markFinished(eq(9L), eq(ModerationJobStatus.COMPLETED), isNull(), any());
+    }
+
+    @Test
+    void testFilterMatchingTooManyTargets_failsJob() {
+        when(threadRepository.findIdsForModeration(eq(5L), isNull(), isNull(), isNull(), any()))
+            .thenReturn(List.of(1L, 2L, 3L, 4L));
+
+        service.submit(new ModerationRequest(ModerationAction.LOCK_THREADS, null, new ModerationFilter(5L, null, null, null)));
+
+        verify(threadRepository, never()).bulkSetLocked(anyCollection(), anyBoolean(), any());
+        verify(jobRepository).markFinished(eq(9L), eq(ModerationJobStatus.FAILED), contains("more than 3"), any());
+    }
+
+    @Test
+    void testSubmit_rejectsUnboundedFilter() {
+        ModerationRequest request = new ModerationRequest(ModerationAction.DELETE_THREADS, null, new ModerationFilter());
+
+        assertThrows(IllegalArgumentException.class, () -> service.submit(request));
+        verify(jobRepository, never()).save(any());
+        assertEquals(0, mockingDetails(threadRepository).getInvocations().size());
+    }
+
+    private static ThreadCommentCountView count(Long threadId, long comments) {
+        return new ThreadCommentCountView() {
+            public Long getThreadId() { return threadId; }
+            public Long getComments() { return comments; }
+        };
+    }
+
+    private static ThreadCourseView course(Long threadId, Long courseId) {
+        return new ThreadCourseView() {
+            public Long getThreadId() { return threadId; }
+            public Long getCourseId() { return courseId; }
+        };
+    }
+}
@@ -0,0 +1,93 @@
+package com.learnit.discussion.service;
+
+import com.learnit.discussion.repository.OutboxDeadLetterRepository;
+import com.learnit.discussion.repository.OutboxEventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OutboxRetentionServiceTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private OutboxRetentionService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new OutboxRetentionService(mock(OutboxEventRepository.class), mock(OutboxDeadLetterRepository.class),
+            jdbcTemplate, mock(TransactionTemplate.class), mock(OutboxWakeup.class));
+        ReflectionTestUtils.setField(service, "chunkSize", 100);
+        ReflectionTestUtils.setField(service, "chunkPauseMs", 0L);
+        ReflectionTestUtils.setField(service, "premakeDays", 2);
+    }
+
+    @Test
+    void testDeleteProcessedBefore_loopsUntilShortChunk() {
+        when(jdbcTemplate.update(startsWith("DELETE FROM outbox_events"), any(Timestamp.class), eq(100)))
+            .thenReturn(100, 100, 37);
+
+        long deleted = service.deleteProcessedBefore("outbox_events", LocalDateTime.now().minusDays(7));
+
+        assertEquals(237, deleted);
+        verify(jdbcTemplate, times(3)).update(anyString(), any(Timestamp.class), eq(100));
+    }
+
+    @Test
+    void testPartitionNames_roundTrip() {
+        LocalDate day = LocalDate.of(2024, 3, 9);
+
+        assertEquals("outbox_events_p20240309", OutboxRetentionService.partitionName(day));
+        assertEquals(day, OutboxRetentionService.partitionDay("outbox_events_p20240309"));
+        assertNull(OutboxRetentionService.partitionDay("outbox_events_default"));
+    }
+
+    @Test
+    void testDropExpiredPartitions_keepsRecentAndPendingPartitions() {
+        // Given: two expired partitions (one still pending), one current, and the default
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class), eq("outbox_events"))).thenReturn(List.of(
+            "outbox_events_p20240101", "outbox_events_p20240102", "outbox_events_p20240110", "outbox_events_default"));
+        when(jdbcTemplate.queryForObject(eq("SELECT EXISTS (SELECT 1 FROM outbox_events_p20240101 WHERE processed = false)"),
+            eq(Boolean.class))).thenReturn(false);
+        when(jdbcTemplate.queryForObject(eq("SELECT EXISTS (SELECT 1 FROM outbox_events_p20240102 WHERE processed = false)"),
+            eq(Boolean.class))).thenReturn(true);
+
+        // When
+        int dropped = service.dropExpiredPartitions(LocalDate.of(2024, 1, 3));
+
+        // Then
+        assertEquals(1, dropped);
+        verify(jdbcTemplate).execute("DROP TABLE outbox_events_p20240101");
+        verify(jdbcTemplate, never()).execute("DROP TABLE outbox_events_p20240102");
+        verify(jdbcTemplate, never()).execute("DROP TABLE outbox_events_p20240110");
+        verify(jdbcTemplate, never()).execute("DROP TABLE outbox_events_default");
+    }
+
+    @Test
+    void testEnsurePartitions_createsTodayAndPremadeDays() {
+        service.ensurePartitions(LocalDate.of(2024, 12, 31));
+
+        verify(jdbcTemplate).execute("CREATE TABLE IF NOT EXISTS outbox_events_p20241231 PARTITION OF outbox_events " +
+            "FOR VALUES FROM ('2024-12-31') TO ('2025-01-01')");
+        verify(jdbcTemplate).execute("CREATE TABLE IF NOT EXISTS outbox_events_p20250102 PARTITION OF outbox_events " +
+            "FOR VALUES FROM ('2025-01-02') TO ('2025-01-03')");
+        verify(jdbcTemplate, times(3)).execute(startsWith("CREATE TABLE"));
+    }
+}
@@ -0,0 +1,91 @@
+package com.learnit.discussion.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class OutboxWakeupTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void testAwait_signalBeforeWaitIsNotLost() throws Exception {
+        OutboxWakeup wakeup = new OutboxWakeup(jdbcTemplate, false);
+
+        wakeup.signal();
+        wakeup.signal();
+
+        // Signals coalesce into one wakeup
+        assertTrue(wakeup.await(1000));
+        assertFalse(wakeup.await(10));
+    }
+
+    @Test
+    void testSetListening_losingTheListenerWakesThePublisher() throws Exception {
+        OutboxWakeup wakeup = new OutboxWakeup(jdbcTemplate, true);
+
+        wakeup.setListening(true);
+        assertTrue(wakeup.isListening());
+        assertFalse(wakeup.await(10));
+
+        // The publisher may be waiting without a timeout: it must go back to polling
+        wakeup.setListening(false);
+        assertFalse(wakeup.isListening());
+        assertTrue(wakeup.await(1000));
+    }
+
+    @Test
+    void testOnEventWritten_signalsOnceAfterCommit() throws Exception {
+        // Given: a transaction writing several outbox events
+        OutboxWakeup wakeup = new OutboxWakeup(jdbcTemplate, true);
+        TransactionSynchronizationManager.initSynchronization();
+
+        wakeup.onEventWritten();
+        wakeup.onEventWritten();
+        wakeup.onEventWritten();
+
+        // Then: one synchronization, nothing signalled before commit
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        assertEquals(1, synchronizations.size());
+        assertFalse(wakeup.await(10));
+
+        // When: the transaction commits
+        synchronizations.get(0).beforeCommit(false);
+        synchronizations.get(0).afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+
+        // Then: one NOTIFY in the transaction and the publisher is woken
+        verify(jdbcTemplate).execute("NOTIFY " + OutboxWakeup.CHANNEL);
+        assertTrue(wakeup.await(1000));
+    }
+
+    @Test
+    void testOnEventWritten_rollbackDoesNotSignal() throws Exception {
+        OutboxWakeup wakeup = new OutboxWakeup(jdbcTemplate, false);
+        TransactionSynchronizationManager.initSynchronization();
+
+        wakeup.onEventWritten();
+        TransactionSynchronizationManager.getSynchronizations().get(0)
+            .afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertFalse(wakeup.await(10));
+        verifyNoInteractions(jdbcTemplate);
+    }
+}
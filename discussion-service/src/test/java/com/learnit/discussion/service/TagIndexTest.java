@@ -0,0 +1,92 @@
+package com.learnit.discussion.service;
+
+import com.learnit.discussion.dto.TagCount;
+import com.learnit.discussion.entity.ThreadStatus;
+import com.learnit.discussion.repository.ThreadRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TagIndexTest {
+
+    @Mock
+    private ThreadRepository threadRepository;
+
+    private TagIndex tagIndex;
+
+    @BeforeEach
+    void setUp() {
+        tagIndex = new TagIndex(threadRepository);
+        when(threadRepository.findTagsByCourse(42L, ThreadStatus.ACTIVE)).thenReturn(List.of(
+            row(1L, "java"), row(1L, "spring"),
+            row(2L, "java"), row(2L, "JavaFX"),
+            row(3L, "java"), row(3L, "jpa")
+        ));
+    }
+
+    @Test
+    void testGetTags_countsThreadsPerTagMostUsedFirst() {
+        List<TagCount> tags = tagIndex.getTags(42L, 10);
+
+        assertEquals(List.of(
+            new TagCount("java", 3),
+            new TagCount("JavaFX", 1),
+            new TagCount("jpa", 1),
+            new TagCount("spring", 1)
+        ), tags);
+
+        // Second read is served from memory
+        tagIndex.getTags(42L, 10);
+        verify(threadRepository, times(1)).findTagsByCourse(42L, ThreadStatus.ACTIVE);
+    }
+
+    @Test
+    void testSuggest_matchesPrefixCaseInsensitively() {
+        assertEquals(List.of(new TagCount("java", 3), new TagCount("JavaFX", 1)),
+            tagIndex.suggest(42L, "JAV", 10));
+        assertEquals(List.of(new TagCount("java", 3)), tagIndex.suggest(42L, "j", 1));
+        assertEquals(List.of(), tagIndex.suggest(42L, "python", 10));
+    }
+
+    @Test
+    void testThreadChanges_keepIndexConsistent() {
+        tagIndex.getTags(42L, 10);
+
+        // New thread, retag of an existing one, and a deletion
+        tagIndex.onThreadSaved(42L, 4L, Set.of("spring", "kotlin"));
+        tagIndex.onThreadSaved(42L, 2L, Set.of("java"));
+        tagIndex.onThreadRemoved(42L, 3L);
+
+        assertEquals(List.of(
+            new TagCount("java", 2),
+            new TagCount("spring", 2),
+            new TagCount("kotlin", 1)
+        ), tagIndex.getTags(42L, 10));
+        assertEquals(List.of(new TagCount("java", 2)), tagIndex.suggest(42L, "j", 10));
+    }
+
+    private ThreadRepository.ThreadTagView row(Long threadId, String tag) {
+        return new ThreadRepository.ThreadTagView() {
+            @Override
+            public Long getThreadId() {
+                return threadId;
+            }
+
+            @Override
+            public String getTag() {
+                return tag;
+            }
+        };
+    }
+}
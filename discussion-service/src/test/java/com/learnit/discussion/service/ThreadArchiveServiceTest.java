@@ -0,0 +1,123 @@
+package com.learnit.discussion.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnit.discussion.entity.*;
+import com.learnit.discussion.repository.ArchivedThreadRepository;
+import com.learnit.discussion.repository.CommentRepository;
+import com.learnit.discussion.repository.ThreadRepository;
+import com.learnit.discussion.repository.VoteRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ThreadArchiveServiceTest {
+
+    private final ThreadRepository threadRepository = mock(ThreadRepository.class);
+    private final CommentRepository commentRepository = mock(CommentRepository.class);
+    private final VoteRepository voteRepository = mock(VoteRepository.class);
+    private final ArchivedThreadRepository archivedThreadRepository = mock(ArchivedThreadRepository.class);
+    private final HotThreadRanker hotThreadRanker = mock(HotThreadRanker.class);
+    private final ViewCountBuffer viewCountBuffer = mock(ViewCountBuffer.class);
+    private ThreadArchiveService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new ThreadArchiveService(threadRepository, commentRepository, voteRepository,
+            archivedThreadRepository, mock(JdbcTemplate.class), mock(TransactionTemplate.class),
+            new ObjectMapper().findAndRegisterModules(), hotThreadRanker, mock(TagIndex.class),
+            mock(CommentTreeCache.class), viewCountBuffer);
+    }
+
+    @Test
+    void testSnapshot_roundTripsThroughCompression() {
+        ThreadArchiveService.ThreadSnapshot snapshot = new ThreadArchiveService.ThreadSnapshot(
+            thread(1L), List.of(comment(10L, 1L)), List.of(vote(100L, TargetType.COMMENT, 10L)));
+
+        ThreadArchiveService.ThreadSnapshot restored = service.decompress(service.compress(snapshot));
+
+        assertEquals(snapshot.getThread().getTitle(), restored.getThread().getTitle());
+        assertEquals(Set.of("java", "jpa"), restored.getThread().getTags());
+        assertEquals(snapshot.getThread().getLastActivityAt(), restored.getThread().getLastActivityAt());
+        assertEquals(10L, restored.getComments().get(0).getId());
+        assertEquals(VoteType.UPVOTE, restored.getVotes().get(0).getVoteType());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testArchiveBatch_snapshotsThenDeletesChildrenFirst() {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(365);
+        when(threadRepository.lockArchivableIds(cutoff, 50)).thenReturn(List.of(1L));
+        when(threadRepository.findWithTagsByIdIn(List.of(1L))).thenReturn(List.of(thread(1L)));
+        when(commentRepository.findByThreadIdIn(List.of(1L))).thenReturn(List.of(comment(10L, 1L), comment(11L, 1L)));
+        when(voteRepository.findByTargets(eq(List.of(1L)), eq(Set.of(10L, 11L)))).thenReturn(List.of(
+            vote(100L, TargetType.THREAD, 1L), vote(101L, TargetType.COMMENT, 11L)));
+
+        int archived = service.archiveBatch(cutoff, 50);
+
+        assertEquals(1, archived);
+        ArgumentCaptor<List<ArchivedThread>> rows = ArgumentCaptor.forClass(List.class);
+        verify(archivedThreadRepository).saveAll(rows.capture());
+        ArchivedThread row = rows.getValue().get(0);
+        assertEquals(2, row.getCommentCount());
+        assertEquals(2, row.getVoteCount());
+        assertEquals(2, service.decompress(row.getSnapshot()).getComments().size());
+
+        InOrder order = inOrder(viewCountBuffer, voteRepository, commentRepository, threadRepository);
+        order.verify(viewCountBuffer).flushThreads(List.of(1L));
+        order.verify(voteRepository).deleteByTargets(eq(List.of(1L)), eq(Set.of(10L, 11L)));
+        order.verify(commentRepository).deleteByThreadIds(List.of(1L));
+        order.verify(threadRepository).deleteTagsByThreadIds(List.of(1L));
+        order.verify(threadRepository).deleteByIds(List.of(1L));
+        verify(hotThreadRanker).onThreadRemoved(7L, 1L);
+    }
+
+    @Test
+    void testArchiveBatch_nothingInactive() {
+        when(threadRepository.lockArchivableIds(any(), anyInt())).thenReturn(List.of());
+
+        assertEquals(0, service.archiveBatch(LocalDateTime.now(), 50));
+        verify(archivedThreadRepository, never()).saveAll(any());
+        verify(threadRepository, never()).deleteByIds(any());
+    }
+
+    private static DiscussionThread thread(Long id) {
+        DiscussionThread thread = new DiscussionThread();
+        thread.setId(id);
+        thread.setCourseId(7L);
+        thread.setAuthorId(3L);
+        thread.setTitle("Old question");
+        thread.setContent("Body");
+        thread.setCategory(ThreadCategory.QUESTION);
+        thread.setTags(new java.util.HashSet<>(Set.of("java", "jpa")));
+        thread.setCreatedAt(LocalDateTime.of(2023, 1, 5, 10, 0));
+        thread.setUpdatedAt(LocalDateTime.of(2023, 1, 5, 10, 0));
+        thread.setLastActivityAt(LocalDateTime.of(2023, 2, 1, 9, 30));
+        return thread;
+    }
+
+    private static Comment comment(Long id, Long threadId) {
+        Comment comment = new Comment();
+        comment.setId(id);
+        comment.setThreadId(threadId);
+        comment.setAuthorId(4L);
+        comment.setContent("Reply");
+        comment.setCreatedAt(LocalDateTime.of(2023, 1, 6, 8, 0));
+        comment.setUpdatedAt(LocalDateTime.of(2023, 1, 6, 8, 0));
+        return comment;
+    }
+
+    private static Vote vote(Long id, TargetType targetType, Long targetId) {
+        return new Vote(id, 5L, targetType, targetId, VoteType.UPVOTE, LocalDateTime.of(2023, 1, 7, 8, 0));
+    }
+}
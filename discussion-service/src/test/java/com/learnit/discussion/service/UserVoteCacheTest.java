@@ -0,0 +1,71 @@
+package com.learnit.discussion.service;
+
+import com.learnit.discussion.entity.TargetType;
+import com.learnit.discussion.entity.VoteType;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserVoteCacheTest {
+
+    private static final String THREAD_1 = UserVoteCache.key(TargetType.THREAD, 1L);
+    private static final String COMMENT_2 = UserVoteCache.key(TargetType.COMMENT, 2L);
+
+    @Test
+    void testGetKnown_remembersNotVotedTargets() {
+        UserVoteCache cache = new UserVoteCache(10, 100);
+        Map<String, VoteType> loaded = new HashMap<>();
+        loaded.put(THREAD_1, VoteType.UPVOTE);
+        loaded.put(COMMENT_2, null);
+
+        cache.put(7L, loaded, cache.currentGeneration(7L));
+        Map<String, VoteType> known = cache.getKnown(7L, List.of(THREAD_1, COMMENT_2, "COMMENT:3"));
+
+        assertEquals(2, known.size());
+        assertEquals(VoteType.UPVOTE, known.get(THREAD_1));
+        assertTrue(known.containsKey(COMMENT_2));
+        assertNull(known.get(COMMENT_2));
+    }
+
+    @Test
+    void testPut_skipsLoadThatRacedWithInvalidation() {
+        UserVoteCache cache = new UserVoteCache(10, 100);
+
+        // Given: a lookup started, then the user voted before it finished
+        long generation = cache.currentGeneration(7L);
+        cache.invalidate(7L);
+        cache.put(7L, Map.of(THREAD_1, VoteType.DOWNVOTE), generation);
+
+        assertTrue(cache.getKnown(7L, List.of(THREAD_1)).isEmpty());
+    }
+
+    @Test
+    void testPut_keepsLoadWhenAnotherUserVoted() {
+        UserVoteCache cache = new UserVoteCache(10, 100);
+
+        // Given: a lookup for user 7 started, then user 8 voted before it finished
+        long generation = cache.currentGeneration(7L);
+        cache.invalidate(8L);
+        cache.put(7L, Map.of(THREAD_1, VoteType.DOWNVOTE), generation);
+
+        assertEquals(VoteType.DOWNVOTE, cache.getKnown(7L, List.of(THREAD_1)).get(THREAD_1));
+    }
+
+    @Test
+    void testInvalidate_dropsOnlyThatUser() {
+        UserVoteCache cache = new UserVoteCache(10, 100);
+        cache.put(7L, Map.of(THREAD_1, VoteType.UPVOTE), cache.currentGeneration(7L));
+        cache.put(8L, Map.of(THREAD_1, VoteType.DOWNVOTE), cache.currentGeneration(8L));
+
+        cache.invalidate(7L);
+
+        assertTrue(cache.getKnown(7L, List.of(THREAD_1)).isEmpty());
+        assertEquals(VoteType.DOWNVOTE, cache.getKnown(8L, List.of(THREAD_1)).get(THREAD_1));
+    }
+}
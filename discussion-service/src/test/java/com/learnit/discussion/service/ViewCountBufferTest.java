@@ -0,0 +1,48 @@
+package com.learnit.discussion.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ViewCountBufferTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final OutboxService outboxService = mock(OutboxService.class);
+    private final ViewCountBuffer buffer = new ViewCountBuffer(jdbcTemplate, mock(TransactionTemplate.class),
+        outboxService, 4, 100, 10);
+
+    @Test
+    void testFlushThreads_writesOnlyTheGivenThreads() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenReturn(new int[]{1});
+        buffer.recordView(1L, 7L, "u1");
+        buffer.recordView(1L, 7L, null);
+        buffer.recordView(2L, 7L, "u2");
+
+        buffer.flushThreads(List.of(1L, 3L));
+
+        verify(jdbcTemplate).batchUpdate(anyString(), argThat((List<Object[]> rows) ->
+            rows.size() == 1 && rows.get(0)[0].equals(2L) && rows.get(0)[1].equals(1L)));
+        verify(outboxService).publishThreadViewed(eq(1L), eq(7L), eq(2L), argThat(viewers -> viewers.contains("u1")));
+        assertEquals(0, buffer.getPendingViews(1L));
+        assertEquals(1, buffer.getPendingViews(2L));
+    }
+
+    @Test
+    void testFlushThreads_discardsViewsOfThreadsNoLongerLive() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenReturn(new int[]{0, 1});
+        buffer.recordView(1L, 7L, null);
+        buffer.recordView(2L, 7L, null);
+
+        buffer.flushThreads(List.of(1L, 2L));
+
+        verify(outboxService, never()).publishThreadViewed(eq(1L), anyLong(), anyLong(), any());
+        verify(outboxService).publishThreadViewed(eq(2L), eq(7L), eq(1L), any());
+        assertEquals(0, buffer.getPendingThreadCount());
+    }
+}
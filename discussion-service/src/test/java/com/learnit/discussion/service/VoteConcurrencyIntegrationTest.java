@@ -0,0 +1,177 @@
+package com.learnit.discussion.service;
+
+import com.learnit.discussion.dto.CommentRequest;
+import com.learnit.discussion.dto.ThreadRequest;
+import com.learnit.discussion.dto.ThreadResponse;
+import com.learnit.discussion.dto.VoteRequest;
+import com.learnit.discussion.entity.DiscussionThread;
+import com.learnit.discussion.entity.TargetType;
+import com.learnit.discussion.entity.ThreadCategory;
+import com.learnit.discussion.entity.VoteType;
+import com.learnit.discussion.repository.ThreadRepository;
+import com.learnit.discussion.repository.VoteRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.test.context.ActiveProfiles;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Fires thousands of concurrent votes at one thread and checks that the
+ * atomic counters end up exactly equal to the surviving vote rows, also
+ * while comments and pin changes rewrite other columns of the same row.
+ * Needs Docker for a real PostgreSQL (the upsert uses ON CONFLICT).
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@Testcontainers(disabledWithoutDocker = true)
+class VoteConcurrencyIntegrationTest {
+
+    private static final int USERS = 3000;
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15");
+
+    @Autowired
+    private DiscussionService discussionService;
+
+    @Autowired
+    private ThreadRepository threadRepository;
+
+    @Autowired
+    private VoteRepository voteRepository;
+
+    @Test
+    void testConcurrentVotes_countersMatchFinalVotes() throws Exception {
+        // Given: a thread
+        ThreadRequest request = new ThreadRequest(42L, 1L, "Concurrency", "Vote on me",
+            ThreadCategory.GENERAL, null, false);
+        Long threadId = discussionService.createThread(request).getId();
+
+        // When: every user votes; some switch, some repeat, some remove, some race themselves
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        List<Future<?>> futures = new ArrayList<>();
+        int expectedUp = 0;
+        int expectedDown = 0;
+
+        for (int i = 1; i <= USERS; i++) {
+            long userId = 1000L + i;
+            VoteType first = i % 3 == 0 ? VoteType.DOWNVOTE : VoteType.UPVOTE;
+            boolean switchVote = i % 5 == 0;
+            boolean repeatVote = i % 7 == 0;
+            boolean removeVote = i % 13 == 0;
+            VoteType last = switchVote ? opposite(first) : first;
+
+            futures.add(executor.submit(() -> {
+                discussionService.castVote(vote(userId, threadId, first));
+                if (repeatVote) {
+                    discussionService.castVote(vote(userId, threadId, first));
+                }
+                if (switchVote) {
+                    discussionService.castVote(vote(userId, threadId, last));
+                }
+                if (removeVote) {
+                    discussionService.removeVote(userId, TargetType.THREAD, threadId);
+                }
+            }));
+
+            if (i % 11 == 0 && !switchVote && !removeVote) {
+                // Same user casting the same vote twice at the same time
+                futures.add(executor.submit(() -> discussionService.castVote(vote(userId, threadId, first))));
+            }
+
+            if (!removeVote) {
+                if (last == VoteType.UPVOTE) {
+                    expectedUp++;
+                } else {
+                    expectedDown++;
+                }
+            }
+        }
+
+        for (Future<?> future : futures) {
+            future.get(2, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        // Then: counters are exact and agree with the vote table
+        DiscussionThread thread = threadRepository.findById(threadId).orElseThrow();
+        assertEquals(expectedUp, thread.getUpvotes());
+        assertEquals(expectedDown, thread.getDownvotes());
+        assertEquals(expectedUp, voteRepository.countByTargetTypeAndTargetIdAndVoteType(
+            TargetType.THREAD, threadId, VoteType.UPVOTE));
+        assertEquals(expectedDown, voteRepository.countByTargetTypeAndTargetIdAndVoteType(
+            TargetType.THREAD, threadId, VoteType.DOWNVOTE));
+
+        ThreadResponse response = discussionService.getThread(threadId);
+        assertEquals(expectedUp - expectedDown, response.getNetVotes());
+    }
+
+    @Test
+    void testConcurrentCommentsAndVotes_noCounterIsLost() throws Exception {
+        // Given: a thread
+        ThreadRequest request = new ThreadRequest(43L, 1L, "Mixed load", "Comment and vote on me",
+            ThreadCategory.GENERAL, null, false);
+        Long threadId = discussionService.createThread(request).getId();
+
+        // When: votes, comments and pin toggles hit the same row at the same time
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        List<Future<?>> futures = new ArrayList<>();
+        int comments = 0;
+        int expectedUp = 0;
+        int expectedDown = 0;
+
+        for (int i = 1; i <= USERS; i++) {
+            long userId = 5000L + i;
+            VoteType voteType = i % 4 == 0 ? VoteType.DOWNVOTE : VoteType.UPVOTE;
+            futures.add(executor.submit(() -> discussionService.castVote(vote(userId, threadId, voteType))));
+            if (voteType == VoteType.UPVOTE) {
+                expectedUp++;
+            } else {
+                expectedDown++;
+            }
+
+            if (i % 2 == 0) {
+                futures.add(executor.submit(() -> discussionService.addComment(
+                    new CommentRequest(threadId, null, userId, "Reply from " + userId))));
+                comments++;
+            }
+            if (i % 50 == 0) {
+                boolean pinned = i % 100 == 0;
+                futures.add(executor.submit(() -> discussionService.pinThread(threadId, pinned)));
+            }
+        }
+
+        for (Future<?> future : futures) {
+            future.get(2, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        // Then: every vote and every reply is counted exactly once
+        DiscussionThread thread = threadRepository.findById(threadId).orElseThrow();
+        assertEquals(expectedUp, thread.getUpvotes());
+        assertEquals(expectedDown, thread.getDownvotes());
+        assertEquals(comments, thread.getReplyCount());
+    }
+
+    private VoteRequest vote(Long userId, Long threadId, VoteType voteType) {
+        return new VoteRequest(userId, TargetType.THREAD, threadId, voteType);
+    }
+
+    private VoteType opposite(VoteType voteType) {
+        return voteType == VoteType.UPVOTE ? VoteType.DOWNVOTE : VoteType.UPVOTE;
+    }
+}